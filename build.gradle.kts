@@ -114,6 +114,20 @@ fun propertyBooleanOptional(
     return value.toBooleanStrict()
 }
 
+/**
+ * Benchmarks in the test suite only run when the test JVM has the benchmark system
+ * property set to "true". Forward the property to the test JVM if it was given to Gradle,
+ * as in "./gradlew test -Dorg.nypl.simplified.tests.benchmarks=true".
+ */
+
+fun forwardBenchmarkProperty(
+    test: Test,
+) {
+    val name = "org.nypl.simplified.tests.benchmarks"
+    val value = System.getProperty(name) ?: return
+    test.systemProperty(name, value)
+}
+
 /**
  * Configure Maven publishing. Artifacts are published to a local directory
  * so that they can be pushed to Maven Central in one step using brooklime.
@@ -633,6 +647,7 @@ allprojects {
                     all { test ->
                         // Required for the Mockito ByteBuddy agent on modern VMs.
                         test.systemProperty("jdk.attach.allowAttachSelf", "true")
+                        forwardBenchmarkProperty(test)
                         test.reports.html.required = true
                         test.reports.junitXml.required = true
                     }
@@ -698,6 +713,7 @@ allprojects {
 
                 // Required for the Mockito ByteBuddy agent on modern VMs.
                 systemProperty("jdk.attach.allowAttachSelf", "true")
+                forwardBenchmarkProperty(this)
 
                 testLogging {
                     events("passed")
@@ -34,4 +34,12 @@ interface AccountAuthenticationCredentialsStoreType {
    */
 
   fun size(): Int
+
+  /**
+   * Write any credentials that the store is holding in memory to persistent storage.
+   * Implementations that write every change immediately need not do anything.
+   */
+
+  fun flush() {
+  }
 }
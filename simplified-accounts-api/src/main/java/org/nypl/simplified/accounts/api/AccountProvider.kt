@@ -32,7 +32,8 @@ data class AccountProvider(
   override val updated: DateTime,
   override val announcements: List<Announcement> = listOf(),
   override val location: AccountLibraryLocation?,
-  override val alternateURI: URI?
+  override val alternateURI: URI?,
+  override val downloadConnections: Int = 1
 ) : AccountProviderType {
   override fun compareTo(other: AccountProviderType): Int {
     return this.id.compareTo(other.id)
@@ -77,7 +78,8 @@ data class AccountProvider(
         updated = other.updated,
         announcements = other.announcements,
         location = other.location,
-        alternateURI = other.alternateURI
+        alternateURI = other.alternateURI,
+        downloadConnections = other.downloadConnections
       )
     }
   }
@@ -233,6 +233,13 @@ interface AccountProviderType : Comparable<AccountProviderType> {
 
   val location: AccountLibraryLocation?
 
+  /**
+   * The maximum number of connections that may be used to download a single book from this
+   * provider. A value of `1` downloads every book over a single connection.
+   */
+
+  val downloadConnections: Int
+
   fun toDescription(): AccountProviderDescription {
     val imageLinks = mutableListOf<Link>()
     this.logo?.let { uri ->
@@ -6,27 +6,51 @@ import org.nypl.simplified.accounts.api.AccountAuthenticationCredentialsStoreTyp
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.accounts.json.AccountAuthenticationCredentialsStoreJSON
 import org.nypl.simplified.files.FileUtilities
+import org.slf4j.LoggerFactory
 import java.io.File
+import java.io.IOException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
 
 /**
  * A trivial credential store that serializes credentials to an on-disk JSON file.
+ *
+ * Storing credentials that are identical to the existing credentials does nothing.
+ * Credentials for an account that had none, and deletions, are written immediately.
+ * Replacements of existing credentials (such as refreshed access tokens, which may
+ * arrive with every response) are written once the store has been left alone for
+ * [writeDelayMillis], so that a burst of updates results in a single write. Pending
+ * writes are performed by [flush].
  */
 
 class AccountAuthenticationCredentialsStore(
   private val file: File,
   private val fileTemp: File,
-  initialCredentials: Map<AccountID, AccountAuthenticationCredentials>
+  initialCredentials: Map<AccountID, AccountAuthenticationCredentials>,
+  private val writeDelayMillis: Long = DEFAULT_WRITE_DELAY_MILLIS
 ) : AccountAuthenticationCredentialsStoreType {
 
   companion object {
 
+    /**
+     * The default time that replaced credentials are held in memory before being written.
+     */
+
+    const val DEFAULT_WRITE_DELAY_MILLIS = 500L
+
+    private val logger =
+      LoggerFactory.getLogger(AccountAuthenticationCredentialsStore::class.java)
+
     /**
      * Open a credential store, or create a new one if it does not exist.
      */
 
     fun open(
       file: File,
-      fileTemp: File
+      fileTemp: File,
+      writeDelayMillis: Long = DEFAULT_WRITE_DELAY_MILLIS
     ): AccountAuthenticationCredentialsStoreType {
       val initialCredentials =
         if (file.isFile) {
@@ -44,7 +68,8 @@ class AccountAuthenticationCredentialsStore(
         AccountAuthenticationCredentialsStore(
           file = file,
           fileTemp = fileTemp,
-          initialCredentials = initialCredentials
+          initialCredentials = initialCredentials,
+          writeDelayMillis = writeDelayMillis
         )
 
       synchronized(store.storeLock) {
@@ -59,6 +84,20 @@ class AccountAuthenticationCredentialsStore(
   @GuardedBy("storeLock")
   private var store = initialCredentials.toMap()
 
+  @GuardedBy("storeLock")
+  private var dirty = false
+
+  @GuardedBy("storeLock")
+  private var pendingWrite: ScheduledFuture<*>? = null
+
+  private val writer: ScheduledExecutorService by lazy {
+    Executors.newSingleThreadScheduledExecutor { runnable ->
+      val thread = Thread(runnable, "simplified-credentials-store-writer")
+      thread.isDaemon = true
+      thread
+    }
+  }
+
   override fun get(account: AccountID): AccountAuthenticationCredentials? {
     return synchronized(this.storeLock) {
       this.store[account]
@@ -76,23 +115,61 @@ class AccountAuthenticationCredentialsStore(
     credentials: AccountAuthenticationCredentials
   ) {
     synchronized(this.storeLock) {
+      val existing = this.store[account]
+      if (existing == credentials) {
+        return
+      }
+
       this.store = this.store.plus(Pair(account, credentials))
-      this.writeLocked()
+      if (existing == null || this.writeDelayMillis <= 0L) {
+        this.writeLocked()
+      } else {
+        this.scheduleWriteLocked()
+      }
     }
   }
 
   override fun delete(account: AccountID) {
     synchronized(this.storeLock) {
+      if (!this.store.containsKey(account) && !this.dirty) {
+        return
+      }
       this.store = this.store.minus(account)
       this.writeLocked()
     }
   }
 
+  override fun flush() {
+    synchronized(this.storeLock) {
+      if (this.dirty) {
+        this.writeLocked()
+      }
+    }
+  }
+
+  private fun scheduleWriteLocked() {
+    this.dirty = true
+    this.pendingWrite?.cancel(false)
+    this.pendingWrite =
+      this.writer.schedule({ this.writeDelayed() }, this.writeDelayMillis, TimeUnit.MILLISECONDS)
+  }
+
+  private fun writeDelayed() {
+    try {
+      this.flush()
+    } catch (e: IOException) {
+      logger.error("could not write credentials: ", e)
+    }
+  }
+
   private fun writeLocked() {
+    this.pendingWrite?.cancel(false)
+    this.pendingWrite = null
     FileUtilities.fileWriteUTF8Atomically(
       this.file,
       this.fileTemp,
       AccountAuthenticationCredentialsStoreJSON.serializeToText(this.store)
     )
+    this.dirty = false
   }
 }
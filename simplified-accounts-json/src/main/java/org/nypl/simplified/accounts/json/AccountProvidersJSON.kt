@@ -64,6 +64,7 @@ object AccountProvidersJSON {
     node.put("@version", "20200527")
     node.put("addAutomatically", provider.addAutomatically)
     node.put("displayName", provider.displayName)
+    node.put("downloadConnections", provider.downloadConnections)
     node.put("idNumeric", provider.idNumeric)
     node.put("idUUID", provider.id.toString())
     node.put("isProduction", provider.isProduction)
@@ -294,6 +295,8 @@ object AccountProvidersJSON {
         JSONParserUtilities.getBooleanDefault(obj, "isProduction", false)
       val idNumeric =
         JSONParserUtilities.getIntegerDefault(obj, "idNumeric", -1)
+      val downloadConnections =
+        JSONParserUtilities.getIntegerDefault(obj, "downloadConnections", 1)
 
       val updated =
         JSONParserUtilities.getStringOrNull(obj, "updated")
@@ -315,6 +318,7 @@ object AccountProvidersJSON {
         catalogURI = catalogURI,
         description = description,
         displayName = displayName,
+        downloadConnections = downloadConnections,
         eula = eula,
         id = idUUID,
         idNumeric = idNumeric,
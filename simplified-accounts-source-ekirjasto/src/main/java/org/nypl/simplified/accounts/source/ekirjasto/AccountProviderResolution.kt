@@ -43,13 +43,18 @@ import java.util.Locale
 
 /**
  * The logic needed to resolve a description into a full provider using standard E-kirjasto logic.
+ *
+ * If an authentication document cache is provided, the parsed authentication document is
+ * reused while it is fresh, and revalidated with a conditional request after that.
  */
 
 class AccountProviderResolution(
   private val stringResources: AccountProviderResolutionStringsType,
   private val authDocumentParsers: AuthenticationDocumentParsersType,
   private val http: LSHTTPClientType,
-  private val description: AccountProviderDescription
+  private val description: AccountProviderDescription,
+  private val authDocumentCache: AuthenticationDocumentCache? = null,
+  private val downloadConnections: Int = 1
 ) {
 
   private val authDocumentType =
@@ -136,7 +141,8 @@ class AccountProviderResolution(
           supportsReservations = supportsReservations,
           updated = updated,
           location = this.description.location,
-          alternateURI = alternateURI
+          alternateURI = alternateURI,
+          downloadConnections = this.downloadConnections
         )
 
       taskRecorder.finishSuccess(accountProvider)
@@ -508,50 +514,76 @@ class AccountProviderResolution(
 
     return when (targetLink) {
       is Link.LinkBasic -> {
-        val request =
+        taskRecorder.addAttribute("Authentication Document", targetLink.href.toString())
+
+        val cached = this.authDocumentCache?.find(targetLink.href)
+        if (cached != null && this.authDocumentCache!!.isFresh(cached)) {
+          this.logger.debug("using fresh cached authentication document {}", targetLink.href)
+          return cached.document
+        }
+
+        val builder =
           this.http.newRequest(targetLink.href)
-            .build()
 
-        val result = request.execute()
-        taskRecorder.addAttribute("Authentication Document", targetLink.href.toString())
-        taskRecorder.addAttributes(result.status.properties?.problemReport?.toMap() ?: emptyMap())
-
-        when (val status = result.status) {
-          is LSHTTPResponseStatus.Responded.OK -> {
-            this.parseAuthenticationDocument(
-              targetURI = targetLink.href,
-              stream = status.bodyStream ?: emptyStream(),
-              taskRecorder = taskRecorder
-            )
-          }
+        if (cached != null) {
+          cached.eTag?.let { builder.addHeader("If-None-Match", it) }
+          cached.lastModified?.let { builder.addHeader("If-Modified-Since", it) }
+        }
 
-          is LSHTTPResponseStatus.Responded.Error -> {
-            if (MIMECompatibility.isCompatibleStrictWithoutAttributes(
-                status.properties.contentType,
-                authDocumentType
-              )
-            ) {
-              this.parseAuthenticationDocument(
-                targetURI = targetLink.href,
-                stream = status.bodyStream ?: emptyStream(),
-                taskRecorder = taskRecorder
-              )
-            } else {
-              val message = this.stringResources.resolvingAuthDocumentRetrievalFailed
-              taskRecorder.currentStepFailed(
-                message,
-                httpRequestFailed(
-                  targetLink.hrefURI,
-                  status.properties.originalStatus,
-                  status.properties.message
+        builder.build().execute().use { result ->
+          taskRecorder.addAttributes(result.status.properties?.problemReport?.toMap() ?: emptyMap())
+
+          when (val status = result.status) {
+            is LSHTTPResponseStatus.Responded.OK -> {
+              if (cached != null && status.properties.originalStatus == 304) {
+                this.onAuthDocumentNotModified(cached)
+              } else {
+                val document =
+                  this.parseAuthenticationDocument(
+                    targetURI = targetLink.href,
+                    stream = status.bodyStream ?: emptyStream(),
+                    taskRecorder = taskRecorder
+                  )
+                this.authDocumentCache?.store(
+                  uri = targetLink.href,
+                  document = document,
+                  eTag = status.properties.header("etag"),
+                  lastModified = status.properties.header("last-modified")
                 )
-              )
-              throw IOException(message)
+                document
+              }
             }
-          }
 
-          is LSHTTPResponseStatus.Failed -> {
-            throw IOException(status.exception)
+            is LSHTTPResponseStatus.Responded.Error -> {
+              if (cached != null && status.properties.originalStatus == 304) {
+                this.onAuthDocumentNotModified(cached)
+              } else if (MIMECompatibility.isCompatibleStrictWithoutAttributes(
+                  status.properties.contentType,
+                  authDocumentType
+                )
+              ) {
+                this.parseAuthenticationDocument(
+                  targetURI = targetLink.href,
+                  stream = status.bodyStream ?: emptyStream(),
+                  taskRecorder = taskRecorder
+                )
+              } else {
+                val message = this.stringResources.resolvingAuthDocumentRetrievalFailed
+                taskRecorder.currentStepFailed(
+                  message,
+                  httpRequestFailed(
+                    targetLink.hrefURI,
+                    status.properties.originalStatus,
+                    status.properties.message
+                  )
+                )
+                throw IOException(message)
+              }
+            }
+
+            is LSHTTPResponseStatus.Failed -> {
+              throw IOException(status.exception)
+            }
           }
         }
       }
@@ -564,6 +596,14 @@ class AccountProviderResolution(
     }
   }
 
+  private fun onAuthDocumentNotModified(
+    cached: AuthenticationDocumentCache.Entry
+  ): AuthenticationDocument {
+    this.logger.debug("authentication document not modified: {}", cached.uri)
+    this.authDocumentCache?.revalidated(cached)
+    return cached.document
+  }
+
   private fun emptyStream() = ByteArrayInputStream(ByteArray(0))
 
   private fun parseAuthenticationDocument(
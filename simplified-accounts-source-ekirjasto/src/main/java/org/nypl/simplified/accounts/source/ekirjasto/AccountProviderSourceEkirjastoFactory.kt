@@ -34,7 +34,8 @@ class AccountProviderSourceEkirjastoFactory : AccountProviderSourceFactoryType {
       parsers = AccountProviderDescriptionCollectionParsers(OPDS2ParsersIrradia),
       serializers = AccountProviderDescriptionCollectionSerializers(),
       uriProduction = buildConfig.libraryRegistry.registry,
-      uriQA = buildConfig.libraryRegistry.registryQA
+      uriQA = buildConfig.libraryRegistry.registryQA,
+      downloadConnections = buildConfig.downloadConnections
     )
   }
 }
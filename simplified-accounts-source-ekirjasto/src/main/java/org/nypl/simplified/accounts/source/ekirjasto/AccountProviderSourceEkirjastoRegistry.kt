@@ -47,7 +47,8 @@ class AccountProviderSourceEkirjastoRegistry(
   private val parsers: AccountProviderDescriptionCollectionParsersType,
   private val serializers: AccountProviderDescriptionCollectionSerializersType,
   private val uriProduction: URI,
-  private val uriQA: URI
+  private val uriQA: URI,
+  private val downloadConnections: Int = 1
 ) : AccountProviderSourceType {
 
   private val logger =
@@ -69,6 +70,27 @@ class AccountProviderSourceEkirjastoRegistry(
   )
   private var cacheFiles: CacheFiles? = null
 
+  /**
+   * The decoded contents of the disk cache, along with the size and modification time of
+   * the file that they were decoded from. The file is only parsed again if it changes.
+   */
+
+  private data class DiskResults(
+    val file: File,
+    val lastModified: Long,
+    val length: Long,
+    val results: Map<URI, AccountProviderDescription>
+  )
+
+  @Volatile
+  private var diskResults: DiskResults? = null
+
+  /**
+   * The parsed authentication documents of the providers resolved by this source.
+   */
+
+  private val authDocumentCache = AuthenticationDocumentCache()
+
   /** The default time to retain the disk cache. */
   private val defaultCacheDuration = Duration.standardHours(4)
 
@@ -156,7 +178,9 @@ class AccountProviderSourceEkirjastoRegistry(
       this.cacheFiles = this.cacheFiles(context)
       FileUtilities.fileDelete(this.cacheFiles!!.file)
       FileUtilities.fileDelete(this.cacheFiles!!.fileTemp)
+      this.diskResults = null
     }
+    this.authDocumentCache.clear()
   }
 
   override fun canResolve(description: AccountProviderDescription): Boolean {
@@ -192,7 +216,9 @@ class AccountProviderSourceEkirjastoRegistry(
       stringResources = this.stringResources!!,
       authDocumentParsers = this.authDocumentParsers,
       http = this.http,
-      description = correctDescription
+      description = correctDescription,
+      authDocumentCache = this.authDocumentCache,
+      downloadConnections = this.downloadConnections
     ).resolve(onProgress)
   }
 
@@ -236,6 +262,13 @@ class AccountProviderSourceEkirjastoRegistry(
         }
 
         FileUtilities.fileRename(cacheFiles.fileTemp, cacheFiles.file)
+        this.diskResults =
+          DiskResults(
+            file = cacheFiles.file,
+            lastModified = cacheFiles.file.lastModified(),
+            length = cacheFiles.file.length(),
+            results = mergedResults
+          )
       }
     } catch (e: Exception) {
       this.logger.debug("could not serialize cache: {}: ", cacheFiles.fileTemp, e)
@@ -249,10 +282,33 @@ class AccountProviderSourceEkirjastoRegistry(
     diskResults.plus(serverResults)
 
   /**
-   * Fetch the set of serialized provider descriptions.
+   * Fetch the set of serialized provider descriptions, reusing the previously decoded
+   * descriptions if the file has not changed since they were decoded.
    */
 
   private fun fetchDiskResults(cacheFiles: CacheFiles): Map<URI, AccountProviderDescription> {
+    val file = cacheFiles.file
+    val lastModified = file.lastModified()
+    val length = file.length()
+
+    val existing = this.diskResults
+    if (existing != null &&
+      existing.file == file &&
+      existing.lastModified == lastModified &&
+      existing.length == length &&
+      lastModified != 0L
+    ) {
+      return existing.results
+    }
+
+    val results = this.parseDiskResults(cacheFiles)
+    if (results.isNotEmpty()) {
+      this.diskResults = DiskResults(file, lastModified, length, results)
+    }
+    return results
+  }
+
+  private fun parseDiskResults(cacheFiles: CacheFiles): Map<URI, AccountProviderDescription> {
     this.logger.debug("fetching disk cache: {}", cacheFiles.file)
 
     return try {
@@ -0,0 +1,119 @@
+package org.nypl.simplified.accounts.source.ekirjasto
+
+import org.nypl.simplified.opds.auth_document.api.AuthenticationDocument
+import java.net.URI
+import java.util.concurrent.TimeUnit
+
+/**
+ * A bounded in-memory cache of parsed authentication documents.
+ *
+ * Entries are keyed by the URI of the authentication document, and hold the parsed
+ * document along with the `ETag` and `Last-Modified` validators that the server returned.
+ * An entry that was fetched or revalidated within the freshness period is used without
+ * contacting the server at all; an older entry is revalidated with a conditional request,
+ * and the parsed document is reused if the server responds with `304 Not Modified`.
+ * Responses without validators are not cached.
+ */
+
+class AuthenticationDocumentCache(
+  private val maximumEntries: Int = DEFAULT_MAXIMUM_ENTRIES,
+  private val freshnessMillis: Long = DEFAULT_FRESHNESS_MILLIS
+) {
+
+  /**
+   * A cached authentication document.
+   */
+
+  data class Entry(
+    val uri: URI,
+    val document: AuthenticationDocument,
+    val eTag: String?,
+    val lastModified: String?,
+    val validatedAtNanos: Long
+  )
+
+  private val entries =
+    object : LinkedHashMap<URI, Entry>(16, 0.75f, true) {
+      override fun removeEldestEntry(eldest: MutableMap.MutableEntry<URI, Entry>?): Boolean {
+        return this.size > this@AuthenticationDocumentCache.maximumEntries
+      }
+    }
+
+  /**
+   * Find the cached entry for the given URI, if any.
+   */
+
+  fun find(uri: URI): Entry? {
+    return synchronized(this.entries) {
+      this.entries[uri]
+    }
+  }
+
+  /**
+   * @return `true` if the given entry was validated recently enough to be used without
+   * revalidating it
+   */
+
+  fun isFresh(entry: Entry): Boolean {
+    val age = System.nanoTime() - entry.validatedAtNanos
+    return age < TimeUnit.MILLISECONDS.toNanos(this.freshnessMillis)
+  }
+
+  /**
+   * Store the given document. If neither validator is present, any existing entry is
+   * removed instead.
+   */
+
+  fun store(
+    uri: URI,
+    document: AuthenticationDocument,
+    eTag: String?,
+    lastModified: String?
+  ) {
+    synchronized(this.entries) {
+      if (eTag == null && lastModified == null) {
+        this.entries.remove(uri)
+      } else {
+        this.entries[uri] = Entry(uri, document, eTag, lastModified, System.nanoTime())
+      }
+    }
+  }
+
+  /**
+   * Mark the given entry as having just been revalidated.
+   */
+
+  fun revalidated(entry: Entry) {
+    synchronized(this.entries) {
+      if (this.entries[entry.uri] === entry) {
+        this.entries[entry.uri] = entry.copy(validatedAtNanos = System.nanoTime())
+      }
+    }
+  }
+
+  /**
+   * Remove all entries.
+   */
+
+  fun clear() {
+    synchronized(this.entries) {
+      this.entries.clear()
+    }
+  }
+
+  companion object {
+
+    /**
+     * The default maximum number of cached documents.
+     */
+
+    const val DEFAULT_MAXIMUM_ENTRIES = 32
+
+    /**
+     * The default period after fetching or revalidating a document during which it is
+     * used without contacting the server.
+     */
+
+    const val DEFAULT_FRESHNESS_MILLIS = 5L * 60L * 1000L
+  }
+}
@@ -49,7 +49,8 @@ class AccountProviderResolution(
   private val stringResources: AccountProviderResolutionStringsType,
   private val authDocumentParsers: AuthenticationDocumentParsersType,
   private val http: LSHTTPClientType,
-  private val description: AccountProviderDescription
+  private val description: AccountProviderDescription,
+  private val downloadConnections: Int = 1
 ) {
 
   private val authDocumentType =
@@ -136,7 +137,8 @@ class AccountProviderResolution(
           updated = updated,
           location = this.description.location,
           alternateURI = alternateURI,
-          selectedURI = authDocument?.selectedURI
+          selectedURI = authDocument?.selectedURI,
+          downloadConnections = this.downloadConnections
         )
 
       taskRecorder.finishSuccess(accountProvider)
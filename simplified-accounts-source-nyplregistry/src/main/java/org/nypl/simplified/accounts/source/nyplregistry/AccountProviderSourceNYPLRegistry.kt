@@ -46,7 +46,8 @@ class AccountProviderSourceNYPLRegistry(
   private val parsers: AccountProviderDescriptionCollectionParsersType,
   private val serializers: AccountProviderDescriptionCollectionSerializersType,
   private val uriProduction: URI,
-  private val uriQA: URI
+  private val uriQA: URI,
+  private val downloadConnections: Int = 1
 ) : AccountProviderSourceType {
 
   private val logger =
@@ -172,7 +173,8 @@ class AccountProviderSourceNYPLRegistry(
       stringResources = this.stringResources!!,
       authDocumentParsers = this.authDocumentParsers,
       http = this.http,
-      description = description
+      description = description,
+      downloadConnections = this.downloadConnections
     ).resolve(onProgress)
   }
 
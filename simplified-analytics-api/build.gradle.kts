@@ -1,5 +1,6 @@
 dependencies {
     implementation(project(":simplified-accounts-api"))
+    implementation(project(":simplified-networkconnectivity-api"))
     implementation(project(":simplified-opds-core"))
 
     implementation(libs.joda.time)
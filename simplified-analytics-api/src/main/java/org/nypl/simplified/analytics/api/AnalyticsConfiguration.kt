@@ -2,6 +2,7 @@ package org.nypl.simplified.analytics.api
 
 import android.content.Context
 import org.librarysimplified.http.api.LSHTTPClientType
+import org.nypl.simplified.networkconnectivity.api.NetworkConnectivityType
 
 /**
  * General configuration for analytics systems.
@@ -19,5 +20,12 @@ data class AnalyticsConfiguration(
    * The HTTP interface used for analytics requests, if necessary.
    */
 
-  val http: LSHTTPClientType
+  val http: LSHTTPClientType,
+
+  /**
+   * The network connectivity service, used by systems that wait for a network connection
+   * before sending events.
+   */
+
+  val networkConnectivity: NetworkConnectivityType
 )
@@ -1,6 +1,8 @@
 dependencies {
     implementation(project(":simplified-accounts-api"))
     implementation(project(":simplified-analytics-api"))
+    implementation(project(":simplified-files"))
+    implementation(project(":simplified-networkconnectivity-api"))
     implementation(project(":simplified-threads"))
 
     implementation(libs.google.failureaccess)
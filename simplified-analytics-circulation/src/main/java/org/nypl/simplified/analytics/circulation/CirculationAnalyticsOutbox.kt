@@ -0,0 +1,157 @@
+package org.nypl.simplified.analytics.circulation
+
+import org.nypl.simplified.files.FileUtilities
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.net.URI
+import java.util.UUID
+
+/**
+ * A persistent outbox of analytics events that have not yet been delivered.
+ *
+ * Events are appended to a plain text file, one event per line, so that adding an event
+ * is a single small write. The file is only rewritten when delivered events are removed,
+ * or when the outbox exceeds its maximum size and the oldest events are discarded. Events
+ * that are already in the outbox are not added again.
+ *
+ * The outbox is not thread-safe, and is expected to be accessed from a single thread.
+ */
+
+class CirculationAnalyticsOutbox(
+  private val file: File,
+  private val maximumEntries: Int = 500
+) {
+
+  private val logger =
+    LoggerFactory.getLogger(CirculationAnalyticsOutbox::class.java)
+
+  private val fileTmp =
+    File(this.file.parentFile, "${this.file.name}.tmp")
+  private val entries =
+    LinkedHashMap<String, Entry>()
+
+  /**
+   * An undelivered event.
+   */
+
+  data class Entry(
+    val timestamp: String,
+    val accountID: UUID,
+    val target: URI
+  ) {
+    internal val key: String =
+      "${this.timestamp}\t${this.accountID}\t${this.target}"
+  }
+
+  init {
+    this.load()
+  }
+
+  /**
+   * The number of undelivered events.
+   */
+
+  val size: Int
+    get() = this.entries.size
+
+  /**
+   * Add an event to the outbox.
+   *
+   * @return `false` if the event was already in the outbox
+   */
+
+  @Throws(IOException::class)
+  fun append(entry: Entry): Boolean {
+    if (this.entries.containsKey(entry.key)) {
+      return false
+    }
+
+    this.entries[entry.key] = entry
+    if (this.entries.size > this.maximumEntries) {
+      val iterator = this.entries.values.iterator()
+      while (this.entries.size > this.maximumEntries) {
+        this.logger.warn("outbox is full; discarding event for {}", iterator.next().target)
+        iterator.remove()
+      }
+      this.save()
+    } else {
+      this.file.parentFile?.mkdirs()
+      FileOutputStream(this.file, true).use { stream ->
+        stream.write("${entry.key}\n".toByteArray(Charsets.UTF_8))
+      }
+    }
+    return true
+  }
+
+  /**
+   * @return Up to `count` of the oldest undelivered events
+   */
+
+  fun peek(count: Int): List<Entry> =
+    this.entries.values.take(count)
+
+  /**
+   * Remove the given events from the outbox.
+   */
+
+  @Throws(IOException::class)
+  fun remove(delivered: Collection<Entry>) {
+    if (delivered.isEmpty()) {
+      return
+    }
+    for (entry in delivered) {
+      this.entries.remove(entry.key)
+    }
+    this.save()
+  }
+
+  private fun save() {
+    this.file.parentFile?.mkdirs()
+    val text = StringBuilder(this.entries.size * 128)
+    for (entry in this.entries.values) {
+      text.append(entry.key)
+      text.append('\n')
+    }
+    FileUtilities.fileWriteUTF8Atomically(this.file, this.fileTmp, text.toString())
+  }
+
+  private fun load() {
+    if (!this.file.isFile) {
+      return
+    }
+
+    try {
+      this.file.forEachLine(Charsets.UTF_8) { line ->
+        val entry = parseEntry(line)
+        if (entry != null) {
+          this.entries[entry.key] = entry
+        }
+      }
+    } catch (e: IOException) {
+      this.logger.error("could not read outbox {}: ", this.file, e)
+    }
+
+    while (this.entries.size > this.maximumEntries) {
+      this.entries.remove(this.entries.keys.first())
+    }
+  }
+
+  private fun parseEntry(line: String): Entry? {
+    val segments = line.split('\t')
+    if (segments.size != 3) {
+      return null
+    }
+    return try {
+      Entry(
+        timestamp = segments[0],
+        accountID = UUID.fromString(segments[1]),
+        target = URI(segments[2])
+      )
+    } catch (e: Exception) {
+      this.logger.warn("discarding unparseable outbox entry: ", e)
+      null
+    }
+  }
+}
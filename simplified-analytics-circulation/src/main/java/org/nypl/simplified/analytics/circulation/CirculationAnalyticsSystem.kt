@@ -8,22 +8,83 @@ import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.analytics.api.AnalyticsConfiguration
 import org.nypl.simplified.analytics.api.AnalyticsEvent
 import org.nypl.simplified.analytics.api.AnalyticsSystem
+import org.nypl.simplified.networkconnectivity.api.NetworkConnectivityType
 import org.slf4j.LoggerFactory
-import java.net.URI
-import java.util.concurrent.ExecutorService
+import java.io.File
+import java.io.IOException
+import java.util.UUID
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
 
 /**
  * An analytics system based on Circulation Analytics.
+ *
+ * Events are first written to a persistent [CirculationAnalyticsOutbox], and are then
+ * delivered in batches. If an event can't be delivered, delivery of that account's events
+ * is retried with an exponential backoff, so events recorded while the device is offline
+ * are delivered once connectivity returns, and an account whose events keep failing
+ * doesn't hold up the events of other accounts. An event that still can't be delivered
+ * after [ATTEMPTS_MAXIMUM] attempts is dropped. Events are only delivered once the
+ * credentials of their account are known, so events recorded in a previous process wait
+ * in the outbox until their account publishes another event.
  */
 
 class CirculationAnalyticsSystem(
   private val configuration: AnalyticsConfiguration,
-  private val executor: ExecutorService
+  private val executor: ScheduledExecutorService,
+  private val network: NetworkConnectivityType,
+  outboxFile: File = File(configuration.context.filesDir, "circulation-analytics-outbox.txt")
 ) : AnalyticsSystem {
 
   private val logger =
     LoggerFactory.getLogger(CirculationAnalyticsSystem::class.java)
 
+  /**
+   * The outbox is only accessed on the executor thread, and is therefore opened there.
+   */
+
+  private val outbox by lazy {
+    CirculationAnalyticsOutbox(outboxFile)
+  }
+
+  /**
+   * The most recent credentials for each account that has published an event in this
+   * process.
+   */
+
+  private val accounts =
+    mutableMapOf<UUID, AccountState>()
+
+  /**
+   * The accounts whose events failed to be delivered, and that are waiting for the
+   * scheduled retry.
+   */
+
+  private val waiting =
+    mutableSetOf<UUID>()
+
+  /**
+   * The number of failed delivery attempts of each queued event in this process.
+   */
+
+  private val attempts =
+    mutableMapOf<CirculationAnalyticsOutbox.Entry, Int>()
+
+  private var retryDelayMillis = RETRY_DELAY_MINIMUM_MILLIS
+  private var retry: ScheduledFuture<*>? = null
+
+  private data class AccountState(
+    val credentials: AccountAuthenticationCredentials?,
+    val onAccessTokenUpdated: (String?) -> Unit
+  )
+
+  private enum class Delivery {
+    DELIVERED,
+    REJECTED,
+    RETRY
+  }
+
   override fun onAnalyticsEvent(event: AnalyticsEvent): Unit =
     this.executor.execute { this.consumeEvent(event) }
 
@@ -32,37 +93,182 @@ class CirculationAnalyticsSystem(
     when (event) {
       is AnalyticsEvent.BookOpened -> {
         event.targetURI?.let { target ->
-          postURI(event.onAccessTokenUpdated, target, event.credentials)
+          this.accounts[event.accountUUID] =
+            AccountState(event.credentials, event.onAccessTokenUpdated)
+          this.enqueue(
+            CirculationAnalyticsOutbox.Entry(
+              timestamp = event.timestamp.toString(),
+              accountID = event.accountUUID,
+              target = target
+            )
+          )
         }
         this.logger.debug("consuming 'BookOpened' event for {}", event.targetURI)
       }
+      is AnalyticsEvent.SyncRequested -> {
+        this.retryDelayMillis = RETRY_DELAY_MINIMUM_MILLIS
+        this.flushRetry()
+      }
       else -> {
         // All other events are silently dropped
       }
     }
   }
 
-  private fun postURI(
-    onAccessTokenUpdated: (String?) -> Unit,
-    target: URI,
-    credentials: AccountAuthenticationCredentials?
-  ) {
+  private fun enqueue(entry: CirculationAnalyticsOutbox.Entry) {
+    try {
+      if (!this.outbox.append(entry)) {
+        this.logger.debug("event for {} is already queued", entry.target)
+      }
+    } catch (e: IOException) {
+      this.logger.error("could not write event to outbox: ", e)
+    }
+
+    /*
+     * If the account is waiting for a retry, the new event will be delivered along with
+     * the events that are already waiting.
+     */
+
+    if (!this.waiting.contains(entry.accountID)) {
+      this.flush()
+    }
+  }
+
+  /**
+   * Deliver the events of every account, including those waiting for a retry.
+   */
+
+  private fun flushRetry() {
+    this.retry?.cancel(false)
+    this.retry = null
+    this.waiting.clear()
+    this.flush()
+  }
+
+  /**
+   * Deliver a batch of events from the outbox. If more events remain, another batch is
+   * submitted to the executor so that newly published events aren't held up behind a
+   * large backlog. The events of accounts that are waiting for a retry are skipped.
+   */
+
+  private fun flush() {
+    if (this.outbox.size == 0) {
+      return
+    }
+    if (!this.network.isNetworkAvailable) {
+      this.logger.debug("network unavailable; {} events waiting", this.outbox.size)
+      this.scheduleRetry()
+      return
+    }
+
+    /*
+     * Events for accounts whose credentials aren't known yet are left where they are.
+     */
+
+    val deliverable =
+      this.outbox.peek(this.outbox.size).filter { entry ->
+        this.accounts.containsKey(entry.accountID) && !this.waiting.contains(entry.accountID)
+      }
+    if (deliverable.isEmpty()) {
+      this.logger.debug("{} events waiting for credentials or a retry", this.outbox.size)
+      return
+    }
+
+    val finished = mutableSetOf<CirculationAnalyticsOutbox.Entry>()
+    var attempted = 0
+    for (entry in deliverable) {
+      if (attempted == BATCH_SIZE) {
+        break
+      }
+      if (this.waiting.contains(entry.accountID)) {
+        continue
+      }
+
+      ++attempted
+      when (this.deliver(entry)) {
+        Delivery.DELIVERED,
+        Delivery.REJECTED ->
+          finished.add(entry)
+        Delivery.RETRY -> {
+          val count = (this.attempts[entry] ?: 0) + 1
+          if (count >= ATTEMPTS_MAXIMUM) {
+            this.logger.error("dropping event for {} after {} attempts", entry.target, count)
+            finished.add(entry)
+          } else {
+            this.attempts[entry] = count
+            this.waiting.add(entry.accountID)
+          }
+        }
+      }
+    }
+
+    try {
+      this.outbox.remove(finished)
+    } catch (e: IOException) {
+      this.logger.error("could not update outbox: ", e)
+    }
+    finished.forEach(this.attempts::remove)
+
+    if (this.waiting.isEmpty()) {
+      this.retryDelayMillis = RETRY_DELAY_MINIMUM_MILLIS
+    } else {
+      this.scheduleRetry()
+    }
+
+    val remaining =
+      deliverable.any { entry -> entry !in finished && !this.waiting.contains(entry.accountID) }
+    if (remaining) {
+      this.executor.execute { this.flush() }
+    }
+  }
+
+  private fun scheduleRetry() {
+    if (this.retry != null) {
+      return
+    }
+    this.logger.debug("retrying delivery in {}ms", this.retryDelayMillis)
+    this.retry =
+      this.executor.schedule({ this.flushRetry() }, this.retryDelayMillis, TimeUnit.MILLISECONDS)
+    this.retryDelayMillis =
+      (this.retryDelayMillis * 2).coerceAtMost(RETRY_DELAY_MAXIMUM_MILLIS)
+  }
+
+  private fun deliver(entry: CirculationAnalyticsOutbox.Entry): Delivery {
+    val account = this.accounts.getValue(entry.accountID)
+    val credentials = account.credentials
     val request =
-      this.configuration.http.newRequest(target)
+      this.configuration.http.newRequest(entry.target)
         .setAuthorization(AccountAuthenticatedHTTP.createAuthorizationIfPresent(credentials))
         .addCredentialsToProperties(credentials)
         .build()
 
-    val response = request.execute()
-    when (val status = response.status) {
-      is LSHTTPResponseStatus.Responded.OK -> {
-        onAccessTokenUpdated(status.getAccessToken())
-      }
-      is LSHTTPResponseStatus.Responded.Error -> {
-        logError(status)
-      }
-      is LSHTTPResponseStatus.Failed -> {
-        this.logger.error("error sending event to {}: ", target, status.exception)
+    return request.execute().use { response ->
+      when (val status = response.status) {
+        is LSHTTPResponseStatus.Responded.OK -> {
+          account.onAccessTokenUpdated.invoke(status.getAccessToken())
+          Delivery.DELIVERED
+        }
+        is LSHTTPResponseStatus.Responded.Error -> {
+          logError(status)
+
+          /*
+           * A request that the server rejected outright won't succeed if it is retried.
+           * Authentication failures are retried, as they are resolved when the account's
+           * credentials are refreshed.
+           */
+
+          val code = status.properties.originalStatus
+          if (code in 400..499 && code !in RETRYABLE_CLIENT_ERRORS) {
+            this.logger.error("server rejected event for {} ({})", entry.target, code)
+            Delivery.REJECTED
+          } else {
+            Delivery.RETRY
+          }
+        }
+        is LSHTTPResponseStatus.Failed -> {
+          this.logger.error("error sending event to {}: ", entry.target, status.exception)
+          Delivery.RETRY
+        }
       }
     }
   }
@@ -76,4 +282,13 @@ class CirculationAnalyticsSystem(
       this.logger.debug("detail: {}", problemReport.detail)
     }
   }
+
+  private companion object {
+    const val ATTEMPTS_MAXIMUM = 10
+    const val BATCH_SIZE = 20
+    const val RETRY_DELAY_MINIMUM_MILLIS = 30_000L
+    const val RETRY_DELAY_MAXIMUM_MILLIS = 30L * 60L * 1000L
+
+    val RETRYABLE_CLIENT_ERRORS = setOf(401, 403, 408, 429)
+  }
 }
@@ -15,5 +15,9 @@ class CirculationAnalyticsSystems : AnalyticsSystemProvider {
     NamedThreadPools.namedThreadPool(1, "circulation-analytics", 19)
 
   override fun create(configuration: AnalyticsConfiguration): AnalyticsSystem =
-    CirculationAnalyticsSystem(configuration, this.executor)
+    CirculationAnalyticsSystem(
+      configuration = configuration,
+      executor = this.executor,
+      network = configuration.networkConnectivity
+    )
 }
@@ -44,6 +44,8 @@ class EkirjastoBuildConfigurationService : BuildConfigurationServiceType {
     get() = true
   override val showAgeGateUi: Boolean
     get() = true
+  override val downloadConnections: Int
+    get() = 4
   override val brandingAppIcon: Int
     get() = R.drawable.main_icon
 }
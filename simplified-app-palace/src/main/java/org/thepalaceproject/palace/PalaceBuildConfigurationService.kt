@@ -46,6 +46,8 @@ class PalaceBuildConfigurationService : BuildConfigurationServiceType {
     get() = false
   override val showAgeGateUi: Boolean
     get() = true
+  override val downloadConnections: Int
+    get() = 1
   override val brandingAppIcon: Int
     get() = R.drawable.main_icon
 }
@@ -60,6 +60,16 @@ data class BookmarkAnnotationResponse(
   val first: BookmarkAnnotationFirstNode
 )
 
+/**
+ * A list of bookmarks received from the server, along with the entity tag that identifies
+ * this version of the list, if the server provided one.
+ */
+
+data class BookmarkAnnotationsReceived(
+  val items: List<BookmarkAnnotation>,
+  val eTag: String?
+)
+
 object BookmarkAnnotations {
 
   private val dateParser =
@@ -45,6 +45,24 @@ interface BookmarkHTTPCallsType {
     credentials: AccountAuthenticationCredentials
   ): List<BookmarkAnnotation>
 
+  /**
+   * Retrieve the list of bookmarks for the given account, unless the list is unchanged since
+   * the server returned the given entity tag. This call will fail with an exception if
+   * syncing is not enabled.
+   *
+   * @return The bookmarks, or `null` if the list of bookmarks is unchanged
+   *
+   * @see #bookmarksGet
+   */
+
+  @Throws(IOException::class)
+  fun bookmarksGetIfChanged(
+    account: AccountType,
+    annotationsURI: URI,
+    credentials: AccountAuthenticationCredentials,
+    eTag: String?
+  ): BookmarkAnnotationsReceived?
+
   /**
    * Add a bookmark for the given account. This call will fail with an exception if
    * syncing is not enabled.
@@ -16,6 +16,7 @@ import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP.getAccessToken
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.accounts.database.api.AccountType
 import org.nypl.simplified.bookmarks.api.BookmarkAnnotation
+import org.nypl.simplified.bookmarks.api.BookmarkAnnotationsReceived
 import org.nypl.simplified.bookmarks.api.BookmarkAnnotationsJSON
 import org.nypl.simplified.bookmarks.api.BookmarkHTTPCallsType
 import org.nypl.simplified.json.core.JSONParserUtilities
@@ -41,22 +42,47 @@ class BHTTPCalls(
     annotationsURI: URI,
     credentials: AccountAuthenticationCredentials
   ): List<BookmarkAnnotation> {
+    return this.bookmarksGetIfChanged(account, annotationsURI, credentials, null)
+      ?.items
+      ?: listOf()
+  }
+
+  override fun bookmarksGetIfChanged(
+    account: AccountType,
+    annotationsURI: URI,
+    credentials: AccountAuthenticationCredentials,
+    eTag: String?
+  ): BookmarkAnnotationsReceived? {
     val auth =
       AccountAuthenticatedHTTP.createAuthorization(credentials)
-    val request =
+    val builder =
       this.http.newRequest(annotationsURI)
         .setAuthorization(auth)
         .addCredentialsToProperties(credentials)
-        .build()
 
-    return request.execute().use { response ->
+    if (eTag != null) {
+      builder.addHeader("If-None-Match", eTag)
+    }
+
+    return builder.build().execute().use { response ->
       when (val status = response.status) {
         is LSHTTPResponseStatus.Responded.OK -> {
           account.updateBasicTokenCredentials(status.getAccessToken())
-          this.deserializeBookmarksFromStream(status.bodyStream ?: this.emptyStream())
+          if (eTag != null && status.properties.originalStatus == 304) {
+            null
+          } else {
+            BookmarkAnnotationsReceived(
+              items = this.deserializeBookmarksFromStream(status.bodyStream ?: this.emptyStream()),
+              eTag = status.properties.header("etag")
+            )
+          }
         }
         is LSHTTPResponseStatus.Responded.Error -> {
-          this.logAndFail(annotationsURI, status)
+          if (eTag != null && status.properties.originalStatus == 304) {
+            null
+          } else {
+            this.logAndFail(annotationsURI, status)
+          }
         }
         is LSHTTPResponseStatus.Failed -> {
           throw status.exception
@@ -36,6 +36,7 @@ import org.nypl.simplified.profiles.api.ProfileSelection
 import org.nypl.simplified.profiles.controller.api.ProfilesControllerType
 import org.slf4j.LoggerFactory
 import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 
@@ -62,6 +63,8 @@ class BService(
     ObjectMapper()
   private val accountsSyncChanging =
     Collections.synchronizedSet(hashSetOf<AccountID>())
+  private val syncStates =
+    ConcurrentHashMap<AccountID, BSyncState>()
 
   init {
     this.disposables.add(
@@ -121,7 +124,8 @@ class BService(
           this.httpCalls,
           this.bookmarkEventsOut,
           this.objectMapper,
-          this.profilesController.profileCurrent()
+          this.profilesController.profileCurrent(),
+          this.syncStates
         )
       )
     } catch (e: Exception) {
@@ -135,6 +139,7 @@ class BService(
   }
 
   private fun onAccountLoggedIn() {
+    this.syncStates.clear()
     this.sync()
   }
 
@@ -265,7 +270,8 @@ class BService(
             this.objectMapper,
             this.profilesController.profileCurrent(),
             accountID,
-            bookID
+            bookID,
+            this.syncStates
           )
         )
       )
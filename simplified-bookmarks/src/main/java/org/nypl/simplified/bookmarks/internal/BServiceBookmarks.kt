@@ -86,4 +86,23 @@ internal object BServiceBookmarks {
 
     return bookmarksById.values.toList()
   }
+
+  /**
+   * Merge bookmarks received from the server into a book's existing bookmarks, deduplicating
+   * them by [Bookmark.bookmarkId] in the same manner as [normalizeBookmarks].
+   *
+   * @return The merged bookmarks, and the received bookmarks that were new or changed
+   */
+
+  fun <T : Bookmark> mergeBookmarks(
+    existing: List<T>,
+    received: List<T>
+  ): Pair<List<T>, List<T>> {
+    val bookmarksById =
+      existing.associateByTo(LinkedHashMap(existing.size + received.size)) { mark -> mark.bookmarkId }
+    val changed =
+      received.filter { mark -> bookmarksById.put(mark.bookmarkId, mark) != mark }
+
+    return Pair(bookmarksById.values.toList(), changed)
+  }
 }
@@ -2,6 +2,7 @@ package org.nypl.simplified.bookmarks.internal
 
 import com.fasterxml.jackson.databind.ObjectMapper
 import io.reactivex.subjects.Subject
+import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.bookmarks.api.BookmarkEvent
 import org.nypl.simplified.bookmarks.api.BookmarkHTTPCallsType
 import org.nypl.simplified.profiles.api.ProfileReadableType
@@ -16,7 +17,8 @@ internal class BServiceOpSyncAllAccounts(
   private val httpCalls: BookmarkHTTPCallsType,
   private val bookmarkEventsOut: Subject<BookmarkEvent>,
   private val objectMapper: ObjectMapper,
-  private val profile: ProfileReadableType
+  private val profile: ProfileReadableType,
+  private val syncStates: MutableMap<AccountID, BSyncState>
 ) : BServiceOp<Unit>(logger) {
 
   override fun runActual() {
@@ -30,7 +32,8 @@ internal class BServiceOpSyncAllAccounts(
           this.objectMapper,
           this.profile,
           account,
-          bookID = null
+          bookID = null,
+          syncStates = this.syncStates
         ).runActual()
       } catch (e: Exception) {
         this.logger.debug("failed to sync account {}: ", account.uuid, e)
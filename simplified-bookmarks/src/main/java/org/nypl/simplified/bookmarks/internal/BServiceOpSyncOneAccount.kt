@@ -7,12 +7,13 @@ import org.nypl.simplified.bookmarks.api.BookmarkAnnotation
 import org.nypl.simplified.bookmarks.api.BookmarkAnnotations
 import org.nypl.simplified.bookmarks.api.BookmarkEvent
 import org.nypl.simplified.bookmarks.api.BookmarkHTTPCallsType
-import org.nypl.simplified.bookmarks.api.Bookmarks
 import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.api.bookmark.Bookmark
+import org.nypl.simplified.books.api.bookmark.BookmarkID
 import org.nypl.simplified.books.api.bookmark.BookmarkKind
-import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle
+import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleAudioBook
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
+import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandlePDF
 import org.nypl.simplified.profiles.api.ProfileReadableType
 import org.slf4j.Logger
 
@@ -27,9 +28,20 @@ internal class BServiceOpSyncOneAccount(
   private val objectMapper: ObjectMapper,
   private val profile: ProfileReadableType,
   private val accountID: AccountID,
-  private val bookID: BookID?
+  private val bookID: BookID?,
+  private val syncStates: MutableMap<AccountID, BSyncState>
 ) : BServiceOp<Bookmark?>(logger) {
 
+  /**
+   * The bookmarks that the server has.
+   */
+
+  private data class RemoteBookmarks(
+    val eTag: String?,
+    val bookmarks: Set<BookmarkID>,
+    val lastRead: Map<BookID, Bookmark>
+  )
+
   override fun runActual(): Bookmark? {
     this.logger.debug(
       "[{}]: syncing account {}",
@@ -58,22 +70,50 @@ internal class BServiceOpSyncOneAccount(
 
     if (!syncable.account.preferences.bookmarkSyncingPermitted) {
       this.logger.debug("[{}]: syncing not permitted", this.accountID.uuid)
+      this.syncStates.remove(this.accountID)
       return null
     }
 
-    val received = this.readBookmarksFromServer(syncable, bookID)
-    this.sendBookmarksToServer(syncable, received.bookmarks)
-    this.bookmarkEventsOut.onNext(BookmarkEvent.BookmarkSyncFinished(syncable.account.id))
+    /*
+     * The results of the previous sync can only be reused if they cover every book that
+     * we currently have.
+     */
+
+    val books =
+      syncable.account.bookDatabase.books()
+    val previous =
+      this.syncStates[this.accountID]
+        ?.takeIf { state ->
+          state.annotationsURI == syncable.annotationsURI && state.books.containsAll(books)
+        }
+
+    val received = this.readBookmarksFromServer(syncable, books, previous)
+    val sent = this.sendBookmarksToServer(syncable, books, received.bookmarks)
+
+    if (received.eTag != null) {
+      this.syncStates[this.accountID] =
+        BSyncState(
+          annotationsURI = syncable.annotationsURI,
+          eTag = received.eTag,
+          remoteBookmarks = received.bookmarks + sent,
+          remoteLastRead = received.lastRead,
+          books = books
+        )
+    } else {
+      this.syncStates.remove(this.accountID)
+    }
 
-    return received.lastReadServer
+    this.bookmarkEventsOut.onNext(BookmarkEvent.BookmarkSyncFinished(syncable.account.id))
+    return this.bookID?.let(received.lastRead::get)
   }
 
   private fun sendBookmarksToServer(
     syncable: BSyncableAccount,
-    received: List<Bookmark>
-  ) {
+    books: Set<BookID>,
+    received: Set<BookmarkID>
+  ): Set<BookmarkID> {
     val localExtras =
-      this.determineExtraLocalBookmarks(received, syncable)
+      this.determineExtraLocalBookmarks(received, books, syncable)
 
     this.logger.debug(
       "[{}]: we have {} bookmarks the server did not have",
@@ -81,6 +121,7 @@ internal class BServiceOpSyncOneAccount(
       localExtras.size
     )
 
+    val sent = hashSetOf<BookmarkID>()
     for (bookmark in localExtras) {
       try {
         this.logger.debug(
@@ -110,10 +151,12 @@ internal class BServiceOpSyncOneAccount(
           credentials = syncable.credentials,
           bookmark = bookmarkAnnotation
         )
+        sent.add(bookmark.bookmarkId)
       } catch (e: Exception) {
         this.logger.error("[{}]: error sending bookmark: ", this.accountID.uuid, e)
       }
     }
+    return sent
   }
 
   /*
@@ -122,32 +165,34 @@ internal class BServiceOpSyncOneAccount(
    */
 
   private fun determineExtraLocalBookmarks(
-    received: List<Bookmark>,
+    received: Set<BookmarkID>,
+    books: Set<BookID>,
     syncable: BSyncableAccount
   ): Set<Bookmark> {
-    return syncable.account.bookDatabase.books()
+    return books
       .map { id -> syncable.account.bookDatabase.entry(id) }
       .mapNotNull { entry -> entry.findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java) }
       .flatMap { handle -> handle.format.bookmarks }
       .filter { bookmark -> bookmark.kind == BookmarkKind.BookmarkExplicit }
-      .filterNot { bookmark -> received.any { remote -> remote.bookmarkId == bookmark.bookmarkId } }
+      .filterNot { bookmark -> received.contains(bookmark.bookmarkId) }
       .toSet()
   }
 
   private fun readBookmarksFromServer(
     syncable: BSyncableAccount,
-    bookID: BookID?
-  ): Bookmarks {
+    books: Set<BookID>,
+    previous: BSyncState?
+  ): RemoteBookmarks {
     this.bookmarkEventsOut.onNext(BookmarkEvent.BookmarkSyncStarted(syncable.account.id))
 
-    val bookmarks: List<Bookmark> =
+    val annotations =
       try {
-        val annotations = this.httpCalls.bookmarksGet(
+        this.httpCalls.bookmarksGetIfChanged(
           account = syncable.account,
           annotationsURI = syncable.annotationsURI,
-          credentials = syncable.credentials
+          credentials = syncable.credentials,
+          eTag = previous?.eTag
         )
-        annotations.mapNotNull(this::parseBookmarkOrNull)
       } catch (e: Exception) {
         this.logger.error(
           "[{}]: could not receive bookmarks for account {}: ",
@@ -155,146 +200,176 @@ internal class BServiceOpSyncOneAccount(
           syncable.account.id,
           e
         )
-        listOf()
+        return RemoteBookmarks(eTag = null, bookmarks = setOf(), lastRead = mapOf())
       }
 
+    if (annotations == null) {
+      this.logger.debug("[{}]: bookmarks are unchanged on the server", this.profile.id.uuid)
+      return RemoteBookmarks(
+        eTag = previous!!.eTag,
+        bookmarks = previous.remoteBookmarks,
+        lastRead = previous.remoteLastRead
+      )
+    }
+
+    val bookmarks =
+      annotations.items.mapNotNull(this::parseBookmarkOrNull)
+
     this.logger.debug("[{}]: received {} bookmarks", this.profile.id.uuid, bookmarks.size)
 
-    var serverLastReadBookmark: Bookmark? = null
+    /*
+     * Explicit bookmarks are collected per book, so that each book's bookmarks are merged
+     * and saved once, rather than once per received bookmark.
+     */
+
+    val lastRead = hashMapOf<BookID, Bookmark>()
+    val explicitByBook = linkedMapOf<BookID, MutableList<Bookmark>>()
 
     for (bookmark in bookmarks) {
-      try {
+      this.logger.debug(
+        "[{}]: received bookmark {}",
+        this.profile.id.uuid,
+        bookmark.bookmarkId.value
+      )
+
+      if (!books.contains(bookmark.book)) {
         this.logger.debug(
-          "[{}]: received bookmark {}",
+          "[{}]: we no longer have book {}",
           this.profile.id.uuid,
-          bookmark.bookmarkId.value
+          bookmark.book.value()
         )
+        continue
+      }
 
-        if (!syncable.account.bookDatabase.books().contains(bookmark.book)) {
-          this.logger.debug(
-            "[{}]: we no longer have book {}",
-            this.profile.id.uuid,
-            bookmark.book.value()
-          )
-          continue
-        }
+      when (bookmark.kind) {
+        BookmarkKind.BookmarkLastReadLocation ->
+          this.storeLastRead(syncable, bookmark, lastRead)
+        BookmarkKind.BookmarkExplicit ->
+          explicitByBook.getOrPut(bookmark.book) { mutableListOf() }.add(bookmark)
+      }
+    }
+
+    for ((book, received) in explicitByBook) {
+      this.storeExplicit(syncable, book, received)
+    }
 
-        val entry = syncable.account.bookDatabase.entry(bookmark.book)
+    return RemoteBookmarks(
+      eTag = annotations.eTag,
+      bookmarks = bookmarks.mapTo(hashSetOf()) { bookmark -> bookmark.bookmarkId },
+      lastRead = lastRead
+    )
+  }
 
-        when (bookmark) {
-          is Bookmark.ReaderBookmark -> {
-            val handle = entry.findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)
-            if (handle != null) {
-              when (bookmark.kind) {
-                BookmarkKind.BookmarkLastReadLocation -> {
-                  // check if it's the last read bookmark for the given book ID
-                  if (bookID != null && bookmark.book == bookID) {
-                    serverLastReadBookmark = bookmark
-                  } else {
-                    handle.setLastReadLocation(bookmark)
-                  }
-                }
-                BookmarkKind.BookmarkExplicit -> {
-                  handle.setBookmarks(
-                    BServiceBookmarks.normalizeBookmarks(
-                      logger = this.logger,
-                      profileId = this.profile.id,
-                      handle = handle,
-                      bookmark = bookmark
-                    )
-                  )
-                }
-              }
-
-              this.bookmarkEventsOut.onNext(
-                BookmarkEvent.BookmarkSaved(
-                  syncable.account.id,
-                  bookmark
-                )
-              )
-            }
-          }
-          is Bookmark.PDFBookmark -> {
-            val handle = entry.findFormatHandle(
-              BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandlePDF::class.java
-            )
-            if (handle != null) {
-              when (bookmark.kind) {
-                BookmarkKind.BookmarkLastReadLocation -> {
-                  // check if it's the last read bookmark for the given book ID
-                  if (bookID != null && bookmark.book == bookID) {
-                    serverLastReadBookmark = bookmark
-                  } else {
-                    handle.setLastReadLocation(bookmark)
-                  }
-                }
-                BookmarkKind.BookmarkExplicit -> {
-                  handle.setBookmarks(
-                    BServiceBookmarks.normalizeBookmarks(
-                      logger = this.logger,
-                      profileId = this.profile.id,
-                      handle = handle,
-                      bookmark = bookmark
-                    )
-                  )
-                }
-              }
-
-              this.bookmarkEventsOut.onNext(
-                BookmarkEvent.BookmarkSaved(
-                  syncable.account.id,
-                  bookmark
-                )
-              )
-            }
+  private fun storeLastRead(
+    syncable: BSyncableAccount,
+    bookmark: Bookmark,
+    lastRead: MutableMap<BookID, Bookmark>
+  ) {
+    try {
+      val entry = syncable.account.bookDatabase.entry(bookmark.book)
+
+      when (bookmark) {
+        is Bookmark.ReaderBookmark -> {
+          val handle =
+            entry.findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java) ?: return
+
+          // The last read location for the given book ID is returned rather than stored
+          lastRead[bookmark.book] = bookmark
+          if (bookmark.book != this.bookID) {
+            handle.setLastReadLocation(bookmark)
           }
-          is Bookmark.AudiobookBookmark -> {
-            val handle =
-              entry.findFormatHandle(
-                BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleAudioBook::class.java
-              )
-            if (handle != null) {
-              when (bookmark.kind) {
-                BookmarkKind.BookmarkLastReadLocation -> {
-                  handle.setLastReadLocation(bookmark)
-                }
-                BookmarkKind.BookmarkExplicit -> {
-                  handle.setBookmarks(
-                    BServiceBookmarks.normalizeBookmarks(
-                      logger = this.logger,
-                      profileId = this.profile.id,
-                      handle = handle,
-                      bookmark = bookmark
-                    )
-                  )
-                }
-              }
-              this.bookmarkEventsOut.onNext(
-                BookmarkEvent.BookmarkSaved(
-                  syncable.account.id,
-                  bookmark
-                )
-              )
-            }
+        }
+        is Bookmark.PDFBookmark -> {
+          val handle =
+            entry.findFormatHandle(BookDatabaseEntryFormatHandlePDF::class.java) ?: return
+
+          // The last read location for the given book ID is returned rather than stored
+          lastRead[bookmark.book] = bookmark
+          if (bookmark.book != this.bookID) {
+            handle.setLastReadLocation(bookmark)
           }
-          else ->
-            throw IllegalStateException("Unsupported bookmark type: $bookmark")
         }
-      } catch (e: Exception) {
-        this.logger.error(
-          "[{}]: could not store bookmark for account {}: ",
-          this.profile.id.uuid,
-          syncable.account.id,
-          e
-        )
+        is Bookmark.AudiobookBookmark -> {
+          val handle =
+            entry.findFormatHandle(BookDatabaseEntryFormatHandleAudioBook::class.java) ?: return
+          handle.setLastReadLocation(bookmark)
+        }
+        else ->
+          throw IllegalStateException("Unsupported bookmark type: $bookmark")
       }
+
+      this.bookmarkEventsOut.onNext(BookmarkEvent.BookmarkSaved(syncable.account.id, bookmark))
+    } catch (e: Exception) {
+      this.logger.error(
+        "[{}]: could not store bookmark for account {}: ",
+        this.profile.id.uuid,
+        syncable.account.id,
+        e
+      )
     }
+  }
 
-    return Bookmarks(
-      lastReadLocal = null,
-      lastReadServer = serverLastReadBookmark,
-      bookmarks = bookmarks
-    )
+  private fun storeExplicit(
+    syncable: BSyncableAccount,
+    book: BookID,
+    received: List<Bookmark>
+  ) {
+    try {
+      val entry = syncable.account.bookDatabase.entry(book)
+      val changed = mutableListOf<Bookmark>()
+
+      val readerBookmarks = received.filterIsInstance<Bookmark.ReaderBookmark>()
+      val readerHandle = entry.findFormatHandle(BookDatabaseEntryFormatHandleEPUB::class.java)
+      if (readerHandle != null && readerBookmarks.isNotEmpty()) {
+        val (merged, updated) =
+          BServiceBookmarks.mergeBookmarks(readerHandle.format.bookmarks, readerBookmarks)
+        if (updated.isNotEmpty()) {
+          readerHandle.setBookmarks(merged)
+          changed.addAll(updated)
+        }
+      }
+
+      val pdfBookmarks = received.filterIsInstance<Bookmark.PDFBookmark>()
+      val pdfHandle = entry.findFormatHandle(BookDatabaseEntryFormatHandlePDF::class.java)
+      if (pdfHandle != null && pdfBookmarks.isNotEmpty()) {
+        val (merged, updated) =
+          BServiceBookmarks.mergeBookmarks(pdfHandle.format.bookmarks, pdfBookmarks)
+        if (updated.isNotEmpty()) {
+          pdfHandle.setBookmarks(merged)
+          changed.addAll(updated)
+        }
+      }
+
+      val audioBookmarks = received.filterIsInstance<Bookmark.AudiobookBookmark>()
+      val audioHandle = entry.findFormatHandle(BookDatabaseEntryFormatHandleAudioBook::class.java)
+      if (audioHandle != null && audioBookmarks.isNotEmpty()) {
+        val (merged, updated) =
+          BServiceBookmarks.mergeBookmarks(audioHandle.format.bookmarks, audioBookmarks)
+        if (updated.isNotEmpty()) {
+          audioHandle.setBookmarks(merged)
+          changed.addAll(updated)
+        }
+      }
+
+      this.logger.debug(
+        "[{}]: {} of {} received bookmarks for book {} were new",
+        this.profile.id.uuid,
+        changed.size,
+        received.size,
+        book.value()
+      )
+
+      for (bookmark in changed) {
+        this.bookmarkEventsOut.onNext(BookmarkEvent.BookmarkSaved(syncable.account.id, bookmark))
+      }
+    } catch (e: Exception) {
+      this.logger.error(
+        "[{}]: could not store bookmarks for account {}: ",
+        this.profile.id.uuid,
+        syncable.account.id,
+        e
+      )
+    }
   }
 
   private fun parseBookmarkOrNull(
@@ -0,0 +1,47 @@
+package org.nypl.simplified.bookmarks.internal
+
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.api.bookmark.Bookmark
+import org.nypl.simplified.books.api.bookmark.BookmarkID
+import java.net.URI
+
+/**
+ * What was known about an account's bookmarks on the server at the end of the most recent
+ * sync. This allows the next sync to ask the server for the bookmarks only if they have
+ * changed, and to send only the local bookmarks that the server doesn't have.
+ */
+
+internal data class BSyncState(
+
+  /**
+   * The annotations URI that was synced.
+   */
+
+  val annotationsURI: URI,
+
+  /**
+   * The entity tag of the list of bookmarks most recently received from the server.
+   */
+
+  val eTag: String,
+
+  /**
+   * The IDs of the bookmarks that the server is known to have.
+   */
+
+  val remoteBookmarks: Set<BookmarkID>,
+
+  /**
+   * The last-read locations most recently received from the server.
+   */
+
+  val remoteLastRead: Map<BookID, Bookmark>,
+
+  /**
+   * The books that were in the book database when the bookmarks were received. If a book
+   * has been added since, the bookmarks have to be received again so that the new book
+   * gets its bookmarks.
+   */
+
+  val books: Set<BookID>
+)
@@ -235,11 +235,16 @@ abstract class AbstractAudioBookManifestStrategy(
     data: ByteArray
   ): ParseResult<PlayerManifest> {
     this.logger.debug("parseManifest")
-    return this.request.manifestParsers.parse(
-      uri = source,
-      streams = data,
-      extensions = this.request.extensions
-    )
+    val parse = {
+      this.request.manifestParsers.parse(
+        uri = source,
+        streams = data,
+        extensions = this.request.extensions
+      )
+    }
+
+    val cache = this.request.manifestCache ?: return parse.invoke()
+    return cache.parse(source, data, parse)
   }
 
   /**
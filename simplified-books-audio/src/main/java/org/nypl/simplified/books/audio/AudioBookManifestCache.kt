@@ -0,0 +1,74 @@
+package org.nypl.simplified.books.audio
+
+import com.google.common.hash.Hashing
+import org.librarysimplified.audiobook.manifest.api.PlayerManifest
+import org.librarysimplified.audiobook.parser.api.ParseResult
+import java.net.URI
+
+/**
+ * A cache of parsed audio book manifests.
+ *
+ * Manifests for long audio books can contain thousands of reading order items, and are
+ * expensive to parse. Opening an audio book or refreshing its manifest usually yields exactly
+ * the same manifest as last time, so successfully parsed manifests are kept in a small LRU
+ * cache keyed by the source URI and a hash of the manifest data. Hashing the data is far
+ * cheaper than parsing it.
+ */
+
+class AudioBookManifestCache(
+  private val maximumEntries: Int = 4
+) {
+
+  private val entries =
+    object : LinkedHashMap<String, ParseResult.Success<PlayerManifest>>(
+      this.maximumEntries, 0.75f, true
+    ) {
+      override fun removeEldestEntry(
+        eldest: MutableMap.MutableEntry<String, ParseResult.Success<PlayerManifest>>
+      ): Boolean {
+        return this.size > this@AudioBookManifestCache.maximumEntries
+      }
+    }
+
+  /**
+   * Return the cached result of parsing the given manifest data, or parse it with `parse`
+   * if it isn't cached. Only successful results are cached.
+   */
+
+  fun parse(
+    source: URI,
+    data: ByteArray,
+    parse: () -> ParseResult<PlayerManifest>
+  ): ParseResult<PlayerManifest> {
+    val key = this.keyOf(source, data)
+    val cached = synchronized(this.entries) { this.entries[key] }
+    if (cached != null) {
+      return cached
+    }
+
+    val result = parse.invoke()
+    if (result is ParseResult.Success) {
+      synchronized(this.entries) {
+        this.entries[key] = result
+      }
+    }
+    return result
+  }
+
+  /**
+   * Discard all cached manifests.
+   */
+
+  fun clear() {
+    synchronized(this.entries) {
+      this.entries.clear()
+    }
+  }
+
+  private fun keyOf(
+    source: URI,
+    data: ByteArray
+  ): String {
+    return "${Hashing.sha256().hashBytes(data)} $source"
+  }
+}
@@ -109,6 +109,12 @@ data class AudioBookManifestRequest(
   val manifestParsers: ManifestParsersType =
     ManifestParsers,
 
+  /**
+   * A cache of parsed manifests, if parsed manifests should be reused.
+   */
+
+  val manifestCache: AudioBookManifestCache? = null,
+
   /**
    * The directory in which to store cache files.
    */
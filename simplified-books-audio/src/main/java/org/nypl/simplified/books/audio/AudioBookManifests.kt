@@ -5,6 +5,14 @@ package org.nypl.simplified.books.audio
  */
 
 object AudioBookManifests : AudioBookManifestStrategiesType {
+
+  /**
+   * The cache of parsed manifests shared by the application.
+   */
+
+  val manifestCache: AudioBookManifestCache =
+    AudioBookManifestCache()
+
   override fun createStrategy(
     request: AudioBookManifestRequest
   ): AudioBookManifestStrategyType {
@@ -10,6 +10,7 @@ dependencies {
     implementation(project(":simplified-books-formats-api"))
     implementation(project(":simplified-books-registry-api"))
     implementation(project(":simplified-content-api"))
+    implementation(project(":simplified-metrics-api"))
     implementation(project(":simplified-opds-core"))
     implementation(project(":simplified-presentableerror-api"))
     implementation(project(":simplified-profiles-api"))
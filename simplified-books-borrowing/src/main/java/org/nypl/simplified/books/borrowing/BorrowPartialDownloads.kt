@@ -0,0 +1,80 @@
+package org.nypl.simplified.books.borrowing
+
+import org.nypl.simplified.books.api.BookID
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.util.concurrent.TimeUnit
+
+/**
+ * The content of interrupted book downloads, kept in the cache directory so that the
+ * downloads can be resumed later.
+ */
+
+object BorrowPartialDownloads {
+
+  private val logger =
+    LoggerFactory.getLogger(BorrowPartialDownloads::class.java)
+
+  /**
+   * Partial content older than this is never resumed.
+   */
+
+  val MAXIMUM_AGE_MILLISECONDS =
+    TimeUnit.DAYS.toMillis(7L)
+
+  /**
+   * @return The directory that holds partial downloads
+   */
+
+  fun directory(cacheDirectory: File): File =
+    File(cacheDirectory, "downloads")
+
+  /**
+   * @return The name prefix shared by all of the files of partial downloads of the given book
+   */
+
+  fun prefixOf(bookID: BookID): String =
+    "${bookID.value()}-"
+
+  /**
+   * Delete the partial downloads of the given book. This is used once the book has been
+   * returned or deleted, as its downloads will never be resumed.
+   */
+
+  fun discardForBook(
+    cacheDirectory: File,
+    bookID: BookID
+  ) {
+    val prefix = this.prefixOf(bookID)
+    this.delete(cacheDirectory) { file -> file.name.startsWith(prefix) }
+  }
+
+  /**
+   * Delete the partial downloads that are too old to be resumed, such as those of
+   * borrows that were abandoned.
+   */
+
+  fun pruneStale(
+    cacheDirectory: File,
+    timeNow: Long = System.currentTimeMillis()
+  ) {
+    this.delete(cacheDirectory) { file ->
+      timeNow - file.lastModified() >= MAXIMUM_AGE_MILLISECONDS
+    }
+  }
+
+  private fun delete(
+    cacheDirectory: File,
+    filter: (File) -> Boolean
+  ) {
+    val files = this.directory(cacheDirectory).listFiles() ?: return
+    for (file in files) {
+      if (file.isFile && filter(file)) {
+        this.logger.debug("deleting partial download {}", file)
+        if (!file.delete()) {
+          this.logger.warn("could not delete partial download {}", file)
+        }
+      }
+    }
+  }
+}
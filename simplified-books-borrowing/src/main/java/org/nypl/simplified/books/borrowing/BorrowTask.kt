@@ -28,6 +28,7 @@ import org.nypl.simplified.books.borrowing.subtasks.BorrowSubtaskException.Borro
 import org.nypl.simplified.books.borrowing.subtasks.BorrowSubtaskFactoryType
 import org.nypl.simplified.books.bundled.api.BundledContentResolverType
 import org.nypl.simplified.content.api.ContentResolverType
+import org.nypl.simplified.metrics.api.PerformanceMetrics
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSAcquisitionPath
 import org.nypl.simplified.opds.core.OPDSAcquisitionPathElement
@@ -238,12 +239,23 @@ class BorrowTask private constructor(
   ) {
     val name = subtaskFactory.name
     val step = this.taskRecorder.beginNewStep("Executing subtask '$name'...")
+
+    /*
+     * Subtasks that fail (including those that time out) or are cancelled are timed
+     * separately, so that slow failures don't hide in the timings of successful runs.
+     */
+
+    val timeStart = System.nanoTime()
+    var timerSuffix = ".failed"
     try {
       subtaskFactory.createSubtask().execute(context)
+      timerSuffix = ""
       step.resolution = TaskStepSucceeded("Executed subtask '$name' successfully.")
     } catch (e: BorrowSubtaskHaltedEarly) {
+      timerSuffix = ""
       throw e
     } catch (e: BorrowSubtaskCancelled) {
+      timerSuffix = ".cancelled"
       throw e
     } catch (e: BorrowReachedLoanLimit) {
       step.resolution = TaskStepFailed(
@@ -267,6 +279,8 @@ class BorrowTask private constructor(
       )
       this.publishBookFailure(book)
       throw BorrowFailedHandled(e)
+    } finally {
+      PerformanceMetrics.timer("books.borrow.$name$timerSuffix").stop(timeStart)
     }
   }
 
@@ -8,6 +8,7 @@ import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.accounts.api.AccountReadableType
 import org.nypl.simplified.books.audio.AudioBookCredentials
 import org.nypl.simplified.books.audio.AudioBookManifestRequest
+import org.nypl.simplified.books.audio.AudioBookManifests
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleAudioBook
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandlePDF
@@ -133,6 +134,7 @@ class BorrowAudioBook private constructor() : BorrowSubtaskType {
           userAgent = PlayerUserAgent(context.httpClient.userAgent()),
           credentials = audioBookCredentials,
           services = context.services,
+          manifestCache = AudioBookManifests.manifestCache,
           cacheDirectory = context.cacheDirectory()
         )
       )
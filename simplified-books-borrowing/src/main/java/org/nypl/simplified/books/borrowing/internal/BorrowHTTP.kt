@@ -5,6 +5,7 @@ import one.irradia.mime.api.MIMECompatibility
 import one.irradia.mime.api.MIMEType
 import org.librarysimplified.http.api.LSHTTPRequestBuilderType.AllowRedirects.ALLOW_UNSAFE_REDIRECTS
 import org.librarysimplified.http.api.LSHTTPRequestProperties
+import org.librarysimplified.http.api.LSHTTPResponseStatus
 import org.librarysimplified.http.downloads.LSHTTPDownloadRequest
 import org.librarysimplified.http.downloads.LSHTTPDownloadState
 import org.librarysimplified.http.downloads.LSHTTPDownloadState.DownloadReceiving
@@ -14,7 +15,6 @@ import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadRe
 import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadResult.DownloadFailed.DownloadFailedExceptionally
 import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadResult.DownloadFailed.DownloadFailedServer
 import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadResult.DownloadFailed.DownloadFailedUnacceptableMIME
-import org.librarysimplified.http.downloads.LSHTTPDownloads
 import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP
 import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP.addCredentialsToProperties
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle
@@ -130,7 +130,13 @@ object BorrowHTTP {
     context: BorrowContextType,
     result: DownloadFailedServer
   ): BorrowSubtaskFailed {
-    val status = result.responseStatus
+    return this.onHTTPFailedServer(context, result.responseStatus)
+  }
+
+  private fun onHTTPFailedServer(
+    context: BorrowContextType,
+    status: LSHTTPResponseStatus.Responded
+  ): BorrowSubtaskFailed {
     context.taskRecorder.addAttributes(status.properties.problemReport?.toMap() ?: emptyMap())
     context.taskRecorder.currentStepFailed(
       message = "HTTP request failed: ${status.properties.originalStatus} ${status.properties.message}",
@@ -147,11 +153,18 @@ object BorrowHTTP {
   fun onDownloadFailedExceptionally(
     context: BorrowContextType,
     result: DownloadFailedExceptionally
+  ): BorrowSubtaskFailed {
+    return this.onFailedExceptionally(context, result.exception)
+  }
+
+  private fun onFailedExceptionally(
+    context: BorrowContextType,
+    exception: Exception
   ): BorrowSubtaskFailed {
     context.taskRecorder.currentStepFailed(
-      message = result.exception.message ?: "Exception raised during connection attempt.",
+      message = exception.message ?: "Exception raised during connection attempt.",
       errorCode = BorrowErrorCodes.httpConnectionFailed,
-      exception = result.exception
+      exception = exception
     )
     return BorrowSubtaskFailed()
   }
@@ -211,12 +224,16 @@ object BorrowHTTP {
   }
 
   /**
-   * Download the file indicated by the given borrowing context.
+   * Download the file indicated by the given borrowing context. If an earlier attempt to
+   * download the same file was interrupted, the download resumes from where that attempt
+   * stopped.
    *
    * @param context The borrowing context.
    * @param onDownloadFailedUnacceptableMIME A handler to be called if the downloaded file has a
    * content type that is not acceptable according to the borrowing context. If not provided, a
    * BorrowSubtaskFailed exception is thrown.
+   *
+   * @see BorrowResumableDownload
    */
 
   fun download(
@@ -231,31 +248,29 @@ object BorrowHTTP {
       context.taskRecorder.beginNewStep("Downloading $currentURI...")
       context.taskRecorder.addAttribute("URI", currentURI.toString())
 
-      val temporaryFile = context.temporaryFile()
-
-      try {
-        val downloadRequest =
-          createDownloadRequest(
-            context = context,
-            target = currentURI,
-            outputFile = temporaryFile,
-            requestModifier = requestModifier
-          )
-
-        when (val result = LSHTTPDownloads.download(downloadRequest)) {
-          DownloadCancelled ->
-            throw BorrowSubtaskException.BorrowSubtaskCancelled()
-          is DownloadFailedServer ->
-            throw onDownloadFailedServer(context, result)
-          is DownloadFailedUnacceptableMIME ->
-            onDownloadFailedUnacceptableMIME(context, result)
-          is DownloadFailedExceptionally ->
-            throw onDownloadFailedExceptionally(context, result)
-          is DownloadCompletedSuccessfully ->
-            this.saveDownloadedContent(context, temporaryFile)
-        }
-      } finally {
-        temporaryFile.delete()
+      val download =
+        BorrowResumableDownload.create(
+          context = context,
+          target = currentURI,
+          expectedTypes = hashSetOf(context.currentAcquisitionPathElement.mimeType),
+          requestModifier = requestModifier
+        )
+
+      when (val result = download.execute()) {
+        BorrowResumableDownload.Result.Cancelled ->
+          throw BorrowSubtaskException.BorrowSubtaskCancelled()
+        is BorrowResumableDownload.Result.FailedServer ->
+          throw onHTTPFailedServer(context, result.status)
+        is BorrowResumableDownload.Result.FailedUnacceptableMIME ->
+          onDownloadFailedUnacceptableMIME(context, result.result)
+        is BorrowResumableDownload.Result.FailedExceptionally ->
+          throw onFailedExceptionally(context, result.exception)
+        is BorrowResumableDownload.Result.Completed ->
+          try {
+            this.saveDownloadedContent(context, result.file)
+          } finally {
+            download.discard()
+          }
       }
     } catch (e: BorrowSubtaskFailed) {
       context.bookDownloadFailed()
@@ -276,11 +291,11 @@ object BorrowHTTP {
 
     return when (formatHandle) {
       is BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB -> {
-        formatHandle.copyInBook(temporaryFile)
+        formatHandle.moveInBook(temporaryFile)
         context.bookDownloadSucceeded()
       }
       is BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandlePDF -> {
-        formatHandle.copyInBook(temporaryFile)
+        formatHandle.moveInBook(temporaryFile)
         context.bookDownloadSucceeded()
       }
       is BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleAudioBook,
@@ -407,7 +407,7 @@ class BorrowLCP private constructor() : BorrowSubtaskType {
 
     when (formatHandle) {
       is BookDatabaseEntryFormatHandleEPUB -> {
-        formatHandle.copyInBook(bookFile)
+        formatHandle.moveInBook(bookFile)
       }
       is BookDatabaseEntryFormatHandleAudioBook -> {
         //Extract the manifest from book zip file
@@ -421,11 +421,11 @@ class BorrowLCP private constructor() : BorrowSubtaskType {
             manifestURI = audioBookManifest.sourceURI
           )
         }
-        //Move the book into memory, unsure why we move and not copy
+        //Move the book into the database; the downloaded file is discarded afterwards anyway
         formatHandle.moveInBook(bookFile)
       }
       is BookDatabaseEntryFormatHandlePDF ->
-        formatHandle.copyInBook(bookFile)
+        formatHandle.moveInBook(bookFile)
     }
 
     context.taskRecorder.currentStepSucceeded("Saved book.")
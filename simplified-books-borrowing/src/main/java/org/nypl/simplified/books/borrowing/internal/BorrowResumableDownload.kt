@@ -0,0 +1,504 @@
+package org.nypl.simplified.books.borrowing.internal
+
+import one.irradia.mime.api.MIMEType
+import org.librarysimplified.http.api.LSHTTPRequestBuilderType.AllowRedirects.ALLOW_UNSAFE_REDIRECTS
+import org.librarysimplified.http.api.LSHTTPRequestProperties
+import org.librarysimplified.http.api.LSHTTPRequestType
+import org.librarysimplified.http.api.LSHTTPResponseStatus
+import org.librarysimplified.http.downloads.LSHTTPDownloadState.LSHTTPDownloadResult.DownloadFailed.DownloadFailedUnacceptableMIME
+import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP
+import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP.addCredentialsToProperties
+import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP.getAccessToken
+import org.nypl.simplified.books.borrowing.BorrowContextType
+import org.nypl.simplified.books.borrowing.BorrowPartialDownloads
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.net.URI
+import java.security.MessageDigest
+import java.util.Properties
+
+/**
+ * A download that can be resumed after it has been interrupted.
+ *
+ * Content is downloaded into a partial file in the cache directory, beside a small state
+ * file that holds the validators (`ETag` and `Last-Modified`) and the expected size of the
+ * content. If the download is interrupted by cancellation, a network failure, or the death
+ * of the process, the next download of the same URI for the same book asks the server for
+ * the rest of the content using `Range` and `If-Range`. A server that doesn't support
+ * ranges, or whose content has changed, responds with the whole content, and the download
+ * starts again from the beginning. Partial content is deleted when its book is returned
+ * or deleted, and when it's too old to be resumed.
+ *
+ * If the account provider allows it, large content from servers that accept ranges is
+ * downloaded over several connections at once by a [BorrowSegmentedDownload]. Content
+ * that was partially downloaded that way is not resumed.
+ */
+
+internal class BorrowResumableDownload private constructor(
+  private val context: BorrowContextType,
+  private val target: URI,
+  private val expectedTypes: Set<MIMEType>,
+  private val requestModifier: ((LSHTTPRequestProperties) -> LSHTTPRequestProperties)?,
+  private val file: File,
+  private val stateFile: File
+) {
+
+  /**
+   * The result of a download.
+   */
+
+  sealed class Result {
+
+    /**
+     * The content was downloaded completely into [file].
+     */
+
+    data class Completed(
+      val file: File
+    ) : Result()
+
+    /**
+     * The download was cancelled. The content received so far is kept.
+     */
+
+    object Cancelled : Result()
+
+    /**
+     * The server returned an error.
+     */
+
+    data class FailedServer(
+      val status: LSHTTPResponseStatus.Responded.Error
+    ) : Result()
+
+    /**
+     * The server returned content of an unacceptable type.
+     */
+
+    data class FailedUnacceptableMIME(
+      val result: DownloadFailedUnacceptableMIME
+    ) : Result()
+
+    /**
+     * The connection failed. The content received so far is kept.
+     */
+
+    data class FailedExceptionally(
+      val exception: Exception
+    ) : Result()
+  }
+
+  private data class State(
+    val uri: String,
+    val eTag: String?,
+    val lastModified: String?,
+    val expectedSize: Long?,
+    val segmented: Boolean = false
+  ) {
+
+    /**
+     * The validator sent in `If-Range`. Weak entity tags can't be used for range requests.
+     */
+
+    val validator: String? =
+      this.eTag?.takeUnless { tag -> tag.startsWith("W/") } ?: this.lastModified
+  }
+
+  /**
+   * Download the content, resuming from any content that was received earlier.
+   */
+
+  fun execute(): Result {
+    val offset = this.resumableOffset()
+    return when (val result = this.request(offset)) {
+      null -> {
+        this.context.logDebug("server could not satisfy range from {}; restarting", offset)
+        this.discard()
+        this.request(0L)!!
+      }
+      else -> result
+    }
+  }
+
+  /**
+   * Delete the partial content and its state.
+   */
+
+  fun discard() {
+    this.file.delete()
+    this.stateFile.delete()
+  }
+
+  private fun resumableOffset(): Long {
+    val state = this.readState()
+    val age = System.currentTimeMillis() - this.stateFile.lastModified()
+    val length = this.file.length()
+    val expected = state?.expectedSize
+
+    return if (
+      state != null &&
+      state.uri == this.target.toString() &&
+      state.validator != null &&
+      !state.segmented &&
+      age < BorrowPartialDownloads.MAXIMUM_AGE_MILLISECONDS &&
+      length > 0L &&
+      (expected == null || length < expected)
+    ) {
+      this.context.logDebug("resuming download of {} from {}", this.target, length)
+      length
+    } else {
+      this.discard()
+      0L
+    }
+  }
+
+  /**
+   * Request the content from the given offset.
+   *
+   * @return The result, or `null` if the server could not satisfy the requested range
+   */
+
+  private fun request(offset: Long): Result? {
+    val request =
+      if (offset > 0L) {
+        this.newRequest("bytes=$offset-", this.readState()!!.validator!!)
+      } else {
+        this.newRequest(null, null)
+      }
+
+    return try {
+      request.execute().use { response ->
+        when (val status = response.status) {
+          is LSHTTPResponseStatus.Responded.OK ->
+            this.onResponseOK(status, offset)
+          is LSHTTPResponseStatus.Responded.Error ->
+            if (offset > 0L && status.properties.originalStatus == HTTP_RANGE_NOT_SATISFIABLE) {
+              null
+            } else {
+              Result.FailedServer(status)
+            }
+          is LSHTTPResponseStatus.Failed ->
+            Result.FailedExceptionally(status.exception)
+        }
+      }
+    } catch (e: IOException) {
+      Result.FailedExceptionally(e)
+    }
+  }
+
+  private fun newRequest(
+    range: String?,
+    validator: String?
+  ): LSHTTPRequestType {
+    val credentials = this.context.account.loginState.credentials
+    val auth = AccountAuthenticatedHTTP.createAuthorizationIfPresent(credentials)
+
+    val builder =
+      this.context.httpClient.newRequest(this.target)
+        .setAuthorization(auth)
+        .addCredentialsToProperties(credentials)
+        .allowRedirects(ALLOW_UNSAFE_REDIRECTS)
+
+    if (range != null) {
+      builder.addHeader("Range", range)
+    }
+    if (validator != null) {
+      builder.addHeader("If-Range", validator)
+    }
+    if (this.requestModifier != null) {
+      builder.setRequestModifier(this.requestModifier)
+    }
+    return builder.build()
+  }
+
+  /**
+   * @return The result, or `null` if the server returned part of the content that doesn't
+   * start where the content received so far ends
+   */
+
+  private fun onResponseOK(
+    status: LSHTTPResponseStatus.Responded.OK,
+    offset: Long
+  ): Result? {
+    this.context.account.updateBasicTokenCredentials(status.getAccessToken())
+
+    val properties = status.properties
+    if (!BorrowHTTP.isMimeTypeAcceptable(this.context, this.expectedTypes, properties.contentType)) {
+      this.discard()
+      return Result.FailedUnacceptableMIME(DownloadFailedUnacceptableMIME(responseStatus = status))
+    }
+
+    val contentLength = properties.contentLength
+    val partial =
+      offset > 0L && properties.originalStatus == HTTP_PARTIAL_CONTENT
+    val rangeStart =
+      contentRangeStartOf(properties.header("content-range"))
+    if (partial && rangeStart != offset) {
+      this.context.logWarn("server returned a range starting at {} instead of {}", rangeStart, offset)
+      return null
+    }
+
+    val resumed = partial
+
+    val start: Long
+    val expectedSize: Long?
+    if (resumed) {
+      start = offset
+      expectedSize = contentRangeSizeOf(properties.header("content-range"))
+        ?: contentLength?.let { length -> offset + length }
+    } else {
+      if (offset > 0L) {
+        this.context.logDebug("server returned the whole content; restarting")
+      }
+      start = 0L
+      expectedSize = contentLength
+    }
+
+    val state =
+      State(
+        uri = this.target.toString(),
+        eTag = properties.header("etag"),
+        lastModified = properties.header("last-modified"),
+        expectedSize = expectedSize
+      )
+
+    val body = status.bodyStream ?: ByteArrayInputStream(ByteArray(0))
+    val validator = state.validator
+    if (
+      start == 0L &&
+      validator != null &&
+      expectedSize != null &&
+      expectedSize >= SEGMENTED_MINIMUM_SIZE &&
+      properties.header("accept-ranges").equals("bytes", ignoreCase = true)
+    ) {
+      val connections =
+        this.context.account.provider.downloadConnections
+          .coerceIn(1, BorrowSegmentedDownload.CONNECTIONS_MAXIMUM)
+      if (connections > 1) {
+        this.writeState(state.copy(segmented = true))
+        return this.transferSegmented(body, expectedSize, connections, validator)
+      }
+    }
+
+    this.writeState(state)
+    return this.transfer(body, start, expectedSize)
+  }
+
+  private fun transferSegmented(
+    body: InputStream,
+    size: Long,
+    connections: Int,
+    validator: String
+  ): Result {
+    this.context.logDebug("downloading {} bytes over {} connections", size, connections)
+
+    var receivedAtLastEvent = 0L
+    var timeAtLastEvent = this.context.clock().millis
+    var bytesPerSecond = 0L
+    this.publishProgress(0L, size, bytesPerSecond)
+
+    val download =
+      BorrowSegmentedDownload(
+        file = this.file,
+        size = size,
+        connections = connections,
+        isCancelled = { this.context.isCancelled },
+        openRange = { first, last -> this.newRequest("bytes=$first-$last", validator).execute() },
+        onProgress = { received ->
+          val now = this.context.clock().millis
+          val elapsed = now - timeAtLastEvent
+          if (elapsed >= PROGRESS_INTERVAL_MILLISECONDS) {
+            bytesPerSecond = (received - receivedAtLastEvent) * 1000L / elapsed
+            receivedAtLastEvent = received
+            timeAtLastEvent = now
+            this.publishProgress(received, size, bytesPerSecond)
+          }
+        },
+        onFallback = { exception ->
+          this.context.logWarn("a download segment failed and will be retried: {}", exception.message)
+        }
+      )
+
+    if (!download.execute(body)) {
+      return Result.Cancelled
+    }
+
+    this.publishProgress(size, size, bytesPerSecond)
+    this.stateFile.delete()
+    return Result.Completed(this.file)
+  }
+
+  private fun transfer(
+    body: InputStream,
+    start: Long,
+    expectedSize: Long?
+  ): Result {
+    val buffer = ByteArray(BUFFER_SIZE)
+    var received = start
+    var receivedAtLastEvent = start
+    var timeAtLastEvent = this.context.clock().millis
+    var bytesPerSecond = 0L
+
+    this.publishProgress(received, expectedSize, bytesPerSecond)
+
+    FileOutputStream(this.file, start > 0L).use { output ->
+      while (true) {
+        if (this.context.isCancelled) {
+          return Result.Cancelled
+        }
+
+        val count = body.read(buffer)
+        if (count == -1) {
+          break
+        }
+        output.write(buffer, 0, count)
+        received += count
+
+        val now = this.context.clock().millis
+        val elapsed = now - timeAtLastEvent
+        if (elapsed >= PROGRESS_INTERVAL_MILLISECONDS) {
+          bytesPerSecond = (received - receivedAtLastEvent) * 1000L / elapsed
+          receivedAtLastEvent = received
+          timeAtLastEvent = now
+          this.publishProgress(received, expectedSize, bytesPerSecond)
+        }
+      }
+    }
+
+    this.publishProgress(received, expectedSize, bytesPerSecond)
+    if (expectedSize != null && received != expectedSize) {
+      return Result.FailedExceptionally(
+        IOException("Received $received bytes but expected $expectedSize")
+      )
+    }
+
+    this.stateFile.delete()
+    return Result.Completed(this.file)
+  }
+
+  private fun publishProgress(
+    received: Long,
+    expectedSize: Long?,
+    bytesPerSecond: Long
+  ) {
+    this.context.bookDownloadIsRunning(
+      message = BorrowHTTP.downloadingMessage(
+        expectedSize = expectedSize,
+        currentSize = received,
+        perSecond = bytesPerSecond
+      ),
+      receivedSize = received,
+      expectedSize = expectedSize,
+      bytesPerSecond = bytesPerSecond
+    )
+  }
+
+  private fun readState(): State? {
+    if (!this.stateFile.isFile) {
+      return null
+    }
+    return try {
+      val properties = Properties()
+      this.stateFile.inputStream().use(properties::load)
+      State(
+        uri = properties.getProperty("uri") ?: return null,
+        eTag = properties.getProperty("etag"),
+        lastModified = properties.getProperty("lastModified"),
+        expectedSize = properties.getProperty("expectedSize")?.toLongOrNull(),
+        segmented = properties.getProperty("segmented").toBoolean()
+      )
+    } catch (e: Exception) {
+      this.context.logWarn("could not read download state {}: {}", this.stateFile, e.message)
+      null
+    }
+  }
+
+  private fun writeState(state: State) {
+    val properties = Properties()
+    properties.setProperty("uri", state.uri)
+    state.eTag?.let { properties.setProperty("etag", it) }
+    state.lastModified?.let { properties.setProperty("lastModified", it) }
+    state.expectedSize?.let { properties.setProperty("expectedSize", it.toString()) }
+    properties.setProperty("segmented", state.segmented.toString())
+
+    val stateFileTmp = File(this.stateFile.parentFile, this.stateFile.name + ".tmp")
+    FileOutputStream(stateFileTmp).use { output ->
+      properties.store(output, null)
+      output.fd.sync()
+    }
+    if (!stateFileTmp.renameTo(this.stateFile)) {
+      throw IOException("Could not rename $stateFileTmp to ${this.stateFile}")
+    }
+  }
+
+  companion object {
+
+    private const val BUFFER_SIZE = 65536
+    private const val HTTP_PARTIAL_CONTENT = 206
+    private const val HTTP_RANGE_NOT_SATISFIABLE = 416
+    private const val PROGRESS_INTERVAL_MILLISECONDS = 1000L
+
+    /**
+     * Content smaller than this is always downloaded over a single connection.
+     */
+
+    private const val SEGMENTED_MINIMUM_SIZE = 16L * 1024L * 1024L
+
+    /**
+     * Create a download of the given URI for the current book. Content that was received
+     * by an earlier download of the same URI for the same book will be resumed.
+     */
+
+    fun create(
+      context: BorrowContextType,
+      target: URI,
+      expectedTypes: Set<MIMEType>,
+      requestModifier: ((LSHTTPRequestProperties) -> LSHTTPRequestProperties)?
+    ): BorrowResumableDownload {
+      val directory = BorrowPartialDownloads.directory(context.cacheDirectory())
+      directory.mkdirs()
+
+      val name = BorrowPartialDownloads.prefixOf(context.bookCurrent.id) + hashOf(target)
+      return BorrowResumableDownload(
+        context = context,
+        target = target,
+        expectedTypes = expectedTypes,
+        requestModifier = requestModifier,
+        file = File(directory, "$name.part"),
+        stateFile = File(directory, "$name.state")
+      )
+    }
+
+    private fun hashOf(target: URI): String {
+      val digest = MessageDigest.getInstance("SHA-256")
+      val bytes = digest.digest(target.toString().toByteArray(Charsets.UTF_8))
+      return bytes.take(8).joinToString("") { byte -> String.format("%02x", byte) }
+    }
+
+    /**
+     * Parse the start of the range in a `Content-Range: bytes start-end/size` header.
+     */
+
+    private fun contentRangeStartOf(header: String?): Long? {
+      return header
+        ?.removePrefix("bytes ")
+        ?.substringBefore('-')
+        ?.trim()
+        ?.toLongOrNull()
+    }
+
+    /**
+     * Parse the complete size in a `Content-Range: bytes start-end/size` header.
+     */
+
+    private fun contentRangeSizeOf(header: String?): Long? {
+      return header
+        ?.substringAfter('/', "")
+        ?.trim()
+        ?.toLongOrNull()
+    }
+  }
+}
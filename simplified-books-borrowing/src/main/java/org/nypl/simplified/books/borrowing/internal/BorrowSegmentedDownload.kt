@@ -0,0 +1,285 @@
+package org.nypl.simplified.books.borrowing.internal
+
+import org.librarysimplified.http.api.LSHTTPResponseStatus
+import org.librarysimplified.http.api.LSHTTPResponseType
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A download of content of a known size over several connections at once.
+ *
+ * The content is divided into one segment per connection, and written into a file that is
+ * preallocated to the full size. The response that revealed the size of the content is
+ * used for the first segment, and each of the other segments is requested as a byte range.
+ * If a range request is refused, or fails before the first segment is complete, the first
+ * response simply continues past the end of its segment to the end of the content. A
+ * segment that fails after that point is retried, from where it stopped, once the other
+ * segments have completed. At most [CONNECTIONS_MAXIMUM] connections are used, however
+ * many are requested.
+ */
+
+internal class BorrowSegmentedDownload(
+  private val file: File,
+  private val size: Long,
+  private val connections: Int,
+  private val isCancelled: () -> Boolean,
+  private val openRange: (Long, Long) -> LSHTTPResponseType,
+  private val onProgress: (Long) -> Unit,
+  private val onFallback: (Exception) -> Unit
+) {
+
+  private class Segment(
+    val start: Long,
+    val end: Long
+  ) {
+    val written = AtomicLong(0L)
+
+    val position: Long
+      get() = this.start + this.written.get()
+
+    val isComplete: Boolean
+      get() = this.position >= this.end
+  }
+
+  private val cancelled = AtomicBoolean(false)
+  private val failure = AtomicBoolean(false)
+
+  private val segments: List<Segment> =
+    run {
+      val count = this.connections.coerceIn(1, CONNECTIONS_MAXIMUM)
+      val length = (this.size + count - 1) / count
+      (0 until count).map { index ->
+        Segment(
+          start = index * length,
+          end = minOf(this.size, (index + 1) * length)
+        )
+      }.filter { segment -> segment.start < segment.end }
+    }
+
+  /**
+   * Download the content, using the given stream of the complete content for the first
+   * segment.
+   *
+   * @return `true` if the download completed, or `false` if it was cancelled
+   * @throws IOException If the content could not be downloaded
+   */
+
+  @Throws(IOException::class)
+  fun execute(first: InputStream): Boolean {
+    val executor =
+      Executors.newFixedThreadPool(this.segments.size.coerceAtLeast(2) - 1) { runnable ->
+        val thread = Thread(runnable, "simplified-borrow-segment-${threadIndex.incrementAndGet()}")
+        thread.isDaemon = true
+        thread
+      }
+
+    try {
+      return RandomAccessFile(this.file, "rw").use { output ->
+        output.setLength(this.size)
+        val channel = output.channel
+
+        val tasks =
+          this.segments.drop(1).map { segment ->
+            segment to executor.submit(Callable { this.fetch(segment, channel) })
+          }
+
+        if (!this.copyFirst(first, channel)) {
+          return false
+        }
+        first.close()
+
+        if (!this.await(tasks, channel)) {
+          return false
+        }
+
+        val received = this.received()
+        if (received != this.size || channel.size() != this.size) {
+          throw IOException("Received $received bytes but expected ${this.size}")
+        }
+        true
+      }
+    } finally {
+      this.cancelled.set(true)
+      executor.shutdownNow()
+    }
+  }
+
+  /**
+   * Copy the first segment from the complete content. If any other segment has failed by
+   * the time the first segment is complete, keep copying to the end of the content.
+   */
+
+  private fun copyFirst(
+    first: InputStream,
+    channel: FileChannel
+  ): Boolean {
+    val segment = this.segments.first()
+    val buffer = ByteArray(BUFFER_SIZE)
+    var end = segment.end
+
+    while (true) {
+      if (this.isCancelled()) {
+        return false
+      }
+
+      val position = segment.position
+      if (position >= end) {
+        if (end == this.size || !this.failure.get()) {
+          return true
+        }
+        end = this.size
+        this.cancelled.set(true)
+        continue
+      }
+
+      val count = first.read(buffer, 0, minOf(buffer.size.toLong(), end - position).toInt())
+      if (count == -1) {
+        throw IOException("Content ended after $position of ${this.size} bytes")
+      }
+      write(channel, buffer, count, position)
+      segment.written.addAndGet(count.toLong())
+      this.onProgress(this.received())
+    }
+  }
+
+  /**
+   * Wait for the other segments, retrying any that failed after the first segment was
+   * complete.
+   */
+
+  private fun await(
+    tasks: List<Pair<Segment, Future<*>>>,
+    channel: FileChannel
+  ): Boolean {
+    if (this.segments.first().position >= this.size) {
+      return true
+    }
+
+    for ((segment, task) in tasks) {
+      while (true) {
+        if (this.isCancelled()) {
+          return false
+        }
+        try {
+          task.get(PROGRESS_POLL_MILLISECONDS, TimeUnit.MILLISECONDS)
+          if (!segment.isComplete) {
+            this.fetch(segment, channel)
+          }
+          break
+        } catch (e: TimeoutException) {
+          this.onProgress(this.received())
+        } catch (e: ExecutionException) {
+          this.onFallback(e.cause as? Exception ?: e)
+          this.fetch(segment, channel)
+          break
+        }
+      }
+    }
+    return true
+  }
+
+  private fun fetch(
+    segment: Segment,
+    channel: FileChannel
+  ) {
+    try {
+      this.openRange(segment.position, segment.end - 1).use { response ->
+        when (val status = response.status) {
+          is LSHTTPResponseStatus.Responded.OK -> {
+            val contentRange = status.properties.header("content-range")
+            if (
+              status.properties.originalStatus != HTTP_PARTIAL_CONTENT ||
+              contentRange?.removePrefix("bytes ")?.substringBefore('-')?.toLongOrNull() != segment.position
+            ) {
+              throw IOException("Server did not return the range starting at ${segment.position}")
+            }
+            this.copySegment(status.bodyStream ?: throw IOException("No body"), segment, channel)
+          }
+          is LSHTTPResponseStatus.Responded.Error ->
+            throw IOException("Range request failed: ${status.properties.originalStatus}")
+          is LSHTTPResponseStatus.Failed ->
+            throw IOException(status.exception)
+        }
+      }
+    } catch (e: IOException) {
+      this.failure.set(true)
+      throw e
+    } catch (e: Exception) {
+      this.failure.set(true)
+      throw IOException(e)
+    }
+  }
+
+  private fun copySegment(
+    input: InputStream,
+    segment: Segment,
+    channel: FileChannel
+  ) {
+    val buffer = ByteArray(BUFFER_SIZE)
+    while (!segment.isComplete && !this.cancelled.get()) {
+      val position = segment.position
+      val count = input.read(buffer, 0, minOf(buffer.size.toLong(), segment.end - position).toInt())
+      if (count == -1) {
+        throw IOException("Range ended at $position before ${segment.end}")
+      }
+      write(channel, buffer, count, position)
+      segment.written.addAndGet(count.toLong())
+    }
+  }
+
+  /**
+   * The number of distinct bytes received so far. The first segment may have continued
+   * into the ranges of the other segments.
+   */
+
+  private fun received(): Long {
+    val first = this.segments.first()
+    var received = minOf(first.written.get(), first.end - first.start)
+    for (segment in this.segments.drop(1)) {
+      val covered = (first.position - segment.start).coerceIn(0L, segment.end - segment.start)
+      received += maxOf(covered, segment.written.get())
+    }
+    return received
+  }
+
+  companion object {
+
+    /**
+     * The largest number of connections used for a single download.
+     */
+
+    const val CONNECTIONS_MAXIMUM = 4
+
+    private const val BUFFER_SIZE = 65536
+    private const val HTTP_PARTIAL_CONTENT = 206
+    private const val PROGRESS_POLL_MILLISECONDS = 250L
+
+    private val threadIndex = AtomicInteger(0)
+
+    private fun write(
+      channel: FileChannel,
+      buffer: ByteArray,
+      count: Int,
+      position: Long
+    ) {
+      val data = ByteBuffer.wrap(buffer, 0, count)
+      var offset = position
+      while (data.hasRemaining()) {
+        offset += channel.write(data, offset)
+      }
+    }
+  }
+}
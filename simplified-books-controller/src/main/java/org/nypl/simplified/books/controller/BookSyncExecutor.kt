@@ -0,0 +1,67 @@
+package org.nypl.simplified.books.controller
+
+import java.util.ArrayDeque
+import java.util.concurrent.Callable
+import java.util.concurrent.Executor
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
+
+/**
+ * The requests of a single sync. Requests run on a shared executor, but at most
+ * `parallelism` of them are in flight at once; the rest wait their turn in order.
+ */
+
+internal class BookSyncExecutor(
+  private val executor: Executor,
+  private val parallelism: Int
+) {
+
+  private val pending = ArrayDeque<FutureTask<*>>()
+  private val submitted = mutableListOf<FutureTask<*>>()
+  private var running = 0
+
+  fun <T> submit(task: Callable<T>): Future<T> {
+    val future = FutureTask(task)
+    synchronized(this) {
+      this.pending.add(future)
+      this.submitted.add(future)
+    }
+    this.dispatch()
+    return future
+  }
+
+  private fun dispatch() {
+    while (true) {
+      val next = synchronized(this) {
+        if (this.running >= this.parallelism.coerceAtLeast(1) || this.pending.isEmpty()) {
+          return
+        }
+        this.running += 1
+        this.pending.removeFirst()
+      }
+
+      this.executor.execute {
+        try {
+          next.run()
+        } finally {
+          synchronized(this) {
+            this.running -= 1
+          }
+          this.dispatch()
+        }
+      }
+    }
+  }
+
+  /**
+   * Cancel every request of this sync, interrupting the ones that are running.
+   */
+
+  fun cancelAll() {
+    val futures = synchronized(this) {
+      this.pending.clear()
+      this.submitted.toList()
+    }
+    futures.forEach { future -> future.cancel(true) }
+  }
+}
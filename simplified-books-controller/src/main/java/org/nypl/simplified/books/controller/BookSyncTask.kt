@@ -5,6 +5,7 @@ import com.io7m.jfunctional.Option
 import com.io7m.jfunctional.Some
 import org.librarysimplified.http.api.LSHTTPClientType
 import org.librarysimplified.http.api.LSHTTPResponseStatus
+import org.librarysimplified.http.api.LSHTTPResponseType
 import org.librarysimplified.mdc.MDCKeys
 import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP
 import org.nypl.simplified.accounts.api.AccountAuthenticatedHTTP.addCredentialsToProperties
@@ -20,12 +21,15 @@ import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.api.BookIDs
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
 import org.nypl.simplified.books.book_database.api.BookDatabaseException
+import org.nypl.simplified.books.book_database.api.BookDatabaseType
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookWithStatus
 import org.nypl.simplified.books.controller.api.BooksControllerType
-import org.nypl.simplified.feeds.api.FeedLoaderType
+import org.nypl.simplified.feeds.api.Feed
+import org.nypl.simplified.feeds.api.FeedLoaderResult
 import org.nypl.simplified.feeds.api.FeedLoading
+import org.nypl.simplified.metrics.api.PerformanceMetrics
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSAvailabilityHoldable
 import org.nypl.simplified.opds.core.OPDSAvailabilityLoanable
@@ -45,7 +49,13 @@ import java.io.IOException
 import java.io.InputStream
 import java.net.URI
 import java.util.HashSet
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
 
 class BookSyncTask(
   private val accountID: AccountID,
@@ -54,10 +64,11 @@ class BookSyncTask(
   private val booksController: Controller,
   private val accountRegistry: AccountProviderRegistryType,
   private val bookRegistry: BookRegistryType,
-  private val feedLoader: FeedLoaderType,
   private val patronParsers: PatronUserProfileParsersType,
   private val http: LSHTTPClientType,
-  private val feedParser: OPDSFeedParserType
+  private val feedParser: OPDSFeedParserType,
+  private val parallelism: Int = DEFAULT_PARALLELISM,
+  private val timeout: Pair<Long, TimeUnit> = DEFAULT_TIMEOUT
 ) : AbstractBookTask(accountID, profileID, profiles) {
 
   override val logger =
@@ -67,6 +78,10 @@ class BookSyncTask(
     TaskRecorder.create()
 
   override fun execute(account: AccountType): TaskResult.Success<Unit> {
+    return syncTimer.time { this.executeSync(account) }
+  }
+
+  private fun executeSync(account: AccountType): TaskResult.Success<Unit> {
     this.logger.debug("syncing account {}", account.id)
     this.taskRecorder.beginNewStep("Syncing...")
 
@@ -76,7 +91,7 @@ class BookSyncTask(
     MDC.put(MDCKeys.ACCOUNT_PROVIDER_ID, account.provider.id.toString())
 
     //Update provider
-    val provider = this.updateAccountProvider(account)
+    val provider = providerTimer.time { this.updateAccountProvider(account) }
     val providerAuth = provider.authentication
     if (providerAuth == AccountProviderAuthenticationDescription.Anonymous) {
       this.logger.debug("account does not support syncing")
@@ -95,46 +110,91 @@ class BookSyncTask(
       credentials = credentials
     )
 
-    //Get the loans stream
-    //Continue execution only if successful
-    //Otherwise it's useless and can trigger multiple refresh
-    //requests in row, which makes the logout happen unnecessarily
-    val loansStream: InputStream = fetchFeed(
-      provider.loansURI,
-      credentials,
-      account
-    ) ?: return this.taskRecorder.finishSuccess(Unit)
-
-    //Get the selected stream
-    val selectedStream: InputStream? = fetchFeed(
-      provider.selectedURI,
-      credentials,
-      account
-    )
-    //If both fetches went fine, we combine the streams
-    //And update database and registry
-    if (selectedStream != null) {
-      this.onHTTPOKMultipleFeeds(
-        loansStream = loansStream,
-        selectedStream = selectedStream,
-        provider = provider,
-        account = account
+    //Request the loans and selected feeds at the same time, but handle the responses
+    //one after the other so that errors are handled exactly once, in order
+    val executor = BookSyncExecutor(sharedExecutor, this.parallelism)
+    val deadline = System.nanoTime() + this.timeout.second.toNanos(this.timeout.first)
+    val loansRequest =
+      executor.submit(Callable { this.requestFeed(provider.loansURI, credentials) })
+    val selectedRequest =
+      executor.submit(Callable { this.requestFeed(provider.selectedURI, credentials) })
+
+    try {
+      //Get the loans stream
+      //Continue execution only if successful
+      //Otherwise it's useless and can trigger multiple refresh
+      //requests in row, which makes the logout happen unnecessarily
+      val loansStream: InputStream = this.handleFeedResponse(
+        provider.loansURI,
+        this.await(loansRequest, deadline),
+        account
+      ) ?: return this.taskRecorder.finishSuccess(Unit)
+
+      //Get the selected stream
+      val selectedStream: InputStream? = this.handleFeedResponse(
+        provider.selectedURI,
+        this.await(selectedRequest, deadline),
+        account
       )
+      //If both fetches went fine, we combine the streams
+      //And update database and registry
+      if (selectedStream != null) {
+        this.onHTTPOKMultipleFeeds(
+          loansStream = loansStream,
+          selectedStream = selectedStream,
+          provider = provider,
+          account = account,
+          executor = executor,
+          deadline = deadline
+        )
+      }
+      return this.taskRecorder.finishSuccess(Unit)
+    } finally {
+      this.closeResponse(loansRequest)
+      this.closeResponse(selectedRequest)
+      executor.cancelAll()
+    }
+  }
+
+  /**
+   * Wait for the given request until the deadline has passed.
+   */
+
+  @Throws(Exception::class)
+  private fun <T> await(
+    future: Future<T>,
+    deadline: Long
+  ): T {
+    try {
+      return future.get((deadline - System.nanoTime()).coerceAtLeast(0L), TimeUnit.NANOSECONDS)
+    } catch (e: ExecutionException) {
+      throw (e.cause as? Exception) ?: e
+    } catch (e: TimeoutException) {
+      future.cancel(true)
+      throw IOException("Timed out waiting for the server", e)
+    }
+  }
+
+  private fun closeResponse(request: Future<LSHTTPResponseType?>) {
+    if (!request.isDone) {
+      request.cancel(true)
+      return
+    }
+    try {
+      request.get()?.close()
+    } catch (e: Exception) {
+      this.logger.debug("could not close response: ", e)
     }
-    return this.taskRecorder.finishSuccess(Unit)
   }
 
   /**
-   * Fetch a feed from the URI provided.
+   * Request a feed from the URI provided.
    */
-  private fun fetchFeed(
+  private fun requestFeed(
     uri: URI?,
-    credentials: AccountAuthenticationCredentials,
-    account: AccountType
-  ) : InputStream? {
+    credentials: AccountAuthenticationCredentials
+  ): LSHTTPResponseType? {
     if (uri == null) {
-      this.logger.debug("no fetch URI, aborting!")
-      this.taskRecorder.finishSuccess(Unit)
       return null
     }
     //Create the request
@@ -145,7 +205,23 @@ class BookSyncTask(
         .build()
 
     //Execute the fetch
-    val feedResponse = feedRequest.execute()
+    return feedRequest.execute()
+  }
+
+  /**
+   * Handle the response to a feed request, returning the feed stream if the request
+   * succeeded.
+   */
+  private fun handleFeedResponse(
+    uri: URI?,
+    feedResponse: LSHTTPResponseType?,
+    account: AccountType
+  ) : InputStream? {
+    if (uri == null || feedResponse == null) {
+      this.logger.debug("no fetch URI, aborting!")
+      this.taskRecorder.finishSuccess(Unit)
+      return null
+    }
     return when (val status = feedResponse.status) {
       is LSHTTPResponseStatus.Responded.OK -> {
         //If answer is okay
@@ -261,11 +337,13 @@ class BookSyncTask(
     stream: InputStream,
     provider: AccountProviderType,
     account: AccountType,
-    accessToken: String?
+    accessToken: String?,
+    executor: BookSyncExecutor,
+    deadline: Long
   ) {
     account.updateBasicTokenCredentials(accessToken)
     stream.use { ok ->
-      this.parseFeed(ok, provider, account)
+      this.parseFeed(ok, provider, account, executor, deadline)
     }
   }
 
@@ -273,9 +351,11 @@ class BookSyncTask(
   private fun parseFeed(
     stream: InputStream,
     provider: AccountProviderType,
-    account: AccountType
+    account: AccountType,
+    executor: BookSyncExecutor,
+    deadline: Long
   ) {
-    val feed = this.feedParser.parse(provider.loansURI, stream)
+    val feed = parseTimer.time { this.feedParser.parse(provider.loansURI, stream) }
 
     /*
      * Obtain the set of books that are on disk already. If any
@@ -292,19 +372,20 @@ class BookSyncTask(
 
     val received = HashSet<BookID>(64)
     val entries = feed.feedEntries
+    var unchanged = 0
     for (opdsEntry in entries) {
       val bookId = BookIDs.newFromOPDSEntry(opdsEntry)
       received.add(bookId)
-      this.logger.debug("[{}] updating", bookId.brief())
 
       try {
-        val databaseEntry = bookDatabase.createOrUpdate(bookId, opdsEntry)
-        val book = databaseEntry.book
-        this.bookRegistry.update(BookWithStatus(book, BookStatus.fromBook(book)))
+        if (!this.updateBook(bookDatabase, existing, bookId, opdsEntry)) {
+          ++unchanged
+        }
       } catch (e: BookDatabaseException) {
         this.logger.error("[{}] unable to update database entry: ", bookId.brief(), e)
       }
     }
+    this.logger.debug("{} of {} entries unchanged", unchanged, entries.size)
 
     /*
      * Now delete/revoke any book that previously existed, but is not in the
@@ -312,6 +393,7 @@ class BookSyncTask(
      */
 
     val revoking = HashSet<BookID>(existing.size)
+    val deleting = mutableListOf<BookDatabaseEntryType>()
     for (existingId in existing) {
       try {
         this.logger.debug("[{}] checking for deletion", existingId.brief())
@@ -322,9 +404,7 @@ class BookSyncTask(
           if (a is OPDSAvailabilityRevoked) {
             revoking.add(existingId)
           } else {
-            this.logger.debug("[{}] deleting", existingId.brief())
-            this.updateRegistryForBook(account, dbEntry)
-            dbEntry.delete()
+            deleting.add(dbEntry)
           }
         } else {
           this.logger.debug("[{}] keeping", existingId.brief())
@@ -334,6 +414,8 @@ class BookSyncTask(
       }
     }
 
+    this.deleteBooks(deleting, executor, deadline)
+
     /*
      * Finish the revocation of any books that need it.
      */
@@ -352,11 +434,15 @@ class BookSyncTask(
     loansStream: InputStream,
     selectedStream: InputStream,
     provider: AccountProviderType,
-    account: AccountType
+    account: AccountType,
+    executor: BookSyncExecutor,
+    deadline: Long
   ) {
     //Parse multiple streams into one
     loansStream.use { loans ->
-      this.parseSelectedAndLoansFeeds(loans, selectedStream, provider, account)
+      selectedStream.use { selected ->
+        this.parseSelectedAndLoansFeeds(loans, selected, provider, account, executor, deadline)
+      }
     }
   }
 
@@ -369,13 +455,15 @@ class BookSyncTask(
     loansStream: InputStream,
     selectedStream: InputStream,
     provider: AccountProviderType,
-    account: AccountType
+    account: AccountType,
+    executor: BookSyncExecutor,
+    deadline: Long
   ) {
     //Parse loans
-    val loansFeed = this.feedParser.parse(provider.selectedURI, loansStream)
+    val loansFeed = parseTimer.time { this.feedParser.parse(provider.selectedURI, loansStream) }
 
     //Parse selected
-    val selectedFeed = this.feedParser.parse(provider.selectedURI, selectedStream)
+    val selectedFeed = parseTimer.time { this.feedParser.parse(provider.selectedURI, selectedStream) }
 
     //Combine the feed entries from both feeds into one list, create new IDs for them
     val loansMap = loansFeed.feedEntries.associateBy { BookIDs.newFromOPDSEntry(it) }
@@ -427,27 +515,24 @@ class BookSyncTask(
      * Handle each book in the combined feed by checking if matching book is in database
      */
     val receivedBooks = HashSet<BookID>(64)
+    var unchanged = 0
     for (opdsEntry in combinedFeedEntries) {
       // Create new id for the entry (will match the ID of the book in the registry, if any)
       val bookId = BookIDs.newFromOPDSEntry(opdsEntry)
       // Add to the received loans
       receivedBooks.add(bookId)
 
-      this.logger.debug("[{}] updating", bookId.brief())
-
       // Try to add the book to the database
-      // Update old entries or add new ones
+      // Update old entries or add new ones, skipping entries that haven't changed
       try {
-        //Create a new database entry, or update old one
-        val databaseEntry = bookDatabase.createOrUpdate(bookId, opdsEntry)
-        //get the book we just added and refresh the registry
-        val book = databaseEntry.book
-        //Update the book state in the registry, create the status based on the book entry
-        this.bookRegistry.update(BookWithStatus(book, BookStatus.fromBook(book)))
+        if (!this.updateBook(bookDatabase, existing, bookId, opdsEntry)) {
+          ++unchanged
+        }
       } catch (e: BookDatabaseException) {
         this.logger.error("[{}] unable to update database entry: ", bookId.brief(), e)
       }
     }
+    this.logger.debug("{} of {} entries unchanged", unchanged, combinedFeedEntries.size)
 
     /*
      * Now delete/revoke any book that previously existed, but is not in the
@@ -457,6 +542,8 @@ class BookSyncTask(
     // Initiate the list into which we collect the book's IDs that need to be revoked
     //Not just deleted
     val revoking = HashSet<BookID>(existing.size)
+    //Collect the books that only need deleting, so that their permalinks can be fetched together
+    val deleting = mutableListOf<BookDatabaseEntryType>()
     //Go through all id:s in database
     for (existingId in existing) {
       try {
@@ -466,17 +553,12 @@ class BookSyncTask(
         if (!allBookIDs.contains(existingId)) {
           val dbEntry = bookDatabase.entry(existingId)
           val a = dbEntry.book.entry.availability
-          val b = dbEntry.book.entry.selected
           // If the book availability is revoked, it should be revoked
           if (a is OPDSAvailabilityRevoked) {
             revoking.add(existingId)
           } else {
             //Otherwise just deleting will do
-            this.logger.debug("[{}] deleting", existingId.brief())
-            //Load the single entry and add the "neutral" version to the book
-            this.updateRegistryForBook(account, dbEntry)
-            //Delete entry from database
-            dbEntry.delete()
+            deleting.add(dbEntry)
           }
         } else {
           this.logger.debug("[{}] keeping", existingId.brief())
@@ -486,6 +568,8 @@ class BookSyncTask(
       }
     }
 
+    this.deleteBooks(deleting, executor, deadline)
+
     /*
      * Finish the revocation of any books that need it.
      */
@@ -496,22 +580,164 @@ class BookSyncTask(
     }
   }
 
+  /**
+   * Write the given entry to the database and publish the book's new status, unless
+   * the database and the registry already hold an identical entry for the book.
+   *
+   * @return `true` if the book was updated
+   */
+
+  @Throws(BookDatabaseException::class)
+  private fun updateBook(
+    bookDatabase: BookDatabaseType,
+    existing: Set<BookID>,
+    bookId: BookID,
+    opdsEntry: OPDSAcquisitionFeedEntry
+  ): Boolean {
+    if (existing.contains(bookId)) {
+      val registered = this.bookRegistry.bookOrNull(bookId)
+      if (registered != null &&
+        registered.book.entry == opdsEntry &&
+        bookDatabase.entry(bookId).book.entry == opdsEntry
+      ) {
+        this.logger.debug("[{}] unchanged", bookId.brief())
+        return false
+      }
+    }
+
+    this.logger.debug("[{}] updating", bookId.brief())
+    val databaseEntry = bookDatabase.createOrUpdate(bookId, opdsEntry)
+    val book = databaseEntry.book
+    this.bookRegistry.update(BookWithStatus(book, BookStatus.fromBook(book)))
+    return true
+  }
+
+  /**
+   * Fetch the permalinks of the given books concurrently, update the registry for each
+   * book based on the server's current state, and then delete the books from the database.
+   *
+   * The permalinks are fetched directly on the sync executor rather than through the
+   * feed loader, so that a sync doesn't queue work behind (or ahead of) the catalog feeds.
+   */
+
+  private fun deleteBooks(
+    dbEntries: List<BookDatabaseEntryType>,
+    executor: BookSyncExecutor,
+    deadline: Long
+  ) {
+    if (dbEntries.isEmpty()) {
+      return
+    }
+
+    this.logger.debug("fetching {} book permalinks to update registry", dbEntries.size)
+    val lookups = dbEntries.map { dbEntry ->
+      val alternateOpt = dbEntry.book.entry.alternate
+      if (alternateOpt is Some<URI>) {
+        executor.submit(Callable { this.requestPermalink(alternateOpt.get()) })
+      } else {
+        null
+      }
+    }
+
+    try {
+      for ((dbEntry, lookup) in dbEntries.zip(lookups)) {
+        val bookId = dbEntry.book.id
+        try {
+          this.logger.debug("[{}] deleting", bookId.brief())
+          //Load the single entry and add the "neutral" version to the book
+          this.updateRegistryForBook(dbEntry, lookup, deadline)
+          //Delete entry from database
+          dbEntry.delete()
+        } catch (x: Throwable) {
+          this.logger.error("[{}]: unable to delete entry: ", bookId.value(), x)
+        }
+      }
+    } finally {
+      lookups.forEach { lookup -> lookup?.cancel(true) }
+    }
+  }
+
+  /**
+   * Fetch and parse the feed at the permalink of a book. The request runs on the thread
+   * of the calling task, so cancelling that task leaves no other work behind.
+   */
+
+  private fun requestPermalink(
+    uri: URI
+  ): FeedLoaderResult {
+    val attributes = mapOf(Pair("URI", uri.toString()))
+    try {
+      this.http.newRequest(uri)
+        .build()
+        .execute()
+        .use { response ->
+          return when (val status = response.status) {
+            is LSHTTPResponseStatus.Responded.OK -> {
+              val feed =
+                parseTimer.time {
+                  (status.bodyStream ?: ByteArrayInputStream(ByteArray(0))).use { stream ->
+                    this.feedParser.parse(uri, stream)
+                  }
+                }
+              FeedLoaderResult.FeedLoaderSuccess(
+                feed = Feed.fromAcquisitionFeed(
+                  accountId = this.accountID,
+                  feed = feed,
+                  filter = { true },
+                  search = null
+                ),
+                accessToken = null
+              )
+            }
+            is LSHTTPResponseStatus.Responded.Error -> {
+              val message =
+                String.format("%s: %d: %s", uri, status.properties.status, status.properties.message)
+              if (status.properties.status == 401) {
+                FeedLoaderResult.FeedLoaderFailure.FeedLoaderFailedAuthentication(
+                  problemReport = status.properties.problemReport,
+                  exception = IOException(message),
+                  message = message,
+                  attributesInitial = attributes
+                )
+              } else {
+                FeedLoaderResult.FeedLoaderFailure.FeedLoaderFailedGeneral(
+                  problemReport = status.properties.problemReport,
+                  exception = IOException(message),
+                  message = message,
+                  attributesInitial = attributes
+                )
+              }
+            }
+            is LSHTTPResponseStatus.Failed ->
+              FeedLoaderResult.FeedLoaderFailure.FeedLoaderFailedGeneral(
+                problemReport = null,
+                exception = status.exception,
+                message = status.exception.localizedMessage ?: "",
+                attributesInitial = attributes
+              )
+          }
+        }
+    } catch (e: Exception) {
+      return FeedLoaderResult.FeedLoaderFailure.FeedLoaderFailedGeneral(
+        problemReport = null,
+        exception = e,
+        message = e.localizedMessage ?: "",
+        attributesInitial = attributes
+      )
+    }
+  }
+
   private fun updateRegistryForBook(
-    account: AccountType,
-    dbEntry: BookDatabaseEntryType
+    dbEntry: BookDatabaseEntryType,
+    lookup: Future<FeedLoaderResult>?,
+    deadline: Long
   ) {
-    this.logger.debug("attempting to fetch book permalink to update registry")
-    val alternateOpt = dbEntry.book.entry.alternate
-    return if (alternateOpt is Some<URI>) {
-      val alternate = alternateOpt.get()
+    return if (lookup != null) {
+      this.taskRecorder.beginNewStep("Fetching OPDS feed...")
       val entry =
-        FeedLoading.loadSingleEntryFeed(
-          feedLoader = this.feedLoader,
+        FeedLoading.singleEntryOf(
           taskRecorder = this.taskRecorder,
-          accountID = this.accountID,
-          uri = alternate,
-          timeout = Pair(30L, TimeUnit.SECONDS),
-          method = "GET"
+          feedResult = this.await(lookup, deadline)
         )
 
       /*
@@ -591,4 +817,40 @@ class BookSyncTask(
 
     return false
   }
+
+  companion object {
+
+    /**
+     * The default maximum number of requests that a sync will have in flight at once.
+     */
+
+    const val DEFAULT_PARALLELISM = 4
+
+    /**
+     * The default deadline for all of the requests made by a sync.
+     */
+
+    val DEFAULT_TIMEOUT = Pair(120L, TimeUnit.SECONDS)
+
+    private val threadIndex = AtomicInteger(0)
+
+    /**
+     * The threads shared by all syncs. Each sync limits its own requests to `parallelism`
+     * on top of this pool, and idle threads are retired after a minute.
+     */
+
+    private val sharedExecutor =
+      Executors.newCachedThreadPool { runnable ->
+        val thread = Thread(runnable, "simplified-books-sync-${threadIndex.incrementAndGet()}")
+        thread.isDaemon = true
+        thread
+      }
+
+    private val syncTimer =
+      PerformanceMetrics.timer("books.sync")
+    private val providerTimer =
+      PerformanceMetrics.timer("books.sync.provider")
+    private val parseTimer =
+      PerformanceMetrics.timer("books.sync.parse")
+  }
 }
@@ -38,6 +38,7 @@ import org.nypl.simplified.books.book_registry.BookPreviewRegistryType
 import org.nypl.simplified.books.book_registry.BookRegistryType
 import org.nypl.simplified.books.book_registry.BookStatus
 import org.nypl.simplified.books.book_registry.BookWithStatus
+import org.nypl.simplified.books.borrowing.BorrowPartialDownloads
 import org.nypl.simplified.books.borrowing.BorrowRequest
 import org.nypl.simplified.books.borrowing.BorrowRequirements
 import org.nypl.simplified.books.borrowing.BorrowTask
@@ -130,6 +131,9 @@ class Controller private constructor(
     this.services.requireService(BookPreviewRegistryType::class.java)
   private val bookFormatSupport =
     this.services.requireService(BookFormatSupportType::class.java)
+  private val profileFeedIndex by lazy {
+    ProfileFeedIndex(this.bookRegistry, this.bookFormatSupport)
+  }
   private val feedLoader =
     this.services.requireService(FeedLoaderType::class.java)
   private val feedParser =
@@ -176,6 +180,15 @@ class Controller private constructor(
     this.borrows =
       ConcurrentHashMap()
 
+    /*
+     * Partial downloads that are too old to be resumed are deleted, so that the content of
+     * abandoned borrows doesn't stay in the cache indefinitely.
+     */
+
+    this.taskExecutor.execute {
+      BorrowPartialDownloads.pruneStale(this.cacheDirectory)
+    }
+
     this.accountRegistrySubscription =
       this.accountProviders.events.subscribe(this::onAccountRegistryEvent)
 
@@ -643,8 +656,7 @@ class Controller private constructor(
   ): FluentFuture<Feed.FeedWithoutGroups> {
     return this.submitTask(
       ProfileFeedTask(
-        bookFormatSupport = this.bookFormatSupport,
-        bookRegistry = this.bookRegistry,
+        index = this.profileFeedIndex,
         profiles = this,
         request = request
       )
@@ -772,7 +784,6 @@ class Controller private constructor(
           bookRegistry = this.bookRegistry,
           booksController = this,
           feedParser = this.feedParser,
-          feedLoader = this.feedLoader,
           patronParsers = this.patronUserProfileParsers,
           http = this.lsHttp
         )
@@ -799,7 +810,6 @@ class Controller private constructor(
               bookRegistry = this.bookRegistry,
               booksController = this,
               feedParser = this.feedParser,
-              feedLoader = this.feedLoader,
               patronParsers = this.patronUserProfileParsers,
               http = this.lsHttp
             )
@@ -835,7 +845,7 @@ class Controller private constructor(
           onNewBookEntry = onNewBookEntry,
           revokeStrings = this.revokeStrings
         )
-        revokeTask.call()
+        this.discardPartialDownloadsOnSuccess(bookId, revokeTask.call())
       }
     ).transformAsync(AsyncFunction { taskResult ->
       //Check if the result was a need to refresh the accessToken
@@ -856,7 +866,7 @@ class Controller private constructor(
               onNewBookEntry = onNewBookEntry,
               revokeStrings = this.revokeStrings
             )
-            submitTask(Callable { revokeTask.call() })
+            submitTask(Callable { this.discardPartialDownloadsOnSuccess(bookId, revokeTask.call()) })
           } else {
             //If accessToken refresh fails, return the result that should popup the login
             Futures.immediateFuture(tokenResult)
@@ -874,7 +884,7 @@ class Controller private constructor(
     bookId: BookID
   ): FluentFuture<TaskResult<Unit>> {
     this.publishRequestingDelete(bookId)
-    return this.submitTask(
+    val deleteTask =
       BookDeleteTask(
         accountID = accountID,
         profileID = this.profileCurrent().id,
@@ -882,9 +892,28 @@ class Controller private constructor(
         bookID = bookId,
         bookRegistry = this.bookRegistry,
       )
+    return this.submitTask(
+      Callable<TaskResult<Unit>> {
+        this.discardPartialDownloadsOnSuccess(bookId, deleteTask.call())
+      }
     )
   }
 
+  /**
+   * Delete the partial downloads of a book that has been returned or deleted, as they
+   * will never be resumed.
+   */
+
+  private fun discardPartialDownloadsOnSuccess(
+    bookId: BookID,
+    result: TaskResult<Unit>
+  ): TaskResult<Unit> {
+    if (result is TaskResult.Success) {
+      BorrowPartialDownloads.discardForBook(this.cacheDirectory, bookId)
+    }
+    return result
+  }
+
   private fun publishRequestingDelete(bookId: BookID) {
     this.bookRegistry.bookOrNull(bookId)?.let { bookWithStatus ->
       this.bookRegistry.update(
@@ -7,6 +7,13 @@ import org.nypl.simplified.books.book_registry.BookWithStatus
 import org.nypl.simplified.profiles.api.ProfileType
 import org.slf4j.LoggerFactory
 
+/**
+ * A task that loads every book of every account of a profile into the book registry.
+ *
+ * Book databases decode all of their entries when they are opened, so this only reads
+ * entries that are already in memory.
+ */
+
 class ProfileDataLoadTask(
   private val profile: ProfileType,
   private val bookRegistry: BookRegistryType
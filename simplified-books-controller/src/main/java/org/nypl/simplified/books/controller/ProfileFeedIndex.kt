@@ -0,0 +1,351 @@
+package org.nypl.simplified.books.controller
+
+import com.io7m.jfunctional.Some
+import io.reactivex.disposables.CompositeDisposable
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.books.book_registry.BookRegistryReadableType
+import org.nypl.simplified.books.book_registry.BookStatus
+import org.nypl.simplified.books.book_registry.BookStatusEvent
+import org.nypl.simplified.books.book_registry.BookWithStatus
+import org.nypl.simplified.books.formats.api.BookFormatSupportType
+import org.nypl.simplified.feeds.api.FeedBooksSelection
+import org.nypl.simplified.feeds.api.FeedFacet.FeedFacetPseudo.Sorting.SortBy
+import org.slf4j.LoggerFactory
+import java.text.Normalizer
+import java.util.Locale
+import java.util.TreeSet
+
+/**
+ * An index over the book registry that is used to generate the local "My Books" feeds.
+ *
+ * The index is kept up to date from the updates published by the registry. Books are
+ * bucketed by account and by the local feeds that they can appear in, and each bucket
+ * keeps its books presorted by title and by author. Titles and authors are case-folded
+ * and stripped of accents once, when a book is indexed, so that searches only have to
+ * walk the buckets that they need. Sorting uses the titles and authors as they are.
+ */
+
+class ProfileFeedIndex(
+  private val bookRegistry: BookRegistryReadableType,
+  private val bookFormatSupport: BookFormatSupportType
+) {
+
+  private val logger =
+    LoggerFactory.getLogger(ProfileFeedIndex::class.java)
+
+  private val lock = Any()
+  private val books = HashMap<BookID, IndexedBook>()
+  private val buckets = HashMap<BucketKey, Bucket>()
+  private val subscriptions = CompositeDisposable()
+
+  init {
+    this.subscriptions.add(
+      this.bookRegistry.bookUpdates()
+        .subscribe { bookID -> this.reindex(bookID) }
+    )
+    this.subscriptions.add(
+      this.bookRegistry.bookEvents()
+        .ofType(BookStatusEvent.BookStatusEventRemoved::class.java)
+        .subscribe { event -> synchronized(this.lock) { this.remove(event.bookId) } }
+    )
+    for (bookID in this.bookRegistry.books().keys) {
+      this.reindex(bookID)
+    }
+    this.logger.debug("indexed {} books", this.books.size)
+  }
+
+  /**
+   * The result of a query.
+   *
+   * @param books The matching books, in order
+   * @param heldReady The number of books in the queried accounts that are ready to be borrowed
+   */
+
+  data class Result(
+    val books: List<BookWithStatus>,
+    val heldReady: Int
+  )
+
+  /**
+   * Find the books in the given accounts that belong in the given feed and that match
+   * any of the given search terms.
+   */
+
+  fun query(
+    accounts: Collection<AccountID>,
+    selection: FeedBooksSelection,
+    search: String?,
+    sortBy: SortBy
+  ): Result {
+    val terms = searchTermsOf(search)
+
+    synchronized(this.lock) {
+      val results = ArrayList<IndexedBook>()
+      var heldReady = 0
+      var runs = 0
+
+      for (account in accounts) {
+        heldReady += this.buckets[BucketKey(account, FeedBooksSelection.BOOKS_FEED_HOLDS)]?.heldReady ?: 0
+
+        val bucket = this.buckets[BucketKey(account, selection)] ?: continue
+        val ordered =
+          when (sortBy) {
+            SortBy.SORT_BY_AUTHOR -> bucket.byAuthor
+            SortBy.SORT_BY_TITLE -> bucket.byTitle
+          }
+
+        for (book in ordered) {
+          if (book.supported && book.matches(terms)) {
+            results.add(book)
+          }
+        }
+        ++runs
+      }
+
+      /*
+       * Each bucket is already sorted, so merging the buckets of several accounts only
+       * has to interleave a few presorted runs.
+       */
+
+      if (runs > 1) {
+        results.sortWith(orderingOf(sortBy))
+      }
+      return Result(results.map(IndexedBook::book), heldReady)
+    }
+  }
+
+  /**
+   * Index the book with the given ID as it currently is in the registry. Reading the
+   * registry here, rather than using the contents of the event, means that events that
+   * are handled out of order can't leave stale books in the index.
+   */
+
+  private fun reindex(bookID: BookID) {
+    synchronized(this.lock) {
+      this.remove(bookID)
+      val book = this.bookRegistry.bookOrNull(bookID) ?: return
+      val indexed = this.indexedBookOf(book)
+      this.books[bookID] = indexed
+      for (key in indexed.buckets) {
+        this.buckets.getOrPut(key) { Bucket() }.add(indexed)
+      }
+    }
+  }
+
+  private fun remove(bookID: BookID) {
+    val existing = this.books.remove(bookID) ?: return
+    for (key in existing.buckets) {
+      val bucket = this.buckets[key] ?: continue
+      bucket.remove(existing)
+      if (bucket.byTitle.isEmpty()) {
+        this.buckets.remove(key)
+      }
+    }
+  }
+
+  private fun indexedBookOf(book: BookWithStatus): IndexedBook {
+    val entry = book.book.entry
+    val authors = entry.authors
+    val account = book.book.account
+    val buckets = ArrayList<BucketKey>(2)
+    if (usableForLoansFeed(book.status)) {
+      buckets.add(BucketKey(account, FeedBooksSelection.BOOKS_FEED_LOANED))
+    }
+    if (usableForHoldsFeed(book.status)) {
+      buckets.add(BucketKey(account, FeedBooksSelection.BOOKS_FEED_HOLDS))
+    }
+    if (usableForSelectedFeed(book.status) && entry.selected is Some) {
+      buckets.add(BucketKey(account, FeedBooksSelection.BOOKS_FEED_SELECTED))
+    }
+
+    return IndexedBook(
+      book = book,
+      supported = this.isBookSupported(book),
+      title = entry.title,
+      author = authors.firstOrNull(),
+      titleKey = normalize(entry.title),
+      authorKeys = authors.map(::normalize),
+      buckets = buckets
+    )
+  }
+
+  private fun isBookSupported(book: BookWithStatus): Boolean {
+    for (format in book.book.formats) {
+      if (this.bookFormatSupport.isDRMSupported(format.drmInformation.kind)) {
+        return true
+      }
+    }
+    return false
+  }
+
+  private data class BucketKey(
+    val account: AccountID,
+    val selection: FeedBooksSelection
+  )
+
+  private class IndexedBook(
+    val book: BookWithStatus,
+    val supported: Boolean,
+    val title: String,
+    val author: String?,
+    val titleKey: String,
+    val authorKeys: List<String>,
+    val buckets: List<BucketKey>
+  ) {
+    val id: BookID =
+      this.book.book.id
+
+    val heldReady: Boolean =
+      this.book.status is BookStatus.Held.HeldReady
+
+    /**
+     * @return `true` if any of the given search terms match the title or any of the
+     * authors, or the list of search terms is empty
+     */
+
+    fun matches(terms: List<String>): Boolean {
+      if (terms.isEmpty()) {
+        return true
+      }
+      for (term in terms) {
+        if (this.titleKey.contains(term)) {
+          return true
+        }
+        for (author in this.authorKeys) {
+          if (author.contains(term)) {
+            return true
+          }
+        }
+      }
+      return false
+    }
+  }
+
+  private class Bucket {
+    val byTitle = TreeSet(TITLE_ORDER)
+    val byAuthor = TreeSet(AUTHOR_ORDER)
+    var heldReady = 0
+
+    fun add(book: IndexedBook) {
+      this.byTitle.add(book)
+      this.byAuthor.add(book)
+      if (book.heldReady) {
+        ++this.heldReady
+      }
+    }
+
+    fun remove(book: IndexedBook) {
+      this.byTitle.remove(book)
+      this.byAuthor.remove(book)
+      if (book.heldReady) {
+        --this.heldReady
+      }
+    }
+  }
+
+  companion object {
+
+    private val COMBINING_MARKS =
+      Regex("\\p{Mn}+")
+
+    private val WHITESPACE =
+      Regex("\\s+")
+
+    private val TITLE_ORDER: Comparator<IndexedBook> =
+      compareBy<IndexedBook> { book -> book.title }
+        .thenBy { book -> book.id }
+
+    /*
+     * Books without authors are placed after all the books that have authors.
+     */
+
+    private val AUTHOR_ORDER: Comparator<IndexedBook> =
+      compareBy<IndexedBook, String?>(nullsLast()) { book -> book.author }
+        .thenBy { book -> book.id }
+
+    private fun orderingOf(sortBy: SortBy): Comparator<IndexedBook> {
+      return when (sortBy) {
+        SortBy.SORT_BY_AUTHOR -> AUTHOR_ORDER
+        SortBy.SORT_BY_TITLE -> TITLE_ORDER
+      }
+    }
+
+    /**
+     * Case-fold the given text and strip any accents from it.
+     */
+
+    fun normalize(text: String): String {
+      val decomposed = Normalizer.normalize(text, Normalizer.Form.NFD)
+      return COMBINING_MARKS.replace(decomposed, "").lowercase(Locale.ROOT)
+    }
+
+    private fun searchTermsOf(search: String?): List<String> {
+      if (search == null) {
+        return listOf()
+      }
+      return search.split(WHITESPACE)
+        .filter { term -> term.isNotEmpty() }
+        .map(::normalize)
+    }
+
+    private fun usableForLoansFeed(status: BookStatus): Boolean {
+      return when (status) {
+        is BookStatus.Held,
+        is BookStatus.Holdable,
+        is BookStatus.Loanable,
+        is BookStatus.ReachedLoanLimit,
+        is BookStatus.Revoked ->
+          false
+        is BookStatus.Downloading,
+        is BookStatus.DownloadWaitingForExternalAuthentication,
+        is BookStatus.DownloadExternalAuthenticationInProgress,
+        is BookStatus.FailedDownload,
+        is BookStatus.FailedLoan,
+        is BookStatus.FailedRevoke,
+        is BookStatus.Loaned -> true
+        is BookStatus.RequestingDownload,
+        is BookStatus.RequestingLoan,
+        is BookStatus.Selected -> false
+        is BookStatus.Unselected -> false
+        is BookStatus.RequestingRevoke ->
+          true
+      }
+    }
+
+    private fun usableForHoldsFeed(status: BookStatus): Boolean {
+      return when (status) {
+        is BookStatus.Held ->
+          true
+        is BookStatus.Downloading,
+        is BookStatus.DownloadWaitingForExternalAuthentication,
+        is BookStatus.DownloadExternalAuthenticationInProgress,
+        is BookStatus.FailedDownload,
+        is BookStatus.FailedLoan,
+        is BookStatus.FailedRevoke,
+        is BookStatus.Holdable,
+        is BookStatus.Loanable,
+        is BookStatus.Loaned,
+        is BookStatus.ReachedLoanLimit,
+        is BookStatus.RequestingDownload,
+        is BookStatus.RequestingLoan,
+        is BookStatus.RequestingRevoke,
+        is BookStatus.Selected -> false
+        is BookStatus.Unselected -> false
+        is BookStatus.Revoked ->
+          false
+      }
+    }
+
+    /**
+     * Return true if the book is usable for selected feed
+     */
+    private fun usableForSelectedFeed(status: BookStatus): Boolean {
+      //Allow the usage for any BookStatus, except a book when the book is just unselected
+      return when (status) {
+        is BookStatus.Unselected -> false
+        else -> true
+      }
+    }
+  }
+}
@@ -3,6 +3,7 @@ dependencies {
     implementation(project(":simplified-books-bundled-api"))
     implementation(project(":simplified-books-registry-api"))
     implementation(project(":simplified-feeds-api"))
+    implementation(project(":simplified-metrics-api"))
     implementation(project(":simplified-opds-core"))
     implementation(project(":simplified-tenprint"))
 
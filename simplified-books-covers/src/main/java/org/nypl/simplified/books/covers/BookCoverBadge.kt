@@ -7,6 +7,14 @@ import android.graphics.Bitmap
  */
 
 data class BookCoverBadge(
+
+  /**
+   * An identifier for the badge image that is unique among the badges returned by a
+   * [BookCoverBadgeLookupType], and that stays the same for as long as the image does.
+   * Covers are cached with the identifiers of the badges that were drawn on them.
+   */
+
+  val id: String,
   val bitmap: Bitmap,
   val width: Int,
   val height: Int,
@@ -8,62 +8,132 @@ import com.squareup.picasso.Transformation
 import org.nypl.simplified.feeds.api.FeedEntry
 
 /**
- * An image transformer that optionally adds a badge image to the loaded book cover.
+ * An image transformer that adds a badge image to the loaded book cover.
+ *
+ * The badge is looked up when the painter is created, so that the cache key of the
+ * transformed cover identifies the badge that was drawn on it. The badge is drawn
+ * directly onto the cover if the cover is mutable, and onto a single mutable copy of
+ * the cover otherwise.
  */
 
-class BookCoverBadgePainter(
-  val entry: FeedEntry.FeedEntryOPDS,
-  val badges: BookCoverBadgeLookupType,
-  val badgeOffset: BookCoverBadgeOffset
+class BookCoverBadgePainter private constructor(
+  private val badge: BookCoverBadge,
+  private val badgeOffset: BookCoverBadgeOffset,
+  private val colorBackground: Int,
+  private val colorBorder: Int
 ) : Transformation {
 
+  private val key: String =
+    StringBuilder(96)
+      .append("org.nypl.simplified.books.covers.BookCoverBadgePainter:")
+      .append(this.badge.id)
+      .append(':').append(this.badge.width)
+      .append(':').append(this.badge.height)
+      .append(':').append(this.badge.borderWidth)
+      .append(':').append(this.badge.offsetSize)
+      .append(':').append(this.badgeOffset.x)
+      .append(':').append(this.badgeOffset.y)
+      .append(':').append(Integer.toHexString(this.colorBackground))
+      .append(':').append(Integer.toHexString(this.colorBorder))
+      .toString()
+
   override fun key(): String {
-    return "org.nypl.simplified.books.covers.BookCoverBadgePainter"
+    return this.key
   }
 
   override fun transform(source: Bitmap): Bitmap {
-    val badge = this.badges.badgeForEntry(this.entry)
-    if (badge == null) {
-      return source
-    }
+    val result =
+      if (source.isMutable) {
+        source
+      } else {
+        source.copy(source.config ?: Bitmap.Config.ARGB_8888, true).also { source.recycle() }
+      }
 
-    val workingBitmap = Bitmap.createBitmap(source)
-    val result = workingBitmap.copy(source.config!!, true)
-    val canvas = Canvas(result)
+    val scratch = SCRATCH.get()!!
+    val canvas = scratch.canvas
+    canvas.setBitmap(result)
 
-    val left = source.width - badge.width + badgeOffset.x*badge.offsetSize
-    val right = source.width + badgeOffset.x*badge.offsetSize
-    val top = source.height - badge.height + badgeOffset.y*badge.offsetSize
-    val bottom = source.height + badgeOffset.y*badge.offsetSize
-    val targetRect = Rect(left, top, right, bottom)
+    try {
+      val offsetX = this.badgeOffset.x * this.badge.offsetSize
+      val offsetY = this.badgeOffset.y * this.badge.offsetSize
+      val targetRect = scratch.targetRect
+      targetRect.set(
+        result.width - this.badge.width + offsetX,
+        result.height - this.badge.height + offsetY,
+        result.width + offsetX,
+        result.height + offsetY
+      )
 
-    drawBorder(canvas, badge, targetRect)
-
-    val colorBackground = badge.backgroundColorRGBA()
-    if (colorBackground != 0x00_00_00_00) {
-      val backgroundPaint = Paint()
-      backgroundPaint.color = colorBackground
-      backgroundPaint.isAntiAlias = true
-      canvas.drawRect(targetRect, backgroundPaint)
-    }
+      this.drawBorder(canvas, scratch, targetRect)
 
-    val imagePaint = Paint()
-    imagePaint.isAntiAlias = true
-    val sourceRect = Rect(0, 0, badge.bitmap.width, badge.bitmap.height)
-    canvas.drawBitmap(badge.bitmap, sourceRect, targetRect, imagePaint)
+      if (this.colorBackground != 0x00_00_00_00) {
+        val backgroundPaint = scratch.backgroundPaint
+        backgroundPaint.color = this.colorBackground
+        canvas.drawRect(targetRect, backgroundPaint)
+      }
 
-    source.recycle()
+      val sourceRect = scratch.sourceRect
+      sourceRect.set(0, 0, this.badge.bitmap.width, this.badge.bitmap.height)
+      canvas.drawBitmap(this.badge.bitmap, sourceRect, targetRect, scratch.imagePaint)
+    } finally {
+      canvas.setBitmap(null)
+    }
     return result
   }
 
-  private fun drawBorder(canvas: Canvas, badge: BookCoverBadge, badgeRect: Rect ) {
-    val borderRect = Rect(badgeRect.left-badge.borderWidth,
-      badgeRect.top - badge.borderWidth,
-      badgeRect.right + badge.borderWidth,
-      badgeRect.bottom + badge.borderWidth)
-    val paint = Paint()
-    paint.color = badge.borderColorRGBA()
-    paint.isAntiAlias = false
+  private fun drawBorder(canvas: Canvas, scratch: Scratch, badgeRect: Rect) {
+    val borderRect = scratch.borderRect
+    borderRect.set(
+      badgeRect.left - this.badge.borderWidth,
+      badgeRect.top - this.badge.borderWidth,
+      badgeRect.right + this.badge.borderWidth,
+      badgeRect.bottom + this.badge.borderWidth
+    )
+    val paint = scratch.borderPaint
+    paint.color = this.colorBorder
     canvas.drawRect(borderRect, paint)
   }
+
+  /**
+   * The objects used to draw a badge. Covers are transformed on several threads at
+   * once, so each thread has its own set.
+   */
+
+  private class Scratch {
+    val canvas = Canvas()
+    val targetRect = Rect()
+    val sourceRect = Rect()
+    val borderRect = Rect()
+    val borderPaint = Paint().apply { this.isAntiAlias = false }
+    val backgroundPaint = Paint().apply { this.isAntiAlias = true }
+    val imagePaint = Paint().apply { this.isAntiAlias = true }
+  }
+
+  companion object {
+
+    private val SCRATCH =
+      object : ThreadLocal<Scratch>() {
+        override fun initialValue(): Scratch = Scratch()
+      }
+
+    /**
+     * Create a painter for the badge of the given entry.
+     *
+     * @return A painter, or `null` if the entry doesn't have a badge
+     */
+
+    fun create(
+      entry: FeedEntry.FeedEntryOPDS,
+      badges: BookCoverBadgeLookupType,
+      badgeOffset: BookCoverBadgeOffset
+    ): BookCoverBadgePainter? {
+      val badge = badges.badgeForEntry(entry) ?: return null
+      return BookCoverBadgePainter(
+        badge = badge,
+        badgeOffset = badgeOffset,
+        colorBackground = badge.backgroundColorRGBA(),
+        colorBorder = badge.borderColorRGBA()
+      )
+    }
+  }
 }
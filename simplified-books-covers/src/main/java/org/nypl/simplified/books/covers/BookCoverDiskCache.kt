@@ -0,0 +1,203 @@
+package org.nypl.simplified.books.covers
+
+import com.google.common.hash.Hashing
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.net.URI
+
+/**
+ * A size-limited cache of cover images on disk, keyed by the URI of the image and the
+ * size that the image was decoded at.
+ *
+ * Images are stored as they were after being scaled to the requested size, so that an
+ * image read from the cache can be shown without being scaled again. When the cache
+ * grows beyond its maximum size, the least recently used images are deleted. The cache
+ * is thread-safe.
+ */
+
+class BookCoverDiskCache(
+  private val directory: File,
+  private val maximumBytes: Long
+) {
+
+  private val logger =
+    LoggerFactory.getLogger(BookCoverDiskCache::class.java)
+
+  /**
+   * The sizes of the files in the cache, in least-recently-used order. This is loaded
+   * from the directory on first use.
+   */
+
+  private val files =
+    LinkedHashMap<String, Long>(64, 0.75f, true)
+  private var filesLoaded = false
+  private var bytes = 0L
+
+  /**
+   * The total size of the images in the cache.
+   */
+
+  val size: Long
+    get() = synchronized(this.files) {
+      this.load()
+      this.bytes
+    }
+
+  /**
+   * Read the contents of the cache directory, if this hasn't already been done. This
+   * is called implicitly by every other operation, but may be called ahead of time on
+   * a background thread to avoid doing so on the thread that first uses the cache.
+   */
+
+  fun open() {
+    synchronized(this.files) {
+      this.load()
+    }
+  }
+
+  /**
+   * @return `true` if the cache contains an image for the given URI and size
+   */
+
+  fun contains(
+    uri: URI,
+    width: Int,
+    height: Int
+  ): Boolean {
+    val key = keyOf(uri, width, height)
+    return synchronized(this.files) {
+      this.load()
+      this.files.containsKey(key)
+    }
+  }
+
+  /**
+   * @return The file that holds the image for the given URI and size, if there is one
+   */
+
+  fun get(
+    uri: URI,
+    width: Int,
+    height: Int
+  ): File? {
+    val key = keyOf(uri, width, height)
+    val found = synchronized(this.files) {
+      this.load()
+      this.files[key] != null
+    }
+    if (!found) {
+      return null
+    }
+
+    /*
+     * The modification time records the order of use across restarts.
+     */
+
+    val file = File(this.directory, key)
+    file.setLastModified(System.currentTimeMillis())
+    return file
+  }
+
+  /**
+   * Store an image for the given URI and size. The image is written to a temporary file
+   * by the given function, and only becomes visible in the cache once it is complete.
+   */
+
+  @Throws(IOException::class)
+  fun put(
+    uri: URI,
+    width: Int,
+    height: Int,
+    writer: (OutputStream) -> Unit
+  ) {
+    val key = keyOf(uri, width, height)
+    this.directory.mkdirs()
+
+    val fileTmp = File(this.directory, "$key.tmp${Thread.currentThread().id}")
+    try {
+      FileOutputStream(fileTmp).use { stream -> writer.invoke(stream) }
+      val file = File(this.directory, key)
+      synchronized(this.files) {
+        this.load()
+        if (!fileTmp.renameTo(file)) {
+          throw IOException("Could not rename $fileTmp to $file")
+        }
+        val length = file.length()
+        this.bytes += length - (this.files.put(key, length) ?: 0L)
+        this.trim()
+      }
+    } finally {
+      fileTmp.delete()
+    }
+  }
+
+  /**
+   * Delete every image in the cache.
+   */
+
+  fun clear() {
+    synchronized(this.files) {
+      this.load()
+      for (key in this.files.keys) {
+        File(this.directory, key).delete()
+      }
+      this.files.clear()
+      this.bytes = 0L
+    }
+  }
+
+  private fun trim() {
+    val iterator = this.files.entries.iterator()
+    while (this.bytes > this.maximumBytes && iterator.hasNext()) {
+      val eldest = iterator.next()
+      File(this.directory, eldest.key).delete()
+      this.bytes -= eldest.value
+      iterator.remove()
+    }
+  }
+
+  private fun load() {
+    if (this.filesLoaded) {
+      return
+    }
+    this.filesLoaded = true
+
+    val existing = this.directory.listFiles() ?: return
+    existing.sortBy(File::lastModified)
+    for (file in existing) {
+      if (!file.isFile) {
+        continue
+      }
+      if (!KEY_PATTERN.matches(file.name)) {
+        this.logger.debug("deleting stray cover cache file {}", file)
+        file.delete()
+        continue
+      }
+      val length = file.length()
+      this.files[file.name] = length
+      this.bytes += length
+    }
+
+    this.trim()
+    this.logger.debug("{} covers ({} bytes) in disk cache", this.files.size, this.bytes)
+  }
+
+  private companion object {
+
+    val KEY_PATTERN =
+      Regex("[0-9a-f]{64}")
+
+    fun keyOf(
+      uri: URI,
+      width: Int,
+      height: Int
+    ): String {
+      return Hashing.sha256()
+        .hashString("$uri $width $height", Charsets.UTF_8)
+        .toString()
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.nypl.simplified.books.covers
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import com.squareup.picasso.Picasso
+import com.squareup.picasso.Request
+import com.squareup.picasso.RequestHandler
+import java.io.IOException
+import java.net.URI
+
+/**
+ * A request handler that serves scaled covers from a [BookCoverDiskCache]. Requests for
+ * covers that aren't in the cache are left to the other request handlers.
+ */
+
+class BookCoverDiskCacheRequestHandler(
+  private val diskCache: BookCoverDiskCache
+) : RequestHandler() {
+
+  override fun canHandleRequest(
+    data: Request
+  ): Boolean {
+    if (!isCacheable(data)) {
+      return false
+    }
+    return this.diskCache.contains(
+      URI.create(data.uri.toString()),
+      data.targetWidth,
+      data.targetHeight
+    )
+  }
+
+  override fun load(
+    request: Request,
+    networkPolicy: Int
+  ): Result {
+    val file =
+      this.diskCache.get(URI.create(request.uri.toString()), request.targetWidth, request.targetHeight)
+        ?: throw IOException("Cover is no longer cached: ${request.uri}")
+
+    val options = BitmapFactory.Options()
+    options.inPreferredConfig = request.config ?: Bitmap.Config.ARGB_8888
+    options.inMutable = true
+    val bitmap =
+      BitmapFactory.decodeFile(file.path, options)
+        ?: throw IOException("Could not decode cached cover: ${request.uri}")
+    return Result(bitmap, Picasso.LoadedFrom.DISK)
+  }
+
+  companion object {
+
+    /**
+     * @return `true` if the given request is for a remote cover at a specific size
+     */
+
+    fun isCacheable(data: Request): Boolean {
+      val scheme = data.uri?.scheme ?: return false
+      return isCacheable(scheme, data.targetWidth, data.targetHeight)
+    }
+
+    /**
+     * @return `true` if a cover at the given URI and size can be stored in the cache
+     */
+
+    fun isCacheable(
+      uri: URI,
+      width: Int,
+      height: Int
+    ): Boolean {
+      val scheme = uri.scheme ?: return false
+      return isCacheable(scheme, width, height)
+    }
+
+    private fun isCacheable(
+      scheme: String,
+      width: Int,
+      height: Int
+    ): Boolean {
+      if (scheme != "http" && scheme != "https") {
+        return false
+      }
+      return width > 0 || height > 0
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package org.nypl.simplified.books.covers
+
+import android.graphics.Bitmap
+import com.squareup.picasso.Transformation
+import org.slf4j.LoggerFactory
+import java.net.URI
+
+/**
+ * An image transformer that stores a scaled cover in a [BookCoverDiskCache], and otherwise
+ * leaves the cover unchanged. This must be the first transformation applied to a cover so
+ * that the cover is stored before anything, such as a badge, is drawn onto it.
+ */
+
+class BookCoverDiskCacheWriter(
+  private val diskCache: BookCoverDiskCache,
+  private val uri: URI,
+  private val width: Int,
+  private val height: Int
+) : Transformation {
+
+  private val logger =
+    LoggerFactory.getLogger(BookCoverDiskCacheWriter::class.java)
+
+  override fun key(): String {
+    return "org.nypl.simplified.books.covers.BookCoverDiskCacheWriter"
+  }
+
+  override fun transform(source: Bitmap): Bitmap {
+    if (this.diskCache.contains(this.uri, this.width, this.height)) {
+      return source
+    }
+
+    try {
+      this.diskCache.put(this.uri, this.width, this.height) { stream ->
+        source.compress(Bitmap.CompressFormat.JPEG, 90, stream)
+      }
+    } catch (e: Exception) {
+      this.logger.debug("could not cache cover {}: ", this.uri, e)
+    }
+    return source
+  }
+}
@@ -1,10 +1,13 @@
 package org.nypl.simplified.books.covers
 
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
 import com.io7m.jnull.NullCheck
 import com.io7m.jnull.Nullable
 import com.squareup.picasso.Picasso.LoadedFrom
 import com.squareup.picasso.Request
 import com.squareup.picasso.RequestHandler
+import org.slf4j.LoggerFactory
 import java.io.IOException
 import java.net.URI
 
@@ -12,13 +15,20 @@ import java.net.URI
  * A Picasso request handler.
  *
  * This delegates requests for URIs that have a scheme "generated-cover" to the given
- * book generator instead of trying to load data from the network or disk.
+ * book generator instead of trying to load data from the network or disk. A generated
+ * cover URI encodes the title and author, so a cover generated at a given size is
+ * stored in the given disk cache, if any, and is read back from there the next time
+ * it is needed instead of being drawn again.
  */
 
 class BookCoverGeneratorRequestHandler(
-  private val generator: BookCoverGeneratorType
+  private val generator: BookCoverGeneratorType,
+  private val diskCache: BookCoverDiskCache? = null
 ) : RequestHandler() {
 
+  private val logger =
+    LoggerFactory.getLogger(BookCoverGeneratorRequestHandler::class.java)
+
   override fun canHandleRequest(@Nullable requestNullable: Request): Boolean {
     val data = NullCheck.notNull(requestNullable)
     val uri = URI.create(data.uri.toString())
@@ -32,14 +42,51 @@ class BookCoverGeneratorRequestHandler(
   ): Result {
     try {
       val request = NullCheck.notNull(requestNullable)
+      val uri = NullCheck.notNull(URI.create(request.uri.toString()))
+      val cached = this.loadCached(request, uri)
+      if (cached != null) {
+        return Result(cached, LoadedFrom.DISK)
+      }
+
       val bitmap = this.generator.generateImage(
-        NullCheck.notNull(URI.create(request.uri.toString())),
+        uri,
         request.targetWidth,
         request.targetHeight
       )
+      this.storeCached(request, uri, bitmap)
       return Result(bitmap, LoadedFrom.MEMORY)
     } catch (e: Throwable) {
       throw IOException(e)
     }
   }
+
+  private fun loadCached(
+    request: Request,
+    uri: URI
+  ): Bitmap? {
+    val file =
+      this.diskCache?.get(uri, request.targetWidth, request.targetHeight) ?: return null
+    val options = BitmapFactory.Options()
+    options.inPreferredConfig = request.config ?: Bitmap.Config.RGB_565
+    options.inMutable = true
+    return BitmapFactory.decodeFile(file.path, options)
+  }
+
+  /**
+   * Generated covers are mostly flat areas of color, and so are stored losslessly.
+   */
+
+  private fun storeCached(
+    request: Request,
+    uri: URI,
+    bitmap: Bitmap
+  ) {
+    try {
+      this.diskCache?.put(uri, request.targetWidth, request.targetHeight) { stream ->
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream)
+      }
+    } catch (e: Exception) {
+      this.logger.debug("could not cache generated cover {}: ", uri, e)
+    }
+  }
 }
@@ -11,14 +11,17 @@ import com.google.common.util.concurrent.SettableFuture
 import com.io7m.jfunctional.OptionType
 import com.io7m.jfunctional.Some
 import com.squareup.picasso.Callback
+import com.squareup.picasso.MemoryPolicy
 import com.squareup.picasso.Picasso
 import com.squareup.picasso.Target
 import org.librarysimplified.books.covers.R
 import org.nypl.simplified.books.book_registry.BookRegistryReadableType
 import org.nypl.simplified.books.bundled.api.BundledContentResolverType
 import org.nypl.simplified.feeds.api.FeedEntry
+import org.nypl.simplified.metrics.api.PerformanceMetrics
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
+import java.io.File
 import java.io.IOException
 import java.net.URI
 import java.util.concurrent.ExecutorService
@@ -31,7 +34,8 @@ class BookCoverProvider private constructor(
   private val bookRegistry: BookRegistryReadableType,
   private val coverGenerator: BookCoverGeneratorType,
   private val picasso: Picasso,
-  private val badgeLookup: BookCoverBadgeLookupType
+  private val badgeLookup: BookCoverBadgeLookupType,
+  private val diskCache: BookCoverDiskCache
 ) : BookCoverProviderType {
 
   private val logger: Logger = LoggerFactory.getLogger(BookCoverProvider::class.java)
@@ -62,13 +66,16 @@ class BookCoverProvider private constructor(
   ): FluentFuture<Unit> {
     val future = SettableFuture.create<Unit>()
     val uriGenerated = this.generateCoverURI(entry)
+    val timeStart = loadTimer.start()
 
     val callbackFinal = object : Callback {
       override fun onSuccess() {
+        loadTimer.stop(timeStart)
         future.set(Unit)
       }
 
       override fun onError(e: Exception) {
+        loadFailures.increment()
         val ioException =
           IOException(
             StringBuilder(128)
@@ -87,7 +94,12 @@ class BookCoverProvider private constructor(
       }
     }
 
-    val badgePainter = BookCoverBadgePainter(entry, this.badgeLookup, badgeOffset)
+    val badgePainter =
+      if (hasBadge) {
+        BookCoverBadgePainter.create(entry, this.badgeLookup, badgeOffset)
+      } else {
+        null
+      }
     if (uriSpecified != null) {
       this.logger.debug("{}: {}: loading specified uri {}", tag, entry.bookID, uriSpecified)
 
@@ -99,8 +111,11 @@ class BookCoverProvider private constructor(
       if (width > 0 || height > 0) {
         requestCreator.resize(width, height)
       }
+      if (BookCoverDiskCacheRequestHandler.isCacheable(uriSpecified, width, height)) {
+        requestCreator.transform(this.diskCacheWriterFor(uriSpecified, width, height))
+      }
 
-      if (hasBadge) {
+      if (badgePainter != null) {
         requestCreator.transform(badgePainter)
       }
 
@@ -117,7 +132,7 @@ class BookCoverProvider private constructor(
         requestCreator.resize(width, height)
       }
 
-      if (hasBadge) {
+      if (badgePainter != null) {
         requestCreator.transform(badgePainter)
       }
 
@@ -248,6 +263,49 @@ class BookCoverProvider private constructor(
     }
   }
 
+  private fun diskCacheWriterFor(
+    uri: URI,
+    width: Int,
+    height: Int
+  ): BookCoverDiskCacheWriter {
+    return BookCoverDiskCacheWriter(this.diskCache, uri, width, height)
+  }
+
+  override fun prefetchThumbnails(
+    entries: List<FeedEntry.FeedEntryOPDS>,
+    width: Int,
+    height: Int
+  ) {
+    if (width <= 0 && height <= 0) {
+      return
+    }
+
+    /*
+     * Generated covers are cheap to produce, so only remote thumbnails are prefetched.
+     * Prefetched thumbnails only go to the disk cache; the memory cache holds thumbnails
+     * with their badges, and prefetched thumbnails don't have them yet.
+     */
+
+    for (entry in entries) {
+      val uri = this.thumbnailURIOf(entry) ?: continue
+      if (!BookCoverDiskCacheRequestHandler.isCacheable(uri, width, height)) {
+        continue
+      }
+      if (this.diskCache.contains(uri, width, height)) {
+        continue
+      }
+
+      prefetchCount.increment()
+      this.picasso.load(uri.toString())
+        .tag(this.thumbnailTag)
+        .priority(Picasso.Priority.LOW)
+        .memoryPolicy(MemoryPolicy.NO_STORE)
+        .resize(width, height)
+        .transform(this.diskCacheWriterFor(uri, width, height))
+        .fetch()
+    }
+  }
+
   override fun loadingThumbnailsPause() {
     this.picasso.pauseTag(this.thumbnailTag)
   }
@@ -258,6 +316,13 @@ class BookCoverProvider private constructor(
 
   companion object {
 
+    private val loadTimer =
+      PerformanceMetrics.timer("covers.load")
+    private val loadFailures =
+      PerformanceMetrics.counter("covers.load.failed")
+    private val prefetchCount =
+      PerformanceMetrics.counter("covers.prefetch")
+
     /**
      * Create a new cover provider.
      *
@@ -267,6 +332,8 @@ class BookCoverProvider private constructor(
      * @param bookRegistry The book registry
      * @param coverGenerator A cover generator
      * @param executor An executor
+     * @param diskCacheDirectory The directory that holds scaled and generated covers
+     * @param diskCacheBytes The maximum size of the covers on disk
      *
      * @return A new cover provider
      */
@@ -279,18 +346,24 @@ class BookCoverProvider private constructor(
       bundledContentResolver: BundledContentResolverType,
       executor: ExecutorService,
       debugCacheIndicators: Boolean,
-      debugLogging: Boolean
+      debugLogging: Boolean,
+      diskCacheDirectory: File = File(context.cacheDir, "covers"),
+      diskCacheBytes: Long = 32L * 1024L * 1024L
     ): BookCoverProviderType {
+      val diskCache = BookCoverDiskCache(diskCacheDirectory, diskCacheBytes)
+      executor.execute { diskCache.open() }
+
       val picassoBuilder = Picasso.Builder(context)
       picassoBuilder.defaultBitmapConfig(Bitmap.Config.RGB_565)
       picassoBuilder.indicatorsEnabled(debugCacheIndicators)
       picassoBuilder.loggingEnabled(debugLogging)
-      picassoBuilder.addRequestHandler(BookCoverGeneratorRequestHandler(coverGenerator))
+      picassoBuilder.addRequestHandler(BookCoverDiskCacheRequestHandler(diskCache))
+      picassoBuilder.addRequestHandler(BookCoverGeneratorRequestHandler(coverGenerator, diskCache))
       picassoBuilder.addRequestHandler(BookCoverBundledRequestHandler(bundledContentResolver))
       picassoBuilder.executor(executor)
 
       val picasso = picassoBuilder.build()
-      return BookCoverProvider(bookRegistry, coverGenerator, picasso, badgeLookup)
+      return BookCoverProvider(bookRegistry, coverGenerator, picasso, badgeLookup, diskCache)
     }
   }
 }
@@ -24,6 +24,22 @@ interface BookCoverProviderType {
 
   fun loadingThumbnailsContinue()
 
+  /**
+   * Fetch the thumbnails of the given entries in the background at the given size, so
+   * that they can be shown without delay when they are later loaded at the same size
+   * with [loadThumbnailInto]. Prefetching is paused along with the loading of thumbnails.
+   *
+   * @param entries The feed entries
+   * @param width Use 0 as desired dimension to resize keeping aspect ratio.
+   * @param height Use 0 as desired dimension to resize keeping aspect ratio.
+   */
+
+  fun prefetchThumbnails(
+    entries: List<FeedEntry.FeedEntryOPDS>,
+    width: Int,
+    height: Int
+  )
+
   /**
    * Load or generate a thumbnail based on `entry` into the image view
    * `imageView`, at width `width` and height `height`.
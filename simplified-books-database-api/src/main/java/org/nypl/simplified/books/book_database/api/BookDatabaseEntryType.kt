@@ -190,6 +190,19 @@ sealed class BookDatabaseEntryFormatHandle {
     @Throws(IOException::class)
     abstract fun copyInBook(file: File)
 
+    /**
+     * Move the given EPUB file into the directory as the book data. The file is
+     * renamed into place if it is on the same filesystem as the directory, and
+     * does not exist afterwards.
+     *
+     * @param file The file to be moved
+     *
+     * @throws IOException On I/O errors
+     */
+
+    @Throws(IOException::class)
+    abstract fun moveInBook(file: File)
+
     /**
      * Set the last read location for the book.
      *
@@ -235,6 +248,19 @@ sealed class BookDatabaseEntryFormatHandle {
     @Throws(IOException::class)
     abstract fun copyInBook(file: File)
 
+    /**
+     * Move the given PDF file into the directory as the book data. The file is
+     * renamed into place if it is on the same filesystem as the directory, and
+     * does not exist afterwards.
+     *
+     * @param file The file to be moved
+     *
+     * @throws IOException On I/O errors
+     */
+
+    @Throws(IOException::class)
+    abstract fun moveInBook(file: File)
+
     /**
      * Set the last read location for the PDF book.
      *
@@ -293,9 +319,11 @@ sealed class BookDatabaseEntryFormatHandle {
     abstract fun copyInBook(file: File)
 
     /**
-     * Move the given audio book file into the directory as the book data.
+     * Move the given audio book file into the directory as the book data. The file is
+     * renamed into place if it is on the same filesystem as the directory, and does
+     * not exist afterwards.
      *
-     * @param file The file to be copied
+     * @param file The file to be moved
      *
      * @throws IOException On I/O errors
      */
@@ -1,12 +1,17 @@
 dependencies {
     implementation(project(":simplified-accounts-api"))
+    implementation(project(":simplified-accounts-database-api"))
     implementation(project(":simplified-bookmarks-api"))
     implementation(project(":simplified-books-api"))
     implementation(project(":simplified-books-database-api"))
     implementation(project(":simplified-books-formats-api"))
     implementation(project(":simplified-files"))
     implementation(project(":simplified-json-core"))
+    implementation(project(":simplified-metrics-api"))
+    implementation(project(":simplified-migration-spi"))
     implementation(project(":simplified-opds-core"))
+    implementation(project(":simplified-presentableerror-api"))
+    implementation(project(":simplified-taskrecorder-api"))
 
     implementation(libs.google.failureaccess)
     implementation(libs.google.guava)
@@ -23,5 +28,6 @@ dependencies {
     implementation(libs.palace.audiobook.manifest.parser.api)
     implementation(libs.palace.audiobook.parser.api)
     implementation(libs.palace.drm.core)
+    implementation(libs.rxjava2)
     implementation(libs.slf4j)
 }
@@ -1,7 +1,6 @@
 package org.nypl.simplified.books.book_database
 
 import android.content.Context
-import com.io7m.jnull.Nullable
 import net.jcip.annotations.GuardedBy
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.books.api.Book
@@ -13,16 +12,23 @@ import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.files.DirectoryUtilities
 import org.nypl.simplified.files.FileUtilities
 import org.nypl.simplified.json.core.JSONSerializerUtilities
+import org.nypl.simplified.metrics.api.PerformanceMetrics
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSJSONParserType
 import org.nypl.simplified.opds.core.OPDSJSONSerializerType
 import org.slf4j.LoggerFactory
+import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.FileInputStream
 import java.io.IOException
 import java.util.SortedSet
 import java.util.TreeSet
+import java.util.concurrent.Callable
 import java.util.concurrent.ConcurrentSkipListMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * The default implementation of the [BookDatabaseType] interface.
@@ -38,7 +44,9 @@ class BookDatabase private constructor(
 ) : BookDatabaseType {
 
   /**
-   * A thread-safe map exposing read-only snapshots of database entries.
+   * A thread-safe map exposing read-only snapshots of database entries. Entries that
+   * could not be read when the database was opened are remembered along with the error,
+   * so that the error is reported when the entry is requested.
    */
 
   private class BookMaps internal constructor() {
@@ -49,10 +57,22 @@ class BookDatabase private constructor(
     internal val entries: ConcurrentSkipListMap<BookID, BookDatabaseEntry> =
       ConcurrentSkipListMap()
 
+    @GuardedBy("mapsLock")
+    internal val failed: MutableMap<BookID, IOException> =
+      HashMap()
+
     internal fun contains(key: BookID): Boolean {
       synchronized(mapsLock) {
         LOG.debug("BookMaps.contains")
-        return this.entries.containsKey(key)
+        return this.entries.containsKey(key) || this.failed.containsKey(key)
+      }
+    }
+
+    internal fun keys(): SortedSet<BookID> {
+      synchronized(this.mapsLock) {
+        val keys = TreeSet(this.entries.keys)
+        keys.addAll(this.failed.keys)
+        return keys
       }
     }
 
@@ -60,6 +80,7 @@ class BookDatabase private constructor(
       synchronized(this.mapsLock) {
         LOG.debug("BookMaps.clear")
         this.entries.clear()
+        this.failed.clear()
       }
     }
 
@@ -67,15 +88,40 @@ class BookDatabase private constructor(
       synchronized(this.mapsLock) {
         LOG.debug("BookMaps.delete: {}", bookID.value())
         this.entries.remove(bookID)
+        this.failed.remove(bookID)
       }
     }
 
     internal fun addEntry(entry: BookDatabaseEntry) {
       synchronized(this.mapsLock) {
         LOG.debug("BookMaps.addEntry: {}", entry.id.value())
+        this.failed.remove(entry.id)
         this.entries.put(entry.id, entry)
       }
     }
+
+    internal fun addFailed(
+      bookID: BookID,
+      exception: IOException
+    ) {
+      synchronized(this.mapsLock) {
+        this.failed[bookID] = exception
+      }
+    }
+
+    /**
+     * Find the entry for the given book.
+     *
+     * @throws IOException If the entry could not be read when the database was opened
+     */
+
+    @Throws(IOException::class)
+    internal fun find(bookID: BookID): BookDatabaseEntry? {
+      synchronized(this.mapsLock) {
+        this.failed[bookID]?.let { throw it }
+        return this.entries[bookID]
+      }
+    }
   }
 
   override fun owner(): AccountID {
@@ -83,9 +129,7 @@ class BookDatabase private constructor(
   }
 
   override fun books(): SortedSet<BookID> {
-    synchronized(this.maps.mapsLock) {
-      return TreeSet(this.maps.entries.keys)
-    }
+    return this.maps.keys()
   }
 
   @Throws(BookDatabaseException::class)
@@ -111,20 +155,33 @@ class BookDatabase private constructor(
         LOG.debug("Adding entry for {}", id)
       }
       try {
+        /*
+         * If the stored entry is identical to the new one, there's nothing to write and
+         * the existing format handles remain valid. If only fields that aren't persisted
+         * differ, the stored entry is updated in memory without touching the disk.
+         */
+
+        val current = this.findOrNull(id)
+        val currentEntry = current?.opdsEntry
+        if (current != null && currentEntry == entry) {
+          LOG.debug("Entry for {} is unchanged", id)
+          return current
+        }
+
+        val text = serializeEntry(this.serializer, entry)
+        if (current != null && serializeEntry(this.serializer, currentEntry!!) == text) {
+          LOG.debug("Entry for {} is unchanged on disk", id)
+          current.setOPDSEntryInMemory(entry)
+          return current
+        }
+
         val bookDir = File(this.directory, id.value())
         DirectoryUtilities.directoryCreate(bookDir)
 
-        val fileMeta = File(bookDir, "meta.json")
-        val fileMetaTmp = File(bookDir, "meta.json.tmp")
-
         val cover = fileOrNull(directory, BookDatabaseEntry.COVER_FILENAME)
         val thumb = fileOrNull(directory, BookDatabaseEntry.THUMB_FILENAME)
 
-        FileUtilities.fileWriteUTF8Atomically(
-          fileMeta,
-          fileMetaTmp,
-          JSONSerializerUtilities.serializeToString(this.serializer.serializeFeedEntry(entry))
-        )
+        writeEntryText(this.directory, bookDir, id, text)
 
         val book =
           Book(
@@ -139,6 +196,7 @@ class BookDatabase private constructor(
         val dbEntry =
           BookDatabaseEntry(
             context = this.context,
+            databaseDirectory = this.directory,
             bookDir = bookDir,
             serializer = this.serializer,
             formats = this.formats,
@@ -154,19 +212,41 @@ class BookDatabase private constructor(
     }
   }
 
+  /**
+   * Find the entry for the given book, treating an entry that cannot be constructed as
+   * missing so that it can be overwritten.
+   */
+
+  private fun findOrNull(id: BookID): BookDatabaseEntry? {
+    return try {
+      this.maps.find(id)
+    } catch (e: IOException) {
+      LOG.debug("Replacing unreadable entry for {}: ", id, e)
+      null
+    }
+  }
+
   @Throws(BookDatabaseException::class)
   override fun entry(id: BookID): BookDatabaseEntryType {
-    synchronized(this.maps.mapsLock) {
-      return this.maps.entries[id] ?: throw BookDatabaseException(
-        "Nonexistent book entry: " + id.value(), emptyList()
-      )
-    }
+    val entry =
+      try {
+        this.maps.find(id)
+      } catch (e: IOException) {
+        throw BookDatabaseException("Could not load book entry: " + id.value(), listOf<Exception>(e))
+      }
+
+    return entry ?: throw BookDatabaseException(
+      "Nonexistent book entry: " + id.value(), emptyList()
+    )
   }
 
   companion object {
 
     private val LOG = LoggerFactory.getLogger(BookDatabase::class.java)
 
+    private val openTimer =
+      PerformanceMetrics.timer("books.database.open")
+
     @Throws(BookDatabaseException::class)
     fun open(
       context: Context,
@@ -177,19 +257,44 @@ class BookDatabase private constructor(
       directory: File
     ): BookDatabaseType {
       LOG.debug("opening book database: {}", directory)
+      val timeStart = System.nanoTime()
       val maps = BookMaps()
       val errors = ArrayList<Exception>()
+      var records: Map<BookID, ByteArray>? = null
+
+      synchronized(BookDatabaseIndex.lockFor(directory)) {
+        if (BookDatabaseIndex.exists(directory)) {
+          try {
+            records = BookDatabaseIndex.load(directory)
+          } catch (e: IOException) {
+            errors.add(e)
+          }
+        } else {
+          openAllBooks(
+            context = context,
+            parser = parser,
+            serializer = serializer,
+            formats = formats,
+            account = owner,
+            directory = directory,
+            maps = maps,
+            errors = errors
+          )
 
-      openAllBooks(
-        context = context,
-        parser = parser,
-        serializer = serializer,
-        formats = formats,
-        account = owner,
-        directory = directory,
-        maps = maps,
-        errors = errors
-      )
+          /*
+           * A database that doesn't contain any books in the legacy layout can start
+           * using an index immediately.
+           */
+
+          if (errors.isEmpty() && maps.keys().isEmpty()) {
+            try {
+              BookDatabaseIndex.create(directory)
+            } catch (e: IOException) {
+              errors.add(e)
+            }
+          }
+        }
+      }
 
       if (errors.isNotEmpty()) {
         errors.forEach { exception -> LOG.error("error opening book database: ", exception) }
@@ -198,13 +303,244 @@ class BookDatabase private constructor(
         )
       }
 
-      return BookDatabase(
+      records?.let { indexed ->
+        openIndexEntries(
+          context = context,
+          parser = parser,
+          serializer = serializer,
+          formats = formats,
+          account = owner,
+          directory = directory,
+          maps = maps,
+          records = indexed
+        )
+      }
+
+      val database =
+        BookDatabase(
+          context = context,
+          owner = owner,
+          directory = directory,
+          maps = maps,
+          serializer = serializer,
+          formats = formats
+        )
+
+      openTimer.stop(timeStart)
+      LOG.info(
+        "[{}]: opened {} books in {}ms",
+        owner.uuid,
+        maps.keys().size,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timeStart)
+      )
+      openFormatsInBackground(owner, maps, timeStart)
+      return database
+    }
+
+    /**
+     * The pool on which entries are decoded and their format handles created. The pool
+     * is shared between all databases, and is bounded so that opening several large
+     * databases at once doesn't swamp the device.
+     */
+
+    private val constructionExecutor: ExecutorService by lazy {
+      val threads = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+      val counter = AtomicInteger(0)
+      Executors.newFixedThreadPool(threads) { runnable ->
+        val thread = Thread(runnable, "simplified-book-database-open-${counter.getAndIncrement()}")
+        thread.isDaemon = true
+        thread.priority = Thread.MIN_PRIORITY
+        thread
+      }
+    }
+
+    /**
+     * Create the format handles of every entry in parallel, so that they're ready by the
+     * time something asks for them. Anything that asks first simply creates the handles
+     * itself.
+     */
+
+    private fun openFormatsInBackground(
+      owner: AccountID,
+      maps: BookMaps,
+      timeStart: Long
+    ) {
+      val pending = maps.keys().toList()
+      if (pending.isEmpty()) {
+        return
+      }
+
+      val remaining = AtomicInteger(pending.size)
+      for (bookId in pending) {
+        constructionExecutor.execute {
+          try {
+            maps.find(bookId)?.formatHandles
+          } catch (e: Exception) {
+            LOG.error("[{}]: could not open book {}: ", owner.uuid, bookId.value(), e)
+          } finally {
+            if (remaining.decrementAndGet() == 0) {
+              LOG.info(
+                "[{}]: opened the formats of {} books in {}ms",
+                owner.uuid,
+                pending.size,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timeStart)
+              )
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Write the OPDS entry for a book, either to the index or, if the database has not
+     * been migrated to an index, to the book's own metadata file.
+     */
+
+    @Throws(IOException::class)
+    internal fun writeEntry(
+      serializer: OPDSJSONSerializerType,
+      directory: File,
+      bookDir: File,
+      id: BookID,
+      entry: OPDSAcquisitionFeedEntry
+    ) {
+      writeEntryText(directory, bookDir, id, serializeEntry(serializer, entry))
+    }
+
+    @Throws(IOException::class)
+    internal fun serializeEntry(
+      serializer: OPDSJSONSerializerType,
+      entry: OPDSAcquisitionFeedEntry
+    ): String {
+      return JSONSerializerUtilities.serializeToString(serializer.serializeFeedEntry(entry))
+    }
+
+    @Throws(IOException::class)
+    private fun writeEntryText(
+      directory: File,
+      bookDir: File,
+      id: BookID,
+      text: String
+    ) {
+      synchronized(BookDatabaseIndex.lockFor(directory)) {
+        if (BookDatabaseIndex.exists(directory)) {
+          BookDatabaseIndex.appendPut(directory, id, text.toByteArray(Charsets.UTF_8))
+        } else {
+          val fileMeta = File(bookDir, BookDatabaseIndex.LEGACY_META_FILE_NAME)
+          val fileMetaTmp = File(bookDir, BookDatabaseIndex.LEGACY_META_FILE_NAME + ".tmp")
+          try {
+            FileUtilities.fileWriteUTF8Atomically(fileMeta, fileMetaTmp, text)
+          } finally {
+            try {
+              FileUtilities.fileDelete(fileMetaTmp)
+            } catch (ignored: IOException) {
+              LOG.error("could not delete temporary file: {}: ", fileMetaTmp, ignored)
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Remove the OPDS entry for a book from the index, if the database has one.
+     */
+
+    @Throws(IOException::class)
+    internal fun removeEntry(
+      directory: File,
+      id: BookID
+    ) {
+      synchronized(BookDatabaseIndex.lockFor(directory)) {
+        if (BookDatabaseIndex.exists(directory)) {
+          BookDatabaseIndex.appendDelete(directory, id)
+        }
+      }
+    }
+
+    /**
+     * Decode the entries read from the index of the database. The entries are decoded in
+     * parallel, and this returns once all of them have been decoded.
+     */
+
+    private fun openIndexEntries(
+      context: Context,
+      parser: OPDSJSONParserType,
+      serializer: OPDSJSONSerializerType,
+      formats: BookFormatSupportType,
+      account: AccountID,
+      directory: File,
+      maps: BookMaps,
+      records: Map<BookID, ByteArray>
+    ) {
+      LOG.debug("decoding {} books in {}", records.size, directory)
+
+      val tasks =
+        records.map { (bookId, payload) ->
+          Callable {
+            try {
+              val bookDirectory = File(directory, bookId.value())
+              DirectoryUtilities.directoryCreate(bookDirectory)
+
+              val entry =
+                ByteArrayInputStream(payload).use { stream ->
+                  parser.parseAcquisitionFeedEntryFromStream(stream)
+                }
+
+              maps.addEntry(
+                createEntry(
+                  context = context,
+                  serializer = serializer,
+                  formats = formats,
+                  accountID = account,
+                  databaseDirectory = directory,
+                  bookDirectory = bookDirectory,
+                  bookId = bookId,
+                  entry = entry,
+                  maps = maps
+                )
+              )
+            } catch (e: IOException) {
+              LOG.error("[{}]: could not open book {}: ", account.uuid, bookId.value(), e)
+              maps.addFailed(bookId, e)
+            }
+          }
+        }
+
+      constructionExecutor.invokeAll(tasks)
+    }
+
+    private fun createEntry(
+      context: Context,
+      serializer: OPDSJSONSerializerType,
+      formats: BookFormatSupportType,
+      accountID: AccountID,
+      databaseDirectory: File,
+      bookDirectory: File,
+      bookId: BookID,
+      entry: OPDSAcquisitionFeedEntry,
+      maps: BookMaps
+    ): BookDatabaseEntry {
+      val cover = fileOrNull(bookDirectory, BookDatabaseEntry.COVER_FILENAME)
+      val thumb = fileOrNull(bookDirectory, BookDatabaseEntry.THUMB_FILENAME)
+
+      val book =
+        Book(
+          id = bookId,
+          account = accountID,
+          cover = cover,
+          thumbnail = thumb,
+          entry = entry,
+          formats = listOf()
+        )
+
+      return BookDatabaseEntry(
         context = context,
-        owner = owner,
-        directory = directory,
-        maps = maps,
+        databaseDirectory = databaseDirectory,
+        bookDir = bookDirectory,
         serializer = serializer,
-        formats = formats
+        formats = formats,
+        bookRef = book,
+        onDelete = Runnable { maps.delete(bookId) }
       )
     }
 
@@ -228,75 +564,44 @@ class BookDatabase private constructor(
 
       val bookDirs = directory.list()
       if (bookDirs != null) {
-        for (bookID in bookDirs) {
-          LOG.debug("opening book: {}/{}", directory, bookID)
-          val bookDirectory = File(directory, bookID)
-          val entry = openOneEntry(
-            context = context,
-            parser = parser,
-            serializer = serializer,
-            formats = formats,
-            accountID = account,
-            directory = bookDirectory,
-            maps = maps,
-            errors = errors,
-            name = bookID
-          ) ?: continue
-          maps.addEntry(entry)
-        }
-      }
-    }
-
-    @Nullable
-    private fun openOneEntry(
-      context: Context,
-      parser: OPDSJSONParserType,
-      serializer: OPDSJSONSerializerType,
-      formats: BookFormatSupportType,
-      accountID: AccountID,
-      directory: File,
-      maps: BookMaps,
-      errors: MutableList<Exception>,
-      name: String
-    ): BookDatabaseEntry? {
-      try {
-        LOG.debug("open: {}", directory)
-
-        if (!directory.isDirectory) {
-          return null
-        }
-
-        val bookId = BookID.create(name)
-        val fileMeta = File(directory, "meta.json")
-        val entry: OPDSAcquisitionFeedEntry =
-          FileInputStream(fileMeta).use { stream ->
-            parser.parseAcquisitionFeedEntryFromStream(stream)
+        for (name in bookDirs) {
+          val bookDirectory = File(directory, name)
+          if (!bookDirectory.isDirectory) {
+            continue
           }
 
-        val cover = fileOrNull(directory, BookDatabaseEntry.COVER_FILENAME)
-        val thumb = fileOrNull(directory, BookDatabaseEntry.THUMB_FILENAME)
-
-        val book =
-          Book(
-            id = bookId,
-            account = accountID,
-            cover = cover,
-            thumbnail = thumb,
-            entry = entry,
-            formats = listOf()
-          )
-
-        return BookDatabaseEntry(
-          context = context,
-          bookDir = directory,
-          serializer = serializer,
-          formats = formats,
-          bookRef = book,
-          onDelete = Runnable { maps.delete(bookId) }
-        )
-      } catch (e: IOException) {
-        errors.add(e)
-        return null
+          /*
+           * The metadata files are read here, while the caller holds the index lock,
+           * because the index migration deletes them once it has copied them. A damaged
+           * entry is still only reported when it is requested.
+           */
+
+          val bookId = BookID.create(name)
+          LOG.debug("open: {}", bookDirectory)
+          try {
+            val fileMeta = File(bookDirectory, BookDatabaseIndex.LEGACY_META_FILE_NAME)
+            val entry: OPDSAcquisitionFeedEntry =
+              FileInputStream(fileMeta).use { stream ->
+                parser.parseAcquisitionFeedEntryFromStream(stream)
+              }
+
+            maps.addEntry(
+              createEntry(
+                context = context,
+                serializer = serializer,
+                formats = formats,
+                accountID = account,
+                databaseDirectory = directory,
+                bookDirectory = bookDirectory,
+                bookId = bookId,
+                entry = entry,
+                maps = maps
+              )
+            )
+          } catch (e: IOException) {
+            maps.addFailed(bookId, e)
+          }
+        }
       }
     }
   }
@@ -15,7 +15,6 @@ import org.nypl.simplified.books.book_database.api.BookFormats
 import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.files.DirectoryUtilities
 import org.nypl.simplified.files.FileUtilities
-import org.nypl.simplified.json.core.JSONSerializerUtilities
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSJSONSerializerType
 import org.slf4j.Logger
@@ -31,6 +30,7 @@ import java.util.EnumMap
 
 internal class BookDatabaseEntry internal constructor(
   private val context: Context,
+  private val databaseDirectory: File,
   private val bookDir: File,
   private val serializer: OPDSJSONSerializerType,
   private val formats: BookFormatSupportType,
@@ -49,15 +49,47 @@ internal class BookDatabaseEntry internal constructor(
 
   internal val id: BookID = this.bookRef.id
 
+  /**
+   * `true` if the format handles have been created. Format handles read their own files
+   * when they are created, so creation is deferred until something needs either the
+   * handles or the list of formats in the book.
+   */
+
+  @GuardedBy("bookLock")
+  private var formatHandlesCreated: Boolean = false
+
   override val book: Book
     get() = synchronized(this.bookLock) {
       Preconditions.checkArgument(!this.deleted, "Entry must not have been deleted")
+      this.createFormatHandlesIfRequired()
       return this.bookRef
     }
 
+  /**
+   * The OPDS entry of the book. Unlike [book], this does not create the format handles.
+   */
+
+  internal val opdsEntry: OPDSAcquisitionFeedEntry
+    get() = synchronized(this.bookLock) {
+      this.bookRef.entry
+    }
+
+  /**
+   * Replace the OPDS entry of the book without writing it to disk. This is only valid
+   * if the new entry serializes identically to the stored one, and therefore has the
+   * same acquisitions.
+   */
+
+  internal fun setOPDSEntryInMemory(opdsEntry: OPDSAcquisitionFeedEntry) {
+    synchronized(this.bookLock) {
+      this.bookRef = this.bookRef.copy(entry = opdsEntry)
+    }
+  }
+
   override val formatHandles: List<BookDatabaseEntryFormatHandle>
     get() = synchronized(this.bookLock) {
       Preconditions.checkArgument(!this.deleted, "Entry must not have been deleted")
+      this.createFormatHandlesIfRequired()
       return this.formatHandlesRef.values.toList()
     }
 
@@ -96,27 +128,32 @@ internal class BookDatabaseEntry internal constructor(
           }
         }
     }
+  }
 
-    val objectMapper = ObjectMapper()
-    synchronized(this.bookLock) {
-      this.bookRef.entry.acquisitions.forEach { acquisition ->
-        createFormatHandleIfRequired(
-          context = this.context,
-          logger = LOG,
-          owner = this,
-          constructors = this.formatHandleConstructors,
-          ownerDirectory = this.bookDir,
-          onUpdate = { format -> this.onFormatUpdated(format) },
-          existingFormats = this.formatHandlesRef,
-          contentTypes = acquisition.availableFinalContentTypes(),
-          objectMapper = objectMapper,
-          bookFormats = this.formats
-        )
-      }
-
-      this.bookRef =
-        this.bookRef.copy(formats = this.formatHandlesRef.map { (_, handle) -> handle.format })
+  @GuardedBy("bookLock")
+  private fun createFormatHandlesIfRequired() {
+    if (this.formatHandlesCreated) {
+      return
+    }
+    this.formatHandlesCreated = true
+
+    this.bookRef.entry.acquisitions.forEach { acquisition ->
+      createFormatHandleIfRequired(
+        context = this.context,
+        logger = LOG,
+        owner = this,
+        constructors = this.formatHandleConstructors,
+        ownerDirectory = this.bookDir,
+        onUpdate = { format -> this.onFormatUpdated(format) },
+        existingFormats = this.formatHandlesRef,
+        contentTypes = acquisition.availableFinalContentTypes(),
+        objectMapper = OBJECT_MAPPER,
+        bookFormats = this.formats
+      )
     }
+
+    this.bookRef =
+      this.bookRef.copy(formats = this.formatHandlesRef.map { (_, handle) -> handle.format })
   }
 
   private fun onFormatUpdated(format: BookFormat) {
@@ -136,29 +173,20 @@ internal class BookDatabaseEntry internal constructor(
     synchronized(this.bookLock) {
       Preconditions.checkArgument(!this.deleted, "Entry must not have been deleted")
 
-      val fileMeta = File(this.bookDir, "meta.json")
-      val fileMetaTmp = File(this.bookDir, "meta.json.tmp")
-
       try {
         DirectoryUtilities.directoryCreate(this.bookDir)
 
-        FileUtilities.fileWriteUTF8Atomically(
-          fileMeta,
-          fileMetaTmp,
-          JSONSerializerUtilities.serializeToString(
-            this.serializer.serializeFeedEntry(opdsEntry)
-          )
+        BookDatabase.writeEntry(
+          serializer = this.serializer,
+          directory = this.databaseDirectory,
+          bookDir = this.bookDir,
+          id = this.id,
+          entry = opdsEntry
         )
 
         this.bookRef = this.bookRef.copy(entry = opdsEntry)
       } catch (e: IOException) {
         throw BookDatabaseException(e.message, listOf<Exception>(e))
-      } finally {
-        try {
-          FileUtilities.fileDelete(fileMetaTmp)
-        } catch (ignored: IOException) {
-          LOG.error("could not delete temporary file: {}: ", fileMetaTmp, ignored)
-        }
       }
     }
   }
@@ -191,6 +219,7 @@ internal class BookDatabaseEntry internal constructor(
 
       try {
         DirectoryUtilities.directoryDelete(this.bookDir)
+        BookDatabase.removeEntry(this.databaseDirectory, this.id)
         this.onDelete.run()
       } catch (e: IOException) {
         throw BookDatabaseException(e.message, listOf<Exception>(e))
@@ -248,6 +277,13 @@ internal class BookDatabaseEntry internal constructor(
     const val COVER_FILENAME = "cover.jpg"
     const val THUMB_FILENAME = "thumb.jpg"
 
+    /**
+     * The mapper shared by the format handles of all entries. Mappers are thread-safe
+     * once configured, and are expensive to create.
+     */
+
+    private val OBJECT_MAPPER = ObjectMapper()
+
     /**
      * Create a format handle if required. This checks to see if there is a content type that is
      * accepted by any of the available formats, and instantiates one if one doesn't already exist.
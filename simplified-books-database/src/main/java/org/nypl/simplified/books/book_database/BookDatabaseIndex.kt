@@ -0,0 +1,311 @@
+package org.nypl.simplified.books.book_database
+
+import org.nypl.simplified.books.api.BookID
+import org.nypl.simplified.files.FileUtilities
+import org.slf4j.LoggerFactory
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.TreeMap
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.CRC32
+
+/**
+ * A single file holding the serialized OPDS entries of every book in a book database.
+ *
+ * The file is an append-only log of records following a small header. Each record either
+ * associates a book ID with a serialized entry, or removes a book ID. The whole file is
+ * read in one pass when the database is opened, replacing the one file read per book
+ * that the per-directory layout needed. A record that was cut short by an interrupted
+ * append fails its checksum and is discarded along with anything that follows it. When superseded records make up most of the file, the file is rewritten
+ * to contain only the live records.
+ *
+ * Book databases that predate the index keep one `meta.json` file in each book
+ * directory. Such databases continue to work without an index until they are migrated
+ * with [migrate].
+ */
+
+internal object BookDatabaseIndex {
+
+  const val FILE_NAME = "books.idx"
+  const val LEGACY_META_FILE_NAME = "meta.json"
+
+  private const val MAGIC = 0x53424458
+  private const val VERSION = 1
+  private const val HEADER_SIZE = 8
+  private const val RECORD_OVERHEAD = 13
+  private const val OP_PUT: Byte = 1
+  private const val OP_DELETE: Byte = 2
+  private const val COMPACTION_THRESHOLD = 65536L
+
+  private val LOG = LoggerFactory.getLogger(BookDatabaseIndex::class.java)
+
+  private val locks = ConcurrentHashMap<String, Any>()
+
+  /**
+   * The lock that must be held when reading or writing the index (or the legacy
+   * per-book metadata) of the database in the given directory. The same directory may
+   * be accessed by an open database and by a migration at the same time.
+   */
+
+  fun lockFor(directory: File): Any =
+    this.locks.getOrPut(directory.absolutePath) { Any() }
+
+  fun fileOf(directory: File): File =
+    File(directory, FILE_NAME)
+
+  fun exists(directory: File): Boolean =
+    this.fileOf(directory).isFile
+
+  /**
+   * Create an empty index.
+   */
+
+  @Throws(IOException::class)
+  fun create(directory: File) {
+    this.rewrite(directory, mapOf())
+  }
+
+  /**
+   * Load the index in the given directory. The caller must hold [lockFor].
+   *
+   * @return The serialized entry of every book in the index
+   */
+
+  @Throws(IOException::class)
+  fun load(directory: File): Map<BookID, ByteArray> {
+    val file = this.fileOf(directory)
+    val records = HashMap<BookID, ByteArray>()
+
+    val validSize = RandomAccessFile(file, "rw").use { raf ->
+      val channel = raf.channel
+      val size = channel.size()
+      if (size < HEADER_SIZE) {
+        throw IOException("Index $file is truncated")
+      }
+
+      val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size)
+      val magic = buffer.int
+      if (magic != MAGIC) {
+        throw IOException(String.format("Index %s has unrecognized magic number 0x%08x", file, magic))
+      }
+      val version = buffer.int
+      if (version != VERSION) {
+        throw IOException("Index $file has unsupported version $version")
+      }
+
+      val checksum = CRC32()
+      var valid = buffer.position().toLong()
+      while (buffer.hasRemaining()) {
+        val record = this.readRecord(buffer, checksum) ?: break
+        when (record.operation) {
+          OP_PUT -> records[record.id] = record.payload
+          OP_DELETE -> records.remove(record.id)
+        }
+        valid = buffer.position().toLong()
+      }
+
+      if (valid < size) {
+        LOG.warn("discarding {} trailing bytes of incomplete records in {}", size - valid, file)
+        channel.truncate(valid)
+      }
+      valid
+    }
+
+    val liveSize =
+      HEADER_SIZE + records.entries.sumOf { (id, payload) ->
+        this.recordSize(id, payload.size).toLong()
+      }
+
+    if (validSize > COMPACTION_THRESHOLD && validSize > liveSize * 2) {
+      LOG.debug("compacting {} ({} bytes, {} live)", file, validSize, liveSize)
+      this.rewrite(directory, records)
+    }
+    return records
+  }
+
+  /**
+   * Append a record associating the given book with the given serialized entry. The
+   * caller must hold [lockFor].
+   */
+
+  @Throws(IOException::class)
+  fun appendPut(
+    directory: File,
+    id: BookID,
+    payload: ByteArray
+  ) {
+    this.append(directory, OP_PUT, id, payload)
+  }
+
+  /**
+   * Append a record removing the given book. The caller must hold [lockFor].
+   */
+
+  @Throws(IOException::class)
+  fun appendDelete(
+    directory: File,
+    id: BookID
+  ) {
+    this.append(directory, OP_DELETE, id, ByteArray(0))
+  }
+
+  /**
+   * Build an index from the legacy per-book metadata files in the given directory, and
+   * then delete those files. The serialized entries are copied as they are, without
+   * being parsed.
+   *
+   * @return The number of books that were indexed, or `null` if the directory already
+   * had an index
+   */
+
+  @Throws(IOException::class)
+  fun migrate(directory: File): Int? {
+    synchronized(this.lockFor(directory)) {
+      if (this.exists(directory)) {
+        return null
+      }
+
+      val metaFiles = TreeMap<BookID, File>()
+      for (bookDirectory in directory.listFiles() ?: arrayOf()) {
+        val metaFile = File(bookDirectory, LEGACY_META_FILE_NAME)
+        if (!bookDirectory.isDirectory || !metaFile.isFile) {
+          continue
+        }
+        try {
+          metaFiles[BookID.create(bookDirectory.name)] = metaFile
+        } catch (e: IllegalArgumentException) {
+          LOG.warn("ignoring unrecognized book directory {}", bookDirectory)
+        }
+      }
+
+      this.rewrite(directory, metaFiles.mapValues { (_, file) -> FileUtilities.fileReadBytes(file) })
+
+      for (metaFile in metaFiles.values) {
+        try {
+          FileUtilities.fileDelete(metaFile)
+        } catch (e: IOException) {
+          LOG.warn("could not delete {}: ", metaFile, e)
+        }
+      }
+      return metaFiles.size
+    }
+  }
+
+  private fun rewrite(
+    directory: File,
+    records: Map<BookID, ByteArray>
+  ) {
+    val file = this.fileOf(directory)
+    val fileTmp = File(directory, "$FILE_NAME.tmp")
+
+    DataOutputStream(BufferedOutputStream(FileOutputStream(fileTmp))).use { output ->
+      output.writeInt(MAGIC)
+      output.writeInt(VERSION)
+      for ((id, payload) in records) {
+        this.writeRecord(output, OP_PUT, id, payload)
+      }
+    }
+    FileUtilities.fileRename(fileTmp, file)
+  }
+
+  private fun append(
+    directory: File,
+    operation: Byte,
+    id: BookID,
+    payload: ByteArray
+  ) {
+    val file = this.fileOf(directory)
+    DataOutputStream(BufferedOutputStream(FileOutputStream(file, true))).use { output ->
+      this.writeRecord(output, operation, id, payload)
+    }
+  }
+
+  private fun writeRecord(
+    output: DataOutputStream,
+    operation: Byte,
+    id: BookID,
+    payload: ByteArray
+  ) {
+    val idBytes = id.value().toByteArray(Charsets.US_ASCII)
+    val checksum = CRC32()
+    checksum.update(operation.toInt())
+    checksum.update(idBytes)
+    checksum.update(payload)
+
+    output.writeByte(operation.toInt())
+    output.writeInt(idBytes.size)
+    output.write(idBytes)
+    output.writeInt(payload.size)
+    output.writeInt(checksum.value.toInt())
+    output.write(payload)
+  }
+
+  private class Record(
+    val operation: Byte,
+    val id: BookID,
+    val payload: ByteArray
+  )
+
+  /**
+   * Read a record, returning `null` if the record is incomplete or damaged.
+   */
+
+  private fun readRecord(
+    buffer: ByteBuffer,
+    checksum: CRC32
+  ): Record? {
+    if (buffer.remaining() < RECORD_OVERHEAD) {
+      return null
+    }
+
+    val operation = buffer.get()
+    if (operation != OP_PUT && operation != OP_DELETE) {
+      return null
+    }
+
+    val idLength = buffer.int
+    if (idLength <= 0 || idLength > buffer.remaining() - 8) {
+      return null
+    }
+    val idBytes = ByteArray(idLength)
+    buffer.get(idBytes)
+
+    val payloadLength = buffer.int
+    val expected = buffer.int
+    if (payloadLength < 0 || payloadLength > buffer.remaining()) {
+      return null
+    }
+
+    val payload = ByteArray(payloadLength)
+    buffer.get(payload)
+
+    checksum.reset()
+    checksum.update(operation.toInt())
+    checksum.update(idBytes)
+    checksum.update(payload)
+    if (checksum.value.toInt() != expected) {
+      return null
+    }
+
+    val id =
+      try {
+        BookID.create(String(idBytes, Charsets.US_ASCII))
+      } catch (e: IllegalArgumentException) {
+        return null
+      }
+
+    return Record(operation, id, payload)
+  }
+
+  private fun recordSize(
+    id: BookID,
+    payloadLength: Int
+  ): Int =
+    RECORD_OVERHEAD + id.value().length + payloadLength
+}
@@ -0,0 +1,116 @@
+package org.nypl.simplified.books.book_database
+
+import io.reactivex.Observable
+import io.reactivex.subjects.PublishSubject
+import org.joda.time.LocalDateTime
+import org.nypl.simplified.migration.spi.MigrationEvent
+import org.nypl.simplified.migration.spi.MigrationEvent.Subject.BOOK
+import org.nypl.simplified.migration.spi.MigrationProviderType
+import org.nypl.simplified.migration.spi.MigrationReport
+import org.nypl.simplified.migration.spi.MigrationServiceDependencies
+import org.nypl.simplified.migration.spi.MigrationType
+import org.slf4j.LoggerFactory
+import java.io.File
+
+/**
+ * A migration that moves the OPDS entries of every book database from one `meta.json`
+ * file per book directory into a single index file per database.
+ *
+ * Book databases are found by walking the profile directory structure
+ * (`<profiles>/<profile>/accounts/<account>/books`). Databases may already be open when
+ * the migration runs; writes made by an open database are coordinated with the migration
+ * through [BookDatabaseIndex.lockFor].
+ */
+
+class BookDatabaseIndexMigration(
+  private val dependencies: MigrationServiceDependencies,
+  private val profilesDirectory: File
+) : MigrationType {
+
+  private val logger =
+    LoggerFactory.getLogger(BookDatabaseIndexMigration::class.java)
+
+  private val eventsSubject =
+    PublishSubject.create<MigrationEvent>()
+
+  override val events: Observable<MigrationEvent> =
+    this.eventsSubject
+
+  private fun bookDatabaseDirectories(): List<File> {
+    val profiles = this.profilesDirectory.listFiles() ?: return listOf()
+    return profiles.flatMap { profile ->
+      val accounts = File(profile, "accounts").listFiles() ?: arrayOf()
+      accounts.map { account -> File(account, "books") }
+    }.filter { directory -> directory.isDirectory }
+  }
+
+  override fun needsToRun(): Boolean {
+    return this.bookDatabaseDirectories()
+      .any { directory -> !BookDatabaseIndex.exists(directory) }
+  }
+
+  override fun run(): MigrationReport {
+    val timestamp = LocalDateTime.now()
+    val events = mutableListOf<MigrationEvent>()
+
+    for (directory in this.bookDatabaseDirectories()) {
+      this.publish(
+        events,
+        MigrationEvent.MigrationStepInProgress(
+          message = "Indexing books in $directory",
+          subject = BOOK
+        )
+      )
+
+      try {
+        val count = BookDatabaseIndex.migrate(directory) ?: continue
+        this.logger.debug("indexed {} books in {}", count, directory)
+        this.publish(
+          events,
+          MigrationEvent.MigrationStepSucceeded(
+            message = "Indexed $count books in $directory",
+            subject = BOOK
+          )
+        )
+      } catch (e: Exception) {
+        this.logger.error("could not index books in {}: ", directory, e)
+        this.publish(
+          events,
+          MigrationEvent.MigrationStepError(
+            message = "Could not index books in $directory",
+            exception = e,
+            attributes = mapOf(Pair("Directory", directory.toString())),
+            subject = BOOK
+          )
+        )
+      }
+    }
+
+    return MigrationReport(
+      application = this.dependencies.applicationVersion,
+      migrationService = BookDatabaseIndexMigration::class.java.canonicalName ?: "",
+      timestamp = timestamp,
+      events = events.toList()
+    )
+  }
+
+  private fun publish(
+    events: MutableList<MigrationEvent>,
+    event: MigrationEvent
+  ) {
+    events.add(event)
+    this.eventsSubject.onNext(event)
+  }
+
+  /**
+   * A provider of book database index migrations for the profiles in the given directory.
+   */
+
+  class Provider(
+    private val profilesDirectory: File
+  ) : MigrationProviderType {
+    override fun create(services: MigrationServiceDependencies): MigrationType {
+      return BookDatabaseIndexMigration(services, this.profilesDirectory)
+    }
+  }
+}
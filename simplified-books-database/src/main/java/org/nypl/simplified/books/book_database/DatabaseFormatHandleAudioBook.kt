@@ -287,7 +287,7 @@ internal class DatabaseFormatHandleAudioBook internal constructor(
 
   override fun moveInBook(file: File) {
     val newFormat = synchronized(this.dataLock) {
-      FileUtilities.fileRename(file, this.fileBook)
+      FileUtilities.fileMove(file, this.fileBook)
 
       this.formatRef = this.formatRef.copy(
         file = this.fileBook,
@@ -151,6 +151,24 @@ internal class DatabaseFormatHandleEPUB internal constructor(
     this.parameters.onUpdated.invoke(newFormat)
   }
 
+  override fun moveInBook(file: File) {
+    val newFormat = synchronized(this.dataLock) {
+      if (file.isDirectory) {
+        if (!file.renameTo(this.fileBook)) {
+          DirectoryUtilities.directoryCopy(file, this.fileBook)
+          DirectoryUtilities.directoryDelete(file)
+        }
+      } else {
+        FileUtilities.fileMove(file, this.fileBook)
+      }
+
+      this.formatRef = this.formatRef.copy(file = this.fileBook)
+      this.formatRef
+    }
+
+    this.parameters.onUpdated.invoke(newFormat)
+  }
+
   override fun setLastReadLocation(bookmark: Bookmark.ReaderBookmark?) {
     val newFormat = synchronized(this.dataLock) {
       if (bookmark != null) {
@@ -23,6 +23,8 @@ class BookRegistry private constructor(
     PublishSubject.create()
   private val bookHoldsUpdate: PublishSubject<BookHoldsUpdateEvent> =
     PublishSubject.create()
+  private val updates: PublishSubject<BookID> =
+    PublishSubject.create()
 
   override fun books(): SortedMap<BookID, BookWithStatus> {
     return this.booksReadOnly
@@ -36,6 +38,10 @@ class BookRegistry private constructor(
     return this.bookHoldsUpdate
   }
 
+  override fun bookUpdates(): Observable<BookID> {
+    return this.updates
+  }
+
   override fun bookStatus(id: BookID): OptionType<BookStatus> {
     return this.book(id).map(FunctionType<BookWithStatus, BookStatus>(BookWithStatus::status))
   }
@@ -47,6 +53,7 @@ class BookRegistry private constructor(
   override fun update(status: BookWithStatus) {
     val oldStatus = this.books[status.book.id]
     this.books[status.book.id] = status
+    this.updates.onNext(status.book.id)
     this.publishUpdateEvent(oldStatus, status)
   }
 
@@ -29,6 +29,13 @@ interface BookRegistryReadableType {
 
   fun bookEvents(): Observable<BookStatusEvent>
 
+  /**
+   * @return An observable that publishes the ID of every book that is updated, including
+   * updates that change the book without changing its status
+   */
+
+  fun bookUpdates(): Observable<BookID>
+
   /**
    * @return An observable that publishes book holds events
    */
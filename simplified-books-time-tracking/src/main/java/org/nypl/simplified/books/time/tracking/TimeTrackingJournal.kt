@@ -0,0 +1,331 @@
+package org.nypl.simplified.books.time.tracking
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ObjectNode
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.util.zip.CRC32
+
+/**
+ * An append-only journal of the time entries recorded for a single book.
+ *
+ * The journal starts with a header record holding the book's time tracking information,
+ * followed by one record for each change to an entry. Recording the same entry again
+ * replaces the earlier value, so updating the entry that is currently being played only
+ * appends a single short line rather than rewriting every entry. Each record carries a
+ * checksum; a record that was cut short by a crash is discarded, along with anything
+ * after it, when the journal is opened. Once superseded records make up most of the
+ * file, the journal is rewritten to contain only the current entries.
+ */
+
+class TimeTrackingJournal private constructor(
+  private val file: File,
+  private val header: TimeTrackingInfo,
+  private val entries: LinkedHashMap<String, TimeTrackingEntry>,
+  private var records: Int
+) {
+
+  /**
+   * The book's time tracking information, including all of the current entries.
+   */
+
+  val info: TimeTrackingInfo
+    get() = synchronized(this) {
+      this.header.copy(timeEntries = this.entries.values.toList())
+    }
+
+  /**
+   * Record the given entry, replacing any entry with the same ID. Nothing is written if
+   * the entry is unchanged.
+   */
+
+  @Throws(IOException::class)
+  fun put(entry: TimeTrackingEntry) {
+    this.putAll(listOf(entry))
+  }
+
+  /**
+   * Record all of the given entries with a single write.
+   */
+
+  @Throws(IOException::class)
+  fun putAll(entries: List<TimeTrackingEntry>) {
+    synchronized(this) {
+      val changed = entries.filter { entry -> this.entries[entry.id] != entry }
+      if (changed.isEmpty()) {
+        return
+      }
+
+      this.append(changed.map { entry -> record(OP_PUT, entryNode(entry)) })
+      for (entry in changed) {
+        this.entries[entry.id] = entry
+      }
+      this.records += changed.size
+      this.compactIfRequired()
+    }
+  }
+
+  /**
+   * Remove all entries.
+   */
+
+  @Throws(IOException::class)
+  fun clear() {
+    synchronized(this) {
+      if (this.entries.isEmpty()) {
+        return
+      }
+      this.append(listOf(record(OP_CLEAR, null)))
+      this.entries.clear()
+      this.records += 1
+      this.compactIfRequired()
+    }
+  }
+
+  /**
+   * Replace all entries with the given entries.
+   */
+
+  @Throws(IOException::class)
+  fun replaceAll(entries: List<TimeTrackingEntry>) {
+    synchronized(this) {
+      this.entries.clear()
+      for (entry in entries) {
+        this.entries[entry.id] = entry
+      }
+      this.rewrite()
+    }
+  }
+
+  private fun compactIfRequired() {
+    if (this.records > COMPACTION_MINIMUM && this.records > this.entries.size * 2) {
+      this.rewrite()
+    }
+  }
+
+  private fun rewrite() {
+    writeJournal(this.file, this.header, this.entries.values)
+    this.records = this.entries.size
+  }
+
+  private fun append(lines: List<String>) {
+    FileOutputStream(this.file, true).use { stream ->
+      stream.write(lines.joinToString(separator = "").toByteArray(Charsets.UTF_8))
+    }
+  }
+
+  companion object {
+
+    private val logger =
+      LoggerFactory.getLogger(TimeTrackingJournal::class.java)
+
+    private val objectMapper =
+      ObjectMapper()
+
+    private const val OP_HEADER = 'H'
+    private const val OP_PUT = 'P'
+    private const val OP_CLEAR = 'C'
+    private const val COMPACTION_MINIMUM = 64
+
+    /**
+     * Open the journal in the given file, creating it with the given header if it does
+     * not exist. If a journal does not exist but a file in the previous whole-file JSON
+     * format does, the entries are moved from that file into a new journal.
+     */
+
+    @Throws(IOException::class)
+    fun openOrCreate(
+      file: File,
+      legacyFile: File?,
+      header: TimeTrackingInfo
+    ): TimeTrackingJournal {
+      return open(file, legacyFile) ?: run {
+        writeJournal(file, header, listOf())
+        TimeTrackingJournal(file, header.copy(timeEntries = listOf()), LinkedHashMap(), 0)
+      }
+    }
+
+    /**
+     * Open the journal in the given file, migrating the given file in the previous
+     * whole-file JSON format if necessary.
+     *
+     * @return The journal, or `null` if neither file exists or the journal is unreadable
+     */
+
+    @Throws(IOException::class)
+    fun open(
+      file: File,
+      legacyFile: File?
+    ): TimeTrackingJournal? {
+      if (!file.isFile && legacyFile != null && legacyFile.isFile) {
+        migrate(file, legacyFile)
+      }
+      if (!file.isFile) {
+        return null
+      }
+      return read(file)
+    }
+
+    private fun migrate(
+      file: File,
+      legacyFile: File
+    ) {
+      val legacy = TimeTrackingInfoFileUtils.getTimeTrackingInfoFromFile(legacyFile)
+      if (legacy == null) {
+        /*
+         * Keep the unreadable file so that the time it recorded can be recovered by hand.
+         */
+
+        val corrupt = File(legacyFile.parentFile, legacyFile.name + ".corrupt")
+        logger.warn("could not parse time tracking file {}; keeping it as {}", legacyFile, corrupt)
+        if (!legacyFile.renameTo(corrupt)) {
+          logger.warn("could not rename {} to {}", legacyFile, corrupt)
+        }
+        return
+      }
+
+      writeJournal(file, legacy, legacy.timeEntries)
+      legacyFile.delete()
+    }
+
+    private fun read(file: File): TimeTrackingJournal? {
+      val bytes = file.readBytes()
+      val entries = LinkedHashMap<String, TimeTrackingEntry>()
+      var header: TimeTrackingInfo? = null
+      var records = 0
+      var valid = 0
+
+      while (valid < bytes.size) {
+        val end = bytes.indexOf('\n'.code.toByte(), valid)
+        if (end == -1) {
+          break
+        }
+
+        val line = String(bytes, valid, end - valid, Charsets.UTF_8)
+        val parsed = parseRecord(line) ?: break
+        val (op, node) = parsed
+        when (op) {
+          OP_HEADER ->
+            header = TimeTrackingJSON.convertBytesToTimeTrackingInfo(
+              objectMapper.writeValueAsBytes(node)
+            )
+          OP_PUT ->
+            entries[node!!.get("id").asText()] = TimeTrackingEntry(
+              id = node.get("id").asText(),
+              duringMinute = node.get("duringMinute").asText(),
+              secondsPlayed = node.get("secondsPlayed").asInt()
+            )
+          OP_CLEAR ->
+            entries.clear()
+        }
+        ++records
+        valid = end + 1
+      }
+
+      if (header == null) {
+        logger.error("time tracking journal {} has no usable header", file)
+        return null
+      }
+
+      if (valid < bytes.size) {
+        logger.warn("discarding {} trailing bytes of incomplete records in {}", bytes.size - valid, file)
+        RandomAccessFile(file, "rw").use { raf -> raf.setLength(valid.toLong()) }
+      }
+
+      return TimeTrackingJournal(file, header, entries, records - 1)
+    }
+
+    private fun ByteArray.indexOf(
+      value: Byte,
+      from: Int
+    ): Int {
+      for (index in from until this.size) {
+        if (this[index] == value) {
+          return index
+        }
+      }
+      return -1
+    }
+
+    private fun writeJournal(
+      file: File,
+      header: TimeTrackingInfo,
+      entries: Collection<TimeTrackingEntry>
+    ) {
+      val headerNode =
+        TimeTrackingJSON.convertTimeTrackingToLocalJSON(
+          objectMapper = objectMapper,
+          timeTrackingInfo = header.copy(timeEntries = listOf())
+        )
+
+      val text = StringBuilder()
+      text.append(record(OP_HEADER, headerNode))
+      for (entry in entries) {
+        text.append(record(OP_PUT, entryNode(entry)))
+      }
+
+      val fileTmp = File(file.parentFile, file.name + ".tmp")
+      FileOutputStream(fileTmp).use { stream ->
+        stream.write(text.toString().toByteArray(Charsets.UTF_8))
+        stream.fd.sync()
+      }
+      if (!fileTmp.renameTo(file)) {
+        throw IOException("Could not rename $fileTmp to $file")
+      }
+    }
+
+    private fun entryNode(entry: TimeTrackingEntry): ObjectNode {
+      val node = objectMapper.createObjectNode()
+      node.put("id", entry.id)
+      node.put("duringMinute", entry.duringMinute)
+      node.put("secondsPlayed", entry.secondsPlayed)
+      return node
+    }
+
+    /**
+     * Format a record as a line holding the operation, a checksum and the JSON data.
+     */
+
+    private fun record(
+      op: Char,
+      node: ObjectNode?
+    ): String {
+      val data = node?.let { objectMapper.writeValueAsString(it) } ?: ""
+      return "$op ${checksumOf(op, data)} $data\n"
+    }
+
+    private fun parseRecord(line: String): Pair<Char, ObjectNode?>? {
+      if (line.length < 11 || line[1] != ' ' || line[10] != ' ') {
+        return null
+      }
+      val op = line[0]
+      val data = line.substring(11)
+      if (line.substring(2, 10) != checksumOf(op, data)) {
+        return null
+      }
+      return when (op) {
+        OP_CLEAR -> Pair(op, null)
+        OP_HEADER, OP_PUT ->
+          try {
+            Pair(op, objectMapper.readTree(data) as ObjectNode)
+          } catch (e: Exception) {
+            null
+          }
+        else -> null
+      }
+    }
+
+    private fun checksumOf(
+      op: Char,
+      data: String
+    ): String {
+      val checksum = CRC32()
+      checksum.update(op.code)
+      checksum.update(data.toByteArray(Charsets.UTF_8))
+      return String.format("%08x", checksum.value)
+    }
+  }
+}
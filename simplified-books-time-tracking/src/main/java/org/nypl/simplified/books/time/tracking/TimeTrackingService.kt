@@ -26,10 +26,19 @@ class TimeTrackingService(
 ) : TimeTrackingServiceType {
 
   companion object {
-    private const val FILE_NAME_TIME_ENTRIES = "time_entries.json"
-    private const val FILE_NAME_TIME_ENTRIES_RETRY = "time_entries_to_retry.json"
+    private const val FILE_NAME_TIME_ENTRIES = "time_entries.journal"
+    private const val FILE_NAME_TIME_ENTRIES_RETRY = "time_entries_to_retry.journal"
+    private const val FILE_NAME_TIME_ENTRIES_LEGACY = "time_entries.json"
+    private const val FILE_NAME_TIME_ENTRIES_RETRY_LEGACY = "time_entries_to_retry.json"
 
     private const val MAX_SECONDS_PLAYED = 60
+
+    /**
+     * The number of seconds between writes of the entry that is currently being played.
+     * The entry is always written when it's completed or when tracking stops.
+     */
+
+    private const val LOCAL_SAVE_INTERVAL_SECONDS = 10
   }
 
   private val logger = LoggerFactory.getLogger(TimeTrackingServiceType::class.java)
@@ -39,14 +48,15 @@ class TimeTrackingService(
 
   private val disposables = CompositeDisposable()
 
-  private lateinit var timeEntriesFile: File
-  private lateinit var timeEntriesToRetryFile: File
+  private lateinit var timeEntries: TimeTrackingJournal
+  private lateinit var timeEntriesToRetry: TimeTrackingJournal
 
   private var audiobookPlayingDisposable: Disposable? = null
   private val connectivityListener: TimeTrackingConnectivityListener
   private var currentTimeTrackingEntry: TimeTrackingEntry? = null
 
   private var firstIterationOfService = true
+  private var secondsSinceLocalSave = 0
   private var isPlaying = false
   private var isOnAudiobookScreen = false
   private var shouldSaveRemotely = false
@@ -92,40 +102,26 @@ class TimeTrackingService(
     // create a directory for the book inside the library
     bookFile.mkdirs()
 
-    timeEntriesFile = File(bookFile, FILE_NAME_TIME_ENTRIES)
-    timeEntriesToRetryFile = File(bookFile, FILE_NAME_TIME_ENTRIES_RETRY)
-
-    if (!timeEntriesFile.exists()) {
-      // create an entries file for this book with an initial time tracking info
-      timeEntriesFile.createNewFile()
-
-      TimeTrackingInfoFileUtils.saveTimeTrackingInfoOnFile(
-        timeTrackingInfo = TimeTrackingInfo(
-          accountId = accountID.uuid.toString(),
-          bookId = bookId,
-          libraryId = libraryId,
-          timeEntries = listOf(),
-          timeTrackingUri = timeTrackingUri
-        ),
-        file = timeEntriesFile
-      )
-    }
+    val header = TimeTrackingInfo(
+      accountId = accountID.uuid.toString(),
+      bookId = bookId,
+      libraryId = libraryId,
+      timeEntries = listOf(),
+      timeTrackingUri = timeTrackingUri
+    )
 
-    if (!timeEntriesToRetryFile.exists()) {
-      // create a file for possible entries that weren't successfully saved on the server
-      timeEntriesToRetryFile.createNewFile()
-
-      TimeTrackingInfoFileUtils.saveTimeTrackingInfoOnFile(
-        timeTrackingInfo = TimeTrackingInfo(
-          accountId = accountID.uuid.toString(),
-          bookId = bookId,
-          libraryId = libraryId,
-          timeEntries = listOf(),
-          timeTrackingUri = timeTrackingUri
-        ),
-        file = timeEntriesFile
-      )
-    }
+    // open the entries journal for this book, and a journal for possible entries that
+    // weren't successfully saved on the server
+    timeEntries = TimeTrackingJournal.openOrCreate(
+      file = File(bookFile, FILE_NAME_TIME_ENTRIES),
+      legacyFile = File(bookFile, FILE_NAME_TIME_ENTRIES_LEGACY),
+      header = header
+    )
+    timeEntriesToRetry = TimeTrackingJournal.openOrCreate(
+      file = File(bookFile, FILE_NAME_TIME_ENTRIES_RETRY),
+      legacyFile = File(bookFile, FILE_NAME_TIME_ENTRIES_RETRY_LEGACY),
+      header = header
+    )
 
     isOnAudiobookScreen = true
   }
@@ -189,12 +185,6 @@ class TimeTrackingService(
     )
   }
 
-  private fun getTimeTrackingInfoLocallyStored(): TimeTrackingInfo? {
-    return TimeTrackingJSON.convertBytesToTimeTrackingInfo(
-      bytes = timeEntriesFile.readBytes()
-    )
-  }
-
   private fun handleConnectivityState(hasInternet: Boolean) {
     // if the user is on an audiobook player screen, it means the entries will most likely be sent
     // to the server, so there's no need to do anything else
@@ -207,6 +197,12 @@ class TimeTrackingService(
     }
   }
 
+  /**
+   * Upload the pending entries of every book in a single pass over the time tracking
+   * directory. The current and retry journals of each book are combined so that each book
+   * needs only one request, and any entries that the server rejects are kept for retrying.
+   */
+
   private fun saveAllLocalTimeTrackingInfoRemotely() {
     val libraries = timeTrackingDirectory.listFiles().orEmpty()
 
@@ -219,40 +215,52 @@ class TimeTrackingService(
       }
 
       books.forEach { book ->
-        val bookFiles = book.listFiles().orEmpty()
+        try {
+          saveBookTimeTrackingInfoRemotely(book)
+        } catch (e: Exception) {
+          logger.error("Error while saving time tracking info for {}: ", book, e)
+        }
+      }
+    }
+  }
 
-        if (bookFiles.isNotEmpty()) {
-          bookFiles.forEach { file ->
-            val fileTimeTrackingInfo = TimeTrackingInfoFileUtils.getTimeTrackingInfoFromFile(
-              file = file
-            )
+  private fun saveBookTimeTrackingInfoRemotely(book: File) {
+    val journal = TimeTrackingJournal.open(
+      file = File(book, FILE_NAME_TIME_ENTRIES),
+      legacyFile = File(book, FILE_NAME_TIME_ENTRIES_LEGACY)
+    )
+    val retryJournal = TimeTrackingJournal.open(
+      file = File(book, FILE_NAME_TIME_ENTRIES_RETRY),
+      legacyFile = File(book, FILE_NAME_TIME_ENTRIES_RETRY_LEGACY)
+    )
 
-            val timeTrackingInfo = fileTimeTrackingInfo?.copy(
-              timeEntries = fileTimeTrackingInfo.timeEntries.filter { timeEntry ->
-                timeEntry.isValidTimeEntry()
-              }
-            )
+    val journals = listOfNotNull(journal, retryJournal)
+    val timeEntries = journals.flatMap { it.info.timeEntries }
+      .filter { timeEntry -> timeEntry.isValidTimeEntry() }
+      .distinctBy { timeEntry -> timeEntry.id }
 
-            if (!timeTrackingInfo?.timeEntries.isNullOrEmpty()) {
-              val updatedTimeTrackingInfo = saveTimeTrackingInfoRemotely(
-                timeTrackingInfo = timeTrackingInfo!!
-              )
+    if (timeEntries.isEmpty()) {
+      book.deleteRecursively()
+      return
+    }
 
-              // we need to update the file's time tracking info with the updated info obtained from
-              // the server's response
-              TimeTrackingInfoFileUtils.saveTimeTrackingInfoOnFile(
-                timeTrackingInfo = updatedTimeTrackingInfo,
-                file = file
-              )
-            } else {
-              file.delete()
-            }
-          }
-        } else {
-          book.deleteRecursively()
-        }
-      }
+    val updatedTimeTrackingInfo = saveTimeTrackingInfoRemotely(
+      timeTrackingInfo = journals.first().info.copy(timeEntries = timeEntries)
+    )
+
+    if (updatedTimeTrackingInfo.timeEntries.isEmpty()) {
+      book.deleteRecursively()
+      return
     }
+
+    // keep the entries that failed in the 'retry' journal, creating it if necessary
+    val retry = retryJournal ?: TimeTrackingJournal.openOrCreate(
+      file = File(book, FILE_NAME_TIME_ENTRIES_RETRY),
+      legacyFile = null,
+      header = updatedTimeTrackingInfo
+    )
+    retry.replaceAll(updatedTimeTrackingInfo.timeEntries)
+    journal?.clear()
   }
 
   private fun saveTimeTrackingInfoLocally() {
@@ -261,46 +269,23 @@ class TimeTrackingService(
     )
 
     if (timeTrackingInfo != null) {
-      val currentBookInfo = getTimeTrackingInfoLocallyStored()
-
-      if (currentBookInfo != null) {
-        val currentEntries = currentBookInfo.timeEntries
-        val updatedTimeTrackingInfo = currentBookInfo.copy(
-          timeEntries = if (firstIterationOfService) {
-            // if it's the first iteration of this saving method, we can add the current time tracking
-            // info
-            ArrayList(currentEntries).apply {
-              add(timeTrackingInfo)
-            }
-          } else if (shouldSaveRemotely) {
-            // if the info should be remotely saved, we update the last entry one last time and add a
-            // new entry for future iterations
-            ArrayList(currentEntries).apply {
-              set(currentEntries.lastIndex, timeTrackingInfo)
-              createTimeTrackingEntry()
-              add(currentTimeTrackingEntry)
-            }
-          } else if (currentEntries.isNotEmpty()) {
-            // if there's no need to save the info remotely, we just update the last index's info
-            ArrayList(currentEntries).apply {
-              set(currentEntries.lastIndex, timeTrackingInfo)
-            }
-          } else {
-            // there are no current entries, so we can create a new list
-            listOf(timeTrackingInfo)
-          }
-        )
-
-        firstIterationOfService = false
-
-        TimeTrackingInfoFileUtils.saveTimeTrackingInfoOnFile(
-          timeTrackingInfo = updatedTimeTrackingInfo,
-          file = timeEntriesFile
-        )
+      secondsSinceLocalSave = 0
+
+      // the journal replaces the entry with the same ID, so the current entry is simply
+      // recorded again. If the info should be remotely saved, the entry is recorded one last
+      // time and a new entry is added for future iterations
+      if (shouldSaveRemotely && !firstIterationOfService) {
+        createTimeTrackingEntry()
+        timeEntries.putAll(listOf(timeTrackingInfo, currentTimeTrackingEntry!!))
+      } else {
+        timeEntries.put(timeTrackingInfo)
       }
+
+      firstIterationOfService = false
     }
   }
 
+
   private fun saveTimeTrackingInfoRemotely(timeTrackingInfo: TimeTrackingInfo): TimeTrackingInfo {
     val failedEntries = try {
       httpCalls.registerTimeTrackingInfo(
@@ -339,36 +324,36 @@ class TimeTrackingService(
               )
             }
 
-            saveTimeTrackingInfoLocally()
+            // the entry being played is only written every few seconds, rather than on
+            // every tick, to avoid constant writes during long listening sessions
+            secondsSinceLocalSave += 1
+            if (firstIterationOfService ||
+              shouldSaveRemotely ||
+              secondsSinceLocalSave >= LOCAL_SAVE_INTERVAL_SECONDS
+            ) {
+              saveTimeTrackingInfoLocally()
+            }
 
             if (shouldSaveRemotely) {
               shouldSaveRemotely = false
 
-              val localTimeTrackingInfo = getTimeTrackingInfoLocallyStored()
-              val timeTrackingInfo = localTimeTrackingInfo?.copy(
+              val localTimeTrackingInfo = timeEntries.info
+              val timeTrackingInfo = localTimeTrackingInfo.copy(
                 timeEntries = localTimeTrackingInfo.timeEntries.filter { timeEntry ->
                   timeEntry.isValidTimeEntry()
                 }
               )
 
-              if (!timeTrackingInfo?.timeEntries.isNullOrEmpty()) {
+              if (timeTrackingInfo.timeEntries.isNotEmpty()) {
                 val updatedTimeTrackingInfo = saveTimeTrackingInfoRemotely(
-                  timeTrackingInfo = timeTrackingInfo!!
+                  timeTrackingInfo = timeTrackingInfo
                 )
 
-                // we can 'reset' the current time entries file
-                TimeTrackingInfoFileUtils.saveTimeTrackingInfoOnFile(
-                  timeTrackingInfo = timeTrackingInfo.copy(
-                    timeEntries = listOf()
-                  ),
-                  file = timeEntriesFile
-                )
+                // we can 'reset' the current time entries journal
+                timeEntries.clear()
 
-                // we need to add the failed entries to the 'retry' file
-                TimeTrackingInfoFileUtils.addEntriesToFile(
-                  entries = updatedTimeTrackingInfo.timeEntries,
-                  file = timeEntriesToRetryFile
-                )
+                // we need to add the failed entries to the 'retry' journal
+                timeEntriesToRetry.putAll(updatedTimeTrackingInfo.timeEntries)
               }
             }
           },
@@ -18,6 +18,19 @@ sealed class BootEvent {
     override val attributes: Map<String, String> = mapOf()
   ) : BootEvent(), PresentableType
 
+  /**
+   * A service has started.
+   *
+   * @param service The name of the service
+   * @param durationMillis The time taken to start the service
+   */
+
+  data class BootServiceStarted(
+    override val message: String,
+    val service: String,
+    val durationMillis: Long
+  ) : BootEvent(), PresentableType
+
   /**
    * Booting has completed.
    */
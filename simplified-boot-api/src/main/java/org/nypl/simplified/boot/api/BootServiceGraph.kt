@@ -0,0 +1,113 @@
+package org.nypl.simplified.boot.api
+
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import com.google.common.util.concurrent.ListeningExecutorService
+import com.google.common.util.concurrent.MoreExecutors
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+
+/**
+ * A graph of services that are started in dependency order.
+ *
+ * Each service is declared along with the services that it depends on, and is started on
+ * the given executor as soon as all of its dependencies have started. Services that do not
+ * depend on each other are therefore started in parallel, up to the number of threads
+ * available to the executor. No thread is ever blocked waiting for a dependency.
+ *
+ * If a service fails to start, every service that depends on it also fails, and the
+ * failure is raised by [awaitAll].
+ */
+
+class BootServiceGraph(
+  executor: ExecutorService,
+
+  /**
+   * A function called on the starting thread each time a service has started, with the
+   * name of the service and the time that it took to start.
+   */
+
+  private val onStarted: (String, Long) -> Unit
+) {
+
+  private val executor: ListeningExecutorService =
+    MoreExecutors.listeningDecorator(executor)
+
+  private val nodes =
+    mutableListOf<Node<*>>()
+
+  /**
+   * A service that has been declared in the graph.
+   */
+
+  class Node<T> internal constructor(
+    val name: String,
+    internal val future: ListenableFuture<T>
+  ) {
+
+    /**
+     * @return The started service
+     * @throws IllegalStateException If the service has not yet started
+     */
+
+    fun get(): T {
+      return Futures.getDone(this.future)
+    }
+  }
+
+  /**
+   * Declare a service that will be started by `start` once all of the given dependencies
+   * have started. The `start` function may call [Node.get] on any of its dependencies.
+   */
+
+  fun <T> service(
+    name: String,
+    dependencies: List<Node<*>> = listOf(),
+    start: () -> T
+  ): Node<T> {
+    val task = Callable {
+      val timeThen = System.nanoTime()
+      val service = start.invoke()
+      this.onStarted.invoke(name, (System.nanoTime() - timeThen) / 1_000_000L)
+      service
+    }
+
+    val future =
+      if (dependencies.isEmpty()) {
+        this.executor.submit(task)
+      } else {
+        Futures.whenAllSucceed(dependencies.map { node -> node.future })
+          .call(task, this.executor)
+      }
+
+    val node = Node(name, future)
+    synchronized(this.nodes) {
+      this.nodes.add(node)
+    }
+    return node
+  }
+
+  /**
+   * Wait for every service declared so far to start.
+   *
+   * @throws Exception The exception raised by the first service that failed to start
+   */
+
+  @Throws(Exception::class)
+  fun awaitAll() {
+    val futures = synchronized(this.nodes) {
+      this.nodes.map { node -> node.future }
+    }
+
+    try {
+      Futures.allAsList(futures).get()
+    } catch (e: ExecutionException) {
+      val cause = e.cause
+      if (cause is Exception) {
+        throw cause
+      }
+      throw e
+    }
+  }
+}
@@ -56,4 +56,12 @@ interface BuildConfigurationAccountsType {
    */
 
   val featuredLibrariesIdsList: List<String>
+
+  /**
+   * The maximum number of connections that may be used to download a single book from
+   * the libraries of the registry. A value of `1` downloads every book over a single
+   * connection.
+   */
+
+  val downloadConnections: Int
 }
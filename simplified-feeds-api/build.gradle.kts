@@ -6,7 +6,9 @@ dependencies {
     implementation(project(":simplified-books-formats-api"))
     implementation(project(":simplified-books-registry-api"))
     implementation(project(":simplified-content-api"))
+    implementation(project(":simplified-files"))
     implementation(project(":simplified-json-core"))
+    implementation(project(":simplified-metrics-api"))
     implementation(project(":simplified-opds-core"))
     implementation(project(":simplified-presentableerror-api"))
     implementation(project(":simplified-taskrecorder-api"))
@@ -0,0 +1,128 @@
+package org.nypl.simplified.feeds.api
+
+import one.irradia.mime.api.MIMEType
+import org.nypl.simplified.books.formats.api.BookFormatSupportType
+import org.nypl.simplified.opds.core.OPDSAcquisition
+import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_BORROW
+import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_BUY
+import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_GENERIC
+import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_OPEN_ACCESS
+import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_SAMPLE
+import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_SUBSCRIBE
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAcquisitionPaths
+import org.nypl.simplified.opds.core.OPDSIndirectAcquisition
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Decides whether feed entries can be acquired with the given format support.
+ *
+ * Whether an acquisition is supported depends only on its relation and on the tree of
+ * MIME types of its indirect acquisitions, and a catalog only uses a handful of distinct
+ * trees. The answer for each distinct tree is therefore remembered, so that the
+ * acquisition paths of an entry are only linearized the first time that its kind of
+ * acquisition is seen. The format support is fixed for the lifetime of an instance;
+ * [clear] must be called if the answers might otherwise have changed.
+ */
+
+class FeedAcquisitionSupport(
+  private val bookFormatSupport: BookFormatSupportType
+) {
+
+  /**
+   * The parts of an acquisition that determine whether it is supported. URIs and
+   * properties are deliberately excluded, as they differ between every book.
+   */
+
+  private data class AcquisitionKey(
+    val relation: OPDSAcquisition.Relation,
+    val type: MIMEType,
+    val indirects: List<IndirectKey>
+  )
+
+  private data class IndirectKey(
+    val type: MIMEType,
+    val indirects: List<IndirectKey>
+  )
+
+  private val supported =
+    ConcurrentHashMap<AcquisitionKey, Boolean>()
+
+  /**
+   * The number of distinct kinds of acquisition that have been seen.
+   */
+
+  val size: Int
+    get() = this.supported.size
+
+  /**
+   * Forget everything that has been remembered.
+   */
+
+  fun clear() {
+    this.supported.clear()
+  }
+
+  /**
+   * @return `true` if any of the entry's acquisitions are supported
+   */
+
+  fun isEntrySupported(entry: OPDSAcquisitionFeedEntry): Boolean {
+    for (acquisition in entry.acquisitions) {
+      if (this.isAcquisitionSupported(acquisition)) {
+        return true
+      }
+    }
+    return false
+  }
+
+  /**
+   * @return `true` if the relation of the acquisition is supported, and any of the
+   * acquisition's paths are supported
+   */
+
+  fun isAcquisitionSupported(acquisition: OPDSAcquisition): Boolean {
+    val key = AcquisitionKey(
+      relation = acquisition.relation,
+      type = acquisition.type,
+      indirects = keysOf(acquisition.indirectAcquisitions)
+    )
+    return this.supported.getOrPut(key) { this.computeSupported(acquisition) }
+  }
+
+  private fun computeSupported(acquisition: OPDSAcquisition): Boolean {
+    if (!isRelationSupported(acquisition.relation)) {
+      return false
+    }
+    for (path in OPDSAcquisitionPaths.linearize(acquisition)) {
+      if (this.bookFormatSupport.isSupportedPath(path.asMIMETypes())) {
+        return true
+      }
+    }
+    return false
+  }
+
+  private companion object {
+
+    fun keysOf(indirects: List<OPDSIndirectAcquisition>): List<IndirectKey> {
+      if (indirects.isEmpty()) {
+        return emptyList()
+      }
+      val keys = ArrayList<IndirectKey>(indirects.size)
+      for (indirect in indirects) {
+        keys.add(IndirectKey(indirect.type, keysOf(indirect.indirectAcquisitions)))
+      }
+      return keys
+    }
+
+    fun isRelationSupported(relation: OPDSAcquisition.Relation): Boolean =
+      when (relation) {
+        ACQUISITION_BORROW -> true
+        ACQUISITION_BUY -> false
+        ACQUISITION_GENERIC -> true
+        ACQUISITION_OPEN_ACCESS -> true
+        ACQUISITION_SAMPLE -> false
+        ACQUISITION_SUBSCRIBE -> false
+      }
+  }
+}
@@ -0,0 +1,334 @@
+package org.nypl.simplified.feeds.api
+
+import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
+import org.nypl.simplified.files.DirectoryUtilities
+import org.nypl.simplified.files.FileUtilities
+import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileNotFoundException
+import java.io.FileOutputStream
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.net.URI
+import java.security.MessageDigest
+import java.util.Properties
+import java.util.UUID
+
+/**
+ * A bounded on-disk cache of raw feed documents.
+ *
+ * Entries are keyed by the feed URI and the identity of the credentials that were used
+ * to fetch the feed, so that feeds that differ per patron are never shared between
+ * patrons. Each entry holds the body of the feed along with the `ETag` and
+ * `Last-Modified` validators that the server returned, allowing the feed to be
+ * revalidated with a conditional request and the stored body to be reused when the
+ * server responds with `304 Not Modified`. Responses without validators are not cached.
+ *
+ * When the total size of the stored bodies exceeds [maximumSizeBytes], the least
+ * recently used entries are evicted.
+ */
+
+class FeedHTTPCache(
+  private val directory: File,
+  private val maximumSizeBytes: Long
+) {
+
+  private val logger =
+    LoggerFactory.getLogger(FeedHTTPCache::class.java)
+
+  private val lock = Any()
+
+  init {
+    DirectoryUtilities.directoryCreate(this.directory)
+  }
+
+  /**
+   * A cached feed document.
+   */
+
+  data class Entry(
+    val key: String,
+    val body: File,
+    val eTag: String?,
+    val lastModified: String?
+  )
+
+  /**
+   * Find the cached entry for the given URI and credentials, if any.
+   */
+
+  fun find(
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?
+  ): Entry? {
+    val key = keyOf(uri, credentials)
+    synchronized(this.lock) {
+      val body = this.bodyFile(key)
+      val meta = this.metaFile(key)
+      if (!body.isFile || !meta.isFile) {
+        return null
+      }
+
+      return try {
+        val properties = Properties()
+        FileInputStream(meta).use { stream -> properties.load(stream) }
+        Entry(
+          key = key,
+          body = body,
+          eTag = properties.getProperty(PROPERTY_ETAG),
+          lastModified = properties.getProperty(PROPERTY_LAST_MODIFIED)
+        )
+      } catch (e: IOException) {
+        this.logger.debug("could not read cache metadata for {}: ", uri, e)
+        null
+      }
+    }
+  }
+
+  /**
+   * Open the stored body of the given entry, marking the entry as recently used.
+   *
+   * @throws FileNotFoundException If the entry has been evicted since it was found
+   */
+
+  @Throws(FileNotFoundException::class)
+  fun open(entry: Entry): InputStream {
+    synchronized(this.lock) {
+      entry.body.setLastModified(System.currentTimeMillis())
+      return FileInputStream(entry.body)
+    }
+  }
+
+  /**
+   * Wrap the given response body so that it is written to the cache as it is read.
+   * The entry is only committed if the stream is read to completion; a partially read
+   * body is discarded when the stream is closed. If neither validator is present, the
+   * stream is returned unchanged.
+   */
+
+  fun store(
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?,
+    eTag: String?,
+    lastModified: String?,
+    stream: InputStream
+  ): InputStream {
+    if (eTag == null && lastModified == null) {
+      return stream
+    }
+
+    val key = keyOf(uri, credentials)
+    val temporary = File(this.directory, "$key.${UUID.randomUUID()}.tmp")
+    return try {
+      CachingInputStream(stream, FileOutputStream(temporary)) { complete ->
+        if (complete) {
+          this.commit(key, temporary, eTag, lastModified)
+        } else {
+          temporary.delete()
+        }
+      }
+    } catch (e: IOException) {
+      this.logger.debug("could not create cache file for {}: ", uri, e)
+      stream
+    }
+  }
+
+  private fun commit(
+    key: String,
+    temporary: File,
+    eTag: String?,
+    lastModified: String?
+  ) {
+    try {
+      val properties = Properties()
+      eTag?.let { properties.setProperty(PROPERTY_ETAG, it) }
+      lastModified?.let { properties.setProperty(PROPERTY_LAST_MODIFIED, it) }
+
+      synchronized(this.lock) {
+        val metaTemporary = File(this.directory, "$key.meta.tmp")
+        FileOutputStream(metaTemporary).use { stream -> properties.store(stream, null) }
+        FileUtilities.fileRename(temporary, this.bodyFile(key))
+        FileUtilities.fileRename(metaTemporary, this.metaFile(key))
+        this.trim()
+      }
+    } catch (e: IOException) {
+      this.logger.debug("could not commit cache entry {}: ", key, e)
+      temporary.delete()
+    }
+  }
+
+  /**
+   * Evict the least recently used entries until the cache fits within the maximum size.
+   */
+
+  private fun trim() {
+    val bodies =
+      this.directory.listFiles { file -> file.name.endsWith(SUFFIX_BODY) }
+        ?: return
+
+    var total = bodies.sumOf { file -> file.length() }
+    if (total <= this.maximumSizeBytes) {
+      return
+    }
+
+    for (body in bodies.sortedBy { file -> file.lastModified() }) {
+      if (total <= this.maximumSizeBytes) {
+        break
+      }
+      val key = body.name.removeSuffix(SUFFIX_BODY)
+      total -= body.length()
+      this.metaFile(key).delete()
+      body.delete()
+      this.logger.debug("evicted {}", key)
+    }
+  }
+
+  private fun bodyFile(key: String): File =
+    File(this.directory, key + SUFFIX_BODY)
+
+  private fun metaFile(key: String): File =
+    File(this.directory, key + SUFFIX_META)
+
+  /**
+   * A stream that copies everything read from the delegate into a file.
+   */
+
+  private class CachingInputStream(
+    delegate: InputStream,
+    private var output: OutputStream?,
+    private val onClose: (Boolean) -> Unit
+  ) : FilterInputStream(delegate) {
+
+    private var complete = false
+    private var closed = false
+
+    override fun read(): Int {
+      val b = super.read()
+      if (b == -1) {
+        this.complete = true
+      } else {
+        this.write { output -> output.write(b) }
+      }
+      return b
+    }
+
+    override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+      val r = super.read(buffer, offset, length)
+      if (r == -1) {
+        this.complete = true
+      } else {
+        this.write { output -> output.write(buffer, offset, r) }
+      }
+      return r
+    }
+
+    override fun skip(n: Long): Long {
+      this.abandon()
+      return super.skip(n)
+    }
+
+    override fun markSupported(): Boolean =
+      false
+
+    /*
+     * Parsers don't necessarily read the trailing whitespace after the end of a
+     * document, so drain a bounded amount of the stream before deciding whether
+     * the complete body was seen.
+     */
+
+    override fun close() {
+      if (this.closed) {
+        return
+      }
+      this.closed = true
+
+      try {
+        if (!this.complete && this.output != null) {
+          val buffer = ByteArray(4096)
+          var remaining = DRAIN_LIMIT
+          while (remaining > 0) {
+            val r = this.read(buffer, 0, buffer.size)
+            if (r == -1) {
+              break
+            }
+            remaining -= r
+          }
+        }
+      } catch (e: IOException) {
+        this.complete = false
+      } finally {
+        val wasWriting = this.output != null
+        try {
+          this.output?.close()
+        } catch (e: IOException) {
+          this.output = null
+        }
+        super.close()
+        this.onClose.invoke(wasWriting && this.output != null && this.complete)
+      }
+    }
+
+    private fun write(f: (OutputStream) -> Unit) {
+      val current = this.output ?: return
+      try {
+        f.invoke(current)
+      } catch (e: IOException) {
+        this.abandon()
+      }
+    }
+
+    private fun abandon() {
+      try {
+        this.output?.close()
+      } catch (e: IOException) {
+        // Nothing can be done about this.
+      }
+      this.output = null
+    }
+  }
+
+  companion object {
+
+    private const val PROPERTY_ETAG = "ETag"
+    private const val PROPERTY_LAST_MODIFIED = "Last-Modified"
+    private const val SUFFIX_BODY = ".feed"
+    private const val SUFFIX_META = ".meta"
+    private const val DRAIN_LIMIT = 65536
+
+    /**
+     * The part of a set of credentials that identifies the patron. This deliberately
+     * excludes values, such as passwords, that can change without the patron changing.
+     */
+
+    internal fun identityOf(credentials: AccountAuthenticationCredentials?): String {
+      return when (credentials) {
+        null ->
+          ""
+        is AccountAuthenticationCredentials.Basic ->
+          "basic:${credentials.userName.value}"
+        is AccountAuthenticationCredentials.BasicToken ->
+          "basic:${credentials.userName.value}"
+        is AccountAuthenticationCredentials.OAuthWithIntermediary ->
+          "oauth:${credentials.accessToken}"
+        is AccountAuthenticationCredentials.SAML2_0 ->
+          "saml:${credentials.patronInfo}"
+        is AccountAuthenticationCredentials.Ekirjasto ->
+          "ekirjasto:${credentials.patronPermanentID ?: credentials.accessToken}"
+      }
+    }
+
+    private fun keyOf(
+      uri: URI,
+      credentials: AccountAuthenticationCredentials?
+    ): String {
+      val digest = MessageDigest.getInstance("SHA-256")
+      digest.update(uri.toASCIIString().toByteArray(Charsets.UTF_8))
+      digest.update(0)
+      digest.update(identityOf(credentials).toByteArray(Charsets.UTF_8))
+      return digest.digest().joinToString("") { b -> "%02x".format(b) }
+    }
+  }
+}
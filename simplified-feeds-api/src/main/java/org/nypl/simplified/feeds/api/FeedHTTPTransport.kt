@@ -12,6 +12,7 @@ import org.nypl.simplified.opds.core.OPDSFeedTransportIOException
 import org.nypl.simplified.opds.core.OPDSFeedTransportType
 import org.slf4j.LoggerFactory
 import java.io.ByteArrayInputStream
+import java.io.FileNotFoundException
 import java.io.IOException
 import java.io.InputStream
 import java.net.URI
@@ -21,10 +22,15 @@ import java.util.Locale
  * An implementation of the [OPDSFeedTransportType] interface that uses an
  * [HTTPType] instance for communication, supporting optional
  * authentication.
+ *
+ * If a [FeedHTTPCache] is provided, `GET` requests are made conditional on the
+ * validators of any cached copy of the feed, and the cached copy is served when
+ * the server reports that it has not been modified.
  */
 
 class FeedHTTPTransport(
-  private val http: LSHTTPClientType
+  private val http: LSHTTPClientType,
+  private val cache: FeedHTTPCache? = null
 ) : OPDSFeedTransportType<AccountAuthenticationCredentials?> {
 
   private val logger =
@@ -37,26 +43,76 @@ class FeedHTTPTransport(
   ): Pair<InputStream, String?> {
     this.logger.debug("get stream: {} {}", uri, credentials)
 
+    val cached =
+      if (this.cache != null && method.uppercase(Locale.ROOT) == "GET") {
+        this.cache.find(uri, credentials)
+      } else {
+        null
+      }
+
+    return try {
+      this.execute(credentials, uri, method, cached)
+    } catch (e: FileNotFoundException) {
+      /*
+       * The cached copy was evicted or damaged between the conditional request
+       * being made and the body being opened. Fall back to a full request.
+       */
+
+      this.logger.debug("could not open cached feed for {}: ", uri, e)
+      this.execute(credentials, uri, method, null)
+    }
+  }
+
+  @Throws(FileNotFoundException::class)
+  private fun execute(
+    credentials: AccountAuthenticationCredentials?,
+    uri: URI,
+    method: String,
+    cached: FeedHTTPCache.Entry?
+  ): Pair<InputStream, String?> {
     val auth = AccountAuthenticatedHTTP.createAuthorizationIfPresent(credentials)
 
-    val request =
+    val builder =
       this.http.newRequest(uri)
         .setAuthorization(auth)
         .addCredentialsToProperties(credentials)
         .setMethod(this.methodOfName(method))
-        .build()
 
-    val response = request.execute()
+    if (cached != null) {
+      cached.eTag?.let { builder.addHeader("If-None-Match", it) }
+      cached.lastModified?.let { builder.addHeader("If-Modified-Since", it) }
+    }
+
+    val response = builder.build().execute()
     return when (val status = response.status) {
       is LSHTTPResponseStatus.Responded.OK -> {
-        (status.bodyStream ?: ByteArrayInputStream(ByteArray(0))) to status.getAccessToken()
+        if (cached != null && status.properties.originalStatus == 304) {
+          this.logger.debug("not modified: {}", uri)
+          this.cache!!.open(cached) to status.getAccessToken()
+        } else {
+          val body = status.bodyStream ?: ByteArrayInputStream(ByteArray(0))
+          val stored =
+            this.cache?.store(
+              uri = uri,
+              credentials = credentials,
+              eTag = status.properties.header("etag"),
+              lastModified = status.properties.header("last-modified"),
+              stream = body
+            ) ?: body
+          stored to status.getAccessToken()
+        }
       }
       is LSHTTPResponseStatus.Responded.Error ->
-        throw FeedHTTPTransportException(
-          message = status.properties.message,
-          code = status.properties.status,
-          report = status.properties.problemReport
-        )
+        if (cached != null && status.properties.originalStatus == 304) {
+          this.logger.debug("not modified: {}", uri)
+          this.cache!!.open(cached) to status.getAccessToken()
+        } else {
+          throw FeedHTTPTransportException(
+            message = status.properties.message,
+            code = status.properties.status,
+            report = status.properties.problemReport
+          )
+        }
 
       is LSHTTPResponseStatus.Failed ->
         throw OPDSFeedTransportIOException(
@@ -11,17 +11,9 @@ import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.content.api.ContentResolverType
 import org.nypl.simplified.feeds.api.FeedLoaderResult.FeedLoaderFailure
 import org.nypl.simplified.feeds.api.FeedLoaderResult.FeedLoaderSuccess
-import org.nypl.simplified.opds.core.OPDSAcquisition
-import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_BORROW
-import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_BUY
-import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_GENERIC
-import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_OPEN_ACCESS
-import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_SAMPLE
-import org.nypl.simplified.opds.core.OPDSAcquisition.Relation.ACQUISITION_SUBSCRIBE
+import org.nypl.simplified.metrics.api.PerformanceMetrics
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeed
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
-import org.nypl.simplified.opds.core.OPDSAcquisitionPath
-import org.nypl.simplified.opds.core.OPDSAcquisitionPaths
 import org.nypl.simplified.opds.core.OPDSFeedParserType
 import org.nypl.simplified.opds.core.OPDSFeedTransportType
 import org.nypl.simplified.opds.core.OPDSOpenSearch1_1
@@ -29,10 +21,15 @@ import org.nypl.simplified.opds.core.OPDSSearchLink
 import org.nypl.simplified.opds.core.OPDSSearchParserType
 import org.slf4j.LoggerFactory
 import java.io.FileNotFoundException
+import java.io.InputStream
+import java.io.InterruptedIOException
 import java.net.URI
+import java.util.Locale
 import java.util.SortedMap
 import java.util.concurrent.Callable
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * The default implementation of the [FeedLoaderType] interface.
@@ -45,7 +42,9 @@ class FeedLoader private constructor(
   private val exec: ListeningExecutorService,
   private val parser: OPDSFeedParserType,
   private val searchParser: OPDSSearchParserType,
-  private val transport: OPDSFeedTransportType<AccountAuthenticationCredentials?>
+  private val transport: OPDSFeedTransportType<AccountAuthenticationCredentials?>,
+  private val cacheSize: Int,
+  private val cacheTimeToLiveMilliseconds: Long
 ) : FeedLoaderType {
 
   private val log = LoggerFactory.getLogger(FeedLoader::class.java)
@@ -53,12 +52,85 @@ class FeedLoader private constructor(
   private val filterFlag =
     AtomicBoolean(true)
 
+  private val acquisitionSupport =
+    FeedAcquisitionSupport(this.bookFormatSupport)
+
   override var showOnlySupportedBooks: Boolean
     get() = this.filterFlag.get()
     set(value) {
-      this.filterFlag.set(value)
+      if (this.filterFlag.getAndSet(value) != value) {
+        this.acquisitionSupport.clear()
+      }
+    }
+
+  /**
+   * A key that identifies a feed in the cache. Feeds are filtered according to
+   * [showOnlySupportedBooks] when they are loaded, so the filter setting is part of
+   * the key. Only the identity of the patron is part of the key, so that a feed is
+   * still found after the patron's token has been refreshed.
+   */
+
+  private data class CacheKey(
+    val accountId: AccountID,
+    val uri: URI,
+    val method: String,
+    val patron: String,
+    val onlySupported: Boolean
+  )
+
+  private class CacheEntry(
+    val result: FeedLoaderSuccess,
+    val loadedAtNanos: Long
+  )
+
+  /**
+   * The least recently used parsed feeds, along with the callbacks waiting on any
+   * background refreshes that are in progress. Both are guarded by [cache].
+   */
+
+  private val cache =
+    object : LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+      override fun removeEldestEntry(eldest: MutableMap.MutableEntry<CacheKey, CacheEntry>?): Boolean =
+        this.size > this@FeedLoader.cacheSize
     }
 
+  private val cacheRefreshing =
+    HashMap<CacheKey, MutableList<(FeedLoaderSuccess) -> Unit>>()
+
+  /**
+   * Parsed OpenSearch descriptions by URI, along with the callbacks waiting on any fetches
+   * that are in progress. Both are guarded by [searchCache]. Descriptions rarely change,
+   * so a fresh description is used without making any request, and a stale description
+   * is used while it is fetched again in the background. The transport makes that request
+   * conditional on the validators of its own cached copy, if it has one.
+   */
+
+  private class SearchCacheEntry(
+    val search: OPDSOpenSearch1_1,
+    val loadedAtNanos: Long
+  )
+
+  private val searchCache =
+    object : LinkedHashMap<URI, SearchCacheEntry>(16, 0.75f, true) {
+      override fun removeEldestEntry(eldest: MutableMap.MutableEntry<URI, SearchCacheEntry>?): Boolean =
+        this.size > this@FeedLoader.cacheSize
+    }
+
+  private val searchFetching =
+    HashMap<URI, MutableList<(OPDSOpenSearch1_1) -> Unit>>()
+
+  private val cacheHits = AtomicLong(0L)
+  private val cacheStaleHits = AtomicLong(0L)
+  private val cacheMisses = AtomicLong(0L)
+
+  override val cacheStatistics: FeedLoaderCacheStatistics
+    get() = FeedLoaderCacheStatistics(
+      hits = this.cacheHits.get(),
+      staleHits = this.cacheStaleHits.get(),
+      misses = this.cacheMisses.get(),
+      size = synchronized(this.cache) { this.cache.size }
+    )
+
   override fun fetchURI(
     accountID: AccountID,
     uri: URI,
@@ -72,18 +144,170 @@ class FeedLoader private constructor(
             accountId = accountID,
             uri = uri,
             credentials = credentials,
-            method = method
+            method = method,
+            batches = null,
+            cacheKey = null,
+            onSearchResolved = null
           )
         }
       )
     )
   }
 
+  override fun fetchURIStreaming(
+    accountID: AccountID,
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?,
+    method: String,
+    batchSize: Int,
+    onEntries: (List<FeedEntry>) -> Unit,
+    onSearchResolved: (FeedLoaderSuccess) -> Unit
+  ): FluentFuture<FeedLoaderResult> {
+    require(batchSize > 0) { "Batch size must be positive" }
+
+    val key = this.cacheKeyOf(accountID, uri, credentials, method)
+    return FluentFuture.from(
+      this.exec.submit(
+        Callable {
+          this.fetchSynchronously(
+            accountId = accountID,
+            uri = uri,
+            credentials = credentials,
+            method = method,
+            batches = EntryBatcher(
+              accountId = accountID,
+              batchSize = batchSize,
+              filter = this::isEntrySupported,
+              onEntries = onEntries
+            ),
+            cacheKey = key,
+            onSearchResolved = onSearchResolved
+          )
+        }
+      )
+    )
+  }
+
+  override fun fetchURIFromCache(
+    accountID: AccountID,
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?,
+    method: String,
+    onRefreshed: (FeedLoaderSuccess) -> Unit
+  ): FeedLoaderSuccess? {
+    val key = this.cacheKeyOf(accountID, uri, credentials, method)
+    val entry = synchronized(this.cache) { this.cache[key] }
+    if (entry == null) {
+      this.cacheMisses.incrementAndGet()
+      return null
+    }
+
+    val ageMilliseconds =
+      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - entry.loadedAtNanos)
+    if (ageMilliseconds < this.cacheTimeToLiveMilliseconds) {
+      this.cacheHits.incrementAndGet()
+      return entry.result
+    }
+
+    this.cacheStaleHits.incrementAndGet()
+    this.log.debug("feed {} is stale ({}ms), refreshing", uri, ageMilliseconds)
+    this.cacheRefresh(key, credentials, onRefreshed)
+    return entry.result
+  }
+
+  private fun cacheKeyOf(
+    accountID: AccountID,
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?,
+    method: String
+  ): CacheKey {
+    return CacheKey(
+      accountId = accountID,
+      uri = uri,
+      method = method.uppercase(Locale.ROOT),
+      patron = FeedHTTPCache.identityOf(credentials),
+      onlySupported = this.showOnlySupportedBooks
+    )
+  }
+
+  private fun cachePut(
+    key: CacheKey,
+    result: FeedLoaderResult
+  ) {
+    /*
+     * Access tokens in responses replace the patron's current token, so a cached feed
+     * must not carry one: it would replay a token that has since been replaced.
+     */
+
+    if (result is FeedLoaderSuccess) {
+      synchronized(this.cache) {
+        val stored = if (result.accessToken.isNullOrBlank()) result else result.copy(accessToken = null)
+        this.cache[key] = CacheEntry(stored, System.nanoTime())
+      }
+    }
+  }
+
+  /**
+   * Reload the feed for the given key on the feed executor. Only one reload per key is
+   * in progress at any given time; callers that ask for a reload while one is already
+   * in progress are notified when that reload completes.
+   */
+
+  private fun cacheRefresh(
+    key: CacheKey,
+    credentials: AccountAuthenticationCredentials?,
+    onRefreshed: (FeedLoaderSuccess) -> Unit
+  ) {
+    val receivers = mutableListOf(onRefreshed)
+    synchronized(this.cache) {
+      val waiting = this.cacheRefreshing[key]
+      if (waiting != null) {
+        waiting.add(onRefreshed)
+        return
+      }
+      this.cacheRefreshing[key] = receivers
+    }
+
+    this.exec.execute {
+      var result: FeedLoaderResult? = null
+      try {
+        result =
+          this.fetchSynchronously(
+            accountId = key.accountId,
+            uri = key.uri,
+            credentials = credentials,
+            method = key.method,
+            batches = null,
+            cacheKey = key,
+            onSearchResolved = { resolved ->
+              for (receiver in synchronized(this.cache) { receivers.toList() }) {
+                receiver.invoke(resolved)
+              }
+            }
+          )
+      } finally {
+        val waiting = synchronized(this.cache) { this.cacheRefreshing.remove(key) }
+        if (result is FeedLoaderSuccess && waiting != null) {
+          for (receiver in waiting) {
+            try {
+              receiver.invoke(result)
+            } catch (e: Exception) {
+              this.log.error("feed refresh receiver raised exception: ", e)
+            }
+          }
+        }
+      }
+    }
+  }
+
   private fun fetchSynchronously(
     accountId: AccountID,
     uri: URI,
     credentials: AccountAuthenticationCredentials?,
-    method: String
+    method: String,
+    batches: EntryBatcher?,
+    cacheKey: CacheKey?,
+    onSearchResolved: ((FeedLoaderSuccess) -> Unit)?
   ): FeedLoaderResult {
     try {
       /*
@@ -92,7 +316,8 @@ class FeedLoader private constructor(
        */
 
       if (BundledURIs.isBundledURI(uri)) {
-        return this.parseFromBundledContent(accountId, uri)
+        return this.parseFromBundledContent(accountId, uri, batches)
+          .also { result -> cacheKey?.let { key -> this.cachePut(key, result) } }
       }
 
       /*
@@ -101,26 +326,83 @@ class FeedLoader private constructor(
        */
 
       if (uri.scheme == "content") {
-        return this.parseFromContentResolver(accountId, uri)
+        return this.parseFromContentResolver(accountId, uri, batches)
+          .also { result -> cacheKey?.let { key -> this.cachePut(key, result) } }
       }
 
       /*
-       * Otherwise, parse the OPDS feed including any embedded search links.
+       * Otherwise, parse the OPDS feed.
        */
 
-      val opdsFeedResponse = this.transport.getStream(credentials, uri, method)
-      val opdsFeed = opdsFeedResponse.first.use { stream -> this.parser.parse(uri, stream) }
-      val search =
-        this.fetchSearchLink(opdsFeed, credentials, method)
-      val feed =
-        Feed.fromAcquisitionFeed(
-          accountId = accountId,
-          feed = opdsFeed,
-          filter = this::isEntrySupported,
-          search = search
-        )
+      /*
+       * The response body is read while it is parsed, so the parse time includes the
+       * time taken to receive everything after the response headers. Fetches that fail
+       * or are cancelled are timed separately, so that slow failures don't hide in the
+       * timings of successful fetches.
+       */
 
-      return FeedLoaderSuccess(feed, opdsFeedResponse.second)
+      val fetchStart = fetchTimer.start()
+      var timerSuffix = ".failed"
+      try {
+        val opdsFeedResponse =
+          connectTimer.time { this.transport.getStream(credentials, uri, method) }
+        val opdsFeed =
+          parseTimer.time { opdsFeedResponse.first.use { stream -> this.parse(uri, stream, batches) } }
+
+        /*
+         * The search description is never waited for. If it isn't cached, it's fetched
+         * after the feed has been delivered, and the feed is delivered again with it.
+         */
+
+        val searchURI =
+          (opdsFeed.feedSearchURI as? Some<OPDSSearchLink>)?.get()?.uri
+        val searchCached =
+          searchURI?.let { this.searchCached(it) }
+
+        val result =
+          FeedLoaderSuccess(
+            feed = Feed.fromAcquisitionFeed(
+              accountId = accountId,
+              feed = opdsFeed,
+              filter = this::isEntrySupported,
+              search = searchCached?.search
+            ),
+            accessToken = opdsFeedResponse.second
+          )
+
+        if (cacheKey != null) {
+          this.cachePut(cacheKey, result)
+        }
+
+        if (searchURI != null && (searchCached == null || this.searchIsStale(searchCached))) {
+          this.searchFetch(searchURI, credentials, method) { search ->
+            if (searchCached == null) {
+              val resolved =
+                FeedLoaderSuccess(
+                  feed = Feed.fromAcquisitionFeed(
+                    accountId = accountId,
+                    feed = opdsFeed,
+                    filter = this::isEntrySupported,
+                    search = search
+                  ),
+                  accessToken = null
+                )
+              if (cacheKey != null) {
+                this.cachePut(cacheKey, resolved)
+              }
+              onSearchResolved?.invoke(resolved)
+            }
+          }
+        }
+
+        timerSuffix = ""
+        return result
+      } catch (e: InterruptedIOException) {
+        timerSuffix = ".cancelled"
+        throw e
+      } finally {
+        PerformanceMetrics.timer("feeds.fetch$timerSuffix").stop(fetchStart)
+      }
     } catch (e: FeedHTTPTransportException) {
       if (e.code == 401) {
         //Return a need to refresh
@@ -156,35 +438,43 @@ class FeedLoader private constructor(
     if (!this.showOnlySupportedBooks) {
       return true
     }
-
-    val linearizedPaths = OPDSAcquisitionPaths.linearize(entry)
-    for (path in linearizedPaths) {
-      val relationSupported = this.isRelationSupported(path.source.relation)
-      val typePathSupported = this.isTypePathSupported(path)
-      if (relationSupported && typePathSupported) {
-        return true
-      }
-    }
-    return false
+    return this.acquisitionSupport.isEntrySupported(entry)
   }
 
-  private fun isRelationSupported(relation: OPDSAcquisition.Relation): Boolean =
-    when (relation) {
-      ACQUISITION_BORROW -> true
-      ACQUISITION_BUY -> false
-      ACQUISITION_GENERIC -> true
-      ACQUISITION_OPEN_ACCESS -> true
-      ACQUISITION_SAMPLE -> false
-      ACQUISITION_SUBSCRIBE -> false
+  /**
+   * Parse a feed. If a batcher is provided, entries are passed to it as soon as they
+   * have been parsed, and the complete feed is reassembled once the stream has been
+   * consumed.
+   */
+
+  private fun parse(
+    uri: URI,
+    stream: InputStream,
+    batches: EntryBatcher?
+  ): OPDSAcquisitionFeed {
+    if (batches == null) {
+      return this.parser.parse(uri, stream)
     }
 
-  private fun isTypePathSupported(path: OPDSAcquisitionPath): Boolean {
-    return this.bookFormatSupport.isSupportedPath(path.asMIMETypes())
+    val entries = ArrayList<OPDSAcquisitionFeedEntry>(64)
+    val feedWithoutEntries =
+      this.parser.parseStreaming(uri, stream) { entry ->
+        entries.add(entry)
+        batches.onEntry(entry)
+      }
+    batches.flush()
+
+    val builder = OPDSAcquisitionFeed.newBuilderFrom(feedWithoutEntries)
+    for (entry in entries) {
+      builder.addEntry(entry)
+    }
+    return builder.build()
   }
 
   private fun parseFromContentResolver(
     accountId: AccountID,
-    uri: URI
+    uri: URI,
+    batches: EntryBatcher?
   ): FeedLoaderResult {
     val streamMaybe = this.contentResolver.openInputStream(uri)
     return if (streamMaybe != null) {
@@ -192,7 +482,7 @@ class FeedLoader private constructor(
         FeedLoaderSuccess(
           feed = Feed.fromAcquisitionFeed(
             accountId = accountId,
-            feed = this.parser.parse(uri, stream),
+            feed = this.parse(uri, stream, batches),
             search = null,
             filter = this::isEntrySupported
           ),
@@ -223,13 +513,14 @@ class FeedLoader private constructor(
 
   private fun parseFromBundledContent(
     accountId: AccountID,
-    uri: URI
+    uri: URI,
+    batches: EntryBatcher?
   ): FeedLoaderSuccess {
     return this.bundledContent.resolve(uri).use { stream ->
       FeedLoaderSuccess(
         feed = Feed.fromAcquisitionFeed(
           accountId = accountId,
-          feed = this.parser.parse(uri, stream),
+          feed = this.parse(uri, stream, batches),
           filter = this::isEntrySupported,
           search = null
         ),
@@ -238,27 +529,111 @@ class FeedLoader private constructor(
     }
   }
 
-  private fun fetchSearchLink(
-    opdsFeed: OPDSAcquisitionFeed,
+  private fun searchCached(uri: URI): SearchCacheEntry? =
+    synchronized(this.searchCache) { this.searchCache[uri] }
+
+  private fun searchIsStale(entry: SearchCacheEntry): Boolean =
+    System.nanoTime() - entry.loadedAtNanos >= SEARCH_TIME_TO_LIVE_NANOS
+
+  /**
+   * Fetch the search description at the given URI on the feed executor. Only one fetch per
+   * URI is in progress at any given time; callers that ask for a fetch while one is already
+   * in progress are notified when that fetch completes.
+   */
+
+  private fun searchFetch(
+    uri: URI,
     credentials: AccountAuthenticationCredentials?,
-    method: String
-  ): OPDSOpenSearch1_1? {
-    val searchLinkOpt = opdsFeed.feedSearchURI
-    return if (searchLinkOpt is Some<OPDSSearchLink>) {
-      val searchLink = searchLinkOpt.get()
-      val response = this.transport.getStream(credentials, searchLink.uri, method)
-      response.first.use { stream ->
-        return this.searchParser.parse(searchLink.uri, stream)
+    method: String,
+    onFetched: (OPDSOpenSearch1_1) -> Unit
+  ) {
+    synchronized(this.searchCache) {
+      val waiting = this.searchFetching[uri]
+      if (waiting != null) {
+        waiting.add(onFetched)
+        return
+      }
+      this.searchFetching[uri] = mutableListOf(onFetched)
+    }
+
+    this.exec.execute {
+      var search: OPDSOpenSearch1_1? = null
+      try {
+        val response = this.transport.getStream(credentials, uri, method)
+        search = response.first.use { stream -> this.searchParser.parse(uri, stream) }
+        synchronized(this.searchCache) {
+          this.searchCache[uri] = SearchCacheEntry(search, System.nanoTime())
+        }
+      } catch (e: Exception) {
+        this.log.error("could not fetch search description {}: ", uri, e)
+      } finally {
+        val waiting = synchronized(this.searchCache) { this.searchFetching.remove(uri) }
+        if (search != null && waiting != null) {
+          for (receiver in waiting) {
+            try {
+              receiver.invoke(search)
+            } catch (e: Exception) {
+              this.log.error("search description receiver raised exception: ", e)
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Collects filtered entries into batches and passes each batch on as soon as it is full.
+   */
+
+  private class EntryBatcher(
+    private val accountId: AccountID,
+    private val batchSize: Int,
+    private val filter: (OPDSAcquisitionFeedEntry) -> Boolean,
+    private val onEntries: (List<FeedEntry>) -> Unit
+  ) {
+    private val logger = LoggerFactory.getLogger(EntryBatcher::class.java)
+    private val batch = ArrayList<FeedEntry>(this.batchSize)
+
+    fun onEntry(entry: OPDSAcquisitionFeedEntry) {
+      if (entry.groups.isNotEmpty() || !this.filter.invoke(entry)) {
+        return
+      }
+      this.batch.add(FeedEntry.FeedEntryOPDS(this.accountId, entry))
+      if (this.batch.size >= this.batchSize) {
+        this.flush()
+      }
+    }
+
+    fun flush() {
+      if (this.batch.isEmpty()) {
+        return
+      }
+
+      val entries = this.batch.toList()
+      this.batch.clear()
+      try {
+        this.onEntries.invoke(entries)
+      } catch (e: Exception) {
+        this.logger.error("entry batch receiver raised exception: ", e)
       }
-    } else {
-      null
     }
   }
 
   companion object {
 
+    private val fetchTimer =
+      PerformanceMetrics.timer("feeds.fetch")
+    private val connectTimer =
+      PerformanceMetrics.timer("feeds.fetch.connect")
+    private val parseTimer =
+      PerformanceMetrics.timer("feeds.fetch.parse")
+
+    private val SEARCH_TIME_TO_LIVE_NANOS =
+      TimeUnit.HOURS.toNanos(1L)
+
     /**
-     * Create a new feed loader.
+     * Create a new feed loader. Up to [cacheSize] parsed feeds are kept in memory, and
+     * are considered fresh for [cacheTimeToLiveMilliseconds] after they were loaded.
      */
 
     fun create(
@@ -268,8 +643,12 @@ class FeedLoader private constructor(
       parser: OPDSFeedParserType,
       searchParser: OPDSSearchParserType,
       transport: OPDSFeedTransportType<AccountAuthenticationCredentials?>,
-      bundledContent: BundledContentResolverType
+      bundledContent: BundledContentResolverType,
+      cacheSize: Int = 32,
+      cacheTimeToLiveMilliseconds: Long = TimeUnit.MINUTES.toMillis(5L)
     ): FeedLoaderType {
+      require(cacheSize >= 0) { "Cache size must be non-negative" }
+
       return FeedLoader(
         bookFormatSupport = bookFormatSupport,
         bundledContent = bundledContent,
@@ -277,7 +656,9 @@ class FeedLoader private constructor(
         exec = exec,
         parser = parser,
         searchParser = searchParser,
-        transport = transport
+        transport = transport,
+        cacheSize = cacheSize,
+        cacheTimeToLiveMilliseconds = cacheTimeToLiveMilliseconds
       )
     }
   }
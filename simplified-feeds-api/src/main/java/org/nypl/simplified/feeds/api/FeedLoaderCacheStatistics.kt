@@ -0,0 +1,33 @@
+package org.nypl.simplified.feeds.api
+
+/**
+ * A snapshot of the counters of a feed loader's in-memory cache of parsed feeds.
+ */
+
+data class FeedLoaderCacheStatistics(
+
+  /**
+   * The number of lookups that found a feed that was still within its time-to-live.
+   */
+
+  val hits: Long,
+
+  /**
+   * The number of lookups that found a feed that had outlived its time-to-live, and
+   * that was therefore returned and then refreshed in the background.
+   */
+
+  val staleHits: Long,
+
+  /**
+   * The number of lookups that found nothing.
+   */
+
+  val misses: Long,
+
+  /**
+   * The number of feeds currently held in the cache.
+   */
+
+  val size: Int
+)
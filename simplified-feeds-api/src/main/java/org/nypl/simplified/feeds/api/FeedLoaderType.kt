@@ -18,7 +18,15 @@ interface FeedLoaderType {
   var showOnlySupportedBooks: Boolean
 
   /**
-   * Load a feed from the given URI.
+   * The current counters of the in-memory cache of parsed feeds.
+   */
+
+  val cacheStatistics: FeedLoaderCacheStatistics
+
+  /**
+   * Load a feed from the given URI. Loading a feed never waits for the feed's OpenSearch
+   * description; the feed has a search description only if the description has been
+   * fetched before.
    *
    * @param uri           The URI
    * @param credentials   HTTP credentials, if any
@@ -32,4 +40,64 @@ interface FeedLoaderType {
     credentials: AccountAuthenticationCredentials?,
     method: String
   ): FluentFuture<FeedLoaderResult>
+
+  /**
+   * Load a feed from the given URI, delivering entries to [onEntries] in batches of
+   * at most [batchSize] entries while the feed is still being parsed. Only entries that
+   * are not part of any group, and that pass the same filtering as [fetchURI], are
+   * delivered. The returned future completes with the same result that [fetchURI] would
+   * have produced, including the facets, the next link, and all of the entries that were
+   * already delivered in batches.
+   *
+   * A successfully loaded feed is kept in memory so that it can later be returned by
+   * [fetchURIFromCache].
+   *
+   * Loading a feed never waits for the feed's OpenSearch description. If the description
+   * hasn't been fetched before, the feed is returned without it, and [onSearchResolved]
+   * receives the feed again, with the description, once it has been fetched.
+   *
+   * The [onEntries] and [onSearchResolved] functions are called on the feed loading thread.
+   *
+   * @param uri              The URI
+   * @param credentials      HTTP credentials, if any
+   * @param batchSize        The maximum number of entries in each batch
+   * @param onEntries        A function that receives batches of entries
+   * @param onSearchResolved A function that receives the feed with its search description
+   *
+   * @return A future that can be used to cancel the loading feed
+   */
+
+  fun fetchURIStreaming(
+    accountID: AccountID,
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?,
+    method: String,
+    batchSize: Int,
+    onEntries: (List<FeedEntry>) -> Unit,
+    onSearchResolved: (FeedLoaderResult.FeedLoaderSuccess) -> Unit = { }
+  ): FluentFuture<FeedLoaderResult>
+
+  /**
+   * Find a feed that was recently loaded from the given URI for the same patron by
+   * [fetchURIStreaming]. If the feed has outlived the cache's time-to-live, it is
+   * returned anyway and reloaded in the background, and [onRefreshed] receives the
+   * result of the reload if the reload succeeds. The cached feed never carries an
+   * access token; only the result of a reload does.
+   *
+   * The [onRefreshed] function is called on the feed loading thread.
+   *
+   * @param uri           The URI
+   * @param credentials   HTTP credentials, if any
+   * @param onRefreshed   A function that receives the reloaded feed
+   *
+   * @return The cached feed, or `null` if no feed is cached
+   */
+
+  fun fetchURIFromCache(
+    accountID: AccountID,
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?,
+    method: String,
+    onRefreshed: (FeedLoaderResult.FeedLoaderSuccess) -> Unit
+  ): FeedLoaderResult.FeedLoaderSuccess?
 }
@@ -46,6 +46,21 @@ object FeedLoading {
         method = method
       ).get(timeout.first, timeout.second)
 
+    return this.singleEntryOf(taskRecorder, feedResult)
+  }
+
+  /**
+   * Find the first usable OPDS entry in an already loaded feed. This allows callers to
+   * load several feeds concurrently and then interpret the results in order.
+   *
+   * @param taskRecorder A task recorder used to record the operation steps
+   * @param feedResult The result of loading the feed
+   */
+
+  fun singleEntryOf(
+    taskRecorder: TaskRecorderType,
+    feedResult: FeedLoaderResult
+  ): FeedEntryOPDS? {
     return when (feedResult) {
       is FeedLoaderFailedAuthentication -> {
         taskRecorder.currentStepFailed(feedResult.message, "feedAuthentication", feedResult.exception)
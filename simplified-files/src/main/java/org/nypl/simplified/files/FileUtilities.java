@@ -14,6 +14,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
 import java.security.SecureRandom;
 
 /**
@@ -28,7 +29,9 @@ public final class FileUtilities
   }
 
   /**
-   * Copy the file {@code from} to {@code to}.
+   * Copy the file {@code from} to {@code to}. The data is transferred between
+   * the files by the channel implementation, which can avoid copying it through
+   * the Java heap.
    *
    * @param from The source file
    * @param to   The target file
@@ -44,36 +47,62 @@ public final class FileUtilities
     NullCheck.notNull(from);
     NullCheck.notNull(to);
 
-    final byte[] buffer = new byte[8192];
-
-    FileInputStream in = null;
-    try {
-      in = new FileInputStream(from);
-
-      FileOutputStream out = null;
-      try {
-        out = new FileOutputStream(to);
-
-        while (true) {
-          final int r = in.read(buffer);
-          if (r == -1) {
+    try (FileChannel in = new FileInputStream(from).getChannel()) {
+      try (FileChannel out = new FileOutputStream(to).getChannel()) {
+        final long size = in.size();
+        long position = 0L;
+        while (position < size) {
+          final long transferred =
+            in.transferTo(position, size - position, out);
+          if (transferred <= 0L) {
             break;
           }
-          out.write(buffer, 0, r);
-          out.flush();
+          position += transferred;
         }
 
-      } finally {
-        if (out != null) {
-          out.flush();
-          out.close();
+        if (position < size) {
+          throw new IOException(
+            String.format(
+              "Could not copy '%s' to '%s' (copied %d of %d bytes)",
+              from, to, position, size));
         }
       }
+    }
+  }
+
+  /**
+   * Move the file {@code from} to {@code to}, replacing {@code to} if it
+   * exists. The file is renamed if possible. Otherwise, as is the case when the
+   * files are on different filesystems, the file is copied to a temporary file
+   * beside {@code to}, the temporary file is atomically renamed to {@code to},
+   * and {@code from} is deleted.
+   *
+   * @param from The source file
+   * @param to   The target file
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void fileMove(
+    final File from,
+    final File to)
+    throws IOException
+  {
+    NullCheck.notNull(from);
+    NullCheck.notNull(to);
+
+    if (from.renameTo(to)) {
+      return;
+    }
+
+    final File to_tmp = new File(to.getPath() + ".tmp");
+    try {
+      FileUtilities.fileCopy(from, to_tmp);
+      FileUtilities.fileRename(to_tmp, to);
     } finally {
-      if (in != null) {
-        in.close();
-      }
+      to_tmp.delete();
     }
+    FileUtilities.fileDelete(from);
   }
 
   /**
@@ -67,6 +67,7 @@ dependencies {
     implementation(project(":simplified-books-controller"))
     implementation(project(":simplified-books-controller-api"))
     implementation(project(":simplified-books-covers"))
+    implementation(project(":simplified-books-database"))
     implementation(project(":simplified-books-formats"))
     implementation(project(":simplified-books-formats-api"))
     implementation(project(":simplified-books-registry-api"))
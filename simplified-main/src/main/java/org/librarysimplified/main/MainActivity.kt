@@ -40,6 +40,7 @@ import org.librarysimplified.ui.splash.SplashEvent
 import org.librarysimplified.ui.splash.SplashFragment
 import org.librarysimplified.ui.tutorial.TutorialEvent
 import org.librarysimplified.ui.tutorial.TutorialFragment
+import org.nypl.simplified.accounts.api.AccountAuthenticationCredentialsStoreType
 import org.nypl.simplified.accounts.api.AccountID
 import org.nypl.simplified.accounts.registry.api.AccountProviderRegistryType
 import org.nypl.simplified.buildconfig.api.BuildConfigurationServiceType
@@ -401,6 +402,25 @@ class MainActivity : AppCompatActivity(R.layout.main_host) {
   override fun onStop() {
     super.onStop()
     this.listenerRepo.unregisterHandler()
+    this.flushCredentials()
+  }
+
+  /**
+   * Write any credentials that are waiting to be written, as the process may be killed
+   * at any time once the activity is in the background.
+   */
+
+  private fun flushCredentials() {
+    if (!Services.isInitialized()) {
+      return
+    }
+    try {
+      Services.serviceDirectory()
+        .requireService(AccountAuthenticationCredentialsStoreType::class.java)
+        .flush()
+    } catch (e: Exception) {
+      this.logger.error("could not flush credentials: ", e)
+    }
   }
   
   override fun onRestart() {
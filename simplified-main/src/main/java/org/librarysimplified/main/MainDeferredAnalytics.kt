@@ -0,0 +1,40 @@
+package org.librarysimplified.main
+
+import org.nypl.simplified.analytics.api.AnalyticsEvent
+import org.nypl.simplified.analytics.api.AnalyticsType
+
+/**
+ * An analytics service that holds on to published events until the real analytics
+ * systems have been started, so that starting them can be deferred until after boot.
+ */
+
+internal class MainDeferredAnalytics : AnalyticsType {
+
+  private val lock = Any()
+  private val pending = mutableListOf<AnalyticsEvent>()
+  private var delegate: AnalyticsType? = null
+
+  /**
+   * Deliver all pending events to the given analytics service, and all future events
+   * directly to it.
+   */
+
+  fun start(analytics: AnalyticsType) {
+    synchronized(this.lock) {
+      this.pending.forEach(analytics::publishEvent)
+      this.pending.clear()
+      this.delegate = analytics
+    }
+  }
+
+  override fun publishEvent(event: AnalyticsEvent) {
+    synchronized(this.lock) {
+      val analytics = this.delegate
+      if (analytics == null) {
+        this.pending.add(event)
+      } else {
+        analytics.publishEvent(event)
+      }
+    }
+  }
+}
@@ -5,8 +5,10 @@ import androidx.core.content.pm.PackageInfoCompat
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.accounts.api.AccountProviderAuthenticationDescription
 import org.nypl.simplified.accounts.database.api.AccountType
+import org.nypl.simplified.books.book_database.BookDatabaseIndexMigration
 import org.nypl.simplified.migration.api.Migrations
 import org.nypl.simplified.migration.api.MigrationsType
+import org.nypl.simplified.migration.spi.MigrationProviderType
 import org.nypl.simplified.migration.spi.MigrationServiceDependencies
 import org.nypl.simplified.profiles.api.ProfilesDatabaseType
 import org.nypl.simplified.profiles.controller.api.ProfileAccountLoginRequest
@@ -14,7 +16,9 @@ import org.nypl.simplified.profiles.controller.api.ProfilesControllerType
 import org.nypl.simplified.taskrecorder.api.TaskRecorder
 import org.nypl.simplified.taskrecorder.api.TaskResult
 import org.slf4j.LoggerFactory
+import java.io.File
 import java.net.URI
+import java.util.ServiceLoader
 import java.util.concurrent.TimeUnit
 
 internal object MainMigrations {
@@ -23,7 +27,8 @@ internal object MainMigrations {
 
   fun create(
     context: Context,
-    profilesController: ProfilesControllerType
+    profilesController: ProfilesControllerType,
+    profilesDirectory: File
   ): MigrationsType {
     val isAnonymous =
       profilesController.profileAnonymousEnabled() == ProfilesDatabaseType.AnonymousProfileEnabled.ANONYMOUS_PROFILE_ENABLED
@@ -41,7 +46,10 @@ internal object MainMigrations {
       context = context
     )
 
-    return Migrations.create(dependencies)
+    return Migrations(dependencies) {
+      ServiceLoader.load(MigrationProviderType::class.java).toList() +
+        BookDatabaseIndexMigration.Provider(profilesDirectory)
+    }
   }
 
   private fun applicationVersion(context: Context): String {
@@ -4,6 +4,7 @@ import android.content.Context
 import android.content.pm.PackageManager
 import android.content.res.AssetManager
 import android.content.res.Resources
+import android.os.Process
 import android.graphics.Color
 import androidx.core.content.pm.PackageInfoCompat
 import com.fasterxml.jackson.databind.ObjectMapper
@@ -77,11 +78,13 @@ import org.nypl.simplified.books.time.tracking.TimeTrackingService
 import org.nypl.simplified.books.time.tracking.TimeTrackingServiceType
 import org.nypl.simplified.boot.api.BootEvent
 import org.nypl.simplified.boot.api.BootFailureTesting
+import org.nypl.simplified.boot.api.BootServiceGraph
 import org.nypl.simplified.buildconfig.api.BuildConfigurationServiceType
 import org.nypl.simplified.content.api.ContentResolverSane
 import org.nypl.simplified.content.api.ContentResolverType
 import org.nypl.simplified.crashlytics.api.CrashlyticsServiceType
 import org.nypl.simplified.deeplinks.controller.api.DeepLinksControllerType
+import org.nypl.simplified.feeds.api.FeedHTTPCache
 import org.nypl.simplified.feeds.api.FeedHTTPTransport
 import org.nypl.simplified.feeds.api.FeedLoader
 import org.nypl.simplified.feeds.api.FeedLoaderType
@@ -94,7 +97,6 @@ import org.nypl.simplified.networkconnectivity.api.NetworkConnectivityType
 import org.nypl.simplified.notifications.NotificationTokenHTTPCalls
 import org.nypl.simplified.notifications.NotificationTokenHTTPCallsType
 import org.nypl.simplified.notifications.NotificationsService
-import org.nypl.simplified.notifications.NotificationsServiceType
 import org.nypl.simplified.opds.auth_document.AuthenticationDocumentParsers
 import org.nypl.simplified.opds.auth_document.api.AuthenticationDocumentParsersType
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntryParser
@@ -125,6 +127,7 @@ import java.io.File
 import java.io.FileNotFoundException
 import java.io.IOException
 import java.util.ServiceLoader
+import java.util.concurrent.ExecutorService
 
 internal object MainServices {
 
@@ -371,6 +374,7 @@ internal object MainServices {
   }
 
   private fun createFeedLoader(
+    context: Context,
     http: LSHTTPClientType,
     opdsFeedParser: OPDSFeedParserType,
     bookFormatSupport: BookFormatSupportType,
@@ -382,8 +386,10 @@ internal object MainServices {
       NamedThreadPools.namedThreadPool(1, "catalog-feed", 19)
     val feedSearchParser =
       OPDSSearchParser.newParser()
+    val feedCache =
+      FeedHTTPCache(File(context.cacheDir, "feeds"), 32L * 1024L * 1024L)
     val feedTransport =
-      FeedHTTPTransport(http)
+      FeedHTTPTransport(http, feedCache)
 
     return FeedLoader.create(
       bookFormatSupport = bookFormatSupport,
@@ -492,6 +498,13 @@ internal object MainServices {
     throw IllegalStateException("Missing build configuration service")
   }
 
+  /**
+   * The maximum number of services started at the same time during boot.
+   */
+
+  private val bootThreads =
+    Runtime.getRuntime().availableProcessors().coerceIn(2, 4)
+
   fun setup(
     context: Context,
     onProgress: (BootEvent) -> Unit
@@ -507,524 +520,619 @@ internal object MainServices {
     val assets = context.assets
     val strings = MainServicesStrings(context.resources)
 
+    /*
+     * Services are declared along with the services that they depend on, and services
+     * that don't depend on each other are started in parallel.
+     */
+
+    val executor =
+      NamedThreadPools.namedThreadPool(this.bootThreads, "boot", Process.THREAD_PRIORITY_DEFAULT)
+    val graph =
+      BootServiceGraph(executor) { name, durationMillis ->
+        this.logger.debug("boot: started {} in {}ms", name, durationMillis)
+        onProgress.invoke(BootEvent.BootServiceStarted("$name: ${durationMillis}ms", name, durationMillis))
+      }
+
     fun <T : Any> addService(
       message: String,
       interfaceType: Class<T>,
+      dependencies: List<BootServiceGraph.Node<*>> = listOf(),
       serviceConstructor: () -> T
-    ): T {
-      publishEvent(message)
-      val service = serviceConstructor.invoke()
-      services.addService(interfaceType, service)
-      return service
+    ): BootServiceGraph.Node<T> {
+      return graph.service(interfaceType.simpleName, dependencies) {
+        publishEvent(message)
+        val service = serviceConstructor.invoke()
+        synchronized(services) {
+          services.addService(interfaceType, service)
+        }
+        service
+      }
     }
 
     fun <T : Any> addServiceOptionally(
       message: String,
       interfaceType: Class<T>,
+      dependencies: List<BootServiceGraph.Node<*>> = listOf(),
       serviceConstructor: () -> T?
-    ): T? {
-      publishEvent(message)
-      val service = serviceConstructor.invoke()
-      if (service != null) {
-        services.addService(interfaceType, service)
-      } else {
-        logger.warn("Adding Service Failed! {}", interfaceType.name)
+    ): BootServiceGraph.Node<T?> {
+      return graph.service(interfaceType.simpleName, dependencies) {
+        publishEvent(message)
+        val service = serviceConstructor.invoke()
+        if (service != null) {
+          synchronized(services) {
+            services.addService(interfaceType, service)
+          }
+        } else {
+          logger.warn("Adding Service Failed! {}", interfaceType.name)
+        }
+        service
       }
-      return service
     }
 
-    fun <T : Any> addServiceFromServiceLoaderOptionally(
-      message: String,
-      interfaceType: Class<T>
-    ): T? {
-      publishEvent(message)
-      val service = ServiceLoader.load(interfaceType).firstOrNull()
-      if (service != null) {
-        services.addService(interfaceType, service)
-      } else {
-        logger.debug("no services of type {} available in ServiceLoader", interfaceType)
+    fun buildServices(): ServiceDirectoryType {
+      graph.awaitAll()
+      return synchronized(services) {
+        services.build()
       }
-      return service
     }
 
-    addService(
-      message = strings.bootingGeneral("login strings"),
-      interfaceType = AccountLoginStringResourcesType::class.java,
-      serviceConstructor = { MainLoginStringResources(context.resources) }
-    )
-
-    addService(
-      message = strings.bootingGeneral("logout strings"),
-      interfaceType = AccountLogoutStringResourcesType::class.java,
-      serviceConstructor = { MainLogoutStringResources(context.resources) }
-    )
-
-    addService(
-      message = strings.bootingGeneral("account resolution strings"),
-      interfaceType = AccountProviderResolutionStringsType::class.java,
-      serviceConstructor = {
-        AccountProviderSourceResolutionStrings(context.resources)
-      }
-    )
-
-    addService(
-      message = strings.bootingGeneral("account creation strings"),
-      interfaceType = ProfileAccountCreationStringResourcesType::class.java,
-      serviceConstructor = { MainProfileAccountCreationStringResources(context.resources) }
-    )
-
-    addService(
-      message = strings.bootingGeneral("account deletion strings"),
-      interfaceType = ProfileAccountDeletionStringResourcesType::class.java,
-      serviceConstructor = { MainProfileAccountDeletionStringResources(context.resources) }
-    )
-
-    addService(
-      message = strings.bootingGeneral("book revocation strings"),
-      interfaceType = BookRevokeStringResourcesType::class.java,
-      serviceConstructor = { MainCatalogBookRevokeStrings(context.resources) }
-    )
-
-//    val crashlyticsService = addServiceFromServiceLoaderOptionally(
-//      message = strings.bootingGeneral("Crashlytics"),
-//      interfaceType = CrashlyticsServiceType::class.java
-//    )
-
-    AccountProviderRegistryDebugging.load(context.applicationContext)
-
-    val lsHTTP =
+    try {
       addService(
-        message = strings.bootingGeneral("LSHTTP"),
-        interfaceType = LSHTTPClientType::class.java,
-        serviceConstructor = { MainHTTP.create(context) }
+        message = strings.bootingGeneral("login strings"),
+        interfaceType = AccountLoginStringResourcesType::class.java,
+        serviceConstructor = { MainLoginStringResources(context.resources) }
       )
 
-    publishEvent(strings.bootingGeneral("Directories"))
-    val directories = this.initializeDirectories(context)
+      addService(
+        message = strings.bootingGeneral("logout strings"),
+        interfaceType = AccountLogoutStringResourcesType::class.java,
+        serviceConstructor = { MainLogoutStringResources(context.resources) }
+      )
 
-    val adobeConfiguration = this.findAdobeConfiguration(context.resources)
-    val adobeDRM =
-      addServiceOptionally(
-        message = strings.bootingGeneral("Adobe DRM"),
-        interfaceType = AdobeAdeptExecutorType::class.java,
+      addService(
+        message = strings.bootingGeneral("account resolution strings"),
+        interfaceType = AccountProviderResolutionStringsType::class.java,
         serviceConstructor = {
-          this.createAdobeExecutor(
-            context = context,
-            adobeConfiguration = adobeConfiguration
-          )
+          AccountProviderSourceResolutionStrings(context.resources)
         }
       )
 
-    val axisNowDRM =
-      addServiceOptionally(
-        message = strings.bootingGeneral("AxisNow DRM"),
-        interfaceType = AxisNowServiceType::class.java,
-        serviceConstructor = { this.createAxisNowService(lsHTTP) }
+      addService(
+        message = strings.bootingGeneral("account creation strings"),
+        interfaceType = ProfileAccountCreationStringResourcesType::class.java,
+        serviceConstructor = { MainProfileAccountCreationStringResources(context.resources) }
       )
 
-    val screenSize =
       addService(
-        message = strings.bootingGeneral("screen size"),
-        interfaceType = ScreenSizeInformationType::class.java,
-        serviceConstructor = { ScreenSizeInformation(context.resources) }
+        message = strings.bootingGeneral("account deletion strings"),
+        interfaceType = ProfileAccountDeletionStringResourcesType::class.java,
+        serviceConstructor = { MainProfileAccountDeletionStringResources(context.resources) }
       )
 
-    addService(
-      message = strings.bootingGeneral("UI thread"),
-      interfaceType = UIThreadServiceType::class.java,
-      serviceConstructor = { MainUIThreadService() }
-    )
-
-    val bookRegistry =
       addService(
-        message = strings.bootingGeneral("book registry"),
-        interfaceType = BookRegistryType::class.java,
-        serviceConstructor = { BookRegistry.create() }
+        message = strings.bootingGeneral("book revocation strings"),
+        interfaceType = BookRevokeStringResourcesType::class.java,
+        serviceConstructor = { MainCatalogBookRevokeStrings(context.resources) }
       )
-    addService(
-      message = strings.bootingGeneral("book registry"),
-      interfaceType = BookRegistryReadableType::class.java,
-      serviceConstructor = { bookRegistry }
-    )
 
-    addService(
-      message = strings.bootingGeneral("book preview registry"),
-      interfaceType = BookPreviewRegistryType::class.java,
-      serviceConstructor = { BookPreviewRegistry(directories.directoryStorageDownloads) }
-    )
+//      val crashlyticsService = addServiceFromServiceLoaderOptionally(
+//        message = strings.bootingGeneral("Crashlytics"),
+//        interfaceType = CrashlyticsServiceType::class.java
+//      )
 
-    addService(
-      message = strings.bootingGeneral("accessibility service"),
-      interfaceType = AccessibilityServiceType::class.java,
-      serviceConstructor = { AccessibilityService.create(context, bookRegistry) }
-    )
+      AccountProviderRegistryDebugging.load(context.applicationContext)
+
+      val lsHTTP =
+        addService(
+          message = strings.bootingGeneral("LSHTTP"),
+          interfaceType = LSHTTPClientType::class.java,
+          serviceConstructor = { MainHTTP.create(context) }
+        )
+
+      val directories =
+        graph.service("directories") {
+          publishEvent(strings.bootingGeneral("Directories"))
+          this.initializeDirectories(context)
+        }
+
+      val adobeDRM =
+        addServiceOptionally(
+          message = strings.bootingGeneral("Adobe DRM"),
+          interfaceType = AdobeAdeptExecutorType::class.java,
+          serviceConstructor = {
+            this.createAdobeExecutor(
+              context = context,
+              adobeConfiguration = this.findAdobeConfiguration(context.resources)
+            )
+          }
+        )
+
+      val axisNowDRM =
+        addServiceOptionally(
+          message = strings.bootingGeneral("AxisNow DRM"),
+          interfaceType = AxisNowServiceType::class.java,
+          dependencies = listOf(lsHTTP),
+          serviceConstructor = { this.createAxisNowService(lsHTTP.get()) }
+        )
+
+      val screenSize =
+        addService(
+          message = strings.bootingGeneral("screen size"),
+          interfaceType = ScreenSizeInformationType::class.java,
+          serviceConstructor = { ScreenSizeInformation(context.resources) }
+        )
 
-    val tenPrint =
       addService(
-        message = strings.bootingGeneral("10Print"),
-        interfaceType = TenPrintGeneratorType::class.java,
-        serviceConstructor = { TenPrintGenerator.newGenerator() }
+        message = strings.bootingGeneral("UI thread"),
+        interfaceType = UIThreadServiceType::class.java,
+        serviceConstructor = { MainUIThreadService() }
       )
 
-    val coverGenerator =
+      val bookRegistry =
+        addService(
+          message = strings.bootingGeneral("book registry"),
+          interfaceType = BookRegistryType::class.java,
+          serviceConstructor = { BookRegistry.create() }
+        )
       addService(
-        message = strings.bootingGeneral("cover generator"),
-        interfaceType = BookCoverGeneratorType::class.java,
-        serviceConstructor = { BookCoverGenerator(tenPrint) }
+        message = strings.bootingGeneral("book registry"),
+        interfaceType = BookRegistryReadableType::class.java,
+        dependencies = listOf(bookRegistry),
+        serviceConstructor = { bookRegistry.get() }
       )
 
-    addService(
-      message = strings.bootingGeneral("local image loader"),
-      interfaceType = ImageLoaderType::class.java,
-      serviceConstructor = { this.createLocalImageLoader(context) }
-    )
-
-    addService(
-      message = strings.bootingGeneral("build configuration service"),
-      interfaceType = BuildConfigurationServiceType::class.java,
-      serviceConstructor = { this.findBuildConfiguration() }
-    )
-
-    val contentResolver =
       addService(
-        message = strings.bootingGeneral("content resolver"),
-        interfaceType = ContentResolverType::class.java,
-        serviceConstructor = { ContentResolverSane(context.contentResolver) }
+        message = strings.bootingGeneral("book preview registry"),
+        interfaceType = BookPreviewRegistryType::class.java,
+        dependencies = listOf(directories),
+        serviceConstructor = { BookPreviewRegistry(directories.get().directoryStorageDownloads) }
       )
 
-    addService(
-      message = strings.bootingGeneral("borrow subtask directory"),
-      interfaceType = BorrowSubtaskDirectoryType::class.java,
-      serviceConstructor = { BorrowSubtasks.directory() }
-    )
-
-    val documentConfiguration =
-      addServiceOptionally(
-        message = strings.bootingGeneral("document configuration service"),
-        interfaceType = DocumentConfigurationServiceType::class.java,
-        serviceConstructor = {
-          this.optionalFromServiceLoader(DocumentConfigurationServiceType::class.java)
-        }
+      addService(
+        message = strings.bootingGeneral("accessibility service"),
+        interfaceType = AccessibilityServiceType::class.java,
+        dependencies = listOf(bookRegistry),
+        serviceConstructor = { AccessibilityService.create(context, bookRegistry.get()) }
       )
 
-    addService(
-      message = strings.bootingGeneral("document store"),
-      interfaceType = DocumentStoreType::class.java,
-      serviceConstructor = {
-        this.createDocumentStore(
-          assets = assets,
-          http = lsHTTP,
-          directory = directories.directoryStorageDocuments,
-          configuration = documentConfiguration
+      val tenPrint =
+        addService(
+          message = strings.bootingGeneral("10Print"),
+          interfaceType = TenPrintGeneratorType::class.java,
+          serviceConstructor = { TenPrintGenerator.newGenerator() }
+        )
+
+      val coverGenerator =
+        addService(
+          message = strings.bootingGeneral("cover generator"),
+          interfaceType = BookCoverGeneratorType::class.java,
+          dependencies = listOf(tenPrint),
+          serviceConstructor = { BookCoverGenerator(tenPrint.get()) }
         )
-      }
-    )
 
-    val accountProviderRegistry =
       addService(
-        message = strings.bootingGeneral("account providers"),
-        interfaceType = AccountProviderRegistryType::class.java,
-        serviceConstructor = { this.createAccountProviderRegistry(context, lsHTTP) }
+        message = strings.bootingGeneral("local image loader"),
+        interfaceType = ImageLoaderType::class.java,
+        serviceConstructor = { this.createLocalImageLoader(context) }
       )
 
-    val accountBundledCredentials =
       addService(
-        message = strings.bootingGeneral("bundled credentials"),
-        interfaceType = AccountBundledCredentialsType::class.java,
-        serviceConstructor = { this.createAccountBundledCredentials(context) }
+        message = strings.bootingGeneral("build configuration service"),
+        interfaceType = BuildConfigurationServiceType::class.java,
+        serviceConstructor = { this.findBuildConfiguration() }
       )
 
-    val accountCredentials =
+      val contentResolver =
+        addService(
+          message = strings.bootingGeneral("content resolver"),
+          interfaceType = ContentResolverType::class.java,
+          serviceConstructor = { ContentResolverSane(context.contentResolver) }
+        )
+
       addService(
-        message = strings.bootingGeneral("credentials store"),
-        interfaceType = AccountAuthenticationCredentialsStoreType::class.java,
-        serviceConstructor = { this.createAccountAuthenticationCredentialsStore(directories) }
+        message = strings.bootingGeneral("borrow subtask directory"),
+        interfaceType = BorrowSubtaskDirectoryType::class.java,
+        serviceConstructor = { BorrowSubtasks.directory() }
       )
 
-    val analytics =
+      val documentConfiguration =
+        addServiceOptionally(
+          message = strings.bootingGeneral("document configuration service"),
+          interfaceType = DocumentConfigurationServiceType::class.java,
+          serviceConstructor = {
+            this.optionalFromServiceLoader(DocumentConfigurationServiceType::class.java)
+          }
+        )
+
       addService(
-        message = strings.bootingGeneral("analytics"),
-        interfaceType = AnalyticsType::class.java,
+        message = strings.bootingGeneral("document store"),
+        interfaceType = DocumentStoreType::class.java,
+        dependencies = listOf(lsHTTP, directories, documentConfiguration),
         serviceConstructor = {
-          Analytics.create(
-            AnalyticsConfiguration(
-              context = context,
-              http = lsHTTP
-            )
+          this.createDocumentStore(
+            assets = assets,
+            http = lsHTTP.get(),
+            directory = directories.get().directoryStorageDocuments,
+            configuration = documentConfiguration.get()
           )
         }
       )
 
-    val accountEvents =
-      PublishSubject.create<AccountEvent>()
+      val accountProviderRegistry =
+        addService(
+          message = strings.bootingGeneral("account providers"),
+          interfaceType = AccountProviderRegistryType::class.java,
+          dependencies = listOf(lsHTTP),
+          serviceConstructor = { this.createAccountProviderRegistry(context, lsHTTP.get()) }
+        )
 
-    val feedbooksSecretService =
-      addServiceOptionally(
-        message = strings.bootingGeneral("Feedbook secret service"),
-        interfaceType = AudioBookFeedbooksSecretServiceType::class.java,
-        serviceConstructor = { MainFeedbooksSecretService.createConditionally(context) }
-      )
+      val accountBundledCredentials =
+        addService(
+          message = strings.bootingGeneral("bundled credentials"),
+          interfaceType = AccountBundledCredentialsType::class.java,
+          serviceConstructor = { this.createAccountBundledCredentials(context) }
+        )
 
-    val overdriveSecretService =
-      addServiceOptionally(
-        message = strings.bootingGeneral("Overdrive secret service"),
-        interfaceType = AudioBookOverdriveSecretServiceType::class.java,
-        serviceConstructor = { MainOverdriveSecretService.createConditionally(context) }
-      )
+      val accountCredentials =
+        addService(
+          message = strings.bootingGeneral("credentials store"),
+          interfaceType = AccountAuthenticationCredentialsStoreType::class.java,
+          dependencies = listOf(directories),
+          serviceConstructor = {
+            this.createAccountAuthenticationCredentialsStore(directories.get())
+          }
+        )
 
-    val lcpService =
-      addServiceOptionally(
-        message = strings.bootingGeneral("LCP service"),
-        interfaceType = LcpService::class.java,
-        serviceConstructor = { MainLCPService.createConditionally(context) }
-      )
+      /*
+       * The analytics systems are started after boot; events published before then
+       * are delivered once they have started.
+       */
 
-    val bookFormatService =
+      val analytics =
+        MainDeferredAnalytics()
       addService(
-        message = strings.bootingGeneral("book format support"),
-        interfaceType = BookFormatSupportType::class.java,
-        serviceConstructor = {
-          MainBookFormatSupport.createBookFormatSupport(
-            adobeDRM = adobeDRM,
-            axisNowService = axisNowDRM,
-            feedbooksSecretService = feedbooksSecretService,
-            lcpService = lcpService,
-            overdriveSecretService = overdriveSecretService
-          )
-        }
+        message = strings.bootingGeneral("analytics"),
+        interfaceType = AnalyticsType::class.java,
+        serviceConstructor = { analytics }
       )
 
-    //val profilesDatabase =
+      val accountEvents =
+        PublishSubject.create<AccountEvent>()
+
+      val feedbooksSecretService =
+        addServiceOptionally(
+          message = strings.bootingGeneral("Feedbook secret service"),
+          interfaceType = AudioBookFeedbooksSecretServiceType::class.java,
+          serviceConstructor = { MainFeedbooksSecretService.createConditionally(context) }
+        )
+
+      val overdriveSecretService =
+        addServiceOptionally(
+          message = strings.bootingGeneral("Overdrive secret service"),
+          interfaceType = AudioBookOverdriveSecretServiceType::class.java,
+          serviceConstructor = { MainOverdriveSecretService.createConditionally(context) }
+        )
+
+      val lcpService =
+        addServiceOptionally(
+          message = strings.bootingGeneral("LCP service"),
+          interfaceType = LcpService::class.java,
+          serviceConstructor = { MainLCPService.createConditionally(context) }
+        )
+
+      val bookFormatService =
+        addService(
+          message = strings.bootingGeneral("book format support"),
+          interfaceType = BookFormatSupportType::class.java,
+          dependencies = listOf(
+            adobeDRM,
+            axisNowDRM,
+            feedbooksSecretService,
+            lcpService,
+            overdriveSecretService
+          ),
+          serviceConstructor = {
+            MainBookFormatSupport.createBookFormatSupport(
+              adobeDRM = adobeDRM.get(),
+              axisNowService = axisNowDRM.get(),
+              feedbooksSecretService = feedbooksSecretService.get(),
+              lcpService = lcpService.get(),
+              overdriveSecretService = overdriveSecretService.get()
+            )
+          }
+        )
+
       addService(
         message = strings.bootingGeneral("profiles database"),
         interfaceType = ProfilesDatabaseType::class.java,
+        dependencies = listOf(
+          directories,
+          accountProviderRegistry,
+          accountBundledCredentials,
+          accountCredentials,
+          bookFormatService
+        ),
         serviceConstructor = {
           this.createProfileDatabase(
             context,
             context.resources,
             analytics,
             accountEvents,
-            accountProviderRegistry,
-            accountBundledCredentials,
-            accountCredentials,
-            bookFormatService,
-            directories.directoryStorageProfiles
+            accountProviderRegistry.get(),
+            accountBundledCredentials.get(),
+            accountCredentials.get(),
+            bookFormatService.get(),
+            directories.get().directoryStorageProfiles
           )
         }
       )
 
-    val bundledContent =
+      val bundledContent =
+        addService(
+          message = strings.bootingGeneral("bundled content"),
+          interfaceType = BundledContentResolverType::class.java,
+          serviceConstructor = { MainBundledContentResolver.create(context.assets) }
+        )
+
+      val opdsFeedParser =
+        addService(
+          message = strings.bootingGeneral("feed parser"),
+          interfaceType = OPDSFeedParserType::class.java,
+          serviceConstructor = {
+            this.createFeedParser()
+          }
+        )
+
       addService(
-        message = strings.bootingGeneral("bundled content"),
-        interfaceType = BundledContentResolverType::class.java,
-        serviceConstructor = { MainBundledContentResolver.create(context.assets) }
+        message = strings.bootingGeneral("feed loader"),
+        interfaceType = FeedLoaderType::class.java,
+        dependencies = listOf(
+          bookFormatService,
+          bundledContent,
+          contentResolver,
+          lsHTTP,
+          opdsFeedParser
+        ),
+        serviceConstructor = {
+          this.createFeedLoader(
+            context = context,
+            bookFormatSupport = bookFormatService.get(),
+            //bookRegistry = bookRegistry,
+            bundledContent = bundledContent.get(),
+            contentResolver = contentResolver.get(),
+            http = lsHTTP.get(),
+            opdsFeedParser = opdsFeedParser.get()
+          )
+        }
       )
 
-    val opdsFeedParser =
       addService(
-        message = strings.bootingGeneral("feed parser"),
-        interfaceType = OPDSFeedParserType::class.java,
+        message = strings.bootingGeneral("magazines HTTP"),
+        interfaceType = MagazinesHttp::class.java,
+        dependencies = listOf(lsHTTP),
         serviceConstructor = {
-          this.createFeedParser()
+          MagazinesHttp(
+            http = lsHTTP.get(),
+            exec = NamedThreadPools.namedThreadPool(1, "magazines-http", 19)
+          )
         }
       )
 
-    addService(
-      message = strings.bootingGeneral("feed loader"),
-      interfaceType = FeedLoaderType::class.java,
-      serviceConstructor = {
-        this.createFeedLoader(
-          bookFormatSupport = bookFormatService,
-          //bookRegistry = bookRegistry,
-          bundledContent = bundledContent,
-          contentResolver = contentResolver,
-          http = lsHTTP,
-          opdsFeedParser = opdsFeedParser
-        )
-      }
-    )
+      addService(
+        message = strings.bootingGeneral("dependents HTTP"),
+        interfaceType = DependentsHttp::class.java,
+        dependencies = listOf(lsHTTP),
+        serviceConstructor = {
+          DependentsHttp(
+            http = lsHTTP.get(),
+            exec = NamedThreadPools.namedThreadPool(1, "dependents-http", 19)
+          )
+        }
+      )
 
-    addService(
-      message = strings.bootingGeneral("magazines HTTP"),
-      interfaceType = MagazinesHttp::class.java,
-      serviceConstructor = {
-        MagazinesHttp(
-          http = lsHTTP,
-          exec = NamedThreadPools.namedThreadPool(1, "magazines-http", 19)
-        )
-      }
-    )
+      addService(
+        message = strings.bootingGeneral("patron user profile parsers"),
+        interfaceType = PatronUserProfileParsersType::class.java,
+        serviceConstructor = { PatronUserProfileParsers() }
+      )
+
+      addService(
+        message = strings.bootingGeneral("authentication document parsers"),
+        interfaceType = AuthenticationDocumentParsersType::class.java,
+        serviceConstructor = { AuthenticationDocumentParsers() }
+      )
 
-    addService(
-      message = strings.bootingGeneral("dependents HTTP"),
-      interfaceType = DependentsHttp::class.java,
-      serviceConstructor = {
-        DependentsHttp(
-          http = lsHTTP,
-          exec = NamedThreadPools.namedThreadPool(1, "dependents-http", 19)
+      val notificationTokenHTTPCalls =
+        addService(
+          message = strings.bootingGeneral("Notification token http calls"),
+          interfaceType = NotificationTokenHTTPCallsType::class.java,
+          dependencies = listOf(lsHTTP),
+          serviceConstructor = {
+            NotificationTokenHTTPCalls(
+              http = lsHTTP.get(),
+              executor = NamedThreadPools.namedThreadPool(1, "http-notifications", 19)
+            )
+          }
         )
-      }
-    )
 
-    addService(
-      message = strings.bootingGeneral("patron user profile parsers"),
-      interfaceType = PatronUserProfileParsersType::class.java,
-      serviceConstructor = { PatronUserProfileParsers() }
-    )
+      val profileEvents = PublishSubject.create<ProfileEvent>()
 
-    addService(
-      message = strings.bootingGeneral("authentication document parsers"),
-      interfaceType = AuthenticationDocumentParsersType::class.java,
-      serviceConstructor = { AuthenticationDocumentParsers() }
-    )
+      addService(
+        message = strings.bootingGeneral("audio book manifest strategies"),
+        interfaceType = AudioBookManifestStrategiesType::class.java,
+        serviceConstructor = { AudioBookManifests }
+      )
+
+      addServiceOptionally(
+        message = "metrics service factory",
+        interfaceType = MetricServiceType::class.java,
+        serviceConstructor = { createMetricService(context) }
+      )
+
+      val badgeLookup =
+        addService(
+          message = strings.bootingGeneral("book cover badge lookup"),
+          interfaceType = BookCoverBadgeLookupType::class.java,
+          dependencies = listOf(screenSize),
+          serviceConstructor = {
+            this.createBookCoverBadgeLookup(
+              context = context,
+              screenSize = screenSize.get()
+            )
+          }
+        )
 
-    val notificationTokenHTTPCalls =
       addService(
-        message = strings.bootingGeneral("Notification token http calls"),
-        interfaceType = NotificationTokenHTTPCallsType::class.java,
+        message = strings.bootingGeneral("book cover provider"),
+        interfaceType = BookCoverProviderType::class.java,
+        dependencies = listOf(bookRegistry, bundledContent, coverGenerator, badgeLookup),
         serviceConstructor = {
-          NotificationTokenHTTPCalls(
-            http = lsHTTP,
-            executor = NamedThreadPools.namedThreadPool(1, "http-notifications", 19)
+          this.createCoverProvider(
+            context = context,
+            bookRegistry = bookRegistry.get(),
+            bundledContentResolver = bundledContent.get(),
+            coverGenerator = coverGenerator.get(),
+            badgeLookup = badgeLookup.get()
           )
         }
       )
 
-    val profileEvents = PublishSubject.create<ProfileEvent>()
-
-    addService(
-      message = strings.bootingGeneral("audio book manifest strategies"),
-      interfaceType = AudioBookManifestStrategiesType::class.java,
-      serviceConstructor = { return@addService AudioBookManifests }
-    )
-
-    addServiceOptionally(
-      message = "metrics service factory",
-      interfaceType = MetricServiceType::class.java,
-      serviceConstructor = { createMetricService(context) }
-    )
+      val networkConnectivity =
+        addService(
+          message = strings.bootingGeneral("network connectivity service"),
+          interfaceType = NetworkConnectivityType::class.java,
+          serviceConstructor = { NetworkConnectivity.create(context) }
+        )
 
-    var profilesControllerTypeService: ProfilesControllerType
+      /*
+       * The controller is created from every service declared so far.
+       */
 
-    val bookController = this.run {
       publishEvent(strings.bootingGeneral("books controller"))
       val execBooks =
         NamedThreadPools.namedThreadPool(1, "books", 19)
-      val controller =
+      val bookController =
         Controller.createFromServiceDirectory(
-          services = services.build(),
+          services = buildServices(),
           executorService = execBooks,
           accountEvents = accountEvents,
           profileEvents = profileEvents,
           cacheDirectory = context.cacheDir
         )
-      profilesControllerTypeService = addService(
-        message = strings.bootingGeneral("profiles controller"),
-        interfaceType = ProfilesControllerType::class.java,
-        serviceConstructor = { controller }
-      )
+
+      synchronized(services) {
+        services.addService(ProfilesControllerType::class.java, bookController)
+        services.addService(DeepLinksControllerType::class.java, bookController)
+        services.addService(BooksControllerType::class.java, bookController)
+        services.addService(BooksPreviewControllerType::class.java, bookController)
+      }
 
       addService(
-        message = strings.bootingGeneral("notifications service"),
-        interfaceType = NotificationsServiceType::class.java,
+        message = strings.bootingGeneral("audiobook time tracker registry"),
+        interfaceType = TimeTrackingServiceType::class.java,
+        dependencies = listOf(directories, lsHTTP),
         serviceConstructor = {
-          NotificationsService(
+          TimeTrackingService(
             context = context,
-            httpCalls = notificationTokenHTTPCalls,
-            notificationResources = MainNotificationResources(context),
-            profilesController = profilesControllerTypeService
+//            httpCalls = TimeTrackingHTTPCalls(ObjectMapper(), lsHTTP, crashlyticsService),
+            httpCalls = TimeTrackingHTTPCalls(ObjectMapper(), lsHTTP.get(), null),
+            timeTrackingDirectory = directories.get().directoryStorageTimeTracking,
+            profilesController = bookController
           )
         }
       )
 
       addService(
-        message = strings.bootingGeneral("deep links controller"),
-        interfaceType = DeepLinksControllerType::class.java,
-        serviceConstructor = { controller }
+        message = strings.bootingGeneral("bookmarks service"),
+        interfaceType = BookmarkServiceType::class.java,
+        dependencies = listOf(lsHTTP),
+        serviceConstructor = { this.createBookmarksService(lsHTTP.get(), bookController) }
       )
+
       addService(
-        message = strings.bootingGeneral("books controller"),
-        interfaceType = BooksControllerType::class.java,
-        serviceConstructor = { controller }
+        message = strings.bootingGeneral("migrations"),
+        interfaceType = MigrationsType::class.java,
+        dependencies = listOf(directories),
+        serviceConstructor = {
+          MainMigrations.create(context, bookController, directories.get().directoryStorageProfiles)
+        }
       )
-      addService(
-        message = strings.bootingGeneral("books preview controller"),
-        interfaceType = BooksPreviewControllerType::class.java,
-        serviceConstructor = { controller }
+
+      val finalServices = buildServices()
+      this.showThreads()
+
+      Services.initialize(finalServices)
+      this.logger.debug("boot completed")
+      onProgress.invoke(BootEvent.BootCompleted(strings.bootCompleted))
+
+      this.startDeferredServices(
+        executor = executor,
+        context = context,
+        analytics = analytics,
+        lsHTTP = lsHTTP.get(),
+        networkConnectivity = networkConnectivity.get(),
+        notificationTokenHTTPCalls = notificationTokenHTTPCalls.get(),
+        profilesController = bookController
       )
-      controller
+      return finalServices
+    } catch (e: Exception) {
+      executor.shutdownNow()
+      throw e
     }
+  }
 
-    addService(
-      message = strings.bootingGeneral("audiobook time tracker registry"),
-      interfaceType = TimeTrackingServiceType::class.java,
-      serviceConstructor = {
-        TimeTrackingService(
-          context = context,
-//          httpCalls = TimeTrackingHTTPCalls(ObjectMapper(), lsHTTP, crashlyticsService),
-          httpCalls = TimeTrackingHTTPCalls(ObjectMapper(), lsHTTP, null),
-          timeTrackingDirectory = directories.directoryStorageTimeTracking,
-          profilesController = profilesControllerTypeService
-        )
-      }
-    )
-
-    publishEvent(strings.bootingGeneral("bookmark service"))
-    val bookmarksService =
-      this.createBookmarksService(lsHTTP, bookController)
+  /**
+   * Start the services that aren't needed to show the first screen. These are started on
+   * the boot threads once boot has completed. Their start times are logged rather than
+   * published, because nothing may be published after the boot has completed.
+   */
 
-    addService(
-      message = strings.bootingGeneral("bookmarks service"),
-      interfaceType = BookmarkServiceType::class.java,
-      serviceConstructor = { bookmarksService }
-    )
+  private fun startDeferredServices(
+    executor: ExecutorService,
+    context: Context,
+    analytics: MainDeferredAnalytics,
+    lsHTTP: LSHTTPClientType,
+    networkConnectivity: NetworkConnectivityType,
+    notificationTokenHTTPCalls: NotificationTokenHTTPCallsType,
+    profilesController: ProfilesControllerType
+  ) {
+    val graph =
+      BootServiceGraph(executor) { name, durationMillis ->
+        this.logger.debug("boot: started deferred {} in {}ms", name, durationMillis)
+      }
 
-    val badgeLookup =
-      addService(
-        message = strings.bootingGeneral("book cover badge lookup"),
-        interfaceType = BookCoverBadgeLookupType::class.java,
-        serviceConstructor = {
-          this.createBookCoverBadgeLookup(
+    graph.service("analytics") {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+      analytics.start(
+        Analytics.create(
+          AnalyticsConfiguration(
             context = context,
-            screenSize = screenSize
+            http = lsHTTP,
+            networkConnectivity = networkConnectivity
           )
-        }
-      )
-
-    addService(
-      message = strings.bootingGeneral("book cover provider"),
-      interfaceType = BookCoverProviderType::class.java,
-      serviceConstructor = {
-        this.createCoverProvider(
-          context = context,
-          bookRegistry = bookRegistry,
-          bundledContentResolver = bundledContent,
-          coverGenerator = coverGenerator,
-          badgeLookup = badgeLookup
         )
-      }
-    )
-
-    addService(
-      message = strings.bootingGeneral("network connectivity service"),
-      interfaceType = NetworkConnectivityType::class.java,
-      serviceConstructor = { NetworkConnectivity.create(context) }
-    )
-
-    addService(
-      message = strings.bootingGeneral("migrations"),
-      interfaceType = MigrationsType::class.java,
-      serviceConstructor = { MainMigrations.create(context, bookController) }
-    )
+      )
+      this.publishApplicationStartupEvent(context, analytics)
+    }
 
-    this.showThreads()
+    graph.service("notifications") {
+      Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND)
+      NotificationsService(
+        context = context,
+        httpCalls = notificationTokenHTTPCalls,
+        notificationResources = MainNotificationResources(context),
+        profilesController = profilesController
+      )
+    }
 
-    this.publishApplicationStartupEvent(context, analytics)
-    val finalServices = services.build()
-    Services.initialize(finalServices)
-    this.logger.debug("boot completed")
-    onProgress.invoke(BootEvent.BootCompleted(strings.bootCompleted))
-    return finalServices
+    executor.execute {
+      try {
+        graph.awaitAll()
+      } catch (e: Exception) {
+        this.logger.error("failed to start deferred services: ", e)
+      }
+    }
+    executor.shutdown()
   }
 
   private fun createAdobeExecutor(
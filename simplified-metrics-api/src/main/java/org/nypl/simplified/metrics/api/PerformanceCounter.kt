@@ -0,0 +1,32 @@
+package org.nypl.simplified.metrics.api
+
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A counter that can only be incremented.
+ */
+
+class PerformanceCounter internal constructor(
+  val name: String
+) {
+  private val value = AtomicLong(0L)
+
+  /**
+   * Add the given amount to the counter.
+   */
+
+  fun increment(amount: Long = 1L) {
+    this.value.addAndGet(amount)
+  }
+
+  /**
+   * @return The current value of the counter
+   */
+
+  fun get(): Long =
+    this.value.get()
+
+  internal fun reset() {
+    this.value.set(0L)
+  }
+}
@@ -0,0 +1,33 @@
+package org.nypl.simplified.metrics.api
+
+/**
+ * A snapshot of the value of a single metric.
+ */
+
+sealed class PerformanceMetricSnapshot {
+
+  abstract val name: String
+
+  /**
+   * A snapshot of a counter.
+   */
+
+  data class Counter(
+    override val name: String,
+    val value: Long
+  ) : PerformanceMetricSnapshot()
+
+  /**
+   * A snapshot of a timer. Percentiles are estimates accurate to within a factor of two.
+   */
+
+  data class Timer(
+    override val name: String,
+    val count: Long,
+    val totalMillis: Long,
+    val maximumMillis: Long,
+    val p50Millis: Double,
+    val p90Millis: Double,
+    val p99Millis: Double
+  ) : PerformanceMetricSnapshot()
+}
@@ -0,0 +1,109 @@
+package org.nypl.simplified.metrics.api
+
+import java.io.File
+import java.io.IOException
+import java.io.StringWriter
+import java.io.Writer
+import java.util.Locale
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * A process-wide registry of local performance metrics.
+ *
+ * Unlike [MetricServiceType], which reports a handful of events to a remote service,
+ * these metrics never leave the device unless they are explicitly exported. Metrics are
+ * created on first use and live for the lifetime of the process; callers are expected to
+ * look up a metric once and keep the reference.
+ */
+
+object PerformanceMetrics {
+
+  private val counters = ConcurrentHashMap<String, PerformanceCounter>()
+  private val timers = ConcurrentHashMap<String, PerformanceTimer>()
+
+  /**
+   * @return The counter with the given name
+   */
+
+  fun counter(name: String): PerformanceCounter =
+    this.counters.getOrPut(name) { PerformanceCounter(name) }
+
+  /**
+   * @return The timer with the given name
+   */
+
+  fun timer(name: String): PerformanceTimer =
+    this.timers.getOrPut(name) { PerformanceTimer(name) }
+
+  /**
+   * @return A snapshot of every metric, ordered by name
+   */
+
+  fun snapshot(): List<PerformanceMetricSnapshot> {
+    val results = mutableListOf<PerformanceMetricSnapshot>()
+    this.counters.values.mapTo(results) { counter ->
+      PerformanceMetricSnapshot.Counter(counter.name, counter.get())
+    }
+    this.timers.values.mapTo(results) { timer -> timer.snapshot() }
+    results.sortBy { metric -> metric.name }
+    return results
+  }
+
+  /**
+   * Reset every metric to zero.
+   */
+
+  fun reset() {
+    this.counters.values.forEach(PerformanceCounter::reset)
+    this.timers.values.forEach(PerformanceTimer::reset)
+  }
+
+  /**
+   * Write a plain text report of every metric.
+   */
+
+  @Throws(IOException::class)
+  fun writeReport(writer: Writer) {
+    for (metric in this.snapshot()) {
+      when (metric) {
+        is PerformanceMetricSnapshot.Counter ->
+          writer.write(String.format(Locale.ROOT, "%s: %d\n", metric.name, metric.value))
+        is PerformanceMetricSnapshot.Timer ->
+          writer.write(
+            String.format(
+              Locale.ROOT,
+              "%s: n=%d total=%dms max=%dms p50<=%.3fms p90<=%.3fms p99<=%.3fms\n",
+              metric.name,
+              metric.count,
+              metric.totalMillis,
+              metric.maximumMillis,
+              metric.p50Millis,
+              metric.p90Millis,
+              metric.p99Millis
+            )
+          )
+      }
+    }
+    writer.flush()
+  }
+
+  /**
+   * @return A plain text report of every metric
+   */
+
+  fun report(): String {
+    val writer = StringWriter()
+    this.writeReport(writer)
+    return writer.toString()
+  }
+
+  /**
+   * Export a plain text report of every metric to the given file.
+   */
+
+  @Throws(IOException::class)
+  fun export(file: File) {
+    file.parentFile?.mkdirs()
+    file.bufferedWriter().use(this::writeReport)
+  }
+}
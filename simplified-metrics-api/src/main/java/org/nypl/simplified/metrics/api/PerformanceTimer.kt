@@ -0,0 +1,129 @@
+package org.nypl.simplified.metrics.api
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * A timer that records the durations of an operation in a latency histogram.
+ *
+ * Durations are counted in buckets whose bounds are successive powers of two microseconds,
+ * from one microsecond up to roughly half an hour. Recording a duration doesn't allocate,
+ * and only performs a few atomic updates, so timers can be used on hot paths.
+ */
+
+class PerformanceTimer internal constructor(
+  val name: String
+) {
+  private val totalNanos = AtomicLong(0L)
+  private val maximumNanos = AtomicLong(0L)
+  private val buckets = AtomicLongArray(BUCKETS)
+
+  /**
+   * @return The current time, to be passed to [stop] when the operation completes
+   */
+
+  fun start(): Long =
+    System.nanoTime()
+
+  /**
+   * Record the time elapsed since the given value returned by [start].
+   */
+
+  fun stop(startNanos: Long) {
+    this.record(System.nanoTime() - startNanos)
+  }
+
+  /**
+   * Time the given function.
+   */
+
+  inline fun <T> time(f: () -> T): T {
+    val startNanos = this.start()
+    try {
+      return f()
+    } finally {
+      this.stop(startNanos)
+    }
+  }
+
+  /**
+   * Record the given duration.
+   */
+
+  fun record(nanos: Long) {
+    val duration = nanos.coerceAtLeast(0L)
+    this.totalNanos.addAndGet(duration)
+    this.buckets.incrementAndGet(bucketOf(duration))
+
+    while (true) {
+      val maximum = this.maximumNanos.get()
+      if (duration <= maximum || this.maximumNanos.compareAndSet(maximum, duration)) {
+        break
+      }
+    }
+  }
+
+  /**
+   * @return A snapshot of the durations recorded so far
+   */
+
+  fun snapshot(): PerformanceMetricSnapshot.Timer {
+    val counts = LongArray(BUCKETS) { index -> this.buckets.get(index) }
+    val count = counts.sum()
+    return PerformanceMetricSnapshot.Timer(
+      name = this.name,
+      count = count,
+      totalMillis = TimeUnit.NANOSECONDS.toMillis(this.totalNanos.get()),
+      maximumMillis = TimeUnit.NANOSECONDS.toMillis(this.maximumNanos.get()),
+      p50Millis = percentileOf(counts, count, 0.50),
+      p90Millis = percentileOf(counts, count, 0.90),
+      p99Millis = percentileOf(counts, count, 0.99)
+    )
+  }
+
+  internal fun reset() {
+    this.totalNanos.set(0L)
+    this.maximumNanos.set(0L)
+    for (index in 0 until BUCKETS) {
+      this.buckets.set(index, 0L)
+    }
+  }
+
+  private companion object {
+
+    const val BUCKETS = 32
+
+    /**
+     * Bucket `i` holds durations of less than `2^i` microseconds.
+     */
+
+    fun bucketOf(nanos: Long): Int {
+      val micros = nanos / 1000L
+      return (64 - java.lang.Long.numberOfLeadingZeros(micros)).coerceAtMost(BUCKETS - 1)
+    }
+
+    /**
+     * Estimate a percentile as the upper bound of the bucket that contains it.
+     */
+
+    fun percentileOf(
+      counts: LongArray,
+      count: Long,
+      percentile: Double
+    ): Double {
+      if (count == 0L) {
+        return 0.0
+      }
+      val rank = Math.ceil(count * percentile).toLong().coerceAtLeast(1L)
+      var seen = 0L
+      for (index in counts.indices) {
+        seen += counts[index]
+        if (seen >= rank) {
+          return (1L shl index) / 1000.0
+        }
+      }
+      return (1L shl (BUCKETS - 1)) / 1000.0
+    }
+  }
+}
@@ -120,6 +120,40 @@ public final class OPDSAcquisitionFeed implements Serializable {
     return new Builder(in_uri, in_title, in_id, in_updated);
   }
 
+  /**
+   * Construct an acquisition feed builder that is populated with the
+   * feed-level metadata (links, facets, licensor, and parse errors) of the
+   * given feed. Entries and groups are not copied. This is typically used to
+   * reassemble a feed that was parsed with
+   * {@link OPDSFeedParserType#parseStreaming(URI, java.io.InputStream, OPDSAcquisitionFeedEntryReceiverType)}.
+   *
+   * @param feed The existing feed
+   * @return A new builder
+   */
+
+  public static OPDSAcquisitionFeedBuilderType newBuilderFrom(
+    final OPDSAcquisitionFeed feed) {
+    Objects.requireNonNull(feed, "feed");
+
+    final Builder b = new Builder(feed.uri, feed.title, feed.id, feed.updated);
+    b.setNextOption(feed.next);
+    b.setSearchOption(feed.search);
+    b.setTermsOfServiceOption(feed.terms_of_service);
+    b.setPrivacyPolicyOption(feed.privacy_policy);
+    b.setAboutOption(feed.about);
+    b.setLisensor(feed.licensor);
+    b.setAuthenticationDocumentLink(feed.auth_document);
+    b.setAnnotationsOption(feed.annotations);
+    b.licenses = feed.licenses;
+    for (final OPDSFacet facet : feed.facets_order) {
+      b.addFacet(facet);
+    }
+    for (final ParseError error : feed.errors) {
+      b.addParseError(error);
+    }
+    return b;
+  }
+
   public OptionType<URI> getAnnotations() {
     return annotations;
   }
@@ -244,7 +244,10 @@ public final class OPDSAcquisitionFeedEntry implements Serializable {
       && this.language.equals(other.language)
       && this.translators.equals(other.translators)
       && this.illustrators.equals(other.illustrators)
+      && this.narrators.equals(other.narrators)
       && this.licensor.equals(other.licensor)
+      && this.timeTrackingUri.equals(other.timeTrackingUri)
+      && this.duration.equals(other.duration)
       && this.selected.equals(other.selected)
       && this.distribution.equals(other.distribution);
   }
@@ -519,9 +522,12 @@ public final class OPDSAcquisitionFeedEntry implements Serializable {
     result = (prime * result) + this.distribution.hashCode();
     result = (prime * result) + this.illustrators.hashCode();
     result = (prime * result) + this.translators.hashCode();
+    result = (prime * result) + this.narrators.hashCode();
     result = (prime * result) + this.language.hashCode();
     result = (prime * result) + this.selected.hashCode();
     result = (prime * result) + this.licensor.hashCode();
+    result = (prime * result) + this.timeTrackingUri.hashCode();
+    result = (prime * result) + this.duration.hashCode();
     return result;
   }
 
@@ -0,0 +1,23 @@
+package org.nypl.simplified.opds.core;
+
+/**
+ * <p>The type of receivers that are handed feed entries as soon as they have
+ * been read from a stream.</p>
+ *
+ * <p>Receivers are called on the thread that is performing the parse, in the
+ * order that entries appear in the feed.</p>
+ *
+ * @see OPDSFeedParserType#parseStreaming(java.net.URI, java.io.InputStream, OPDSAcquisitionFeedEntryReceiverType)
+ */
+
+public interface OPDSAcquisitionFeedEntryReceiverType
+{
+  /**
+   * An entry has been parsed.
+   *
+   * @param entry The parsed entry
+   */
+
+  void onEntry(
+    OPDSAcquisitionFeedEntry entry);
+}
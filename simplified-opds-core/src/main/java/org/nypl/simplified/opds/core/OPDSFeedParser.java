@@ -14,7 +14,11 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.XMLReader;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 
 import static org.nypl.simplified.opds.core.OPDSFeedConstants.ATOM_URI;
 import static org.nypl.simplified.opds.core.OPDSFeedConstants.AUTHENTICATION_DOCUMENT_RELATION_URI_TEXT;
@@ -47,6 +52,8 @@ import static org.nypl.simplified.opds.core.OPDSFeedConstants.SIMPLIFIED_URI_TEX
 
 public final class OPDSFeedParser implements OPDSFeedParserType {
   private static final Logger LOG;
+  private static final String NAMESPACE_PREFIXES_FEATURE =
+    "http://xml.org/sax/features/namespace-prefixes";
 
   static {
     LOG = Objects.requireNonNull(LoggerFactory.getLogger(OPDSFeedParser.class));
@@ -192,13 +199,36 @@ public final class OPDSFeedParser implements OPDSFeedParserType {
     return Option.none();
   }
 
-  private static Document parseStream(
-    final InputStream s)
-    throws ParserConfigurationException, SAXException, IOException {
+  private static Document newDocument()
+    throws ParserConfigurationException {
     final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
     dbf.setNamespaceAware(true);
     final DocumentBuilder db = dbf.newDocumentBuilder();
-    return Objects.requireNonNull(db.parse(s));
+    return Objects.requireNonNull(db.newDocument());
+  }
+
+  private static XMLReader newReader(
+    final OPDSFeedStreamHandler handler)
+    throws ParserConfigurationException, SAXException {
+    final SAXParserFactory spf = SAXParserFactory.newInstance();
+    spf.setNamespaceAware(true);
+    final XMLReader reader = spf.newSAXParser().getXMLReader();
+
+    /*
+     * Qualified names are needed for some attributes (such as "drm:vendor")
+     * that are looked up by prefix. Parsers that don't support the feature
+     * fall back to local names.
+     */
+
+    try {
+      reader.setFeature(NAMESPACE_PREFIXES_FEATURE, true);
+    } catch (final SAXNotRecognizedException | SAXNotSupportedException e) {
+      LOG.debug("parser does not support {}: ", NAMESPACE_PREFIXES_FEATURE, e);
+    }
+
+    reader.setContentHandler(handler);
+    reader.setErrorHandler(handler);
+    return reader;
   }
 
   private static OptionType<URI> parseTermsOfService(
@@ -383,37 +413,67 @@ public final class OPDSFeedParser implements OPDSFeedParserType {
     final URI uri,
     final InputStream s)
     throws OPDSParseException {
+    return this.parseWith(uri, s, null);
+  }
+
+  @Override
+  public OPDSAcquisitionFeed parseStreaming(
+    final URI uri,
+    final InputStream s,
+    final OPDSAcquisitionFeedEntryReceiverType receiver)
+    throws OPDSParseException {
+    return this.parseWith(uri, s, Objects.requireNonNull(receiver, "Receiver"));
+  }
+
+  private OPDSAcquisitionFeed parseWith(
+    final URI uri,
+    final InputStream s,
+    final OPDSAcquisitionFeedEntryReceiverType receiver)
+    throws OPDSParseException {
     Objects.requireNonNull(s);
 
     final long time_pre_parse = System.nanoTime();
-    long time_post_parse = time_pre_parse;
+    final List<OPDSAcquisitionFeedEntry> entries = new ArrayList<>(64);
+    final int[] entry_count = {0};
 
     try {
       LOG.debug("parsing: {}", uri);
 
-      final Document d = OPDSFeedParser.parseStream(s);
-      time_post_parse = System.nanoTime();
+      /*
+       * Entries are interpreted as soon as their end tags have been read.
+       * If a receiver was provided, entries are handed to it immediately and
+       * are not retained here.
+       */
 
-      final Node root = Objects.requireNonNull(d.getFirstChild());
-      if (root instanceof Element) {
-        final Element root_e = (Element) root;
-        if (OPDSXML.nodeHasName(root_e, ATOM_URI, "feed")) {
-          return this.parseAsFeed(uri, root_e);
-        }
-        if (OPDSXML.nodeHasName(root_e, ATOM_URI, "entry")) {
-          return this.parseAsEntry(uri, root_e);
-        }
+      final OPDSFeedStreamHandler handler =
+        new OPDSFeedStreamHandler(OPDSFeedParser.newDocument(), element -> {
+          final OPDSAcquisitionFeedEntry entry =
+            this.entry_parser.parseEntry(uri, element);
+          if (!entry.getAcquisitions().isEmpty()) {
+            ++entry_count[0];
+            if (receiver != null) {
+              receiver.onEntry(entry);
+            } else {
+              entries.add(entry);
+            }
+          }
+        });
 
-        throw new OPDSParseException(
-          String.format(
-            "Feed root is '%s', expected 'feed' or 'entry'",
-            root_e.getLocalName()));
-      } else {
+      OPDSFeedParser.newReader(handler).parse(new InputSource(s));
+
+      final Element root = handler.root();
+      if (root == null) {
         throw new OPDSParseException("Feed root is not 'feed' or 'entry'");
       }
+      if (handler.rootIsFeed()) {
+        return this.parseAsFeed(uri, root, entries);
+      }
+      return this.parseAsEntry(uri, root, receiver);
 
     } catch (final ParserConfigurationException e) {
       throw new OPDSParseException(e);
+    } catch (final OPDSFeedStreamHandler.ParseFailed e) {
+      throw e.error();
     } catch (final SAXException e) {
       throw new OPDSParseException(e);
     } catch (final OPDSParseException e) {
@@ -424,23 +484,19 @@ public final class OPDSFeedParser implements OPDSFeedParserType {
       throw new OPDSParseException(e);
     } finally {
       final long time_now = System.nanoTime();
-      final long time_parse = time_post_parse - time_pre_parse;
-      final long time_interp = time_now - time_post_parse;
       LOG.debug(
-        "parsing completed ({}ms - parse: {}ms, interp: {}ms): {}",
-        TimeUnit.MILLISECONDS.convert(
-          time_parse + time_interp, TimeUnit.NANOSECONDS),
-        TimeUnit.MILLISECONDS.convert(
-          time_parse, TimeUnit.NANOSECONDS),
+        "parsing completed ({}ms, {} entries): {}",
         TimeUnit.MILLISECONDS.convert(
-          time_interp, TimeUnit.NANOSECONDS),
+          time_now - time_pre_parse, TimeUnit.NANOSECONDS),
+        entry_count[0],
         uri);
     }
   }
 
   private OPDSAcquisitionFeed parseAsEntry(
     final URI uri,
-    final Element e)
+    final Element e,
+    final OPDSAcquisitionFeedEntryReceiverType receiver)
     throws OPDSParseException {
     LOG.debug("parsing feed as single entry: {}", uri);
 
@@ -453,7 +509,11 @@ public final class OPDSFeedParser implements OPDSFeedParserType {
       this.entry_parser.parseEntry(uri, e);
 
     if (!entry.getAcquisitions().isEmpty()) {
-      b.addEntry(entry);
+      if (receiver != null) {
+        receiver.onEntry(entry);
+      } else {
+        b.addEntry(entry);
+      }
     }
 
     return b.build();
@@ -461,7 +521,8 @@ public final class OPDSFeedParser implements OPDSFeedParserType {
 
   private OPDSAcquisitionFeed parseAsFeed(
     final URI uri,
-    final Node root)
+    final Node root,
+    final List<OPDSAcquisitionFeedEntry> entries)
     throws OPDSParseException {
     LOG.debug("parsing feed as ordinary feed: {}", uri);
 
@@ -640,19 +701,16 @@ public final class OPDSFeedParser implements OPDSFeedParserType {
           }
 
         }
+      }
+    }
 
-        /*
-         * Entries.
-         */
+    /*
+     * Entries. These have already been parsed by the time the rest of the
+     * feed is interpreted.
+     */
 
-        if (OPDSXML.nodeHasName((Element) child, ATOM_URI, "entry")) {
-          final Element e = OPDSXML.nodeAsElement(child);
-          final OPDSAcquisitionFeedEntry entry = this.entry_parser.parseEntry(uri, e);
-          if (!entry.getAcquisitions().isEmpty()) {
-            builder.addEntry(entry);
-          }
-        }
-      }
+    for (final OPDSAcquisitionFeedEntry entry : entries) {
+      builder.addEntry(entry);
     }
 
     return builder.build();
@@ -33,4 +33,29 @@ public interface OPDSFeedParserType
     final URI uri,
     final InputStream s)
       throws OPDSParseException;
+
+  /**
+   * Parse the feed associated with the given stream {@code s}, passing each
+   * entry to {@code receiver} as soon as it has been read from the stream.
+   * The feed is assumed to exist at {@code uri}. The returned feed contains
+   * the feed-level metadata (links, facets, etc.), but does not contain any
+   * of the entries that were passed to the receiver, nor the parse errors of
+   * those entries.
+   *
+   * @param uri
+   *          The URI of the feed
+   * @param s
+   *          The input stream
+   * @param receiver
+   *          The receiver of parsed entries
+   * @return A parsed feed without entries
+   * @throws OPDSParseException
+   *           On errors
+   */
+
+  OPDSAcquisitionFeed parseStreaming(
+    final URI uri,
+    final InputStream s,
+    final OPDSAcquisitionFeedEntryReceiverType receiver)
+      throws OPDSParseException;
 }
@@ -0,0 +1,220 @@
+package org.nypl.simplified.opds.core;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.util.Objects;
+
+import static org.nypl.simplified.opds.core.OPDSFeedConstants.ATOM_URI;
+
+/**
+ * <p>A SAX handler that reads an Atom feed without building a DOM for the
+ * entire document.</p>
+ *
+ * <p>Every direct child of the feed element that is not an {@code entry} is
+ * kept underneath a small "shell" root element so that the feed-level links,
+ * facets and metadata can be interpreted with the existing DOM-based code once
+ * the document has been consumed. Each {@code entry} element is removed from
+ * the tree and handed to a receiver as soon as its end tag has been read, and
+ * is then discarded. At most one entry is held in memory at any given
+ * time.</p>
+ *
+ * <p>If the document root is itself an {@code entry}, the whole entry is kept
+ * under the root and nothing is delivered to the receiver.</p>
+ */
+
+final class OPDSFeedStreamHandler extends DefaultHandler
+{
+  private static final String XMLNS = "xmlns";
+
+  private final Document document;
+  private final EntryElementReceiverType receiver;
+  private Element root;
+  private Element current;
+  private boolean rootIsFeed;
+  private int depth;
+
+  OPDSFeedStreamHandler(
+    final Document in_document,
+    final EntryElementReceiverType in_receiver)
+  {
+    this.document = Objects.requireNonNull(in_document, "Document");
+    this.receiver = Objects.requireNonNull(in_receiver, "Receiver");
+    this.depth = 0;
+  }
+
+  /**
+   * @return The root element, with all entry children removed
+   */
+
+  Element root()
+  {
+    return this.root;
+  }
+
+  /**
+   * @return {@code true} if the root element is an Atom {@code feed}
+   */
+
+  boolean rootIsFeed()
+  {
+    return this.rootIsFeed;
+  }
+
+  @Override
+  public void startElement(
+    final String uri,
+    final String localName,
+    final String qName,
+    final Attributes attributes)
+    throws SAXException
+  {
+    final Element element =
+      this.createElement(uri, localName, qName, attributes);
+
+    if (this.depth == 0) {
+      final boolean isFeed = OPDSXML.nodeHasName(element, ATOM_URI, "feed");
+      final boolean isEntry = OPDSXML.nodeHasName(element, ATOM_URI, "entry");
+      if (!isFeed && !isEntry) {
+        throw new ParseFailed(new OPDSParseException(
+          String.format(
+            "Feed root is '%s', expected 'feed' or 'entry'",
+            element.getLocalName())));
+      }
+      this.rootIsFeed = isFeed;
+      this.root = element;
+      this.document.appendChild(element);
+    } else {
+      this.current.appendChild(element);
+    }
+
+    this.current = element;
+    ++this.depth;
+  }
+
+  @Override
+  public void endElement(
+    final String uri,
+    final String localName,
+    final String qName)
+    throws SAXException
+  {
+    final Element element = this.current;
+    final Node parent = element.getParentNode();
+    --this.depth;
+
+    if (this.rootIsFeed && this.depth == 1) {
+      if (OPDSXML.nodeHasName(element, ATOM_URI, "entry")) {
+        this.root.removeChild(element);
+        try {
+          this.receiver.onEntryElement(element);
+        } catch (final OPDSParseException e) {
+          throw new ParseFailed(e);
+        }
+      }
+    }
+
+    this.current = parent instanceof Element ? (Element) parent : null;
+  }
+
+  @Override
+  public void characters(
+    final char[] ch,
+    final int start,
+    final int length)
+  {
+    final Element element = this.current;
+    if (element == null) {
+      return;
+    }
+
+    /*
+     * Whitespace between the direct children of a feed is never inspected,
+     * so don't bother keeping it.
+     */
+
+    if (this.rootIsFeed && this.depth == 1) {
+      return;
+    }
+
+    final Node last = element.getLastChild();
+    if (last instanceof Text) {
+      ((Text) last).appendData(new String(ch, start, length));
+    } else {
+      element.appendChild(this.document.createTextNode(new String(ch, start, length)));
+    }
+  }
+
+  private Element createElement(
+    final String uri,
+    final String localName,
+    final String qName,
+    final Attributes attributes)
+  {
+    final String namespace = uri.isEmpty() ? null : uri;
+    final String name = qName.isEmpty() ? localName : qName;
+    final Element element = this.document.createElementNS(namespace, name);
+
+    for (int index = 0; index < attributes.getLength(); ++index) {
+      final String attrLocal = attributes.getLocalName(index);
+      final String attrQName = attributes.getQName(index);
+      final String attrName = attrQName.isEmpty() ? attrLocal : attrQName;
+
+      /*
+       * Namespace declarations are only reported if the namespace-prefixes
+       * feature is enabled, and they have already been resolved by the parser.
+       */
+
+      if (XMLNS.equals(attrName) || attrName.startsWith(XMLNS + ":")) {
+        continue;
+      }
+
+      final String attrURI = attributes.getURI(index);
+      element.setAttributeNS(
+        attrURI.isEmpty() ? null : attrURI,
+        attrName,
+        attributes.getValue(index));
+    }
+    return element;
+  }
+
+  /**
+   * The type of receivers of completed top-level entry elements.
+   */
+
+  interface EntryElementReceiverType
+  {
+    void onEntryElement(Element element)
+      throws OPDSParseException;
+  }
+
+  /**
+   * A parse error that occurred inside the handler. SAX only allows
+   * {@link SAXException} to escape from callbacks, so the original exception
+   * is carried along and unwrapped by the caller.
+   */
+
+  static final class ParseFailed extends SAXException
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final OPDSParseException error;
+
+    ParseFailed(
+      final OPDSParseException in_error)
+    {
+      super(in_error);
+      this.error = in_error;
+    }
+
+    OPDSParseException error()
+    {
+      return this.error;
+    }
+  }
+}
@@ -8,7 +8,6 @@ import android.graphics.Paint;
 import android.graphics.Paint.Align;
 import android.graphics.Paint.Style;
 import android.graphics.Path;
-import android.graphics.RectF;
 import android.graphics.Region.Op;
 import android.graphics.Typeface;
 import android.text.Layout;
@@ -31,6 +30,16 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
   private static final Set<Character>  C64_CHARACTER_SET;
   private static final int             TITLE_LENGTH_MAX;
   private static final int             TITLE_LENGTH_MIN;
+  private static final Typeface        TYPEFACE_TITLE;
+  private static final Typeface        TYPEFACE_AUTHOR;
+
+  /**
+   * The paints and paths used to draw a cover. Covers may be generated on several
+   * threads at once, so each thread has its own set, and the set is reused for every
+   * cover that the thread generates.
+   */
+
+  private static final ThreadLocal<Scratch> SCRATCH;
 
   static {
     TITLE_LENGTH_MIN = 2;
@@ -38,6 +47,57 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
     C64_CHARACTER_LIST = TenPrintGenerator.getC64Characters();
     C64_CHARACTER_SET =
       new HashSet<Character>(TenPrintGenerator.C64_CHARACTER_LIST);
+    TYPEFACE_TITLE = Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+    TYPEFACE_AUTHOR = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+    SCRATCH = new ThreadLocal<Scratch>() {
+      @Override protected Scratch initialValue()
+      {
+        return new Scratch();
+      }
+    };
+  }
+
+  private static final class Scratch
+  {
+    private final Paint     paint_base;
+    private final Paint     paint_shape;
+    private final Paint     paint_label;
+    private final Paint     paint_debug;
+    private final TextPaint paint_title;
+    private final TextPaint paint_author;
+    private final Path      path;
+
+    Scratch()
+    {
+      this.paint_base = new Paint();
+      this.paint_base.setAntiAlias(true);
+      this.paint_base.setFilterBitmap(true);
+
+      this.paint_shape = new Paint();
+      this.paint_shape.setAntiAlias(true);
+      this.paint_shape.setFilterBitmap(true);
+
+      this.paint_label = new Paint();
+      this.paint_label.setColor(Color.WHITE);
+      this.paint_label.setAntiAlias(true);
+      this.paint_label.setFilterBitmap(true);
+
+      this.paint_debug = new Paint();
+
+      this.paint_title = new TextPaint();
+      this.paint_title.setColor(Color.BLACK);
+      this.paint_title.setTextAlign(Align.LEFT);
+      this.paint_title.setTypeface(TenPrintGenerator.TYPEFACE_TITLE);
+      this.paint_title.setAntiAlias(true);
+
+      this.paint_author = new TextPaint();
+      this.paint_author.setColor(Color.BLACK);
+      this.paint_author.setTextAlign(Align.LEFT);
+      this.paint_author.setTypeface(TenPrintGenerator.TYPEFACE_AUTHOR);
+      this.paint_author.setAntiAlias(true);
+
+      this.path = new Path();
+    }
   }
 
   private TenPrintGenerator()
@@ -180,8 +240,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
   {
     final float right = (float) (x + w);
     final float bottom = (float) (y + h);
-    final RectF oval = new RectF((float) x, (float) y, right, bottom);
-    canvas.drawOval(oval, p);
+    canvas.drawOval((float) x, (float) y, right, bottom, p);
   }
 
   private static void renderEllipseCenter(
@@ -196,12 +255,12 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
     final float top = (float) (y - (h / 2));
     final float right = (float) (x + (w / 2));
     final float bottom = (float) (y + (h / 2));
-    final RectF oval = new RectF(left, top, right, bottom);
-    canvas.drawOval(oval, p);
+    canvas.drawOval(left, top, right, bottom, p);
   }
 
   private static void renderGridCharacter(
     final Canvas canvas,
+    final Scratch scratch,
     final TenPrintInput i,
     final Paint paint_base,
     final Paint paint_shape,
@@ -314,7 +373,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         }
         case 'A':
         case 'a': {
-          final Path p = new Path();
+          final Path p = scratch.path;
+          p.reset();
           p.moveTo((float) x, (float) y_max);
           p.lineTo((float) x_center, (float) y);
           p.lineTo((float) x_max, (float) y_max);
@@ -325,7 +385,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         }
         case 'S':
         case 's': {
-          final Path p = new Path();
+          final Path p = scratch.path;
+          p.reset();
           p.moveTo((float) x, (float) y);
           p.lineTo((float) x_center, (float) y_max);
           p.lineTo((float) x_max, (float) y);
@@ -403,7 +464,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         case 'Z':
         case 'z': {
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) x, (float) y_center);
             p.lineTo((float) x_center, (float) y);
             p.lineTo((float) x_max, (float) y_center);
@@ -413,7 +475,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
           }
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) x, (float) y_center);
             p.lineTo((float) x_center, (float) y_max);
             p.lineTo((float) x_max, (float) y_center);
@@ -449,7 +512,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
             canvas, x, y, grid_size, grid_size, paint_shape);
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) x, (float) (y + thick));
             p.lineTo((float) (x_center - thick), (float) y_center);
             p.lineTo((float) x, (float) (y_max - thick));
@@ -459,7 +523,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
           }
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) x_max, (float) (y + thick));
             p.lineTo((float) (x_center + thick), (float) y_center);
             p.lineTo((float) x_max, (float) (y_max - thick));
@@ -469,7 +534,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
           }
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) x_max, (float) (y + thick));
             p.lineTo((float) (x_center + thick), (float) y_center);
             p.lineTo((float) x_max, (float) (y_max - thick));
@@ -479,7 +545,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
           }
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) (x + thick), (float) y_max);
             p.lineTo((float) x_center, (float) (y_center + thick));
             p.lineTo((float) (x_max - thick), (float) y_max);
@@ -489,7 +556,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
           }
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) (x + thick), (float) y);
             p.lineTo((float) x_center, (float) (y_center - thick));
             p.lineTo((float) (x_max - thick), (float) y);
@@ -514,7 +582,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
             canvas, x, y, grid_size, grid_size, paint_shape);
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) x, (float) y);
             p.lineTo((float) (x_max - thick), (float) y);
             p.lineTo((float) x, (float) (y_max - thick));
@@ -524,7 +593,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
           }
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) (x + thick), (float) y_max);
             p.lineTo((float) (x_max + thick), (float) y_max);
             p.lineTo((float) (x_max + thick), (float) y);
@@ -542,7 +612,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
             canvas, x, y, grid_size, grid_size, paint_shape);
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) x, (float) (y + thick));
             p.lineTo((float) x, (float) (y_max + thick));
             p.lineTo((float) x_max, (float) (y_max + thick));
@@ -552,7 +623,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
           }
 
           {
-            final Path p = new Path();
+            final Path p = scratch.path;
+            p.reset();
             p.moveTo((float) x, (float) (y - thick));
             p.lineTo((float) x_max, (float) (y_max - thick));
             p.lineTo((float) x_max, (float) (y - thick));
@@ -681,7 +753,8 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
       }
 
       if (i.debugArtworkEnabled()) {
-        final Paint pt = new Paint();
+        final Paint pt = scratch.paint_debug;
+        pt.reset();
         pt.setColor(Color.BLACK);
         pt.setTextSize(16.0f);
         canvas.drawText(Character.toString(c),
@@ -708,6 +781,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
 
   private static void renderLabel(
     final Canvas canvas,
+    final Scratch scratch,
     final TenPrintInput i,
     final int cw,
     final int ch,
@@ -721,10 +795,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
      */
 
     {
-      final Paint paint_label = new Paint();
-      paint_label.setColor(Color.WHITE);
-      paint_label.setAntiAlias(true);
-      paint_label.setFilterBitmap(true);
+      final Paint paint_label = scratch.paint_label;
       canvas.clipRect(
         (float) margin_half,
         (float) margin_half,
@@ -738,24 +809,12 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
      */
 
     final float title_size = (float) i.getCoverWidth() * 0.08f;
-    final TextPaint title_paint = new TextPaint();
-    title_paint.setColor(Color.BLACK);
+    final TextPaint title_paint = scratch.paint_title;
     title_paint.setTextSize(title_size);
-    title_paint.setTextAlign(Align.LEFT);
-    title_paint.setTypeface(
-      Typeface.create(
-        Typeface.SANS_SERIF, Typeface.BOLD));
-    title_paint.setAntiAlias(true);
 
     final float author_size = (float) i.getCoverWidth() * 0.07f;
-    final TextPaint author_paint = new TextPaint();
-    author_paint.setColor(Color.BLACK);
+    final TextPaint author_paint = scratch.paint_author;
     author_paint.setTextSize(author_size);
-    author_paint.setTextAlign(Align.LEFT);
-    author_paint.setTypeface(
-      Typeface.create(
-        Typeface.SANS_SERIF, Typeface.NORMAL));
-    author_paint.setAntiAlias(true);
 
     final int text_width = canvas.getWidth() - (margin * 2);
     final StaticLayout title_layout = new StaticLayout(
@@ -800,8 +859,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
   {
     final float right = (float) (x + w);
     final float bottom = (float) (y + h);
-    final RectF r = new RectF((float) x, (float) y, right, bottom);
-    canvas.drawRect(r, p);
+    canvas.drawRect((float) x, (float) y, right, bottom, p);
   }
 
   private static void renderRing(
@@ -817,8 +875,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
     {
       final float right = (float) (x + w);
       final float bottom = (float) (y + h);
-      final RectF oval = new RectF((float) x, (float) y, right, bottom);
-      c.drawOval(oval, p);
+      c.drawOval((float) x, (float) y, right, bottom, p);
     }
 
     {
@@ -826,8 +883,7 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
       final float top = (float) (y + thick);
       final float right = (float) (x + (w - thick));
       final float bottom = (float) (y + (h - thick));
-      final RectF oval = new RectF(left, top, right, bottom);
-      c.drawOval(oval, q);
+      c.drawOval(left, top, right, bottom, q);
     }
   }
 
@@ -846,15 +902,11 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
     final int color_base = TenPrintGenerator.getColorBase(i, text_length);
     final int color_shape = TenPrintGenerator.getColorShape(i, text_length);
 
-    final Paint paint_base = new Paint();
+    final Scratch scratch = TenPrintGenerator.SCRATCH.get();
+    final Paint paint_base = scratch.paint_base;
     paint_base.setColor(color_base);
-    paint_base.setAntiAlias(true);
-    paint_base.setFilterBitmap(true);
-
-    final Paint paint_shape = new Paint();
+    final Paint paint_shape = scratch.paint_shape;
     paint_shape.setColor(color_shape);
-    paint_shape.setAntiAlias(true);
-    paint_shape.setFilterBitmap(true);
 
     final Canvas canvas = new Canvas(b);
     canvas.drawRect(0.0F, 0.0F, (float) cw, (float) ch, paint_base);
@@ -869,12 +921,12 @@ public final class TenPrintGenerator implements TenPrintGeneratorType
         final int x_offset = x * grid_size;
         final int y_offset = start_y + (y * grid_size);
         TenPrintGenerator.renderGridCharacter(
-          canvas, i, paint_base, paint_shape, c, x_offset, y_offset, grid_size);
+          canvas, scratch, i, paint_base, paint_shape, c, x_offset, y_offset, grid_size);
         grid_cell = grid_cell + 1;
       }
     }
 
-    TenPrintGenerator.renderLabel(canvas, i, cw, ch, start_y);
+    TenPrintGenerator.renderLabel(canvas, scratch, i, cw, ch, start_y);
     return b;
   }
 }
@@ -0,0 +1,75 @@
+package org.nypl.simplified.tests.analytics
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.analytics.circulation.CirculationAnalyticsOutbox
+import org.nypl.simplified.tests.TestDirectories
+import java.io.File
+import java.net.URI
+import java.util.UUID
+
+class CirculationAnalyticsOutboxTest {
+
+  private lateinit var file: File
+  private val account = UUID.randomUUID()
+
+  @BeforeEach
+  fun testSetup() {
+    this.file = File(TestDirectories.temporaryDirectory(), "outbox.txt")
+  }
+
+  private fun entryOf(index: Int): CirculationAnalyticsOutbox.Entry =
+    CirculationAnalyticsOutbox.Entry(
+      timestamp = "2024-01-01T00:00:$index",
+      accountID = this.account,
+      target = URI.create("https://www.example.com/analytics/open_book/$index")
+    )
+
+  /**
+   * Queued events survive reopening the outbox, and delivered events don't.
+   */
+
+  @Test
+  fun testPersistence() {
+    val outbox = CirculationAnalyticsOutbox(this.file)
+    outbox.append(this.entryOf(0))
+    outbox.append(this.entryOf(1))
+    outbox.append(this.entryOf(2))
+    outbox.remove(listOf(this.entryOf(1)))
+
+    val reopened = CirculationAnalyticsOutbox(this.file)
+    assertEquals(listOf(this.entryOf(0), this.entryOf(2)), reopened.peek(10))
+  }
+
+  /**
+   * Duplicate events are not queued.
+   */
+
+  @Test
+  fun testDuplicates() {
+    val outbox = CirculationAnalyticsOutbox(this.file)
+    assertTrue(outbox.append(this.entryOf(0)))
+    assertFalse(outbox.append(this.entryOf(0)))
+    assertEquals(1, outbox.size)
+    assertEquals(1, CirculationAnalyticsOutbox(this.file).size)
+  }
+
+  /**
+   * The oldest events are discarded when the outbox is full.
+   */
+
+  @Test
+  fun testMaximumSize() {
+    val outbox = CirculationAnalyticsOutbox(this.file, maximumEntries = 3)
+    for (index in 0 until 5) {
+      outbox.append(this.entryOf(index))
+    }
+
+    val expected = listOf(this.entryOf(2), this.entryOf(3), this.entryOf(4))
+    assertEquals(expected, outbox.peek(10))
+    assertEquals(expected, CirculationAnalyticsOutbox(this.file, maximumEntries = 3).peek(10))
+  }
+}
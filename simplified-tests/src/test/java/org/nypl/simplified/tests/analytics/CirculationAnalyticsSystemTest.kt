@@ -0,0 +1,167 @@
+package org.nypl.simplified.tests.analytics
+
+import android.content.Context
+import com.io7m.jfunctional.Option
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import org.joda.time.DateTime
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.librarysimplified.http.api.LSHTTPClientConfiguration
+import org.librarysimplified.http.vanilla.LSHTTPClients
+import org.mockito.Mockito
+import org.nypl.simplified.analytics.api.AnalyticsConfiguration
+import org.nypl.simplified.analytics.api.AnalyticsEvent
+import org.nypl.simplified.analytics.circulation.CirculationAnalyticsOutbox
+import org.nypl.simplified.analytics.circulation.CirculationAnalyticsSystem
+import org.nypl.simplified.networkconnectivity.api.NetworkConnectivityType
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityOpenAccess
+import org.nypl.simplified.tests.TestDirectories
+import java.io.File
+import java.net.URI
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class CirculationAnalyticsSystemTest {
+
+  private val accountRejected = UUID.randomUUID()
+  private val accountAccepted = UUID.randomUUID()
+
+  private lateinit var executor: ScheduledExecutorService
+  private lateinit var file: File
+  private lateinit var server: MockWebServer
+  private lateinit var system: CirculationAnalyticsSystem
+  private val requests = ConcurrentHashMap<String, AtomicInteger>()
+
+  private val network =
+    object : NetworkConnectivityType {
+      override val isNetworkAvailable: Boolean = true
+      override val isWifiAvailable: Boolean = true
+    }
+
+  @BeforeEach
+  fun testSetup() {
+    this.server = MockWebServer()
+    this.server.dispatcher =
+      object : Dispatcher() {
+        override fun dispatch(request: RecordedRequest): MockResponse {
+          val path = request.requestUrl!!.encodedPath
+          requests.getOrPut(path.substringBeforeLast('/')) { AtomicInteger() }.incrementAndGet()
+          return if (path.startsWith("/rejected/")) {
+            MockResponse().setResponseCode(401)
+          } else {
+            MockResponse().setResponseCode(200)
+          }
+        }
+      }
+    this.server.start()
+
+    val context = Mockito.mock(Context::class.java)
+    val http =
+      LSHTTPClients()
+        .create(
+          context,
+          LSHTTPClientConfiguration(
+            applicationName = "simplified-tests",
+            applicationVersion = "99.99.0"
+          )
+        )
+
+    this.executor = Executors.newSingleThreadScheduledExecutor()
+    this.file = File(TestDirectories.temporaryDirectory(), "outbox.txt")
+    this.system =
+      CirculationAnalyticsSystem(
+        configuration = AnalyticsConfiguration(context, http, this.network),
+        executor = this.executor,
+        network = this.network,
+        outboxFile = this.file
+      )
+  }
+
+  @AfterEach
+  fun testTearDown() {
+    this.executor.shutdownNow()
+    this.server.close()
+  }
+
+  private fun bookOpened(
+    account: UUID,
+    path: String
+  ): AnalyticsEvent.BookOpened {
+    return AnalyticsEvent.BookOpened(
+      credentials = null,
+      profileUUID = UUID.randomUUID(),
+      profileDisplayName = "Profile",
+      accountProvider = URI.create("urn:provider"),
+      accountUUID = account,
+      opdsEntry = OPDSAcquisitionFeedEntry.newBuilder(
+        path,
+        "Title",
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      ).build(),
+      targetURI = this.server.url(path).toUri(),
+      onAccessTokenUpdated = { }
+    )
+  }
+
+  private fun awaitExecutor() {
+    repeat(3) {
+      this.executor.submit { }.get(10L, TimeUnit.SECONDS)
+    }
+  }
+
+  private fun queued(): List<CirculationAnalyticsOutbox.Entry> =
+    CirculationAnalyticsOutbox(this.file).peek(100)
+
+  private fun requestsTo(prefix: String): Int =
+    this.requests[prefix]?.get() ?: 0
+
+  /**
+   * An account whose events are refused for authentication reasons doesn't hold up the
+   * events of other accounts.
+   */
+
+  @Test
+  fun testFailingAccountDoesNotBlockOthers() {
+    this.system.onAnalyticsEvent(this.bookOpened(this.accountRejected, "/rejected/0"))
+    this.system.onAnalyticsEvent(this.bookOpened(this.accountAccepted, "/accepted/0"))
+    this.system.onAnalyticsEvent(this.bookOpened(this.accountRejected, "/rejected/1"))
+    this.system.onAnalyticsEvent(this.bookOpened(this.accountAccepted, "/accepted/1"))
+    this.awaitExecutor()
+
+    assertEquals(2, this.requestsTo("/accepted"))
+    assertEquals(1, this.requestsTo("/rejected"))
+    assertEquals(
+      listOf(this.accountRejected, this.accountRejected),
+      this.queued().map { entry -> entry.accountID }
+    )
+  }
+
+  /**
+   * An event that keeps failing is dropped after a bounded number of attempts.
+   */
+
+  @Test
+  fun testAttemptsBounded() {
+    this.system.onAnalyticsEvent(this.bookOpened(this.accountRejected, "/rejected/0"))
+    this.awaitExecutor()
+
+    repeat(20) {
+      this.system.onAnalyticsEvent(AnalyticsEvent.SyncRequested(credentials = null))
+      this.awaitExecutor()
+    }
+
+    assertEquals(10, this.requestsTo("/rejected"))
+    assertEquals(listOf<CirculationAnalyticsOutbox.Entry>(), this.queued())
+  }
+}
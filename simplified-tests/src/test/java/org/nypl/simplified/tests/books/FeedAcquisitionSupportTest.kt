@@ -0,0 +1,151 @@
+package org.nypl.simplified.tests.books
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty
+import org.nypl.simplified.books.formats.BookFormatSupport
+import org.nypl.simplified.books.formats.BookFormatSupportParameters
+import org.nypl.simplified.books.formats.api.BookFormatSupportType
+import org.nypl.simplified.feeds.api.FeedAcquisitionSupport
+import org.nypl.simplified.opds.core.OPDSAcquisition
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntryParser
+import org.nypl.simplified.opds.core.OPDSAcquisitionPaths
+import org.nypl.simplified.opds.core.OPDSFeedParser
+import org.slf4j.LoggerFactory
+import java.net.URI
+import java.util.concurrent.TimeUnit
+
+class FeedAcquisitionSupportTest {
+
+  private val logger =
+    LoggerFactory.getLogger(FeedAcquisitionSupportTest::class.java)
+
+  private val supportsEPUBOnly =
+    BookFormatSupport.create(
+      BookFormatSupportParameters(
+        supportsPDF = false,
+        supportsLCP = false,
+        supportsAdobeDRM = false,
+        supportsAxisNow = false,
+        supportsAudioBooks = null
+      )
+    )
+
+  /**
+   * About 500 entries taken from real feeds, with a realistic mix of acquisitions.
+   */
+
+  private fun entries(): List<OPDSAcquisitionFeedEntry> {
+    val parser =
+      OPDSFeedParser.newParser(OPDSAcquisitionFeedEntryParser.newParser())
+    val available =
+      listOf("acquisition-paginated-0.xml", "feedbooks-20190808.xml", "minotaur-20231113.xml")
+        .flatMap { name ->
+          val uri = URI.create("http://www.example.com/$name")
+          val feed =
+            FeedAcquisitionSupportTest::class.java
+              .getResourceAsStream("/org/nypl/simplified/tests/opds/$name")!!
+              .use { stream -> parser.parse(uri, stream) }
+          feed.feedEntries + feed.feedGroups.values.flatMap { group -> group.groupEntries }
+        }
+
+    Assertions.assertTrue(available.isNotEmpty())
+    return (0 until 500).map { index -> available[index % available.size] }
+  }
+
+  /**
+   * The original, unmemoized check.
+   */
+
+  private fun isEntrySupportedDirectly(
+    support: BookFormatSupportType,
+    entry: OPDSAcquisitionFeedEntry
+  ): Boolean {
+    for (path in OPDSAcquisitionPaths.linearize(entry)) {
+      val relationSupported =
+        when (path.source.relation) {
+          OPDSAcquisition.Relation.ACQUISITION_BORROW,
+          OPDSAcquisition.Relation.ACQUISITION_GENERIC,
+          OPDSAcquisition.Relation.ACQUISITION_OPEN_ACCESS -> true
+          OPDSAcquisition.Relation.ACQUISITION_BUY,
+          OPDSAcquisition.Relation.ACQUISITION_SAMPLE,
+          OPDSAcquisition.Relation.ACQUISITION_SUBSCRIBE -> false
+        }
+      if (relationSupported && support.isSupportedPath(path.asMIMETypes())) {
+        return true
+      }
+    }
+    return false
+  }
+
+  /**
+   * The memoized check gives the same answers as the original check, and remembers far
+   * fewer answers than there are entries.
+   */
+
+  @Test
+  fun testSameAnswers() {
+    val entries = this.entries()
+
+    for (support in listOf(BookFormatsTesting.supportsEverything, this.supportsEPUBOnly)) {
+      val memo = FeedAcquisitionSupport(support)
+      val expected = entries.map { entry -> this.isEntrySupportedDirectly(support, entry) }
+      Assertions.assertEquals(expected, entries.map(memo::isEntrySupported))
+      Assertions.assertEquals(expected, entries.map(memo::isEntrySupported))
+      Assertions.assertTrue(memo.size in 1..20, "Distinct acquisitions ${memo.size}")
+    }
+
+    Assertions.assertTrue(
+      entries.any { entry -> this.isEntrySupportedDirectly(BookFormatsTesting.supportsEverything, entry) }
+    )
+  }
+
+  /**
+   * Clearing the memo forgets every answer.
+   */
+
+  @Test
+  fun testClear() {
+    val memo = FeedAcquisitionSupport(BookFormatsTesting.supportsEverything)
+    this.entries().forEach { entry -> memo.isEntrySupported(entry) }
+    Assertions.assertNotEquals(0, memo.size)
+    memo.clear()
+    Assertions.assertEquals(0, memo.size)
+  }
+
+  /**
+   * A micro-benchmark comparing the original check with the memoized check over a
+   * 500-entry feed. The timings are only logged. Run with
+   * `-Dorg.nypl.simplified.tests.benchmarks=true`.
+   */
+
+  @Test
+  @EnabledIfSystemProperty(named = "org.nypl.simplified.tests.benchmarks", matches = "true")
+  fun benchmarkFiltering() {
+    val entries = this.entries()
+    val support = BookFormatsTesting.supportsEverything
+    val memo = FeedAcquisitionSupport(support)
+    val rounds = 200
+
+    fun measure(check: (OPDSAcquisitionFeedEntry) -> Boolean): Long {
+      var supported = 0
+      repeat(rounds / 4) { entries.forEach { entry -> if (check(entry)) supported++ } }
+      val start = System.nanoTime()
+      repeat(rounds) { entries.forEach { entry -> if (check(entry)) supported++ } }
+      val elapsed = System.nanoTime() - start
+      Assertions.assertNotEquals(0, supported)
+      return elapsed / rounds
+    }
+
+    val direct = measure { entry -> this.isEntrySupportedDirectly(support, entry) }
+    val memoized = measure(memo::isEntrySupported)
+
+    this.logger.info(
+      "filtering {} entries: direct {}us, memoized {}us",
+      entries.size,
+      TimeUnit.NANOSECONDS.toMicros(direct),
+      TimeUnit.NANOSECONDS.toMicros(memoized)
+    )
+  }
+}
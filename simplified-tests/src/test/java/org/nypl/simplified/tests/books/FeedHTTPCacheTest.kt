@@ -0,0 +1,106 @@
+package org.nypl.simplified.tests.books
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
+import org.nypl.simplified.feeds.api.FeedHTTPCache
+import org.nypl.simplified.tests.TestDirectories
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.net.URI
+
+class FeedHTTPCacheTest {
+
+  private val uri = URI.create("https://example.com/feed")
+  private lateinit var directory: File
+
+  @BeforeEach
+  fun testSetup() {
+    this.directory = TestDirectories.temporaryDirectory()
+  }
+
+  private fun storeFully(
+    cache: FeedHTTPCache,
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?,
+    text: String
+  ) {
+    cache.store(uri, credentials, "\"x\"", null, ByteArrayInputStream(text.toByteArray()))
+      .use { stream -> stream.readBytes() }
+  }
+
+  /**
+   * A fully read body is stored along with its validators.
+   */
+
+  @Test
+  fun testStoreFind() {
+    val cache = FeedHTTPCache(this.directory, 1024L * 1024L)
+    Assertions.assertNull(cache.find(this.uri, null))
+
+    cache.store(
+      this.uri,
+      null,
+      "\"abc\"",
+      "Wed, 21 Oct 2015 07:28:00 GMT",
+      ByteArrayInputStream("<feed/>".toByteArray())
+    ).use { stream -> stream.readBytes() }
+
+    val entry = cache.find(this.uri, null)!!
+    Assertions.assertEquals("\"abc\"", entry.eTag)
+    Assertions.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", entry.lastModified)
+    Assertions.assertEquals("<feed/>", cache.open(entry).use { String(it.readBytes()) })
+  }
+
+  /**
+   * Responses without validators are not stored.
+   */
+
+  @Test
+  fun testNoValidators() {
+    val cache = FeedHTTPCache(this.directory, 1024L * 1024L)
+    val input = ByteArrayInputStream("<feed/>".toByteArray())
+    Assertions.assertSame(input, cache.store(this.uri, null, null, null, input))
+    Assertions.assertNull(cache.find(this.uri, null))
+  }
+
+  /**
+   * Entries are not shared between patrons.
+   */
+
+  @Test
+  fun testCredentialsSeparate() {
+    val cache = FeedHTTPCache(this.directory, 1024L * 1024L)
+    val credentials =
+      AccountAuthenticationCredentials.OAuthWithIntermediary(
+        accessToken = "token",
+        adobeCredentials = null,
+        authenticationDescription = null,
+        annotationsURI = null,
+        deviceRegistrationURI = null
+      )
+
+    this.storeFully(cache, this.uri, credentials, "<feed/>")
+    Assertions.assertNotNull(cache.find(this.uri, credentials))
+    Assertions.assertNull(cache.find(this.uri, null))
+  }
+
+  /**
+   * The least recently used entries are evicted when the cache is full.
+   */
+
+  @Test
+  fun testEviction() {
+    val cache = FeedHTTPCache(this.directory, 150L)
+    val uri0 = URI.create("https://example.com/0")
+    val uri1 = URI.create("https://example.com/1")
+
+    this.storeFully(cache, uri0, null, "a".repeat(100))
+    File(this.directory, cache.find(uri0, null)!!.body.name).setLastModified(0L)
+    this.storeFully(cache, uri1, null, "b".repeat(100))
+
+    Assertions.assertNull(cache.find(uri0, null))
+    Assertions.assertNotNull(cache.find(uri1, null))
+  }
+}
@@ -0,0 +1,137 @@
+package org.nypl.simplified.tests.books
+
+import android.content.Context
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.librarysimplified.http.api.LSHTTPClientConfiguration
+import org.librarysimplified.http.api.LSHTTPClientType
+import org.librarysimplified.http.vanilla.LSHTTPClients
+import org.mockito.Mockito
+import org.nypl.simplified.feeds.api.FeedHTTPCache
+import org.nypl.simplified.feeds.api.FeedHTTPTransport
+import org.nypl.simplified.tests.TestDirectories
+import java.net.URI
+
+class FeedHTTPTransportTest {
+
+  private lateinit var cache: FeedHTTPCache
+  private lateinit var http: LSHTTPClientType
+  private lateinit var server: MockWebServer
+  private lateinit var transport: FeedHTTPTransport
+  private lateinit var uri: URI
+
+  @BeforeEach
+  fun testSetup() {
+    this.server = MockWebServer()
+    this.server.start()
+
+    this.http =
+      LSHTTPClients()
+        .create(
+          Mockito.mock(Context::class.java),
+          LSHTTPClientConfiguration(
+            applicationName = "simplified-tests",
+            applicationVersion = "99.99.0"
+          )
+        )
+
+    this.cache = FeedHTTPCache(TestDirectories.temporaryDirectory(), 1024L * 1024L)
+    this.transport = FeedHTTPTransport(this.http, this.cache)
+    this.uri = this.server.url("/feed").toUri()
+  }
+
+  @AfterEach
+  fun testTearDown() {
+    this.server.close()
+  }
+
+  private fun getText(): String {
+    return this.transport.getStream(null, this.uri, "GET")
+      .first
+      .use { stream -> String(stream.readBytes()) }
+  }
+
+  /**
+   * A feed with validators is revalidated on the next request, and the cached body is
+   * served when the server responds with 304.
+   */
+
+  @Test
+  fun testNotModifiedServesCachedBody() {
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("ETag", "\"v1\"")
+        .setHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT")
+        .setBody("<feed>1</feed>")
+    )
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(304)
+        .setHeader("ETag", "\"v1\"")
+    )
+
+    Assertions.assertEquals("<feed>1</feed>", this.getText())
+    Assertions.assertEquals("<feed>1</feed>", this.getText())
+
+    val request0 = this.server.takeRequest()
+    Assertions.assertNull(request0.getHeader("If-None-Match"))
+    Assertions.assertNull(request0.getHeader("If-Modified-Since"))
+
+    val request1 = this.server.takeRequest()
+    Assertions.assertEquals("\"v1\"", request1.getHeader("If-None-Match"))
+    Assertions.assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", request1.getHeader("If-Modified-Since"))
+  }
+
+  /**
+   * A modified feed replaces the cached body, and its new validator is sent next time.
+   */
+
+  @Test
+  fun testModifiedReplacesCachedBody() {
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("ETag", "\"v1\"")
+        .setBody("<feed>1</feed>")
+    )
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("ETag", "\"v2\"")
+        .setBody("<feed>2</feed>")
+    )
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(304)
+    )
+
+    Assertions.assertEquals("<feed>1</feed>", this.getText())
+    Assertions.assertEquals("<feed>2</feed>", this.getText())
+    Assertions.assertEquals("<feed>2</feed>", this.getText())
+
+    Assertions.assertNull(this.server.takeRequest().getHeader("If-None-Match"))
+    Assertions.assertEquals("\"v1\"", this.server.takeRequest().getHeader("If-None-Match"))
+    Assertions.assertEquals("\"v2\"", this.server.takeRequest().getHeader("If-None-Match"))
+  }
+
+  /**
+   * A feed without validators isn't cached, so the next request isn't conditional.
+   */
+
+  @Test
+  fun testNoValidatorsNotConditional() {
+    this.server.enqueue(MockResponse().setResponseCode(200).setBody("<feed>1</feed>"))
+    this.server.enqueue(MockResponse().setResponseCode(200).setBody("<feed>2</feed>"))
+
+    Assertions.assertEquals("<feed>1</feed>", this.getText())
+    Assertions.assertEquals("<feed>2</feed>", this.getText())
+
+    Assertions.assertNull(this.server.takeRequest().getHeader("If-None-Match"))
+    Assertions.assertNull(this.server.takeRequest().getHeader("If-None-Match"))
+  }
+}
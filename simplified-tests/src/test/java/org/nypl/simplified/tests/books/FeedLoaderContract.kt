@@ -6,12 +6,21 @@ import org.junit.jupiter.api.AfterEach
 import org.junit.jupiter.api.Assertions
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
+import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
+import org.nypl.simplified.accounts.api.AccountAuthenticationTokenInfo
 import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.accounts.api.AccountPassword
+import org.nypl.simplified.accounts.api.AccountUsername
+import org.nypl.simplified.feeds.api.Feed
+import org.nypl.simplified.feeds.api.FeedEntry
 import org.nypl.simplified.feeds.api.FeedLoaderResult
 import org.nypl.simplified.feeds.api.FeedLoaderType
+import org.nypl.simplified.feeds.api.FeedSearch
 import java.net.URI
 import java.util.UUID
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 abstract class FeedLoaderContract {
 
@@ -76,4 +85,162 @@ abstract class FeedLoaderContract {
     val feed = (result as FeedLoaderResult.FeedLoaderSuccess).feed
     Assertions.assertEquals(0, feed.size)
   }
+
+  /**
+   * Streaming a feed delivers the same entries, in the same order, as the completed feed.
+   */
+
+  @Test
+  fun testFeedStreamingBatches() {
+    val loader =
+      this.createFeedLoader(this.exec)
+    val batches =
+      mutableListOf<List<FeedEntry>>()
+    val future =
+      loader.fetchURIStreaming(
+        accountID = AccountID(UUID.randomUUID()),
+        uri = resource("/org/nypl/simplified/tests/opds/acquisition-paginated-0.xml"),
+        credentials = null,
+        method = "GET",
+        batchSize = 7,
+        onEntries = { batch -> batches.add(batch) }
+      )
+    val result =
+      future.get()
+
+    Assertions.assertTrue(result is FeedLoaderResult.FeedLoaderSuccess)
+    val feed = (result as FeedLoaderResult.FeedLoaderSuccess).feed as Feed.FeedWithoutGroups
+    Assertions.assertTrue(batches.all { batch -> batch.size in 1..7 })
+    Assertions.assertEquals(feed.entriesInOrder.toList(), batches.flatten())
+    Assertions.assertTrue(feed.feedNext != null)
+  }
+
+  /**
+   * A streamed feed is kept in memory and can be returned again without loading it.
+   */
+
+  @Test
+  fun testFeedCacheHitMiss() {
+    val loader =
+      this.createFeedLoader(this.exec)
+    val accountID =
+      AccountID(UUID.randomUUID())
+    val uri =
+      resource("/org/nypl/simplified/tests/opds/acquisition-paginated-0.xml")
+
+    Assertions.assertNull(
+      loader.fetchURIFromCache(accountID, uri, null, "GET", onRefreshed = { })
+    )
+
+    val result =
+      loader.fetchURIStreaming(accountID, uri, null, "GET", 7, onEntries = { })
+        .get()
+
+    val cached =
+      loader.fetchURIFromCache(accountID, uri, null, "GET", onRefreshed = { })
+
+    Assertions.assertSame(result, cached)
+    Assertions.assertNull(
+      loader.fetchURIFromCache(AccountID(UUID.randomUUID()), uri, null, "GET", onRefreshed = { })
+    )
+
+    val statistics = loader.cacheStatistics
+    Assertions.assertEquals(1L, statistics.hits)
+    Assertions.assertEquals(0L, statistics.staleHits)
+    Assertions.assertEquals(2L, statistics.misses)
+    Assertions.assertEquals(1, statistics.size)
+  }
+
+  /**
+   * A cached feed is still found after the patron's token has been replaced, but not by
+   * another patron.
+   */
+
+  @Test
+  fun testFeedCacheTokenRotation() {
+    val loader =
+      this.createFeedLoader(this.exec)
+    val accountID =
+      AccountID(UUID.randomUUID())
+    val uri =
+      resource("/org/nypl/simplified/tests/opds/acquisition-paginated-0.xml")
+    val credentials =
+      AccountAuthenticationCredentials.BasicToken(
+        userName = AccountUsername("1234"),
+        password = AccountPassword("5678"),
+        authenticationTokenInfo = AccountAuthenticationTokenInfo(
+          accessToken = "abcd",
+          authURI = URI("https://www.authrefresh.com")
+        ),
+        adobeCredentials = null,
+        authenticationDescription = null,
+        annotationsURI = null,
+        deviceRegistrationURI = null
+      )
+
+    val result =
+      loader.fetchURIStreaming(accountID, uri, credentials, "GET", 7, onEntries = { })
+        .get() as FeedLoaderResult.FeedLoaderSuccess
+
+    val cached =
+      loader.fetchURIFromCache(accountID, uri, credentials.updateAccessToken("efgh"), "GET", onRefreshed = { })
+    Assertions.assertEquals(result.feed, cached?.feed)
+
+    Assertions.assertNull(
+      loader.fetchURIFromCache(
+        accountID,
+        uri,
+        credentials.copy(userName = AccountUsername("4321")),
+        "GET",
+        onRefreshed = { }
+      )
+    )
+  }
+
+  /**
+   * A feed is delivered without waiting for its search description. The feed is delivered
+   * again with the description once it has been fetched, and the description is reused.
+   */
+
+  @Test
+  fun testFeedSearchResolvedLater() {
+    val loader =
+      this.createFeedLoader(this.exec)
+    val accountID =
+      AccountID(UUID.randomUUID())
+    val uri =
+      resource("feed-with-search.xml")
+    val resolved =
+      CompletableFuture<FeedLoaderResult.FeedLoaderSuccess>()
+
+    val result =
+      loader.fetchURIStreaming(
+        accountID = accountID,
+        uri = uri,
+        credentials = null,
+        method = "GET",
+        batchSize = 7,
+        onEntries = { },
+        onSearchResolved = { success -> resolved.complete(success) }
+      ).get() as FeedLoaderResult.FeedLoaderSuccess
+
+    Assertions.assertNull(result.feed.feedSearch)
+
+    val search =
+      resolved.get(10L, TimeUnit.SECONDS).feed.feedSearch as FeedSearch.FeedSearchOpen1_1
+    Assertions.assertEquals(
+      URI.create("http://library-simplified.herokuapp.com/search/Fiction?q=cats"),
+      search.search.getQueryURIForTerms("cats")
+    )
+
+    val cached =
+      loader.fetchURIFromCache(accountID, uri, null, "GET", onRefreshed = { })
+        as FeedLoaderResult.FeedLoaderSuccess
+    Assertions.assertEquals(search, cached.feed.feedSearch)
+
+    val again =
+      loader.fetchURI(accountID, uri, null, "GET")
+        .get() as FeedLoaderResult.FeedLoaderSuccess
+    Assertions.assertEquals(search, again.feed.feedSearch)
+  }
 }
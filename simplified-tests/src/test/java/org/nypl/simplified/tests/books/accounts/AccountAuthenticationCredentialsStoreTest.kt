@@ -12,6 +12,7 @@ import org.nypl.simplified.accounts.api.AccountPassword
 import org.nypl.simplified.accounts.api.AccountUsername
 import org.nypl.simplified.accounts.database.AccountAuthenticationCredentialsStore
 import org.nypl.simplified.accounts.json.AccountAuthenticationCredentialsJSON
+import org.nypl.simplified.accounts.json.AccountAuthenticationCredentialsStoreJSON
 import org.nypl.simplified.json.core.JSONParseException
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
@@ -238,4 +239,72 @@ class AccountAuthenticationCredentialsStoreTest {
     Assertions.assertEquals(null, store.get(accountID))
     Assertions.assertEquals(0, store.size())
   }
+
+  @Test
+  fun testPutUnchangedNotWritten() {
+    val store =
+      AccountAuthenticationCredentialsStore.open(this.file, this.fileTemp)
+
+    val accountID = AccountID.generate()
+    store.put(accountID, this.basic("abcd"))
+    this.file.setLastModified(0L)
+
+    store.put(accountID, this.basic("abcd"))
+    Assertions.assertEquals(0L, this.file.lastModified())
+  }
+
+  @Test
+  fun testReplaceCoalescedUntilFlush() {
+    val store =
+      AccountAuthenticationCredentialsStore.open(this.file, this.fileTemp, 60_000L)
+
+    val accountID = AccountID.generate()
+    store.put(accountID, this.basic("abcd"))
+    store.put(accountID, this.basic("efgh"))
+    store.put(accountID, this.basic("ijkl"))
+    Assertions.assertEquals(this.basic("ijkl"), store.get(accountID))
+
+    Assertions.assertEquals(
+      this.basic("abcd"),
+      this.readStored(accountID)
+    )
+
+    store.flush()
+    Assertions.assertEquals(
+      this.basic("ijkl"),
+      this.readStored(accountID)
+    )
+  }
+
+  @Test
+  fun testReplaceWrittenAfterDelay() {
+    val store =
+      AccountAuthenticationCredentialsStore.open(this.file, this.fileTemp, 10L)
+
+    val accountID = AccountID.generate()
+    store.put(accountID, this.basic("abcd"))
+    store.put(accountID, this.basic("efgh"))
+
+    val deadline = System.currentTimeMillis() + 5_000L
+    while (System.currentTimeMillis() < deadline) {
+      if (this.readStored(accountID) == this.basic("efgh")) {
+        return
+      }
+      Thread.sleep(10L)
+    }
+    Assertions.fail<Unit>("Credentials were not written")
+  }
+
+  private fun readStored(accountID: AccountID): AccountAuthenticationCredentials? =
+    AccountAuthenticationCredentialsStoreJSON.deserializeFromText(this.file.readText())[accountID]
+
+  private fun basic(password: String): AccountAuthenticationCredentials =
+    AccountAuthenticationCredentials.Basic(
+      userName = AccountUsername("abcd"),
+      password = AccountPassword(password),
+      adobeCredentials = null,
+      authenticationDescription = null,
+      annotationsURI = URI("https://www.example.com"),
+      deviceRegistrationURI = URI("https://www.example.com")
+    )
 }
@@ -0,0 +1,183 @@
+package org.nypl.simplified.tests.books.accounts
+
+import android.content.Context
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import one.irradia.mime.api.MIMEType
+import org.joda.time.DateTime
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.librarysimplified.http.api.LSHTTPClientConfiguration
+import org.librarysimplified.http.api.LSHTTPClientType
+import org.librarysimplified.http.vanilla.LSHTTPClients
+import org.mockito.Mockito
+import org.nypl.simplified.accounts.api.AccountProviderDescription
+import org.nypl.simplified.accounts.api.AccountProviderType
+import org.nypl.simplified.accounts.source.ekirjasto.AccountProviderResolution
+import org.nypl.simplified.accounts.source.ekirjasto.AuthenticationDocumentCache
+import org.nypl.simplified.links.Link
+import org.nypl.simplified.opds.auth_document.api.AuthenticationDocument
+import org.nypl.simplified.opds.auth_document.api.AuthenticationDocumentParserType
+import org.nypl.simplified.opds.auth_document.api.AuthenticationDocumentParsersType
+import org.nypl.simplified.opds.auth_document.api.AuthenticationObjectNYPLFeatures
+import org.nypl.simplified.parser.api.ParseResult
+import org.nypl.simplified.taskrecorder.api.TaskResult
+import org.nypl.simplified.tests.mocking.MockAccountProviderResolutionStrings
+import org.slf4j.LoggerFactory
+import java.net.URI
+import java.util.concurrent.TimeUnit
+
+class AccountProviderResolutionCacheTest {
+
+  private lateinit var server: MockWebServer
+  private lateinit var http: LSHTTPClientType
+  private lateinit var authDocumentParser: AuthenticationDocumentParserType
+  private lateinit var authDocumentParsers: AuthenticationDocumentParsersType
+
+  private val logger =
+    LoggerFactory.getLogger(AccountProviderResolutionCacheTest::class.java)
+
+  private val authDocumentType =
+    MIMEType("application", "vnd.opds.authentication.v1.0+json", mapOf())
+
+  @BeforeEach
+  fun testSetup() {
+    this.authDocumentParsers =
+      Mockito.mock(AuthenticationDocumentParsersType::class.java)
+    this.authDocumentParser =
+      Mockito.mock(AuthenticationDocumentParserType::class.java)
+    this.http =
+      LSHTTPClients()
+        .create(
+          context = Mockito.mock(Context::class.java),
+          configuration = LSHTTPClientConfiguration(
+            applicationName = "simplified-tests",
+            applicationVersion = "1.0",
+            tlsOverrides = null,
+            timeout = Pair(5L, TimeUnit.SECONDS)
+          )
+        )
+
+    Mockito.`when`(
+      this.authDocumentParsers.createParser(anyNotNull(), anyNotNull(), Mockito.anyBoolean())
+    ).thenReturn(this.authDocumentParser)
+    Mockito.`when`(this.authDocumentParser.parse())
+      .thenReturn(ParseResult.Success(listOf(), this.authDocument))
+
+    this.server = MockWebServer()
+    this.server.start()
+  }
+
+  @AfterEach
+  fun tearDown() {
+    this.server.close()
+  }
+
+  private val authDocument =
+    AuthenticationDocument(
+      id = URI("http://www.example.com/auth"),
+      title = "Auth",
+      mainColor = "blue",
+      description = "Some library you've never heard of",
+      authentication = listOf(),
+      announcements = emptyList(),
+      features = AuthenticationObjectNYPLFeatures(
+        enabled = setOf(),
+        disabled = setOf()
+      ),
+      links = listOf(
+        Link.LinkBasic(
+          href = URI("http://www.example.com/feed.xml"),
+          relation = "start"
+        )
+      )
+    )
+
+  private fun resolve(cache: AuthenticationDocumentCache): AccountProviderType {
+    val metadata =
+      AccountProviderDescription(
+        id = URI.create("urn:fake:0"),
+        title = "Title",
+        description = "Description",
+        updated = DateTime.parse("2019-07-09T08:33:40+00:00"),
+        links = listOf(
+          Link.LinkBasic(this.server.url("auth").toUri(), this.authDocumentType)
+        ),
+        images = listOf(),
+        isProduction = true,
+        isAutomatic = false,
+        location = null
+      )
+
+    val result =
+      AccountProviderResolution(
+        stringResources = MockAccountProviderResolutionStrings(),
+        authDocumentParsers = this.authDocumentParsers,
+        http = this.http,
+        description = metadata,
+        authDocumentCache = cache
+      ).resolve { _, message -> this.logger.debug("{}", message) }
+
+    return (result as TaskResult.Success).result
+  }
+
+  /**
+   * A stale cached document is revalidated, and reused without parsing when the server
+   * says that it has not been modified.
+   */
+
+  @Test
+  fun testRevalidatedNotModified() {
+    val cache = AuthenticationDocumentCache(freshnessMillis = 0L)
+
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("ETag", "\"v1\"")
+        .setBody("{}")
+    )
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(304)
+    )
+
+    val first = this.resolve(cache)
+    val second = this.resolve(cache)
+
+    Assertions.assertEquals(first.catalogURI, second.catalogURI)
+    Assertions.assertEquals(first.displayName, second.displayName)
+
+    this.server.takeRequest()
+    val revalidation = this.server.takeRequest()
+    Assertions.assertEquals("\"v1\"", revalidation.getHeader("If-None-Match"))
+    Mockito.verify(this.authDocumentParser, Mockito.times(1)).parse()
+  }
+
+  /**
+   * A fresh cached document is used without contacting the server.
+   */
+
+  @Test
+  fun testFreshNotRequested() {
+    val cache = AuthenticationDocumentCache()
+
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("Last-Modified", "Tue, 09 Jul 2019 08:33:40 GMT")
+        .setBody("{}")
+    )
+
+    this.resolve(cache)
+    this.resolve(cache)
+
+    Assertions.assertEquals(1, this.server.requestCount)
+    Mockito.verify(this.authDocumentParser, Mockito.times(1)).parse()
+  }
+
+  private fun <T> anyNotNull(): T {
+    return Mockito.argThat<T> { x -> x != null }
+  }
+}
@@ -0,0 +1,81 @@
+package org.nypl.simplified.tests.books.audio
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.librarysimplified.audiobook.parser.api.ParseResult
+import org.nypl.simplified.books.audio.AudioBookManifestCache
+import java.net.URI
+
+class AudioBookManifestCacheTest {
+
+  private val source =
+    URI.create("http://www.example.com/manifest.json")
+
+  /**
+   * Identical manifest data is only parsed once.
+   */
+
+  @Test
+  fun testParsedOnce() {
+    val cache = AudioBookManifestCache()
+    var parses = 0
+    val parse = {
+      parses += 1
+      AudioBookSucceedingParsers.parse(this.source, ByteArray(0))
+    }
+
+    val result0 = cache.parse(this.source, byteArrayOf(1, 2, 3), parse)
+    val result1 = cache.parse(this.source, byteArrayOf(1, 2, 3), parse)
+    assertSame(result0, result1)
+    assertEquals(1, parses)
+
+    cache.parse(this.source, byteArrayOf(1, 2, 4), parse)
+    assertEquals(2, parses)
+  }
+
+  /**
+   * Failed parses are not cached.
+   */
+
+  @Test
+  fun testFailuresNotCached() {
+    val cache = AudioBookManifestCache()
+    var parses = 0
+    val parse = {
+      parses += 1
+      AudioBookFailingParsers.parse(this.source, ByteArray(0))
+    }
+
+    cache.parse(this.source, byteArrayOf(1, 2, 3), parse)
+    val result = cache.parse(this.source, byteArrayOf(1, 2, 3), parse)
+    assertEquals(2, parses)
+    assertTrue(result is ParseResult.Failure)
+  }
+
+  /**
+   * The least recently used manifests are evicted.
+   */
+
+  @Test
+  fun testEviction() {
+    val cache = AudioBookManifestCache(maximumEntries = 2)
+    var parses = 0
+    val parse = {
+      parses += 1
+      AudioBookSucceedingParsers.parse(this.source, ByteArray(0))
+    }
+
+    cache.parse(this.source, byteArrayOf(0), parse)
+    cache.parse(this.source, byteArrayOf(1), parse)
+    cache.parse(this.source, byteArrayOf(0), parse)
+    cache.parse(this.source, byteArrayOf(2), parse)
+    assertEquals(3, parses)
+
+    cache.parse(this.source, byteArrayOf(0), parse)
+    assertEquals(3, parses)
+    cache.parse(this.source, byteArrayOf(1), parse)
+    assertEquals(4, parses)
+  }
+}
@@ -2,6 +2,7 @@ package org.nypl.simplified.tests.books.book_database
 
 import android.content.Context
 import com.io7m.jfunctional.Option
+import io.reactivex.Observable
 import one.irradia.mime.api.MIMEType
 import one.irradia.mime.vanilla.MIMEParser
 import org.joda.time.DateTime
@@ -21,12 +22,17 @@ import org.nypl.simplified.books.api.bookmark.BookmarkKind
 import org.nypl.simplified.books.book_database.BookDRMInformationHandleACS
 import org.nypl.simplified.books.book_database.BookDRMInformationHandleNone
 import org.nypl.simplified.books.book_database.BookDatabase
+import org.nypl.simplified.books.book_database.BookDatabaseIndexMigration
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleAudioBook
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandleEPUB
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandlePDF
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryType
+import org.nypl.simplified.books.book_database.api.BookDatabaseException
 import org.nypl.simplified.files.DirectoryUtilities
+import org.nypl.simplified.json.core.JSONSerializerUtilities
+import org.nypl.simplified.migration.spi.MigrationEvent
+import org.nypl.simplified.migration.spi.MigrationServiceDependencies
 import org.nypl.simplified.opds.core.OPDSAcquisition
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
 import org.nypl.simplified.opds.core.OPDSAvailabilityOpenAccess
@@ -895,6 +901,246 @@ abstract class BookDatabaseContract {
     return eb.build()
   }
 
+  /**
+   * A database in the per-directory layout can be opened, and is moved to an index by
+   * the migration.
+   */
+
+  @Test
+  fun testLegacyLayoutMigration() {
+    val parser = OPDSJSONParser.newParser()
+    val serializer = OPDSJSONSerializer.newSerializer()
+
+    val profiles = DirectoryUtilities.directoryCreateTemporary()
+    val directory = File(profiles, "p/accounts/a/books")
+    val bookDirectory = File(directory, "a")
+    DirectoryUtilities.directoryCreate(bookDirectory)
+
+    val entry0 =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        "a",
+        "Title",
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      )
+        .build()
+
+    val metaFile = File(bookDirectory, "meta.json")
+    metaFile.writeText(
+      JSONSerializerUtilities.serializeToString(serializer.serializeFeedEntry(entry0))
+    )
+
+    val id0 = BookID.create("a")
+    val database0 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+    Assertions.assertEquals(setOf(id0), database0.books())
+
+    val dependencies =
+      MigrationServiceDependencies(
+        createAccount = { throw UnsupportedOperationException() },
+        loginAccount = { _, _ -> throw UnsupportedOperationException() },
+        accountEvents = Observable.never(),
+        applicationProfileIsAnonymous = true,
+        applicationVersion = "test",
+        context = context()
+      )
+
+    val migration = BookDatabaseIndexMigration(dependencies, profiles)
+    Assertions.assertTrue(migration.needsToRun())
+    val report = migration.run()
+    Assertions.assertFalse(migration.needsToRun())
+    Assertions.assertTrue(report.events.none { event -> event is MigrationEvent.MigrationStepError })
+    Assertions.assertFalse(metaFile.exists())
+    Assertions.assertTrue(File(directory, "books.idx").isFile)
+
+    val database1 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+    Assertions.assertEquals(setOf(id0), database1.books())
+    Assertions.assertEquals(entry0.id, database1.entry(id0).book.entry.id)
+  }
+
+  /**
+   * A database that was opened in the per-directory layout can still read its entries
+   * after the migration has moved them into an index and deleted the metadata files.
+   */
+
+  @Test
+  fun testLegacyLayoutMigrationWhileOpen() {
+    val parser = OPDSJSONParser.newParser()
+    val serializer = OPDSJSONSerializer.newSerializer()
+
+    val profiles = DirectoryUtilities.directoryCreateTemporary()
+    val directory = File(profiles, "p/accounts/a/books")
+    val ids = (0 until 8).map { index -> BookID.create("b$index") }
+    for (id in ids) {
+      val bookDirectory = File(directory, id.value())
+      DirectoryUtilities.directoryCreate(bookDirectory)
+      val entry =
+        OPDSAcquisitionFeedEntry.newBuilder(
+          id.value(),
+          "Title ${id.value()}",
+          DateTime.now(),
+          OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+        )
+          .build()
+      File(bookDirectory, "meta.json").writeText(
+        JSONSerializerUtilities.serializeToString(serializer.serializeFeedEntry(entry))
+      )
+    }
+
+    val database =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+
+    val dependencies =
+      MigrationServiceDependencies(
+        createAccount = { throw UnsupportedOperationException() },
+        loginAccount = { _, _ -> throw UnsupportedOperationException() },
+        accountEvents = Observable.never(),
+        applicationProfileIsAnonymous = true,
+        applicationVersion = "test",
+        context = context()
+      )
+
+    val report = BookDatabaseIndexMigration(dependencies, profiles).run()
+    Assertions.assertTrue(report.events.none { event -> event is MigrationEvent.MigrationStepError })
+    Assertions.assertTrue(ids.none { id -> File(directory, "${id.value()}/meta.json").exists() })
+
+    Assertions.assertEquals(ids.toSet(), database.books())
+    for (id in ids) {
+      Assertions.assertEquals("Title ${id.value()}", database.entry(id).book.entry.title)
+    }
+  }
+
+  /**
+   * Entries are only constructed when they are needed, so a damaged entry doesn't
+   * prevent the rest of the database from being opened.
+   */
+
+  @Test
+  fun testOpenDamagedEntryDeferred() {
+    val parser = OPDSJSONParser.newParser()
+    val serializer = OPDSJSONSerializer.newSerializer()
+    val directory = DirectoryUtilities.directoryCreateTemporary()
+
+    val entry0 =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        "a",
+        "Title",
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      )
+        .build()
+
+    val bookDirectory0 = File(directory, "a")
+    DirectoryUtilities.directoryCreate(bookDirectory0)
+    File(bookDirectory0, "meta.json").writeText(
+      JSONSerializerUtilities.serializeToString(serializer.serializeFeedEntry(entry0))
+    )
+
+    val bookDirectory1 = File(directory, "b")
+    DirectoryUtilities.directoryCreate(bookDirectory1)
+    File(bookDirectory1, "meta.json").writeText("{")
+
+    val database =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+
+    val id0 = BookID.create("a")
+    val id1 = BookID.create("b")
+    Assertions.assertEquals(setOf(id0, id1), database.books())
+    Assertions.assertEquals(entry0.id, database.entry(id0).book.entry.id)
+    Assertions.assertThrows(BookDatabaseException::class.java) {
+      database.entry(id1)
+    }
+  }
+
+  /**
+   * Garbage at the end of an index, such as that left by an interrupted write, is
+   * discarded, and later writes are still readable.
+   */
+
+  @Test
+  fun testIndexTruncatedTail() {
+    val parser = OPDSJSONParser.newParser()
+    val serializer = OPDSJSONSerializer.newSerializer()
+    val directory = DirectoryUtilities.directoryCreateTemporary()
+
+    val database0 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+
+    val entry0 =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        "a",
+        "Title",
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      )
+        .build()
+
+    val entry1 =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        "b",
+        "Title",
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      )
+        .build()
+
+    val id0 = BookID.create("a")
+    val id1 = BookID.create("b")
+    database0.createOrUpdate(id0, entry0)
+    File(directory, "books.idx").appendBytes(byteArrayOf(1, 0, 0, 0, 9, 0x61))
+
+    val database1 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+    Assertions.assertEquals(setOf(id0), database1.books())
+
+    database1.createOrUpdate(id1, entry1)
+    database1.entry(id0).delete()
+
+    val database2 =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+    Assertions.assertEquals(setOf(id1), database2.books())
+    Assertions.assertEquals(entry1.id, database2.entry(id1).book.entry.id)
+  }
+
+  /**
+   * Updating an entry with an identical entry doesn't write anything.
+   */
+
+  @Test
+  @Throws(Exception::class)
+  fun testCreateOrUpdateUnchanged() {
+    val parser = OPDSJSONParser.newParser()
+    val serializer = OPDSJSONSerializer.newSerializer()
+    val directory = DirectoryUtilities.directoryCreateTemporary()
+    val updated = DateTime.now()
+
+    val database =
+      BookDatabase.open(context(), parser, serializer, BookFormatsTesting.supportsEverything, accountID, directory)
+
+    fun entryWithTitle(title: String) =
+      OPDSAcquisitionFeedEntry.newBuilder(
+        "a",
+        title,
+        updated,
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      )
+        .build()
+
+    val id = BookID.create("a")
+    val index = File(directory, "books.idx")
+    val entry0 = database.createOrUpdate(id, entryWithTitle("Title"))
+    val size0 = index.length()
+
+    val entry1 = database.createOrUpdate(id, entryWithTitle("Title"))
+    Assertions.assertSame(entry0, entry1)
+    Assertions.assertEquals(size0, index.length())
+
+    val entry2 = database.createOrUpdate(id, entryWithTitle("Other"))
+    Assertions.assertEquals("Other", entry2.book.entry.title)
+    Assertions.assertTrue(index.length() > size0)
+  }
+
   @Throws(IOException::class)
   private fun copyToTempFile(
     name: String
@@ -382,4 +382,75 @@ class BHTTPCallsTest {
       }
     )
   }
+
+  @Test
+  fun testGetBookmarksNotModified() {
+    val objectMapper = ObjectMapper()
+    val calls = BHTTPCalls(objectMapper, this.http)
+
+    val credentials =
+      AccountAuthenticationCredentials.Basic(
+        userName = AccountUsername("io7mtest"),
+        password = AccountPassword("1234"),
+        adobeCredentials = null,
+        authenticationDescription = null,
+        annotationsURI = URI("https://www.example.com"),
+        deviceRegistrationURI = URI("https://www.example.com")
+      )
+
+    val targetURI = this.server.url("annotations").toUri()
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(304)
+    )
+
+    val received = calls.bookmarksGetIfChanged(account, targetURI, credentials, "\"v1\"")
+    Assertions.assertNull(received)
+    Assertions.assertEquals(
+      "\"v1\"",
+      this.server.takeRequest().getHeader("If-None-Match")
+    )
+  }
+
+  @Test
+  fun testGetBookmarksETag() {
+    val objectMapper = ObjectMapper()
+    val calls = BHTTPCalls(objectMapper, this.http)
+
+    val credentials =
+      AccountAuthenticationCredentials.Basic(
+        userName = AccountUsername("io7mtest"),
+        password = AccountPassword("1234"),
+        adobeCredentials = null,
+        authenticationDescription = null,
+        annotationsURI = URI("https://www.example.com"),
+        deviceRegistrationURI = URI("https://www.example.com")
+      )
+
+    val targetURI = this.server.url("annotations").toUri()
+    this.server.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("ETag", "\"v2\"")
+        .setBody(
+          """
+            {
+              "@context": ["http://www.w3.org/ns/anno.jsonld", "http://www.w3.org/ns/ldp.jsonld"],
+              "total": 0,
+              "type": ["BasicContainer", "AnnotationCollection"],
+              "id": "https://example.com/annotations/",
+              "first": {
+                "items": [],
+                "type": "AnnotationPage",
+                "id": "https://example.com/annotations/"
+              }
+            }
+          """.trimIndent()
+        )
+    )
+
+    val received = calls.bookmarksGetIfChanged(account, targetURI, credentials, "\"v1\"")
+    Assertions.assertEquals(listOf<BookmarkAnnotation>(), received!!.items)
+    Assertions.assertEquals("\"v2\"", received.eTag)
+  }
 }
@@ -2,8 +2,11 @@ package org.nypl.simplified.tests.books.borrowing
 
 import android.content.Context
 import io.reactivex.disposables.Disposable
+import okhttp3.mockwebserver.Dispatcher
 import okhttp3.mockwebserver.MockResponse
 import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okhttp3.mockwebserver.SocketPolicy
 import org.joda.time.Instant
 import org.junit.jupiter.api.AfterEach
 import org.junit.jupiter.api.Assertions
@@ -34,11 +37,13 @@ import org.nypl.simplified.books.book_registry.BookStatus.FailedDownload
 import org.nypl.simplified.books.book_registry.BookStatus.Loaned
 import org.nypl.simplified.books.book_registry.BookStatus.Loaned.LoanedDownloaded
 import org.nypl.simplified.books.book_registry.BookStatusEvent
+import org.nypl.simplified.books.borrowing.BorrowPartialDownloads
 import org.nypl.simplified.books.borrowing.internal.BorrowDirectDownload
 import org.nypl.simplified.books.borrowing.internal.BorrowErrorCodes.httpConnectionFailed
 import org.nypl.simplified.books.borrowing.internal.BorrowErrorCodes.httpContentTypeIncompatible
 import org.nypl.simplified.books.borrowing.internal.BorrowErrorCodes.httpRequestFailed
 import org.nypl.simplified.books.borrowing.internal.BorrowErrorCodes.requiredURIMissing
+import org.nypl.simplified.books.borrowing.subtasks.BorrowSubtaskType
 import org.nypl.simplified.books.formats.api.BookFormatSupportType
 import org.nypl.simplified.books.formats.api.StandardFormatNames.genericEPUBFiles
 import org.nypl.simplified.books.formats.api.StandardFormatNames.genericPDFFiles
@@ -462,4 +467,283 @@ class BorrowDirectDownloadTest {
     assertEquals(LoanedDownloaded::class.java, this.bookStates.removeAt(0).javaClass)
     assertEquals(0, this.bookStates.size)
   }
+
+  /**
+   * A download that was interrupted is resumed from where it stopped.
+   */
+
+  @Test
+  fun testDownloadResumed() {
+    val task = BorrowDirectDownload.createSubtask()
+
+    this.context.currentURIField =
+      this.webServer.url("/book.epub").toUri()
+    this.context.currentAcquisitionPathElement =
+      OPDSAcquisitionPathElement(genericEPUBFiles, null, emptyMap())
+
+    this.bookDatabaseEntry.formatHandlesField.clear()
+    this.bookDatabaseEntry.formatHandlesField.add(this.epubHandle)
+
+    val content = "EPUB!"
+    val truncated =
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("Content-Type", "application/epub+zip")
+        .setHeader("ETag", "\"abc\"")
+        .setBody(content.substring(0, 2))
+        .setHeader("Content-Length", content.length)
+        .setSocketPolicy(SocketPolicy.DISCONNECT_AT_END)
+
+    this.webServer.enqueue(truncated)
+
+    try {
+      task.execute(this.context)
+      Assertions.fail()
+    } catch (e: Exception) {
+      this.logger.error("exception: ", e)
+    }
+    assertEquals(httpConnectionFailed, this.taskRecorder.finishFailure<Unit>().lastErrorCode)
+    this.webServer.takeRequest()
+
+    this.webServer.dispatcher = object : Dispatcher() {
+      override fun dispatch(request: RecordedRequest): MockResponse {
+        val range = request.getHeader("Range")
+        val start = range?.removePrefix("bytes=")?.removeSuffix("-")?.toInt() ?: 0
+        return MockResponse()
+          .setResponseCode(if (range != null) 206 else 200)
+          .setHeader("Content-Type", "application/epub+zip")
+          .setHeader("ETag", "\"abc\"")
+          .setHeader("Content-Range", "bytes $start-${content.length - 1}/${content.length}")
+          .setBody(content.substring(start))
+      }
+    }
+
+    this.taskRecorder = TaskRecorder.create()
+    this.context.taskRecorder = this.taskRecorder
+    task.execute(this.context)
+
+    val resumed = this.webServer.takeRequest()
+    assertEquals("\"abc\"", resumed.getHeader("If-Range"))
+    this.verifyBookRegistryHasStatus(LoanedDownloaded::class.java)
+    assertEquals(content, this.epubHandle.bookData)
+  }
+
+  /**
+   * Start a download of the given content that is interrupted after two bytes, and
+   * prepare a new task recorder for the next attempt.
+   */
+
+  private fun interruptDownload(
+    task: BorrowSubtaskType,
+    content: String
+  ) {
+    this.context.currentURIField =
+      this.webServer.url("/book.epub").toUri()
+    this.context.currentAcquisitionPathElement =
+      OPDSAcquisitionPathElement(genericEPUBFiles, null, emptyMap())
+
+    this.bookDatabaseEntry.formatHandlesField.clear()
+    this.bookDatabaseEntry.formatHandlesField.add(this.epubHandle)
+
+    this.webServer.enqueue(
+      MockResponse()
+        .setResponseCode(200)
+        .setHeader("Content-Type", "application/epub+zip")
+        .setHeader("ETag", "\"abc\"")
+        .setBody(content.substring(0, 2))
+        .setHeader("Content-Length", content.length)
+        .setSocketPolicy(SocketPolicy.DISCONNECT_AT_END)
+    )
+
+    try {
+      task.execute(this.context)
+      Assertions.fail()
+    } catch (e: Exception) {
+      this.logger.error("exception: ", e)
+    }
+    assertEquals(httpConnectionFailed, this.taskRecorder.finishFailure<Unit>().lastErrorCode)
+    this.webServer.takeRequest()
+
+    this.taskRecorder = TaskRecorder.create()
+    this.context.taskRecorder = this.taskRecorder
+  }
+
+  private fun partialDownloads(): List<String> {
+    return BorrowPartialDownloads.directory(this.context.cacheDirectory())
+      .list()
+      ?.sorted()
+      ?: listOf()
+  }
+
+  /**
+   * The partial content of a book is deleted once the book is returned or deleted, and
+   * partial content that is too old to be resumed is pruned.
+   */
+
+  @Test
+  fun testPartialDownloadsDiscarded() {
+    val task = BorrowDirectDownload.createSubtask()
+    this.interruptDownload(task, "EPUB!")
+
+    val prefix = BorrowPartialDownloads.prefixOf(this.bookID)
+    val files = this.partialDownloads()
+    assertEquals(2, files.size)
+    Assertions.assertTrue(files.all { name -> name.startsWith(prefix) })
+
+    BorrowPartialDownloads.discardForBook(
+      this.context.cacheDirectory(),
+      BookID.create("0000000000000000000000000000000000000000000000000000000000000000")
+    )
+    BorrowPartialDownloads.pruneStale(this.context.cacheDirectory())
+    assertEquals(files, this.partialDownloads())
+
+    BorrowPartialDownloads.pruneStale(
+      cacheDirectory = this.context.cacheDirectory(),
+      timeNow = System.currentTimeMillis() + BorrowPartialDownloads.MAXIMUM_AGE_MILLISECONDS
+    )
+    assertEquals(listOf<String>(), this.partialDownloads())
+
+    this.interruptDownload(task, "EPUB!")
+    assertEquals(files, this.partialDownloads())
+    BorrowPartialDownloads.discardForBook(this.context.cacheDirectory(), this.bookID)
+    assertEquals(listOf<String>(), this.partialDownloads())
+  }
+
+  private fun wholeContent(content: String): MockResponse {
+    return MockResponse()
+      .setResponseCode(200)
+      .setHeader("Content-Type", "application/epub+zip")
+      .setHeader("ETag", "\"def\"")
+      .setBody(content)
+  }
+
+  /**
+   * A server that answers a resumed download with the whole content restarts the download.
+   */
+
+  @Test
+  fun testDownloadResumeRestartedByServer() {
+    val task = BorrowDirectDownload.createSubtask()
+    val content = "EPUB!"
+    this.interruptDownload(task, content)
+
+    this.webServer.enqueue(this.wholeContent(content))
+    task.execute(this.context)
+
+    val resumed = this.webServer.takeRequest()
+    assertEquals("bytes=2-", resumed.getHeader("Range"))
+    assertEquals("\"abc\"", resumed.getHeader("If-Range"))
+    this.verifyBookRegistryHasStatus(LoanedDownloaded::class.java)
+    assertEquals(content, this.epubHandle.bookData)
+    assertEquals(2, this.webServer.requestCount)
+  }
+
+  /**
+   * A server that can't satisfy the range of a resumed download causes the download to
+   * start again from the beginning, without a range.
+   */
+
+  @Test
+  fun testDownloadResumeRangeNotSatisfiable() {
+    val task = BorrowDirectDownload.createSubtask()
+    val content = "EPUB!"
+    this.interruptDownload(task, content)
+
+    this.webServer.enqueue(MockResponse().setResponseCode(416))
+    this.webServer.enqueue(this.wholeContent(content))
+    task.execute(this.context)
+
+    val resumed = this.webServer.takeRequest()
+    assertEquals("bytes=2-", resumed.getHeader("Range"))
+    assertEquals("\"abc\"", resumed.getHeader("If-Range"))
+
+    val restarted = this.webServer.takeRequest()
+    assertEquals(null, restarted.getHeader("Range"))
+    assertEquals(null, restarted.getHeader("If-Range"))
+
+    this.verifyBookRegistryHasStatus(LoanedDownloaded::class.java)
+    assertEquals(content, this.epubHandle.bookData)
+    assertEquals(3, this.webServer.requestCount)
+  }
+
+  /**
+   * A server that answers a resumed download with a range that doesn't start where the
+   * partial content ends causes the download to start again from the beginning.
+   */
+
+  @Test
+  fun testDownloadResumeWrongRange() {
+    val task = BorrowDirectDownload.createSubtask()
+    val content = "EPUB!"
+    this.interruptDownload(task, content)
+
+    this.webServer.enqueue(
+      MockResponse()
+        .setResponseCode(206)
+        .setHeader("Content-Type", "application/epub+zip")
+        .setHeader("ETag", "\"abc\"")
+        .setHeader("Content-Range", "bytes 0-${content.length - 1}/${content.length}")
+        .setBody(content)
+    )
+    this.webServer.enqueue(this.wholeContent(content))
+    task.execute(this.context)
+
+    val resumed = this.webServer.takeRequest()
+    assertEquals("bytes=2-", resumed.getHeader("Range"))
+
+    val restarted = this.webServer.takeRequest()
+    assertEquals(null, restarted.getHeader("Range"))
+    assertEquals(null, restarted.getHeader("If-Range"))
+
+    this.verifyBookRegistryHasStatus(LoanedDownloaded::class.java)
+    assertEquals(content, this.epubHandle.bookData)
+    assertEquals(3, this.webServer.requestCount)
+  }
+
+  /**
+   * A large file is downloaded over several connections if the provider allows it and the
+   * server accepts ranges.
+   */
+
+  @Test
+  fun testDownloadSegmented() {
+    val task = BorrowDirectDownload.createSubtask()
+
+    Mockito.`when`(this.account.provider)
+      .thenReturn(this.accountProvider.copy(downloadConnections = 4))
+
+    this.context.currentURIField =
+      this.webServer.url("/book.epub").toUri()
+    this.context.currentAcquisitionPathElement =
+      OPDSAcquisitionPathElement(genericEPUBFiles, null, emptyMap())
+
+    this.bookDatabaseEntry.formatHandlesField.clear()
+    this.bookDatabaseEntry.formatHandlesField.add(this.epubHandle)
+
+    val content = "0123456789abcdef".repeat(1024 * 1024 + 3)
+    this.webServer.dispatcher = object : Dispatcher() {
+      override fun dispatch(request: RecordedRequest): MockResponse {
+        val response =
+          MockResponse()
+            .setHeader("Content-Type", "application/epub+zip")
+            .setHeader("Accept-Ranges", "bytes")
+            .setHeader("ETag", "\"abc\"")
+
+        val range = request.getHeader("Range")
+          ?: return response.setResponseCode(200).setBody(content)
+
+        val (first, last) = range.removePrefix("bytes=").split("-").map(String::toInt)
+        return response
+          .setResponseCode(206)
+          .setHeader("Content-Range", "bytes $first-$last/${content.length}")
+          .setBody(content.substring(first, last + 1))
+      }
+    }
+
+    task.execute(this.context)
+
+    this.verifyBookRegistryHasStatus(LoanedDownloaded::class.java)
+    assertEquals(content, this.epubHandle.bookData)
+    assertEquals(4, this.webServer.requestCount)
+  }
 }
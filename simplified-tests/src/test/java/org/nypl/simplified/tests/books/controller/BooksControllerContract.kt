@@ -5,8 +5,10 @@ import com.google.common.util.concurrent.ListeningExecutorService
 import com.google.common.util.concurrent.MoreExecutors
 import com.io7m.jfunctional.Option
 import io.reactivex.subjects.PublishSubject
+import okhttp3.mockwebserver.Dispatcher
 import okhttp3.mockwebserver.MockResponse
 import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
 import okio.Buffer
 import org.joda.time.DateTime
 import org.junit.jupiter.api.AfterEach
@@ -31,6 +33,7 @@ import org.nypl.simplified.accounts.api.AccountProviderResolutionStringsType
 import org.nypl.simplified.accounts.api.AccountUsername
 import org.nypl.simplified.accounts.database.AccountBundledCredentialsEmpty
 import org.nypl.simplified.accounts.database.AccountsDatabases
+import org.nypl.simplified.accounts.database.api.AccountType
 import org.nypl.simplified.accounts.registry.api.AccountProviderRegistryType
 import org.nypl.simplified.analytics.api.AnalyticsType
 import org.nypl.simplified.books.api.BookEvent
@@ -46,6 +49,7 @@ import org.nypl.simplified.books.book_registry.BookStatusEvent.BookStatusEventAd
 import org.nypl.simplified.books.borrowing.BorrowSubtasks
 import org.nypl.simplified.books.borrowing.subtasks.BorrowSubtaskDirectoryType
 import org.nypl.simplified.books.bundled.api.BundledContentResolverType
+import org.nypl.simplified.books.controller.BookSyncTask
 import org.nypl.simplified.books.controller.Controller
 import org.nypl.simplified.books.controller.api.BookRevokeStringResourcesType
 import org.nypl.simplified.books.controller.api.BooksControllerType
@@ -104,6 +108,7 @@ import java.util.NoSuchElementException
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 
 abstract class BooksControllerContract {
 
@@ -825,6 +830,176 @@ abstract class BooksControllerContract {
     ).status as BookStatus.Loanable
   }
 
+  /**
+   * A sync never has more than `parallelism` requests in flight, even when it looks up the
+   * permalinks of several removed books.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+  @Throws(Exception::class)
+  fun testBooksSyncParallelismLimit() {
+    val dispatcher = SyncDispatcher(permalinkDelayMillis = 200L)
+    this.server.dispatcher = dispatcher
+
+    val (controller, account) = this.syncedAccountWithThreeBooks()
+    dispatcher.loans = "testBooksSyncRemoveEntries.xml"
+    dispatcher.inFlightMaximum.set(0)
+
+    val result =
+      this.bookSyncTask(controller, account.id, parallelism = 1, timeout = Pair(30L, TimeUnit.SECONDS))
+        .call()
+
+    Assertions.assertTrue(result is TaskResult.Success)
+    Assertions.assertEquals(2, dispatcher.permalinkRequests.get())
+    Assertions.assertEquals(1, dispatcher.inFlightMaximum.get())
+    Assertions.assertEquals(1, account.bookDatabase.books().size)
+
+    this.bookRegistry.bookOrException(
+      BookID.create("f9a7536a61caa60f870b3fbe9d4304b2d59ea03c71cbaee82609e3779d1e6e0f")
+    ).status as BookStatus.Loanable
+    this.bookRegistry.bookOrException(
+      BookID.create("251cc5f69cd2a329bb6074b47a26062e59f5bb01d09d14626f41073f63690113")
+    ).status as BookStatus.Loanable
+  }
+
+  /**
+   * A sync gives up on permalinks that don't arrive before its deadline, and the books
+   * whose lookups timed out stay in the database until the next sync.
+   *
+   * @throws Exception On errors
+   */
+
+  @Test
+  @Timeout(value = 10L, unit = TimeUnit.SECONDS)
+  @Throws(Exception::class)
+  fun testBooksSyncTimeout() {
+    val dispatcher = SyncDispatcher(permalinkDelayMillis = 3_000L)
+    this.server.dispatcher = dispatcher
+
+    val (controller, account) = this.syncedAccountWithThreeBooks()
+    dispatcher.loans = "testBooksSyncRemoveEntries.xml"
+
+    val timeStart = System.nanoTime()
+    val result =
+      this.bookSyncTask(controller, account.id, parallelism = 4, timeout = Pair(500L, TimeUnit.MILLISECONDS))
+        .call()
+    val timeTaken = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - timeStart)
+
+    Assertions.assertTrue(result is TaskResult.Success)
+    Assertions.assertTrue(timeTaken < 2_500L, "Sync took $timeTaken ms")
+    Assertions.assertEquals(3, account.bookDatabase.books().size)
+  }
+
+  /**
+   * Serves the patron profile, the loans feed, and book permalinks. Permalinks are delayed,
+   * and the number of requests in flight at once is recorded.
+   */
+
+  private class SyncDispatcher(
+    private val permalinkDelayMillis: Long
+  ) : Dispatcher() {
+
+    @Volatile
+    var loans = "testBooksSyncNewEntries.xml"
+
+    val inFlight = AtomicInteger(0)
+    val inFlightMaximum = AtomicInteger(0)
+    val permalinkRequests = AtomicInteger(0)
+
+    override fun dispatch(request: RecordedRequest): MockResponse {
+      val path = request.requestUrl!!.encodedPath
+      if (path == "/accounts0/patrons/me") {
+        return MockResponse()
+          .setResponseCode(200)
+          .setBody(Buffer().readFrom(resource("/org/nypl/simplified/tests/patron/example-with-device.json")))
+      }
+
+      val current = this.inFlight.incrementAndGet()
+      this.inFlightMaximum.accumulateAndGet(current) { a, b -> maxOf(a, b) }
+      try {
+        return when {
+          path == "/accounts0/loans.xml" ->
+            MockResponse()
+              .setResponseCode(200)
+              .setBody(Buffer().readFrom(resource(this.loans)))
+          path.startsWith("/book/") -> {
+            this.permalinkRequests.incrementAndGet()
+            Thread.sleep(this.permalinkDelayMillis)
+            MockResponse()
+              .setResponseCode(200)
+              .setBody(Buffer().readFrom(resource("testBook${path.removePrefix("/book/")}.xml")))
+          }
+          else ->
+            MockResponse().setResponseCode(404)
+        }
+      } finally {
+        this.inFlight.decrementAndGet()
+      }
+    }
+
+    private fun resource(file: String): InputStream {
+      return BooksControllerContract::class.java.getResourceAsStream(file)!!
+    }
+  }
+
+  private fun syncedAccountWithThreeBooks(): Pair<Controller, AccountType> {
+    this.bookFormatSupport.onIsSupportedFinalContentType = { true }
+    this.bookFormatSupport.onIsSupportedPath = { true }
+
+    val controller =
+      createController(
+        exec = this.executorBooks,
+        feedExecutor = this.executorFeeds,
+        accountEvents = this.accountEvents,
+        profileEvents = this.profileEvents,
+        http = this.lsHTTP,
+        books = this.bookRegistry,
+        profiles = this.profiles,
+        accountProviders = MockAccountProviders.fakeAccountProviders(),
+        patronUserProfileParsers = this.patronUserProfileParsers
+      ) as Controller
+
+    val provider =
+      MockAccountProviders.fakeAuthProvider(
+        uri = "urn:fake-auth:0",
+        host = this.server.hostName,
+        port = this.server.port
+      )
+
+    val profile = this.profiles.createProfile(provider, "Kermit")
+    this.profiles.setProfileCurrent(profile.id)
+    val account = profile.accountsByProvider()[provider.id]!!
+    account.setLoginState(AccountLoggedIn(correctCredentials()))
+
+    controller.booksSync(account.id).get()
+    Assertions.assertEquals(3, account.bookDatabase.books().size)
+    return Pair(controller, account)
+  }
+
+  private fun bookSyncTask(
+    controller: Controller,
+    accountID: AccountID,
+    parallelism: Int,
+    timeout: Pair<Long, TimeUnit>
+  ): BookSyncTask {
+    return BookSyncTask(
+      accountID = accountID,
+      profileID = this.profiles.currentProfileUnsafe().id,
+      profiles = this.profiles,
+      booksController = controller,
+      accountRegistry = MockAccountProviders.fakeAccountProviders(),
+      bookRegistry = this.bookRegistry,
+      patronParsers = this.patronUserProfileParsers,
+      http = this.lsHTTP,
+      feedParser = OPDSFeedParser.newParser(OPDSAcquisitionFeedEntryParser.newParser()),
+      parallelism = parallelism,
+      timeout = timeout
+    )
+  }
+
   /**
    * Deleting a book works.
    *
@@ -0,0 +1,213 @@
+package org.nypl.simplified.tests.books.controller
+
+import com.io7m.jfunctional.Option
+import org.joda.time.DateTime
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.api.Book
+import org.nypl.simplified.books.api.BookDRMInformation
+import org.nypl.simplified.books.api.BookFormat
+import org.nypl.simplified.books.api.BookIDs
+import org.nypl.simplified.books.book_database.api.BookFormats
+import org.nypl.simplified.books.book_registry.BookRegistry
+import org.nypl.simplified.books.book_registry.BookRegistryType
+import org.nypl.simplified.books.book_registry.BookStatus
+import org.nypl.simplified.books.book_registry.BookWithStatus
+import org.nypl.simplified.books.controller.ProfileFeedIndex
+import org.nypl.simplified.feeds.api.FeedBooksSelection
+import org.nypl.simplified.feeds.api.FeedFacet.FeedFacetPseudo.Sorting.SortBy
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityLoanable
+import org.nypl.simplified.tests.books.BookFormatsTesting
+import java.util.UUID
+
+class ProfileFeedIndexTest {
+
+  private lateinit var account0: AccountID
+  private lateinit var account1: AccountID
+  private lateinit var bookRegistry: BookRegistryType
+  private lateinit var index: ProfileFeedIndex
+
+  @BeforeEach
+  fun setup() {
+    this.account0 = AccountID(UUID.randomUUID())
+    this.account1 = AccountID(UUID.randomUUID())
+    this.bookRegistry = BookRegistry.create()
+    this.index = ProfileFeedIndex(this.bookRegistry, BookFormatsTesting.supportsEverything)
+  }
+
+  private fun book(
+    id: String,
+    title: String,
+    authors: List<String> = listOf(),
+    account: AccountID = this.account0,
+    selected: Boolean = false
+  ): Book {
+    val entry =
+      OPDSAcquisitionFeedEntry.newBuilder(id, title, DateTime.now(), OPDSAvailabilityLoanable.get())
+    for (author in authors) {
+      entry.addAuthor(author)
+    }
+    if (selected) {
+      entry.setSelectedOption(Option.some(DateTime.now()))
+    }
+
+    return Book(
+      id = BookIDs.newFromText(id),
+      account = account,
+      cover = null,
+      thumbnail = null,
+      entry = entry.build(),
+      formats = listOf(
+        BookFormat.BookFormatEPUB(
+          drmInformation = BookDRMInformation.None,
+          file = null,
+          lastReadLocation = null,
+          bookmarks = listOf(),
+          contentType = BookFormats.epubMimeTypes().first()
+        )
+      )
+    )
+  }
+
+  private fun loaned(book: Book): BookWithStatus =
+    BookWithStatus(book, BookStatus.Loaned.LoanedNotDownloaded(book.id, null, true, false))
+
+  private fun heldReady(book: Book): BookWithStatus =
+    BookWithStatus(book, BookStatus.Held.HeldReady(book.id, null, true))
+
+  private fun loanable(book: Book): BookWithStatus =
+    BookWithStatus(book, BookStatus.Loanable(book.id, 1, 1))
+
+  private fun titles(
+    selection: FeedBooksSelection,
+    search: String? = null,
+    sortBy: SortBy = SortBy.SORT_BY_TITLE,
+    accounts: List<AccountID> = listOf(this.account0)
+  ): List<String> {
+    return this.index.query(accounts, selection, search, sortBy)
+      .books
+      .map { book -> book.book.entry.title }
+  }
+
+  /**
+   * Books that are already in the registry are indexed when the index is created.
+   */
+
+  @Test
+  fun testExistingBooks() {
+    this.bookRegistry.update(this.loaned(this.book("a", "A")))
+    this.index = ProfileFeedIndex(this.bookRegistry, BookFormatsTesting.supportsEverything)
+
+    Assertions.assertEquals(listOf("A"), this.titles(FeedBooksSelection.BOOKS_FEED_LOANED))
+  }
+
+  /**
+   * Adding, changing, and removing books updates the index.
+   */
+
+  @Test
+  fun testAddChangeRemove() {
+    val book = this.book("a", "A")
+    this.bookRegistry.update(this.loaned(book))
+    Assertions.assertEquals(listOf("A"), this.titles(FeedBooksSelection.BOOKS_FEED_LOANED))
+    Assertions.assertEquals(listOf<String>(), this.titles(FeedBooksSelection.BOOKS_FEED_HOLDS))
+
+    this.bookRegistry.update(this.heldReady(book))
+    Assertions.assertEquals(listOf<String>(), this.titles(FeedBooksSelection.BOOKS_FEED_LOANED))
+    Assertions.assertEquals(listOf("A"), this.titles(FeedBooksSelection.BOOKS_FEED_HOLDS))
+
+    this.bookRegistry.clearFor(book.id)
+    Assertions.assertEquals(listOf<String>(), this.titles(FeedBooksSelection.BOOKS_FEED_LOANED))
+    Assertions.assertEquals(listOf<String>(), this.titles(FeedBooksSelection.BOOKS_FEED_HOLDS))
+  }
+
+  /**
+   * Changing a book's entry without changing its status updates the index.
+   */
+
+  @Test
+  fun testChangeEntryOnly() {
+    this.bookRegistry.update(this.loaned(this.book("a", "A")))
+    this.bookRegistry.update(this.loaned(this.book("a", "B")))
+
+    Assertions.assertEquals(listOf("B"), this.titles(FeedBooksSelection.BOOKS_FEED_LOANED))
+  }
+
+  /**
+   * Books are placed in the buckets of their own feeds and accounts only.
+   */
+
+  @Test
+  fun testBuckets() {
+    this.bookRegistry.update(this.loaned(this.book("a", "A")))
+    this.bookRegistry.update(this.heldReady(this.book("b", "B")))
+    this.bookRegistry.update(this.loanable(this.book("c", "C", selected = true)))
+    this.bookRegistry.update(this.loanable(this.book("d", "D")))
+    this.bookRegistry.update(this.loaned(this.book("e", "E", account = this.account1)))
+
+    Assertions.assertEquals(listOf("A"), this.titles(FeedBooksSelection.BOOKS_FEED_LOANED))
+    Assertions.assertEquals(listOf("B"), this.titles(FeedBooksSelection.BOOKS_FEED_HOLDS))
+    Assertions.assertEquals(listOf("C"), this.titles(FeedBooksSelection.BOOKS_FEED_SELECTED))
+    Assertions.assertEquals(
+      listOf("A", "E"),
+      this.titles(FeedBooksSelection.BOOKS_FEED_LOANED, accounts = listOf(this.account0, this.account1))
+    )
+
+    val result =
+      this.index.query(listOf(this.account0), FeedBooksSelection.BOOKS_FEED_LOANED, null, SortBy.SORT_BY_TITLE)
+    Assertions.assertEquals(1, result.heldReady)
+  }
+
+  /**
+   * Searching matches titles and authors, ignoring case and accents.
+   */
+
+  @Test
+  fun testSearch() {
+    this.bookRegistry.update(this.loaned(this.book("a", "Seitsemän veljestä", listOf("Aleksis Kivi"))))
+    this.bookRegistry.update(this.loaned(this.book("b", "Kalevala", listOf("Elias Lönnrot"))))
+    this.bookRegistry.update(this.loaned(this.book("c", "Tuntematon sotilas", listOf("Väinö Linna"))))
+
+    Assertions.assertEquals(
+      listOf("Seitsemän veljestä"),
+      this.titles(FeedBooksSelection.BOOKS_FEED_LOANED, search = "SEITSEMAN")
+    )
+    Assertions.assertEquals(
+      listOf("Kalevala"),
+      this.titles(FeedBooksSelection.BOOKS_FEED_LOANED, search = "lonnrot")
+    )
+    Assertions.assertEquals(
+      listOf("Kalevala", "Tuntematon sotilas"),
+      this.titles(FeedBooksSelection.BOOKS_FEED_LOANED, search = "kale linna")
+    )
+    Assertions.assertEquals(
+      listOf<String>(),
+      this.titles(FeedBooksSelection.BOOKS_FEED_LOANED, search = "waltari")
+    )
+  }
+
+  /**
+   * Books are sorted by title, or by first author with books without authors last.
+   */
+
+  @Test
+  fun testSortOrders() {
+    this.bookRegistry.update(this.loaned(this.book("a", "C", listOf("Y"))))
+    this.bookRegistry.update(this.loaned(this.book("b", "A")))
+    this.bookRegistry.update(this.loaned(this.book("c", "B", listOf("X", "Z"))))
+    this.bookRegistry.update(this.loaned(this.book("d", "D", listOf("W"), account = this.account1)))
+
+    val accounts = listOf(this.account0, this.account1)
+    Assertions.assertEquals(
+      listOf("A", "B", "C", "D"),
+      this.titles(FeedBooksSelection.BOOKS_FEED_LOANED, sortBy = SortBy.SORT_BY_TITLE, accounts = accounts)
+    )
+    Assertions.assertEquals(
+      listOf("D", "B", "C", "A"),
+      this.titles(FeedBooksSelection.BOOKS_FEED_LOANED, sortBy = SortBy.SORT_BY_AUTHOR, accounts = accounts)
+    )
+  }
+}
@@ -0,0 +1,78 @@
+package org.nypl.simplified.tests.boot
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.boot.api.BootServiceGraph
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class BootServiceGraphTest {
+
+  private lateinit var executor: ExecutorService
+
+  @BeforeEach
+  fun testSetup() {
+    this.executor = Executors.newFixedThreadPool(2)
+  }
+
+  @AfterEach
+  fun tearDown() {
+    this.executor.shutdownNow()
+  }
+
+  /**
+   * Services start after their dependencies, and independent services start in parallel.
+   */
+
+  @Test
+  fun testDependencyOrder() {
+    val started = Collections.synchronizedList(mutableListOf<String>())
+    val graph = BootServiceGraph(this.executor) { name, _ -> started.add(name) }
+
+    val bothRunning = CountDownLatch(2)
+    val a = graph.service("a") {
+      bothRunning.countDown()
+      assertTrue(bothRunning.await(5L, TimeUnit.SECONDS))
+      1
+    }
+    val b = graph.service("b") {
+      bothRunning.countDown()
+      assertTrue(bothRunning.await(5L, TimeUnit.SECONDS))
+      2
+    }
+    val c = graph.service("c", listOf(a, b)) { a.get() + b.get() }
+
+    graph.awaitAll()
+    assertEquals(3, c.get())
+    assertEquals("c", started.last())
+    assertEquals(3, started.size)
+  }
+
+  /**
+   * Services that depend on a failed service also fail, and the failure is raised.
+   */
+
+  @Test
+  fun testFailurePropagates() {
+    val started = Collections.synchronizedList(mutableListOf<String>())
+    val graph = BootServiceGraph(this.executor) { name, _ -> started.add(name) }
+
+    val a = graph.service<Int>("a") { throw IOException("Failed!") }
+    graph.service("b", listOf(a)) { a.get() + 1 }
+    graph.service("c") { 3 }
+
+    val ex = assertThrows(IOException::class.java) { graph.awaitAll() }
+    assertEquals("Failed!", ex.message)
+    assertFalse(started.contains("a"))
+    assertFalse(started.contains("b"))
+  }
+}
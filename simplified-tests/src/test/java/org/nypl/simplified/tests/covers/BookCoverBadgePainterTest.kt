@@ -0,0 +1,141 @@
+package org.nypl.simplified.tests.covers
+
+import android.graphics.Bitmap
+import com.io7m.jfunctional.Option
+import org.joda.time.DateTime
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.books.covers.BookCoverBadge
+import org.nypl.simplified.books.covers.BookCoverBadgeLookupType
+import org.nypl.simplified.books.covers.BookCoverBadgeOffset
+import org.nypl.simplified.books.covers.BookCoverBadgePainter
+import org.nypl.simplified.feeds.api.FeedEntry
+import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
+import org.nypl.simplified.opds.core.OPDSAvailabilityOpenAccess
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.robolectric.annotation.GraphicsMode
+import java.net.URI
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class BookCoverBadgePainterTest {
+
+  private val colorBadge = 0xffff0000.toInt()
+  private val colorCover = 0xff336699.toInt()
+
+  private val entry =
+    FeedEntry.FeedEntryOPDS(
+      AccountID.generate(),
+      OPDSAcquisitionFeedEntry.newBuilder(
+        "urn:book:0",
+        "Title",
+        DateTime.now(),
+        OPDSAvailabilityOpenAccess.get(Option.none<URI>())
+      ).build()
+    )
+
+  private fun badge(id: String): BookCoverBadge {
+    val bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888)
+    bitmap.eraseColor(this.colorBadge)
+    return BookCoverBadge(
+      id = id,
+      bitmap = bitmap,
+      width = 10,
+      height = 10,
+      borderWidth = 1,
+      offsetSize = 2,
+      backgroundColorRGBA = { 0x00_00_00_00 },
+      borderColorRGBA = { 0xff0000ff.toInt() }
+    )
+  }
+
+  private fun painter(
+    badge: BookCoverBadge,
+    offset: BookCoverBadgeOffset = BookCoverBadgeOffset.OFFSET_DEFAULT
+  ): BookCoverBadgePainter {
+    val badges =
+      object : BookCoverBadgeLookupType {
+        override fun badgeForEntry(entry: FeedEntry.FeedEntryOPDS): BookCoverBadge = badge
+      }
+    return BookCoverBadgePainter.create(this.entry, badges, offset)!!
+  }
+
+  private fun cover(): Bitmap {
+    val bitmap = Bitmap.createBitmap(60, 90, Bitmap.Config.ARGB_8888)
+    bitmap.eraseColor(this.colorCover)
+    return bitmap
+  }
+
+  /**
+   * A mutable cover is badged in place.
+   */
+
+  @Test
+  fun testMutableSourceBadgedInPlace() {
+    val source = this.cover()
+    assertTrue(source.isMutable)
+
+    val result = this.painter(this.badge("a")).transform(source)
+
+    assertSame(source, result)
+    assertFalse(result.isRecycled)
+    assertEquals(this.colorBadge, result.getPixel(55, 85))
+    assertEquals(this.colorCover, result.getPixel(5, 5))
+  }
+
+  /**
+   * An immutable cover is copied exactly once, and the original is released.
+   */
+
+  @Test
+  fun testImmutableSourceCopiedOnce() {
+    val source = this.cover().copy(Bitmap.Config.ARGB_8888, false)
+    assertFalse(source.isMutable)
+
+    val result = this.painter(this.badge("a")).transform(source)
+
+    assertNotSame(source, result)
+    assertTrue(source.isRecycled)
+    assertTrue(result.isMutable)
+    assertEquals(60, result.width)
+    assertEquals(90, result.height)
+    assertEquals(this.colorBadge, result.getPixel(55, 85))
+    assertEquals(this.colorCover, result.getPixel(5, 5))
+
+    /*
+     * Transforming the copy again draws onto it directly.
+     */
+
+    assertSame(result, this.painter(this.badge("a")).transform(result))
+  }
+
+  /**
+   * Covers with different badges, or with badges in different places, have different keys.
+   */
+
+  @Test
+  fun testKeysIdentifyBadgeAndOffset() {
+    val badgeA = this.badge("a")
+    val badgeB = this.badge("b")
+
+    val keyA = this.painter(badgeA).key()
+    assertEquals(keyA, this.painter(badgeA).key())
+    assertEquals(keyA, this.painter(this.badge("a")).key())
+    assertNotEquals(keyA, this.painter(badgeB).key())
+    assertNotEquals(keyA, this.painter(badgeA, BookCoverBadgeOffset(1, 0)).key())
+    assertNotEquals(keyA, this.painter(badgeA, BookCoverBadgeOffset(0, 1)).key())
+    assertNotEquals(
+      this.painter(badgeA, BookCoverBadgeOffset(1, 0)).key(),
+      this.painter(badgeA, BookCoverBadgeOffset(0, 1)).key()
+    )
+  }
+}
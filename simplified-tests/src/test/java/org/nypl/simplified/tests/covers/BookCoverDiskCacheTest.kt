@@ -0,0 +1,92 @@
+package org.nypl.simplified.tests.covers
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.books.covers.BookCoverDiskCache
+import org.nypl.simplified.tests.TestDirectories
+import java.io.File
+import java.net.URI
+
+class BookCoverDiskCacheTest {
+
+  private lateinit var directory: File
+
+  @BeforeEach
+  fun testSetup() {
+    this.directory = TestDirectories.temporaryDirectory()
+  }
+
+  private fun put(cache: BookCoverDiskCache, uri: URI, width: Int, height: Int, size: Int) {
+    cache.put(uri, width, height) { stream -> stream.write(ByteArray(size)) }
+  }
+
+  /**
+   * Covers are keyed by both URI and size.
+   */
+
+  @Test
+  fun testKeyedBySize() {
+    val cache = BookCoverDiskCache(this.directory, 1000L)
+    val uri = URI.create("https://www.example.com/0.jpg")
+
+    assertNull(cache.get(uri, 0, 100))
+    this.put(cache, uri, 0, 100, 10)
+
+    assertTrue(cache.contains(uri, 0, 100))
+    assertFalse(cache.contains(uri, 0, 200))
+    assertFalse(cache.contains(URI.create("https://www.example.com/1.jpg"), 0, 100))
+    assertEquals(10L, cache.get(uri, 0, 100)!!.length())
+    assertEquals(10L, cache.size)
+  }
+
+  /**
+   * The least recently used covers are deleted when the cache is full.
+   */
+
+  @Test
+  fun testEvictsLeastRecentlyUsed() {
+    val cache = BookCoverDiskCache(this.directory, 300L)
+    val uri0 = URI.create("https://www.example.com/0.jpg")
+    val uri1 = URI.create("https://www.example.com/1.jpg")
+    val uri2 = URI.create("https://www.example.com/2.jpg")
+
+    this.put(cache, uri0, 0, 100, 100)
+    this.put(cache, uri1, 0, 100, 100)
+    this.put(cache, uri2, 0, 100, 100)
+    assertNotNull(cache.get(uri0, 0, 100))
+
+    this.put(cache, uri0, 0, 200, 100)
+
+    assertTrue(cache.contains(uri0, 0, 100))
+    assertFalse(cache.contains(uri1, 0, 100))
+    assertTrue(cache.contains(uri2, 0, 100))
+    assertTrue(cache.contains(uri0, 0, 200))
+    assertEquals(300L, cache.size)
+    assertEquals(3, this.directory.listFiles()!!.size)
+  }
+
+  /**
+   * Covers survive the cache being reopened, and stray files are removed.
+   */
+
+  @Test
+  fun testReopen() {
+    val uri = URI.create("https://www.example.com/0.jpg")
+    this.put(BookCoverDiskCache(this.directory, 1000L), uri, 0, 100, 10)
+    File(this.directory, "stray.tmp").writeText("x")
+
+    val cache = BookCoverDiskCache(this.directory, 1000L)
+    assertTrue(cache.contains(uri, 0, 100))
+    assertEquals(10L, cache.size)
+    assertEquals(1, this.directory.listFiles()!!.size)
+
+    cache.clear()
+    assertFalse(cache.contains(uri, 0, 100))
+    assertEquals(0, this.directory.listFiles()!!.size)
+  }
+}
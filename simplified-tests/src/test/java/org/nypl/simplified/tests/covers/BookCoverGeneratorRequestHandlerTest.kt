@@ -0,0 +1,106 @@
+package org.nypl.simplified.tests.covers
+
+import android.graphics.Bitmap
+import android.net.Uri
+import com.squareup.picasso.Picasso
+import com.squareup.picasso.Request
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.nypl.simplified.books.covers.BookCoverDiskCache
+import org.nypl.simplified.books.covers.BookCoverGeneratorRequestHandler
+import org.nypl.simplified.books.covers.BookCoverGeneratorType
+import org.nypl.simplified.tests.TestDirectories
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.robolectric.annotation.GraphicsMode
+import java.io.File
+import java.net.URI
+
+@RunWith(RobolectricTestRunner::class)
+@Config(sdk = [28])
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class BookCoverGeneratorRequestHandlerTest {
+
+  private lateinit var directory: File
+  private lateinit var generator: FakeGenerator
+
+  private class FakeGenerator : BookCoverGeneratorType {
+    var generated = 0
+
+    override fun generateImage(
+      uri: URI,
+      width: Int,
+      height: Int
+    ): Bitmap {
+      ++this.generated
+      val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+      bitmap.eraseColor(0xff336699.toInt())
+      return bitmap
+    }
+
+    override fun generateURIForTitleAuthor(
+      title: String,
+      author: String
+    ): URI {
+      return URI.create("generated-cover://localhost/?title=$title&author=$author")
+    }
+  }
+
+  @Before
+  fun testSetup() {
+    this.directory = TestDirectories.temporaryDirectory()
+    this.generator = FakeGenerator()
+  }
+
+  private fun requestFor(uri: URI): Request {
+    return Request.Builder(Uri.parse(uri.toString()))
+      .resize(60, 90)
+      .build()
+  }
+
+  /**
+   * A generated cover is stored in the disk cache, and is read back from there the next
+   * time that it's requested at the same size without being generated again.
+   */
+
+  @Test
+  fun testGeneratedCoverIsCached() {
+    val cache = BookCoverDiskCache(this.directory, 1_000_000L)
+    val handler = BookCoverGeneratorRequestHandler(this.generator, cache)
+    val uri = this.generator.generateURIForTitleAuthor("Title", "Author")
+    val request = this.requestFor(uri)
+
+    assertTrue(handler.canHandleRequest(request))
+
+    val first = handler.load(request, 0)
+    assertEquals(Picasso.LoadedFrom.MEMORY, first.loadedFrom)
+    assertEquals(1, this.generator.generated)
+    assertTrue(cache.contains(uri, 60, 90))
+
+    val second = handler.load(request, 0)
+    assertEquals(Picasso.LoadedFrom.DISK, second.loadedFrom)
+    assertEquals(1, this.generator.generated)
+
+    val bitmap = second.bitmap!!
+    assertEquals(60, bitmap.width)
+    assertEquals(90, bitmap.height)
+    assertTrue(bitmap.isMutable)
+  }
+
+  /**
+   * Without a disk cache, every request generates the cover again.
+   */
+
+  @Test
+  fun testGeneratedCoverWithoutCache() {
+    val handler = BookCoverGeneratorRequestHandler(this.generator)
+    val request = this.requestFor(this.generator.generateURIForTitleAuthor("Title", "Author"))
+
+    assertEquals(Picasso.LoadedFrom.MEMORY, handler.load(request, 0).loadedFrom)
+    assertEquals(Picasso.LoadedFrom.MEMORY, handler.load(request, 0).loadedFrom)
+    assertEquals(2, this.generator.generated)
+  }
+}
@@ -2,13 +2,25 @@ package org.nypl.simplified.tests.files;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 import org.nypl.simplified.files.DirectoryUtilities;
 import org.nypl.simplified.files.FileUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
 
 public final class FilesTest {
 
+  private static final Logger LOG =
+    LoggerFactory.getLogger(FilesTest.class);
+
   @Test
   public final void testDeleteRecreate()
     throws Exception {
@@ -25,4 +37,103 @@ public final class FilesTest {
     Assertions.assertFalse(file0.exists(), file0 + " does not exist");
   }
 
+  @Test
+  public final void testCopy()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File file0 = new File(tmp, "file0.bin");
+    final File file1 = new File(tmp, "file1.bin");
+    final byte[] data = randomBytes(1024 * 1024 + 17);
+
+    Files.write(file0.toPath(), data);
+    FileUtilities.fileWriteUTF8(file1, "Existing contents that are replaced.");
+    FileUtilities.fileCopy(file0, file1);
+
+    Assertions.assertArrayEquals(data, Files.readAllBytes(file0.toPath()));
+    Assertions.assertArrayEquals(data, Files.readAllBytes(file1.toPath()));
+  }
+
+  @Test
+  public final void testMove()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File file0 = new File(tmp, "file0.bin");
+    final File file1 = new File(tmp, "file1.bin");
+    final byte[] data = randomBytes(4096);
+
+    Files.write(file0.toPath(), data);
+    FileUtilities.fileWriteUTF8(file1, "Existing contents that are replaced.");
+    FileUtilities.fileMove(file0, file1);
+
+    Assertions.assertFalse(file0.exists(), file0 + " does not exist");
+    Assertions.assertArrayEquals(data, Files.readAllBytes(file1.toPath()));
+  }
+
+  /**
+   * Compare the time taken to import a large file using the previous buffered
+   * copy, the channel copy, and a move. Run with
+   * {@code -Dorg.nypl.simplified.tests.benchmarks=true}.
+   */
+
+  @Test
+  @EnabledIfSystemProperty(named = "org.nypl.simplified.tests.benchmarks", matches = "true")
+  public final void benchmarkImport()
+    throws Exception {
+    final File tmp = DirectoryUtilities.directoryCreateTemporary();
+    final File source = new File(tmp, "source.bin");
+    final File target = new File(tmp, "target.bin");
+    final byte[] block = randomBytes(1024 * 1024);
+
+    try (FileOutputStream out = new FileOutputStream(source)) {
+      for (int index = 0; index < 256; ++index) {
+        out.write(block);
+      }
+    }
+
+    for (int round = 0; round < 3; ++round) {
+      long time = System.nanoTime();
+      bufferedCopy(source, target);
+      LOG.info("buffered copy: {} ms", (System.nanoTime() - time) / 1_000_000L);
+
+      time = System.nanoTime();
+      FileUtilities.fileCopy(source, target);
+      LOG.info("channel copy:  {} ms", (System.nanoTime() - time) / 1_000_000L);
+
+      time = System.nanoTime();
+      FileUtilities.fileMove(target, source);
+      LOG.info("move:          {} ms", (System.nanoTime() - time) / 1_000_000L);
+      Assertions.assertFalse(target.exists(), target + " does not exist");
+    }
+  }
+
+  /**
+   * The copy that was used to import books before {@link FileUtilities#fileCopy}
+   * used channel transfers.
+   */
+
+  private static void bufferedCopy(
+    final File from,
+    final File to)
+    throws IOException {
+    final byte[] buffer = new byte[8192];
+    try (FileInputStream in = new FileInputStream(from)) {
+      try (FileOutputStream out = new FileOutputStream(to)) {
+        while (true) {
+          final int r = in.read(buffer);
+          if (r == -1) {
+            break;
+          }
+          out.write(buffer, 0, r);
+          out.flush();
+        }
+      }
+    }
+  }
+
+  private static byte[] randomBytes(final int size) {
+    final byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    Assertions.assertFalse(Arrays.equals(data, new byte[size]));
+    return data;
+  }
 }
@@ -0,0 +1,50 @@
+package org.nypl.simplified.tests.metrics
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.metrics.api.PerformanceMetrics
+import java.util.concurrent.TimeUnit
+
+class PerformanceMetricsTest {
+
+  @BeforeEach
+  fun testSetup() {
+    PerformanceMetrics.reset()
+  }
+
+  /**
+   * Timers record counts, totals, maximums, and percentile bounds.
+   */
+
+  @Test
+  fun testTimerHistogram() {
+    val timer = PerformanceMetrics.timer("test.timer")
+    repeat(99) { timer.record(TimeUnit.MILLISECONDS.toNanos(1L)) }
+    timer.record(TimeUnit.MILLISECONDS.toNanos(100L))
+
+    val snapshot = timer.snapshot()
+    assertEquals(100L, snapshot.count)
+    assertEquals(199L, snapshot.totalMillis)
+    assertEquals(100L, snapshot.maximumMillis)
+    assertTrue(snapshot.p50Millis >= 1.0 && snapshot.p50Millis < 2.1)
+    assertTrue(snapshot.p99Millis >= 1.0 && snapshot.p99Millis < 2.1)
+  }
+
+  /**
+   * Metrics are shared by name, and appear in reports.
+   */
+
+  @Test
+  fun testCounterReport() {
+    PerformanceMetrics.counter("test.counter").increment()
+    PerformanceMetrics.counter("test.counter").increment()
+
+    assertEquals(2L, PerformanceMetrics.counter("test.counter").get())
+    assertTrue(PerformanceMetrics.report().contains("test.counter: 2"))
+
+    PerformanceMetrics.reset()
+    assertEquals(0L, PerformanceMetrics.counter("test.counter").get())
+  }
+}
@@ -48,6 +48,16 @@ class MockBookDatabaseEntryFormatHandleEPUB(
     check(this.formatField.isDownloaded)
   }
 
+  override fun moveInBook(file: File) {
+    this.bookData = file.readText()
+    this.bookFile = File(this.directory, "book.epub")
+
+    Files.move(file.toPath(), this.bookFile!!.toPath(), StandardCopyOption.REPLACE_EXISTING)
+
+    this.formatField = this.formatField.copy(file = this.bookFile)
+    check(this.formatField.isDownloaded)
+  }
+
   override fun setLastReadLocation(bookmark: Bookmark.ReaderBookmark?) {
     this.formatField = this.formatField.copy(lastReadLocation = bookmark)
   }
@@ -10,6 +10,8 @@ import org.nypl.simplified.books.book_database.api.BookDRMInformationHandle
 import org.nypl.simplified.books.book_database.api.BookDatabaseEntryFormatHandle.BookDatabaseEntryFormatHandlePDF
 import org.nypl.simplified.books.formats.api.StandardFormatNames
 import java.io.File
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
 
 class MockBookDatabaseEntryFormatHandlePDF(
   val bookID: BookID
@@ -43,6 +45,16 @@ class MockBookDatabaseEntryFormatHandlePDF(
     check(this.formatField.isDownloaded)
   }
 
+  override fun moveInBook(file: File) {
+    this.bookData = file.readText()
+    this.bookFile = File.createTempFile("book", ".pdf")
+
+    Files.move(file.toPath(), this.bookFile!!.toPath(), StandardCopyOption.REPLACE_EXISTING)
+
+    this.formatField = this.formatField.copy(file = this.bookFile)
+    check(this.formatField.isDownloaded)
+  }
+
   override fun setLastReadLocation(bookmark: Bookmark.PDFBookmark?) {
     this.formatField = this.formatField.copy(lastReadLocation = bookmark)
   }
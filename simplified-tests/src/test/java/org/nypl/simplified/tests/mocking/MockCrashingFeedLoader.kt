@@ -4,6 +4,8 @@ import com.google.common.util.concurrent.FluentFuture
 import com.google.common.util.concurrent.Futures
 import org.nypl.simplified.accounts.api.AccountAuthenticationCredentials
 import org.nypl.simplified.accounts.api.AccountID
+import org.nypl.simplified.feeds.api.FeedEntry
+import org.nypl.simplified.feeds.api.FeedLoaderCacheStatistics
 import org.nypl.simplified.feeds.api.FeedLoaderResult
 import org.nypl.simplified.feeds.api.FeedLoaderType
 import java.io.IOException
@@ -14,6 +16,9 @@ class MockCrashingFeedLoader : FeedLoaderType {
   override var showOnlySupportedBooks: Boolean =
     false
 
+  override val cacheStatistics: FeedLoaderCacheStatistics =
+    FeedLoaderCacheStatistics(hits = 0L, staleHits = 0L, misses = 0L, size = 0)
+
   override fun fetchURI(
     accountID: AccountID,
     uri: URI,
@@ -22,4 +27,26 @@ class MockCrashingFeedLoader : FeedLoaderType {
   ): FluentFuture<FeedLoaderResult> {
     return FluentFuture.from(Futures.immediateFailedFuture(IOException("Ouch!")))
   }
+
+  override fun fetchURIStreaming(
+    accountID: AccountID,
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?,
+    method: String,
+    batchSize: Int,
+    onEntries: (List<FeedEntry>) -> Unit,
+    onSearchResolved: (FeedLoaderResult.FeedLoaderSuccess) -> Unit
+  ): FluentFuture<FeedLoaderResult> {
+    return FluentFuture.from(Futures.immediateFailedFuture(IOException("Ouch!")))
+  }
+
+  override fun fetchURIFromCache(
+    accountID: AccountID,
+    uri: URI,
+    credentials: AccountAuthenticationCredentials?,
+    method: String,
+    onRefreshed: (FeedLoaderResult.FeedLoaderSuccess) -> Unit
+  ): FeedLoaderResult.FeedLoaderSuccess? {
+    return null
+  }
 }
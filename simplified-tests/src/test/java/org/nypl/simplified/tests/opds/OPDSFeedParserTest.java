@@ -33,6 +33,7 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -191,6 +192,51 @@ public final class OPDSFeedParserTest {
       next_opt.get().toString());
   }
 
+  @Test
+  public void testAcquisitionFeedPaginated0Streaming()
+    throws Exception {
+    final URI uri = URI.create(
+      "http://circulation.alpha.librarysimplified.org/feed/Picture%20Books");
+    final OPDSFeedParserType p =
+      OPDSFeedParser.newParser(OPDSAcquisitionFeedEntryParser.newParser());
+
+    final InputStream d0 =
+      OPDSFeedParserTest.getResource("acquisition-paginated-0.xml");
+    final OPDSAcquisitionFeed expected = p.parse(uri, d0);
+    d0.close();
+
+    final List<OPDSAcquisitionFeedEntry> received = new ArrayList<>();
+    final InputStream d1 =
+      OPDSFeedParserTest.getResource("acquisition-paginated-0.xml");
+    final OPDSAcquisitionFeed f = p.parseStreaming(uri, d1, received::add);
+    d1.close();
+
+    assertEquals("/NYNYPL/feed/13", f.getFeedID());
+    assertEquals("Historical Fiction", f.getFeedTitle());
+    assertEquals(0, f.getFeedEntries().size());
+    assertEquals(expected.getFeedNext(), f.getFeedNext());
+    assertEquals(expected.getFeedFacetsOrder(), f.getFeedFacetsOrder());
+    assertEquals(expected.getFeedEntries(), received);
+  }
+
+  @Test
+  public void testEntryAsFeed0Streaming()
+    throws Exception {
+    final URI uri =
+      URI.create("http://library-simplified.herokuapp.com/feed/Fiction");
+    final OPDSFeedParserType p =
+      OPDSFeedParser.newParser(OPDSAcquisitionFeedEntryParser.newParser());
+
+    final List<OPDSAcquisitionFeedEntry> received = new ArrayList<>();
+    final InputStream d = OPDSFeedParserTest.getResource("entry-0.xml");
+    final OPDSAcquisitionFeed f =
+      NullCheck.notNull(p.parseStreaming(uri, d, received::add));
+
+    assertEquals(0, f.getFeedEntries().size());
+    assertEquals(1, received.size());
+    d.close();
+  }
+
   @Test
   public void testDOMException()
     throws Exception {
@@ -0,0 +1,127 @@
+package org.nypl.simplified.tests.time_tracking
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.nypl.simplified.books.time.tracking.TimeTrackingEntry
+import org.nypl.simplified.books.time.tracking.TimeTrackingInfo
+import org.nypl.simplified.books.time.tracking.TimeTrackingInfoFileUtils
+import org.nypl.simplified.books.time.tracking.TimeTrackingJournal
+import org.nypl.simplified.tests.TestDirectories
+import java.io.File
+import java.net.URI
+
+class TimeTrackingJournalTest {
+
+  private lateinit var directory: File
+  private lateinit var file: File
+
+  private val header =
+    TimeTrackingInfo(
+      accountId = "accountId",
+      bookId = "bookId",
+      libraryId = "libraryId",
+      timeTrackingUri = URI.create("https://projectpalace.io/timeTracking"),
+      timeEntries = listOf()
+    )
+
+  @BeforeEach
+  fun testSetup() {
+    this.directory = TestDirectories.temporaryDirectory()
+    this.file = File(this.directory, "time_entries.journal")
+  }
+
+  private fun entry(id: String, seconds: Int): TimeTrackingEntry =
+    TimeTrackingEntry(id = id, duringMinute = "2023-08-08T12:50Z", secondsPlayed = seconds)
+
+  /**
+   * Later records for an entry replace earlier ones.
+   */
+
+  @Test
+  fun testPutReopen() {
+    val journal = TimeTrackingJournal.openOrCreate(this.file, null, this.header)
+    journal.put(this.entry("a", 1))
+    journal.put(this.entry("a", 2))
+    journal.put(this.entry("b", 3))
+
+    val reopened = TimeTrackingJournal.open(this.file, null)!!
+    assertEquals(this.header.copy(timeEntries = listOf(this.entry("a", 2), this.entry("b", 3))), reopened.info)
+
+    reopened.clear()
+    assertEquals(listOf<TimeTrackingEntry>(), TimeTrackingJournal.open(this.file, null)!!.info.timeEntries)
+  }
+
+  /**
+   * A record that was cut short is discarded.
+   */
+
+  @Test
+  fun testTruncatedTail() {
+    val journal = TimeTrackingJournal.openOrCreate(this.file, null, this.header)
+    journal.put(this.entry("a", 1))
+    journal.put(this.entry("a", 2))
+
+    val text = this.file.readText()
+    this.file.writeText(text.substring(0, text.length - 5))
+
+    val reopened = TimeTrackingJournal.open(this.file, null)!!
+    assertEquals(listOf(this.entry("a", 1)), reopened.info.timeEntries)
+
+    reopened.put(this.entry("a", 3))
+    assertEquals(listOf(this.entry("a", 3)), TimeTrackingJournal.open(this.file, null)!!.info.timeEntries)
+  }
+
+  /**
+   * Repeatedly updating one entry doesn't grow the journal without bound.
+   */
+
+  @Test
+  fun testCompaction() {
+    val journal = TimeTrackingJournal.openOrCreate(this.file, null, this.header)
+    for (seconds in 1..1000) {
+      journal.put(this.entry("a", seconds))
+    }
+    assertTrue(this.file.readLines().size < 100)
+    assertEquals(listOf(this.entry("a", 1000)), TimeTrackingJournal.open(this.file, null)!!.info.timeEntries)
+  }
+
+  /**
+   * Files in the previous format are moved into a journal.
+   */
+
+  @Test
+  fun testLegacyMigration() {
+    val legacy = File(this.directory, "time_entries.json")
+    TimeTrackingInfoFileUtils.saveTimeTrackingInfoOnFile(
+      timeTrackingInfo = this.header.copy(timeEntries = listOf(this.entry("a", 10))),
+      file = legacy
+    )
+
+    val journal = TimeTrackingJournal.open(this.file, legacy)!!
+    assertEquals(listOf(this.entry("a", 10)), journal.info.timeEntries)
+    assertFalse(legacy.exists())
+    assertNull(TimeTrackingJournal.open(File(this.directory, "other.journal"), null))
+  }
+
+  /**
+   * Files in the previous format that can't be parsed are kept aside rather than deleted.
+   */
+
+  @Test
+  fun testLegacyMigrationCorrupt() {
+    val legacy = File(this.directory, "time_entries.json")
+    legacy.writeText("{ not json")
+
+    assertNull(TimeTrackingJournal.open(this.file, legacy))
+    assertFalse(legacy.exists())
+    assertFalse(this.file.exists())
+
+    val corrupt = File(this.directory, "time_entries.json.corrupt")
+    assertTrue(corrupt.isFile)
+    assertEquals("{ not json", corrupt.readText())
+  }
+}
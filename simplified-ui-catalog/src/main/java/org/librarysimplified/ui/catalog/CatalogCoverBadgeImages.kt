@@ -31,6 +31,7 @@ class CatalogCoverBadgeImages private constructor(
       }
       BOOK_FORMAT_AUDIO -> {
         BookCoverBadge(
+          id = "audiobook",
           bitmap = this.audioBookIcon,
           width = this.screenSize.dpToPixels(24).toInt(),
           height = this.screenSize.dpToPixels(24).toInt(),
@@ -7,6 +7,9 @@ import androidx.lifecycle.ViewModel
 import androidx.paging.LivePagedListBuilder
 import androidx.paging.PagedList
 import com.google.common.util.concurrent.FluentFuture
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.MoreExecutors
+import com.google.common.util.concurrent.SettableFuture
 import io.reactivex.android.schedulers.AndroidSchedulers
 import io.reactivex.disposables.CompositeDisposable
 import io.reactivex.subjects.PublishSubject
@@ -73,6 +76,7 @@ import org.slf4j.LoggerFactory
 import org.slf4j.MDC
 import java.net.URI
 import java.util.UUID
+import java.util.concurrent.atomic.AtomicBoolean
 
 /**
  * A view model for the catalog feed fragment.
@@ -110,7 +114,7 @@ class CatalogFeedViewModel(
     get() = this.stateLive.value!!
 
   init {
-    loadFeed(this.feedArguments)
+    loadFeed(this.feedArguments, useCache = true)
   }
 
   private fun updateState(newState : CatalogFeedState){
@@ -457,12 +461,19 @@ class CatalogFeedViewModel(
     this.loadFeed(state.arguments)
   }
 
+  /**
+   * Load a feed. If [useCache] is `true`, a remote feed that was recently loaded may be
+   * shown immediately instead of being fetched again. Explicit reloads don't use the
+   * cache, because they're typically the result of something having changed.
+   */
+
   private fun loadFeed(
-    arguments: CatalogFeedArguments
+    arguments: CatalogFeedArguments,
+    useCache: Boolean = false
   ) {
     return when (arguments) {
       is CatalogFeedArgumentsRemote ->
-        this.doLoadRemoteFeed(arguments)
+        this.doLoadRemoteFeed(arguments, useCache)
       is CatalogFeedArgumentsLocalBooks ->
         this.doLoadLocalFeed(arguments)
       is CatalogFeedArgumentsAllLocalBooks ->
@@ -588,7 +599,8 @@ class CatalogFeedViewModel(
    */
 
   private fun doLoadRemoteFeed(
-    arguments: CatalogFeedArgumentsRemote
+    arguments: CatalogFeedArgumentsRemote,
+    useCache: Boolean
   ) {
     this.logger.debug("[{}]: loading remote feed {}", this.instanceId, arguments.feedURI)
 
@@ -618,19 +630,115 @@ class CatalogFeedViewModel(
     val loginState =
       account.loginState
 
+    /*
+     * If the feed was loaded recently, show it right away. A stale feed is refreshed in
+     * the background by the loader, and the refreshed feed replaces it when it arrives.
+     */
+
+    if (useCache) {
+      val cached =
+        this.feedLoader.fetchURIFromCache(
+          accountID = account.id,
+          uri = arguments.feedURI,
+          credentials = loginState.credentials,
+          method = "GET",
+          onRefreshed = { result ->
+            this.updateBasicTokenCredentials(result, account)
+            if (this.state.arguments == arguments) {
+              synchronized(this.loaderResults) {
+                this.loaderResults.onNext(LoaderResultWithArguments(arguments, result))
+              }
+            }
+          }
+        )
+
+      if (cached != null) {
+        this.logger.debug("[{}]: using cached feed {}", this.instanceId, arguments.feedURI)
+        this.createNewStatus(
+          account = null,
+          arguments = arguments,
+          future = FluentFuture.from(Futures.immediateFuture(cached as FeedLoaderResult))
+        )
+        return
+      }
+    }
+
+    /*
+     * Show the first entries of a feed without groups as soon as they have been parsed,
+     * rather than waiting for the entire feed. The complete feed replaces the partial
+     * feed when loading finishes. A batch smaller than the batch size is the final one,
+     * so there's no point in showing it separately.
+     */
+
+    val partialPublished =
+      AtomicBoolean(false)
+
+    /*
+     * The feed's search description is fetched after the feed itself if it isn't cached.
+     * The feed is published again with its search link once the feed itself has been
+     * published. The search description can arrive before fetchURIStreaming has returned,
+     * so it waits on a future that exists before the request is submitted.
+     */
+
+    val feedPublished =
+      SettableFuture.create<Unit>()
+
     val future =
-      this.feedLoader.fetchURI(
+      this.feedLoader.fetchURIStreaming(
         accountID = account.id,
         uri = arguments.feedURI,
         credentials = loginState.credentials,
-        method = "GET"
+        method = "GET",
+        batchSize = PARTIAL_FEED_BATCH_SIZE,
+        onEntries = { entries ->
+          if (entries.size == PARTIAL_FEED_BATCH_SIZE && partialPublished.compareAndSet(false, true)) {
+            this.publishPartialFeed(arguments, entries)
+          }
+        },
+        onSearchResolved = { result ->
+          feedPublished.addListener(
+            {
+              if (this.state.arguments == arguments) {
+                synchronized(this.loaderResults) {
+                  this.loaderResults.onNext(LoaderResultWithArguments(arguments, result))
+                }
+              }
+            },
+            MoreExecutors.directExecutor()
+          )
+        }
       )
 
     this.createNewStatus(
       account = account,
       arguments = arguments,
       future = future
-    )
+    ).addListener({ feedPublished.set(Unit) }, MoreExecutors.directExecutor())
+  }
+
+  private fun publishPartialFeed(
+    arguments: CatalogFeedArgumentsRemote,
+    entries: List<FeedEntry>
+  ) {
+    val partialFeed =
+      Feed.empty(
+        feedID = arguments.feedURI.toString(),
+        feedSearch = null,
+        feedTitle = arguments.title,
+        feedURI = arguments.feedURI,
+        feedFacets = listOf(),
+        feedFacetGroups = mapOf()
+      )
+    partialFeed.entriesInOrder.addAll(entries)
+
+    synchronized(this.loaderResults) {
+      this.loaderResults.onNext(
+        LoaderResultWithArguments(
+          arguments = arguments,
+          result = FeedLoaderResult.FeedLoaderSuccess(partialFeed, accessToken = null)
+        )
+      )
+    }
   }
 
   private fun shouldDisplayAgeGate(
@@ -643,14 +751,15 @@ class CatalogFeedViewModel(
 
   /**
    * Create a new feed state for the given operation. The feed is assumed to start in a "loading"
-   * state.
+   * state. If an account is given, the account's token is updated from the result; this must
+   * only be done for results that have just been received from the server.
    */
 
   private fun createNewStatus(
     account: AccountType?,
     arguments: CatalogFeedArguments,
     future: FluentFuture<FeedLoaderResult>
-  ) {
+  ): FluentFuture<Unit> {
     val newState =
       CatalogFeedState.CatalogFeedLoading(arguments)
 
@@ -660,7 +769,7 @@ class CatalogFeedViewModel(
      * Register a callback that updates the feed status when the future completes.
      */
 
-    future.map { feedLoaderResult ->
+    return future.map { feedLoaderResult ->
       updateBasicTokenCredentials(feedLoaderResult, account)
 
       synchronized(loaderResults) {
@@ -1411,4 +1520,14 @@ class CatalogFeedViewModel(
       CatalogFeedEvent.LoginRequired(accountID)
     )
   }
+
+  companion object {
+
+    /**
+     * The number of entries shown before the rest of a remote feed has been loaded.
+     * This should be roughly one screen of covers.
+     */
+
+    private const val PARTIAL_FEED_BATCH_SIZE = 12
+  }
 }
@@ -41,6 +41,7 @@ class CatalogFeedWithGroupsLaneViewHolder(
           this.resources.getDimensionPixelSize(R.dimen.catalogFeedCoversSpace)
         )
       )
+      addOnScrollListener(CatalogScrollListener(coverLoader))
     }
   }
 
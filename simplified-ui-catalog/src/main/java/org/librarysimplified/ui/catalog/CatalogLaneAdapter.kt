@@ -22,10 +22,19 @@ class CatalogLaneAdapter(
     return CatalogLaneItemViewHolder(view, coverLoader, onBookSelected)
   }
 
+  private val prefetcher =
+    CatalogThumbnailPrefetcher(coverLoader)
+
   override fun getItemCount() = items.size
 
   override fun onBindViewHolder(holder: CatalogLaneItemViewHolder, position: Int) {
     holder.bindTo(items[position])
+    this.prefetcher.onItemBound(
+      resources = holder.itemView.resources,
+      position = position,
+      itemCount = items.size,
+      itemAt = items::getOrNull
+    )
   }
 
   override fun onViewRecycled(holder: CatalogLaneItemViewHolder) {
@@ -3,6 +3,7 @@ package org.librarysimplified.ui.catalog
 import android.content.Context
 import android.view.LayoutInflater
 import android.view.ViewGroup
+import androidx.paging.PagedList
 import androidx.paging.PagedListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import org.nypl.simplified.books.covers.BookCoverProviderType
@@ -45,8 +46,34 @@ class CatalogPagedAdapter(
     )
   }
 
+  private val prefetcher =
+    CatalogThumbnailPrefetcher(this.bookCovers)
+
   override fun onBindViewHolder(holder: CatalogPagedViewHolder, position: Int) {
     holder.bindTo(this.getItem(position))
+
+    /*
+     * Only prefetch the items that have already been loaded. Asking the adapter for
+     * an item would cause more pages to be loaded.
+     */
+
+    val items = this.currentList
+    if (items != null) {
+      this.prefetcher.onItemBound(
+        resources = holder.itemView.resources,
+        position = position,
+        itemCount = items.size,
+        itemAt = { index -> items[index] }
+      )
+    }
+  }
+
+  override fun onCurrentListChanged(
+    previousList: PagedList<FeedEntry>?,
+    currentList: PagedList<FeedEntry>?
+  ) {
+    super.onCurrentListChanged(previousList, currentList)
+    this.prefetcher.reset()
   }
 
   override fun onViewRecycled(holder: CatalogPagedViewHolder) {
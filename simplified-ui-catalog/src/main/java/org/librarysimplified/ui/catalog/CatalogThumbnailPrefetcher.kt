@@ -0,0 +1,68 @@
+package org.librarysimplified.ui.catalog
+
+import android.content.res.Resources
+import org.nypl.simplified.books.covers.BookCoverProviderType
+import org.nypl.simplified.feeds.api.FeedEntry
+
+/**
+ * Warms the thumbnails of the items that come after the items being bound by an adapter,
+ * so that the covers on the next screen are already on disk, at the size that they will
+ * be shown at, by the time they are scrolled to.
+ */
+
+class CatalogThumbnailPrefetcher(
+  private val coverLoader: BookCoverProviderType,
+  private val itemsAhead: Int = 8
+) {
+
+  private var thumbnailHeight = -1
+  private var prefetchedUntil = 0
+
+  /**
+   * An item has been bound at `position`. Prefetch the thumbnails of the items after it
+   * that haven't already been prefetched.
+   *
+   * @param itemCount The number of items that the adapter has
+   * @param itemAt A function that returns the item at the given position, if it is loaded
+   */
+
+  fun onItemBound(
+    resources: Resources,
+    position: Int,
+    itemCount: Int,
+    itemAt: (Int) -> FeedEntry?
+  ) {
+    val from = maxOf(position + 1, this.prefetchedUntil)
+    val until = minOf(position + 1 + this.itemsAhead, itemCount)
+    if (from >= until) {
+      return
+    }
+
+    if (this.thumbnailHeight < 0) {
+      this.thumbnailHeight =
+        resources.getDimensionPixelSize(
+          org.librarysimplified.books.covers.R.dimen.cover_thumbnail_height
+        )
+    }
+
+    val entries = ArrayList<FeedEntry.FeedEntryOPDS>(until - from)
+    for (index in from until until) {
+      val item = itemAt(index) ?: break
+      if (item is FeedEntry.FeedEntryOPDS) {
+        entries.add(item)
+      }
+      this.prefetchedUntil = index + 1
+    }
+    if (entries.isNotEmpty()) {
+      this.coverLoader.prefetchThumbnails(entries, 0, this.thumbnailHeight)
+    }
+  }
+
+  /**
+   * The items have changed, so nothing can be assumed to have been prefetched.
+   */
+
+  fun reset() {
+    this.prefetchedUntil = 0
+  }
+}
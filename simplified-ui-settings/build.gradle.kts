@@ -26,6 +26,7 @@ dependencies {
     implementation(project(":simplified-crashlytics-api"))
     implementation(project(":simplified-documents"))
     implementation(project(":simplified-feeds-api"))
+    implementation(project(":simplified-metrics-api"))
     implementation(project(":simplified-oauth"))
     implementation(project(":simplified-presentableerror-api"))
     implementation(project(":simplified-profiles-api"))
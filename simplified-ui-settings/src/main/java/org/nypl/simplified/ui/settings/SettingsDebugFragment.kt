@@ -15,6 +15,7 @@ import android.widget.Toast.LENGTH_LONG
 import androidx.appcompat.widget.SwitchCompat
 import androidx.fragment.app.Fragment
 import androidx.fragment.app.viewModels
+import org.librarysimplified.reports.Reports
 import org.librarysimplified.services.api.Services
 import org.librarysimplified.ui.settings.R
 import org.nypl.simplified.accounts.registry.api.AccountProviderRegistryDebugging
@@ -23,6 +24,7 @@ import org.nypl.simplified.adobe.extensions.AdobeDRMExtensions
 import org.nypl.simplified.android.ktx.supportActionBar
 import org.nypl.simplified.listeners.api.FragmentListenerType
 import org.nypl.simplified.listeners.api.fragmentListeners
+import org.nypl.simplified.metrics.api.PerformanceMetrics
 import org.nypl.simplified.taskrecorder.api.TaskStep
 import org.nypl.simplified.taskrecorder.api.TaskStepResolution
 import org.nypl.simplified.ui.errorpage.ErrorPageParameters
@@ -57,6 +59,7 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
   private lateinit var libraryRegistryClear: Button
   private lateinit var libraryRegistryEntry: EditText
   private lateinit var libraryRegistrySet: Button
+  private lateinit var performanceButton: Button
   private lateinit var sendAnalyticsButton: Button
   private lateinit var sendReportButton: Button
   private lateinit var showErrorButton: Button
@@ -76,6 +79,8 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
       view.findViewById(R.id.settingsVersionDevCrash)
     this.cacheButton =
       view.findViewById(R.id.settingsVersionDevShowCacheDir)
+    this.performanceButton =
+      view.findViewById(R.id.settingsVersionDevPerformanceMetrics)
     this.sendReportButton =
       view.findViewById(R.id.settingsVersionDevSendReports)
     this.showErrorButton =
@@ -159,6 +164,9 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
       throw OutOfMemoryError("Pretending to have run out of memory!")
     }
 
+    this.performanceButton.setOnClickListener {
+      this.showPerformanceAlert()
+    }
     this.cacheButton.setOnClickListener {
       this.showCacheAlert()
     }
@@ -350,6 +358,29 @@ class SettingsDebugFragment : Fragment(R.layout.settings_debug) {
       .show()
   }
 
+  private fun showPerformanceAlert() {
+    val context = this.requireContext()
+    val report = PerformanceMetrics.report()
+
+    MaterialAlertDialogBuilder(context)
+      .setTitle("Performance Metrics")
+      .setMessage(report.ifEmpty { "No metrics have been recorded." })
+      .setPositiveButton("Send") { _, _ ->
+        when (val result = this.viewModel.sendPerformanceMetrics()) {
+          Reports.Result.Sent ->
+            Unit
+          Reports.Result.NoFiles ->
+            Toast.makeText(context, "No metrics were exported", LENGTH_LONG).show()
+          is Reports.Result.RaisedException ->
+            Toast.makeText(context, "Could not send metrics: ${result.exception.message}", LENGTH_LONG).show()
+        }
+      }
+      .setNeutralButton("Reset") { _, _ ->
+        PerformanceMetrics.reset()
+      }
+      .show()
+  }
+
   private fun createDrmSupportRow(name: String, isSupported: Boolean): TableRow {
     val row =
       this.layoutInflater.inflate(
@@ -26,7 +26,10 @@ import org.nypl.simplified.profiles.api.ProfileEvent
 import org.nypl.simplified.profiles.api.ProfileUpdated
 import org.nypl.simplified.profiles.controller.api.ProfilesControllerType
 import org.librarysimplified.reports.Reports
+import org.nypl.simplified.metrics.api.PerformanceMetrics
 import org.slf4j.LoggerFactory
+import java.io.File
+import java.io.IOException
 import java.net.URI
 
 class SettingsDebugViewModel(application: Application) : AndroidViewModel(application) {
@@ -181,6 +184,32 @@ class SettingsDebugViewModel(application: Application) : AndroidViewModel(applic
     )
   }
 
+  /**
+   * Export the performance metrics to the cache directory and send the export in the
+   * same way as the error logs.
+   */
+
+  fun sendPerformanceMetrics(): Reports.Result {
+    val context = this.getApplication<Application>()
+    val fileName = "performance-metrics.txt"
+
+    try {
+      PerformanceMetrics.export(File(context.cacheDir, fileName))
+    } catch (e: IOException) {
+      this.logger.error("could not export metrics: ", e)
+      return Reports.Result.RaisedException(e)
+    }
+
+    return Reports.sendReport(
+      context = context,
+      baseDirectories = listOf(context.cacheDir),
+      address = this.supportEmailAddress,
+      subject = "[performance-metrics]",
+      body = "",
+      includeFile = { name -> name == fileName }
+    )
+  }
+
   fun syncAccounts() {
     try {
       this.profilesController.profileCurrent()
@@ -81,6 +81,9 @@ class BootFragment : Fragment(R.layout.splash_boot) {
       is BootEvent.BootInProgress -> {
         text.text = event.message
       }
+      is BootEvent.BootServiceStarted -> {
+        // Service timings are only of interest to diagnostics.
+      }
       is BootEvent.BootCompleted -> {
         setFragmentResult("", Bundle())
       }
@@ -10,6 +10,7 @@ import org.nypl.simplified.books.api.BookDRMInformation
 import org.nypl.simplified.books.api.BookID
 import org.nypl.simplified.books.audio.AudioBookCredentials
 import org.nypl.simplified.books.audio.AudioBookManifestRequest
+import org.nypl.simplified.books.audio.AudioBookManifests
 import org.nypl.simplified.books.audio.AudioBookManifestStrategiesType
 import org.nypl.simplified.books.audio.AudioBookManifestStrategyType
 import org.nypl.simplified.opds.core.OPDSAcquisitionFeedEntry
@@ -152,6 +153,7 @@ class AudioBookPlayerParameters(
         loadFallbackData = {
           ManifestFulfilled(manifestContentType, null, this.manifestFile.readBytes())
         },
+        manifestCache = AudioBookManifests.manifestCache,
         cacheDirectory = cacheDirectory
       )
 